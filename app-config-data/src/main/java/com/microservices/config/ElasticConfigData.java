@@ -13,5 +13,30 @@ public class ElasticConfigData {
     private String connectionUrl;
     private int connectionTimeoutMs;
     private int socketTimeoutMs;
+    /**
+     * Index the json source written straight from the avro records, instead of converting index models.
+     */
+    private Boolean rawSource = false;
+    private Bulk bulk = new Bulk();
+
+    /**
+     * Settings for accumulating documents into bulk requests of an even size, whatever the size of the saves.
+     * A bulk request is sent once it has maxBytes of utf-8 source, or maxDelayMs after its first document was added,
+     * or right away for a save that waits for it. maxDocuments only caps bulks of very small documents, maxBytes
+     * sizes the bulks, in the 5 to 15 MB elasticsearch recommends. Up to maxInFlightBulks bulk requests are sent at the
+     * same time, saves wait above that.
+     * With subBulks above one, every bulk request is split by target shard into up to subBulks requests of at least
+     * minDocumentsPerSubBulk documents, which are sent concurrently.
+     */
+    @Data
+    public static class Bulk {
+        private Boolean enabled = false;
+        private Integer maxDocuments = 100000;
+        private Long maxBytes = 10L * 1024 * 1024;
+        private Long maxDelayMs = 1000L;
+        private Integer maxInFlightBulks = 2;
+        private Integer subBulks = 1;
+        private Integer minDocumentsPerSubBulk = 100;
+    }
 
 }
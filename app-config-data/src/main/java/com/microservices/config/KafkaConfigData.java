@@ -4,7 +4,9 @@ import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 @Data
 @Configuration
@@ -13,8 +15,24 @@ public class KafkaConfigData {
     private String bootstrapServers;
     private String schemaRegistryUrlKey;
     private String schemaRegistryUrl;
+    private String schemaCacheFile;
     private String topicName;
     private List<String> topicNamesToCreate;
     private Integer numOfPartitions;
     private Short replicationFactor;
+    /**
+     * Topic configs, like compression.type, segment.bytes or retention.ms, for every created topic.
+     * Keys with dots are written in brackets in yaml, e.g. "[segment.bytes]: 1073741824".
+     */
+    private Map<String, String> topicConfigs = new HashMap<>();
+    /**
+     * Per topic partitions and configs, by topic name, taking precedence over numOfPartitions and topicConfigs.
+     */
+    private Map<String, Topic> topics = new HashMap<>();
+
+    @Data
+    public static class Topic {
+        private Integer numOfPartitions;
+        private Map<String, String> configs = new HashMap<>();
+    }
 }
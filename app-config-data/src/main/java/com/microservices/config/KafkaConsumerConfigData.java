@@ -5,6 +5,9 @@ import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.ArrayList;
+import java.util.List;
+
 @Data
 @Configuration
 @ConfigurationProperties(prefix = "kafka-consumer-config")
@@ -26,5 +29,100 @@ public class KafkaConsumerConfigData {
     private Integer maxPartitionFetchBytesDefault;
     private Integer maxPartitionFetchBytesBoostFactor;
     private Long pollTimeoutMs;
+    private Autoscaling autoscaling = new Autoscaling();
+    private Pipeline pipeline = new Pipeline();
+    private FlowControl flowControl = new FlowControl();
+    private RetryTopics retryTopics = new RetryTopics();
+
+    /**
+     * Settings for scaling the listener concurrency with the consumer lag. Every intervalMs the lag of the consumer
+     * group is measured and the wanted concurrency is the lag divided by targetLagPerConsumer, between
+     * minConcurrency and maxConcurrency and never above the partition count. The concurrency is raised after
+     * scaleUpChecks checks in a row wanted more consumers, and lowered by one after scaleDownChecks checks in a row
+     * had less than scaleDownLagRatio of the target lag per consumer. No change is made within cooldownMs of the last.
+     */
+    @Data
+    public static class Autoscaling {
+        private Boolean enabled = false;
+        private Long intervalMs = 30000L;
+        private Integer minConcurrency = 1;
+        private Integer maxConcurrency = Integer.MAX_VALUE;
+        private Long targetLagPerConsumer = 10000L;
+        private Double scaleDownLagRatio = 0.2;
+        private Integer scaleUpChecks = 2;
+        private Integer scaleDownChecks = 5;
+        private Long cooldownMs = 120000L;
+    }
+
+    /**
+     * Settings for the pipelined mode, where polled batches go through bounded queues to transformThreads and then to
+     * indexThreads, so that up to indexThreads bulk requests are in flight while the consumer keeps polling.
+     * The consumer is paused above maxInFlightRecords records that are not indexed yet, and resumed below
+     * resumeInFlightRecords, or while a polled batch waits for room on the full transform queue. Offsets are committed
+     * manually, at least every commitIntervalMs while idle. A batch that still can not be indexed after
+     * maxIndexAttempts attempts, or can not be transformed, is sent to the dead letter topic when retry topics are
+     * enabled, otherwise the consumer is stopped with the batch not committed.
+     * With a keyParallelism above 0 the records are instead spread by key over that many lanes, which keep the order
+     * of the records of a key, queue up to laneCapacity records and index up to maxLaneBatchSize records at once. The
+     * consumer is then also paused while a record waits for room on the full lane of its key.
+     */
+    @Data
+    public static class Pipeline {
+        private Boolean enabled = false;
+        private Integer transformQueueCapacity = 16;
+        private Integer indexQueueCapacity = 16;
+        private Integer transformThreads = 1;
+        private Integer indexThreads = 4;
+        private Integer maxInFlightRecords = 20000;
+        private Integer resumeInFlightRecords = 10000;
+        private Long commitIntervalMs = 1000L;
+        private Integer maxIndexAttempts = 10;
+        private Integer keyParallelism = 0;
+        private Integer laneCapacity = 1000;
+        private Integer maxLaneBatchSize = 500;
+    }
+
+    /**
+     * Settings for sizing the bulk requests of the indexing consumer to the pressure of elasticsearch. Batches are
+     * indexed in bulks of the current bulk size, starting at initialBulkSize. The bulk size grows by bulkSizeIncrease
+     * after every bulk that took less than targetLatencyMs, and is multiplied by bulkSizeDecreaseFactor, at most once
+     * per targetLatencyMs, after a slower or rejected bulk, between minBulkSize and maxBulkSize.
+     * In the pipelined mode the consumer is paused above inFlightBulks bulks of the current size that are not indexed
+     * yet, and resumed below half of that, instead of using the fixed in flight records of the pipeline.
+     */
+    @Data
+    public static class FlowControl {
+        private Boolean enabled = false;
+        private Integer initialBulkSize = 1000;
+        private Integer minBulkSize = 50;
+        private Integer maxBulkSize = 5000;
+        private Integer bulkSizeIncrease = 100;
+        private Double bulkSizeDecreaseFactor = 0.5;
+        private Long targetLatencyMs = 1000L;
+        private Integer inFlightBulks = 4;
+    }
+
+    /**
+     * Settings for retrying the records that failed on their own in retry topics, without holding back the other
+     * records of their partition. A failed record is sent to the retry topic of its attempt, named after the topic
+     * with retryTopicSuffix and the attempt number, and consumed again delaysMs of its attempt later. After the last
+     * delay it is sent to the dead letter topic, named after the topic with deadLetterTopicSuffix, like records that
+     * can not be deserialized. The records are sent again with keySerializer and valueSerializer, within
+     * sendTimeoutMs, or for records that can not be deserialized within a share of maxPollIntervalMs small enough for
+     * a whole poll of them. Paused retry topic partitions are checked for due records at least every idleIntervalMs.
+     * A retry batch whose bulk request failed as a whole, e.g. as elasticsearch is down or overloaded, is consumed
+     * again after a backoff of the retry config instead of using up an attempt of its records.
+     */
+    @Data
+    public static class RetryTopics {
+        private Boolean enabled = false;
+        private List<Long> delaysMs = new ArrayList<>(List.of(10000L, 60000L, 300000L));
+        private String retryTopicSuffix = "-retry-";
+        private String deadLetterTopicSuffix = "-dlt";
+        private String keySerializer = "org.apache.kafka.common.serialization.LongSerializer";
+        private String valueSerializer = "io.confluent.kafka.serializers.KafkaAvroSerializer";
+        private Long sendTimeoutMs = 30000L;
+        private Long idleIntervalMs = 1000L;
+    }
 
 }
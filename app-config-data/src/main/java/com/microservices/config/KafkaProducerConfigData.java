@@ -4,6 +4,9 @@ import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.ArrayList;
+import java.util.List;
+
 @Data
 @Configuration
 @ConfigurationProperties(prefix = "kafka-producer-config")
@@ -18,5 +21,85 @@ public class KafkaProducerConfigData {
     private Integer lingerMs;
     private Integer requestTimeoutMs;
     private Integer retryCount;
+    private Boolean enableIdempotence = false;
+    private Integer maxInFlightRequestsPerConnection = 5;
+    private Integer deliveryTimeoutMs = 120000;
+    private Integer producerPoolSize = 1;
+    private Spill spill = new Spill();
+    private FlowControl flowControl = new FlowControl();
+    private HotKeyPartitioning hotKeyPartitioning = new HotKeyPartitioning();
+    private Tuning tuning = new Tuning();
+
+    /**
+     * Settings for the local spill log that keeps the records kafka could not take during an outage.
+     * Spilled records are sent again by a background replayer at no more than drainRatePerSecond records per second.
+     */
+    @Data
+    public static class Spill {
+        private Boolean enabled = false;
+        private String directory = "./kafka-producer-spill";
+        private Long segmentBytes = 67108864L;
+        private Integer drainRatePerSecond = 1000;
+        private Long drainIntervalMs = 5000L;
+        private Long sendTimeoutMs = 30000L;
+    }
+
+    /**
+     * Settings for the backpressure the producer signals to the stream runners. The producer counts as saturated
+     * when less than minAvailableBufferRatio of buffer.memory is free or more than maxInFlightRecords are waiting
+     * for an acknowledgement; the runners wait up to maxWaitMs for it to recover before sending anyway.
+     */
+    @Data
+    public static class FlowControl {
+        private Boolean enabled = false;
+        private Double minAvailableBufferRatio = 0.2;
+        private Long maxInFlightRecords = 50000L;
+        private Long maxWaitMs = 1000L;
+    }
+
+    /**
+     * Settings for the hot key partitioner. Key frequencies are estimated with a count-min sketch of sketchDepth rows
+     * of sketchWidth counters, halved every windowRecords records. A key sending more than hotKeyRatio of the records
+     * of the window, and at least minHotKeyRecords of them, is hot and is spread over the hotKeyPartitions, or over
+     * spreadPartitions partitions from its own one if no partitions are listed. With saltMode "sub-key" the partition
+     * of a hot key record is picked by the subKeyField of the record value, so records sharing it stay in order;
+     * with "round-robin" the records of a hot key are spread evenly and lose their order.
+     * There is no default subKeyField, it has to name a field that groups the records of a key, not a unique one like
+     * the tweet id, which would spread them like round-robin does. Either way a key changes partitions when it turns
+     * hot or cold again, so its records sent around that time may be reordered.
+     */
+    @Data
+    public static class HotKeyPartitioning {
+        private Boolean enabled = false;
+        private Integer sketchWidth = 2048;
+        private Integer sketchDepth = 4;
+        private Long windowRecords = 100000L;
+        private Double hotKeyRatio = 0.01;
+        private Long minHotKeyRecords = 100L;
+        private List<Integer> hotKeyPartitions = new ArrayList<>();
+        private Integer spreadPartitions = 4;
+        private String saltMode = "round-robin";
+        private String subKeyField;
+    }
+
+    /**
+     * Settings for the adaptive tuning of batch.size and linger.ms. Every intervalMs the p99 send latency is compared
+     * with targetP99LatencyMs: above it linger.ms and then batch.size are lowered, well below it batch.size is raised
+     * when batches fill up to minBatchFillRatio and linger.ms is raised otherwise, always within the min and max bounds.
+     * The producers of the pool are then replaced one by one with producers using the new settings.
+     */
+    @Data
+    public static class Tuning {
+        private Boolean enabled = false;
+        private Long intervalMs = 60000L;
+        private Long targetP99LatencyMs = 200L;
+        private Double latencyHeadroomRatio = 0.7;
+        private Double minBatchFillRatio = 0.8;
+        private Integer minBatchSize = 16384;
+        private Integer maxBatchSize = 1048576;
+        private Integer minLingerMs = 0;
+        private Integer maxLingerMs = 100;
+        private Integer lingerStepMs = 5;
+    }
 
 }
@@ -4,7 +4,9 @@ import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 @Data
 @Configuration
@@ -17,5 +19,86 @@ public class TwitterToKafkaServiceConfigData {
     private Long mockSleepMs;
     private Integer mockMinTweetLength;
     private Integer mockMaxTweetLength;
+    private Boolean enableReplay;
+    private LoadGenerator loadGenerator = new LoadGenerator();
+    private Replay replay = new Replay();
+    private HandOff handOff = new HandOff();
+    private NearDuplicate nearDuplicate = new NearDuplicate();
+    private KeywordRouting keywordRouting = new KeywordRouting();
+
+    /**
+     * Settings for the rate controlled, multi-threaded mode of the mock stream.
+     * Only used when mock tweets are enabled and {@code enabled} is true.
+     */
+    @Data
+    public static class LoadGenerator {
+        private Boolean enabled = false;
+        private Integer targetRate = 1000;
+        private Integer threads = 1;
+        private String profile = "constant";
+        private Long profilePeriodMs = 60000L;
+        private Double burstFactor = 5.0;
+        private Long burstDurationMs = 5000L;
+        private Double sineAmplitude = 0.5;
+        private Integer userCount = 100000;
+        private Double userSkew = 1.1;
+        private Double keywordSkew = 1.0;
+        private Map<Integer, Integer> tweetLengthHistogram = new HashMap<>();
+        private Long reportIntervalMs = 10000L;
+        private Boolean directAvro = false;
+        private Integer allocationSampleInterval = 1024;
+    }
+
+    /**
+     * Settings for capturing the incoming stream into local segment files and replaying them.
+     * Replay is used instead of the twitter and mock streams when enableReplay is true.
+     */
+    @Data
+    public static class Replay {
+        private String directory = "./tweet-capture";
+        private String speed = "original";
+        private Double speedFactor = 1.0;
+        private Boolean loop = false;
+        private Boolean captureEnabled = false;
+        private Long segmentBytes = 268435456L;
+    }
+
+    /**
+     * Settings for the bounded queue between the twitter stream callback and the workers
+     * that transform and send the tweets to kafka. When disabled the callback thread sends directly.
+     * The spill overflow policy appends to the spill log of the kafka producer, which must be enabled.
+     */
+    @Data
+    public static class HandOff {
+        private Boolean enabled = false;
+        private Integer capacity = 8192;
+        private Integer workers = 2;
+        private String overflowPolicy = "block";
+    }
+
+    /**
+     * Settings for the near-duplicate filter that runs before tweets are sent to kafka.
+     * Tweets whose SimHash fingerprint is within hammingDistance bits of a tweet seen in the last windowMs
+     * are dropped or tagged, depending on action.
+     */
+    @Data
+    public static class NearDuplicate {
+        private Boolean enabled = false;
+        private Integer hammingDistance = 3;
+        private Long windowMs = 600000L;
+        private Integer capacity = 65536;
+        private String action = "drop";
+    }
+
+    /**
+     * Settings for sending tweets to a topic per matched keyword, in addition to the main topic.
+     * The topic of a keyword is the topicPrefix followed by the keyword, with characters kafka does not allow
+     * in topic names replaced by a dash.
+     */
+    @Data
+    public static class KeywordRouting {
+        private Boolean enabled = false;
+        private String topicPrefix = "twitter-topic-";
+    }
 
 }
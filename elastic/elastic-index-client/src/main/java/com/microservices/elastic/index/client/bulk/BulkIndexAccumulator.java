@@ -0,0 +1,277 @@
+package com.microservices.elastic.index.client.bulk;
+
+import com.microservices.config.ElasticConfigData;
+import com.microservices.elastic.index.client.exception.ElasticIndexClientException;
+import com.microservices.elastic.index.client.exception.ElasticIndexPartialFailureException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.elasticsearch.core.query.IndexQuery;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * BulkIndexAccumulator collects the index queries of all saves into bulk requests of an even size, like the
+ * BulkProcessor of the elasticsearch client. A bulk request is sent once it reaches the max number of documents
+ * or the max bytes of source, or once its first document waited the max delay, so that small saves are combined
+ * and big saves are split. The future of a save completes, with the ids of its documents, once every bulk request
+ * holding one of its documents succeeded.
+ * A save that waits for its documents flushes them right away, with whatever other saves added before, as nothing
+ * else can join its bulk while it waits. The size of a document is the utf-8 length of its source and its action line.
+ * Up to maxInFlightBulks bulk requests are sent at the same time, a save that fills a bulk waits above that.
+ * When only some documents of a bulk request failed, only the saves holding them fail, with an
+ * ElasticIndexPartialFailureException for their own documents.
+ */
+@Slf4j
+public class BulkIndexAccumulator implements AutoCloseable {
+
+    //the action line of a document in the bulk request, without its id
+    private static final int ACTION_LINE_BYTES = 40;
+
+    private final Function<List<IndexQuery>, List<String>> bulkIndexer;
+    private final ElasticConfigData.Bulk bulkConfig;
+    private final Semaphore inFlightBulks;
+    private final ExecutorService bulkExecutor;
+    private final ScheduledExecutorService flushScheduler;
+
+    private List<PendingQuery> pendingQueries = new ArrayList<>();
+    private long pendingBytes;
+    private long firstPendingTime;
+
+    /**
+     * @param bulkIndexer sends a bulk request and returns the ids of the documents, in the order of the queries.
+     * @param bulk        the bulk settings.
+     */
+    public BulkIndexAccumulator(Function<List<IndexQuery>, List<String>> bulkIndexer, ElasticConfigData.Bulk bulk) {
+        this.bulkIndexer = bulkIndexer;
+        this.bulkConfig = bulk;
+        this.inFlightBulks = new Semaphore(bulk.getMaxInFlightBulks());
+        this.bulkExecutor = Executors.newFixedThreadPool(bulk.getMaxInFlightBulks());
+        this.flushScheduler = Executors.newSingleThreadScheduledExecutor();
+        long checkIntervalMs = Math.max(1, bulk.getMaxDelayMs() / 4);
+        flushScheduler.scheduleWithFixedDelay(this::flushIfDue, checkIntervalMs, checkIntervalMs,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Adds the queries to the bulk requests. The queries should have their source set, its length is used as the
+     * size of the document.
+     *
+     * @param indexQueries the queries of one save.
+     * @return a future completed with the ids of the documents once they are all indexed.
+     */
+    public CompletableFuture<List<String>> add(List<IndexQuery> indexQueries) {
+        return add(indexQueries, false);
+    }
+
+    /**
+     * Adds the queries to the bulk requests, sending the documents waiting right away when flush is set.
+     *
+     * @param indexQueries the queries of one save.
+     * @param flush        true for a save that waits for the future, so that it does not wait the max delay.
+     * @return a future completed with the ids of the documents once they are all indexed.
+     */
+    public CompletableFuture<List<String>> add(List<IndexQuery> indexQueries, boolean flush) {
+        Submission submission = new Submission(indexQueries.size());
+        if (indexQueries.isEmpty()) {
+            submission.future.complete(List.of());
+            return submission.future;
+        }
+        List<List<PendingQuery>> fullBulks = new ArrayList<>();
+        synchronized (this) {
+            for (int i = 0; i < indexQueries.size(); i++) {
+                IndexQuery indexQuery = indexQueries.get(i);
+                if (pendingQueries.isEmpty()) {
+                    firstPendingTime = System.currentTimeMillis();
+                }
+                pendingQueries.add(new PendingQuery(indexQuery, submission, i));
+                pendingBytes += ACTION_LINE_BYTES + utf8Length(indexQuery.getId()) + utf8Length(indexQuery.getSource());
+                if (pendingQueries.size() >= bulkConfig.getMaxDocuments() || pendingBytes >= bulkConfig.getMaxBytes()) {
+                    fullBulks.add(takePendingQueries());
+                }
+            }
+            if (flush && !pendingQueries.isEmpty()) {
+                fullBulks.add(takePendingQueries());
+            }
+        }
+        for (List<PendingQuery> bulk : fullBulks) {
+            send(bulk);
+        }
+        return submission.future;
+    }
+
+    /**
+     * Sends the documents that are waiting and stops, waiting for the bulk requests in flight.
+     */
+    @Override
+    public void close() {
+        flushScheduler.shutdownNow();
+        List<PendingQuery> bulk;
+        synchronized (this) {
+            bulk = takePendingQueries();
+        }
+        if (!bulk.isEmpty()) {
+            send(bulk);
+        }
+        bulkExecutor.shutdown();
+        try {
+            if (!bulkExecutor.awaitTermination(bulkConfig.getMaxDelayMs() * 10, TimeUnit.MILLISECONDS)) {
+                log.warn("Bulk requests still in flight after close");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void flushIfDue() {
+        List<PendingQuery> bulk;
+        synchronized (this) {
+            if (pendingQueries.isEmpty() ||
+                    System.currentTimeMillis() - firstPendingTime < bulkConfig.getMaxDelayMs()) {
+                return;
+            }
+            bulk = takePendingQueries();
+        }
+        send(bulk);
+    }
+
+    private List<PendingQuery> takePendingQueries() {
+        List<PendingQuery> bulk = pendingQueries;
+        pendingQueries = new ArrayList<>(bulk.size());
+        pendingBytes = 0;
+        return bulk;
+    }
+
+    private void send(List<PendingQuery> bulk) {
+        try {
+            inFlightBulks.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            fail(bulk, new ElasticIndexClientException("Interrupted while waiting to send a bulk request", e));
+            return;
+        }
+        try {
+            bulkExecutor.execute(() -> {
+                try {
+                    index(bulk);
+                } finally {
+                    inFlightBulks.release();
+                }
+            });
+        } catch (RuntimeException e) {
+            inFlightBulks.release();
+            fail(bulk, e);
+        }
+    }
+
+    private void index(List<PendingQuery> bulk) {
+        List<IndexQuery> indexQueries = new ArrayList<>(bulk.size());
+        bulk.forEach(pendingQuery -> indexQueries.add(pendingQuery.indexQuery));
+        List<String> documentIds;
+        Map<Integer, String> failures = Map.of();
+        try {
+            documentIds = bulkIndexer.apply(indexQueries);
+        } catch (ElasticIndexPartialFailureException e) {
+            log.error("Bulk request of {} documents failed for {} documents", bulk.size(), e.getFailures().size());
+            documentIds = e.getDocumentIds();
+            failures = e.getFailures();
+        } catch (RuntimeException e) {
+            log.error("Bulk request of {} documents failed", bulk.size(), e);
+            fail(bulk, e);
+            return;
+        }
+        for (int i = 0; i < bulk.size(); i++) {
+            String failure = failures.get(i);
+            if (failure == null) {
+                bulk.get(i).completed(documentIds.get(i));
+            } else {
+                bulk.get(i).failed(failure);
+            }
+        }
+    }
+
+    private void fail(List<PendingQuery> bulk, Throwable t) {
+        bulk.forEach(pendingQuery -> pendingQuery.submission.future.completeExceptionally(t));
+    }
+
+    /**
+     * @return the number of bytes of the string in utf-8, without encoding it.
+     */
+    static long utf8Length(String value) {
+        if (value == null) {
+            return 0;
+        }
+        long length = value.length();
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c >= 0x800) {
+                //a surrogate pair is 4 bytes for 2 chars
+                length += Character.isSurrogate(c) ? 1 : 2;
+            } else if (c >= 0x80) {
+                length += 1;
+            }
+        }
+        return length;
+    }
+
+    private static final class Submission {
+
+        private final CompletableFuture<List<String>> future = new CompletableFuture<>();
+        private final String[] documentIds;
+        private final Map<Integer, String> failures = new ConcurrentHashMap<>();
+        private final AtomicInteger remaining;
+
+        private Submission(int size) {
+            this.documentIds = new String[size];
+            this.remaining = new AtomicInteger(size);
+        }
+
+        private void done() {
+            //the decrement publishes the id or failure to the thread completing the future
+            if (remaining.decrementAndGet() == 0) {
+                if (failures.isEmpty()) {
+                    future.complete(Arrays.asList(documentIds));
+                } else {
+                    future.completeExceptionally(new ElasticIndexPartialFailureException(failures.size() + " of " +
+                            documentIds.length + " documents failed", Arrays.asList(documentIds),
+                            new HashMap<>(failures)));
+                }
+            }
+        }
+    }
+
+    private static final class PendingQuery {
+
+        private final IndexQuery indexQuery;
+        private final Submission submission;
+        private final int index;
+
+        private PendingQuery(IndexQuery indexQuery, Submission submission, int index) {
+            this.indexQuery = indexQuery;
+            this.submission = submission;
+            this.index = index;
+        }
+
+        private void completed(String documentId) {
+            submission.documentIds[index] = documentId;
+            submission.done();
+        }
+
+        private void failed(String failure) {
+            submission.failures.put(index, failure);
+            submission.done();
+        }
+    }
+
+}
@@ -0,0 +1,244 @@
+package com.microservices.elastic.index.client.bulk;
+
+import com.microservices.config.ElasticConfigData;
+import com.microservices.elastic.index.client.exception.ElasticIndexClientException;
+import com.microservices.elastic.index.client.exception.ElasticIndexPartialFailureException;
+import com.microservices.elastic.index.client.exception.ElasticIndexRejectedException;
+import lombok.extern.slf4j.Slf4j;
+import org.elasticsearch.ElasticsearchStatusException;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.admin.indices.settings.get.GetSettingsRequest;
+import org.elasticsearch.action.admin.indices.settings.get.GetSettingsResponse;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.cluster.routing.Murmur3HashFunction;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.rest.RestStatus;
+import org.springframework.data.elasticsearch.core.convert.ElasticsearchConverter;
+import org.springframework.data.elasticsearch.core.query.IndexQuery;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * ShardParallelBulkDispatcher splits a bulk request into sub-bulks by target shard and sends them concurrently
+ * over the async REST client, so that a big batch is coordinated by several nodes instead of a single one.
+ * The shard of a document is found the way elasticsearch routes it: the murmur3 hash of its id, modulo the
+ * number of routing shards, divided by the routing factor of the index. The shard counts are read once per index
+ * from its settings. Documents without an id, or all documents while the shard counts are not known, are spread
+ * round-robin over the sub-bulks. Settings that could not be read, e.g. as the index does not exist yet, are only
+ * read again after ROUTING_RETRY_INTERVAL_MS, so that bulks do not each wait for the failed request.
+ * The ids of the sub-bulks are merged back in the order of the index queries. A sub-bulk rejected by an overloaded
+ * cluster, as a whole or for all of its failed documents, fails with an ElasticIndexRejectedException. Documents that
+ * failed for other reasons are reported together, by position, with an ElasticIndexPartialFailureException.
+ */
+@Slf4j
+public class ShardParallelBulkDispatcher {
+
+    private static final String NUMBER_OF_SHARDS = "index.number_of_shards";
+    private static final String NUMBER_OF_ROUTING_SHARDS = "index.number_of_routing_shards";
+    private static final long ROUTING_RETRY_INTERVAL_MS = 60000;
+
+    private final RestHighLevelClient restHighLevelClient;
+    private final ElasticsearchConverter elasticsearchConverter;
+    private final ElasticConfigData.Bulk bulkConfig;
+    private final Map<String, ShardRouting> shardRoutings = new ConcurrentHashMap<>();
+    //the time the settings of an index could last not be read
+    private final Map<String, Long> shardRoutingMisses = new ConcurrentHashMap<>();
+
+    public ShardParallelBulkDispatcher(RestHighLevelClient client,
+                                       ElasticsearchConverter converter,
+                                       ElasticConfigData.Bulk bulk) {
+        this.restHighLevelClient = client;
+        this.elasticsearchConverter = converter;
+        this.bulkConfig = bulk;
+    }
+
+    /**
+     * Indexes the documents in concurrent sub-bulks and waits for all of them.
+     * Throws ElasticIndexClientException if a sub-bulk failed, ElasticIndexRejectedException if it was rejected
+     * because the cluster is overloaded and ElasticIndexPartialFailureException if some of the documents failed.
+     *
+     * @param indexQueries the queries to index.
+     * @param indexName    the name of the index.
+     * @return the ids of the documents, in the order of the queries.
+     */
+    public List<String> bulkIndex(List<IndexQuery> indexQueries, String indexName) {
+        if (indexQueries.isEmpty()) {
+            return List.of();
+        }
+        int subBulkCount = getSubBulkCount(indexQueries.size());
+        ShardRouting shardRouting = getShardRouting(indexName);
+        List<SubBulk> subBulks = new ArrayList<>(subBulkCount);
+        for (int i = 0; i < subBulkCount; i++) {
+            subBulks.add(new SubBulk(indexQueries.size() / subBulkCount + 1));
+        }
+        int roundRobin = 0;
+        for (int i = 0; i < indexQueries.size(); i++) {
+            IndexQuery indexQuery = indexQueries.get(i);
+            int subBulk = shardRouting == null || indexQuery.getId() == null ?
+                    roundRobin++ % subBulkCount : shardRouting.getShard(indexQuery.getId()) % subBulkCount;
+            subBulks.get(subBulk).add(i, toIndexRequest(indexQuery, indexName));
+        }
+
+        String[] documentIds = new String[indexQueries.size()];
+        Map<Integer, String> failures = new ConcurrentHashMap<>();
+        List<CompletableFuture<Void>> futures = new ArrayList<>(subBulkCount);
+        for (SubBulk subBulk : subBulks) {
+            if (subBulk.size > 0) {
+                futures.add(send(subBulk).thenAccept(bulkResponse ->
+                        subBulk.merge(bulkResponse, documentIds, failures)));
+            }
+        }
+        try {
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof ElasticIndexClientException) {
+                throw (ElasticIndexClientException) e.getCause();
+            }
+            if (e.getCause() instanceof ElasticsearchStatusException &&
+                    ((ElasticsearchStatusException) e.getCause()).status() == RestStatus.TOO_MANY_REQUESTS) {
+                throw new ElasticIndexRejectedException("Bulk request rejected", e.getCause());
+            }
+            throw new ElasticIndexClientException("Error while sending bulk requests", e.getCause());
+        }
+        if (!failures.isEmpty()) {
+            throw new ElasticIndexPartialFailureException(failures.size() + " of " + indexQueries.size() +
+                    " documents failed", Arrays.asList(documentIds), new HashMap<>(failures));
+        }
+        log.debug("Indexed {} documents in {} sub-bulks", indexQueries.size(), futures.size());
+        return Arrays.asList(documentIds);
+    }
+
+    private int getSubBulkCount(int documents) {
+        int bySize = Math.max(1, documents / Math.max(1, bulkConfig.getMinDocumentsPerSubBulk()));
+        return Math.max(1, Math.min(bulkConfig.getSubBulks(), bySize));
+    }
+
+    private IndexRequest toIndexRequest(IndexQuery indexQuery, String indexName) {
+        String source = indexQuery.getSource() != null ? indexQuery.getSource() :
+                elasticsearchConverter.mapObject(indexQuery.getObject()).toJson();
+        IndexRequest indexRequest = new IndexRequest(indexName).source(source, XContentType.JSON);
+        if (indexQuery.getId() != null) {
+            indexRequest.id(indexQuery.getId());
+        }
+        return indexRequest;
+    }
+
+    private CompletableFuture<BulkResponse> send(SubBulk subBulk) {
+        CompletableFuture<BulkResponse> future = new CompletableFuture<>();
+        restHighLevelClient.bulkAsync(subBulk.bulkRequest, RequestOptions.DEFAULT,
+                ActionListener.wrap(future::complete, future::completeExceptionally));
+        return future;
+    }
+
+    /**
+     * Reads the shard counts of the index once. Returns null, and reads them again on the next call, while they are
+     * not known, for example before the index is created.
+     */
+    private ShardRouting getShardRouting(String indexName) {
+        ShardRouting shardRouting = shardRoutings.get(indexName);
+        if (shardRouting == null) {
+            Long missedAt = shardRoutingMisses.get(indexName);
+            if (missedAt != null && System.currentTimeMillis() - missedAt < ROUTING_RETRY_INTERVAL_MS) {
+                return null;
+            }
+            try {
+                GetSettingsResponse settings = restHighLevelClient.indices()
+                        .getSettings(new GetSettingsRequest().indices(indexName), RequestOptions.DEFAULT);
+                String numberOfShards = settings.getSetting(indexName, NUMBER_OF_SHARDS);
+                if (numberOfShards == null) {
+                    log.warn("Index {} has no shard settings, sending sub-bulks round-robin", indexName);
+                    shardRoutingMisses.put(indexName, System.currentTimeMillis());
+                    return null;
+                }
+                shardRouting = new ShardRouting(Integer.parseInt(numberOfShards),
+                        settings.getSetting(indexName, NUMBER_OF_ROUTING_SHARDS));
+                shardRoutings.put(indexName, shardRouting);
+                shardRoutingMisses.remove(indexName);
+                log.info("Routing sub-bulks of index {} over {} shards", indexName, shardRouting.numberOfShards);
+            } catch (IOException | RuntimeException e) {
+                log.warn("Could not read the shards of index {}, sending sub-bulks round-robin for {} ms", indexName,
+                        ROUTING_RETRY_INTERVAL_MS, e);
+                shardRoutingMisses.put(indexName, System.currentTimeMillis());
+                return null;
+            }
+        }
+        return shardRouting;
+    }
+
+    private static final class ShardRouting {
+
+        private final int numberOfShards;
+        private final int routingNumShards;
+        private final int routingFactor;
+
+        private ShardRouting(int numberOfShards, String numberOfRoutingShards) {
+            this.numberOfShards = numberOfShards;
+            this.routingNumShards = numberOfRoutingShards == null ? defaultRoutingNumShards(numberOfShards) :
+                    Integer.parseInt(numberOfRoutingShards);
+            this.routingFactor = routingNumShards / numberOfShards;
+        }
+
+        private int getShard(String routing) {
+            return Math.floorMod(Murmur3HashFunction.hash(routing), routingNumShards) / routingFactor;
+        }
+
+        /**
+         * The number of routing shards elasticsearch 7 gives an index created without number_of_routing_shards,
+         * which allows the index to be split up to 1024 shards.
+         */
+        private static int defaultRoutingNumShards(int numberOfShards) {
+            int log2NumberOfShards = 32 - Integer.numberOfLeadingZeros(numberOfShards - 1);
+            int numberOfSplits = Math.max(1, 10 - log2NumberOfShards);
+            return numberOfShards << numberOfSplits;
+        }
+    }
+
+    private static final class SubBulk {
+
+        private final BulkRequest bulkRequest = new BulkRequest();
+        private int[] positions;
+        private int size;
+
+        private SubBulk(int capacity) {
+            this.positions = new int[capacity];
+        }
+
+        private void add(int position, IndexRequest indexRequest) {
+            if (size == positions.length) {
+                positions = Arrays.copyOf(positions, size * 2);
+            }
+            positions[size++] = position;
+            bulkRequest.add(indexRequest);
+        }
+
+        private void merge(BulkResponse bulkResponse, String[] documentIds, Map<Integer, String> failures) {
+            BulkItemResponse[] items = bulkResponse.getItems();
+            if (bulkResponse.hasFailures() && Arrays.stream(items).filter(BulkItemResponse::isFailed)
+                    .allMatch(item -> item.status() == RestStatus.TOO_MANY_REQUESTS)) {
+                throw new ElasticIndexRejectedException("Bulk indexing has failures: " +
+                        bulkResponse.buildFailureMessage());
+            }
+            for (int i = 0; i < size; i++) {
+                if (items[i].isFailed()) {
+                    failures.put(positions[i], items[i].getFailureMessage());
+                } else {
+                    documentIds[positions[i]] = items[i].getId();
+                }
+            }
+        }
+    }
+
+}
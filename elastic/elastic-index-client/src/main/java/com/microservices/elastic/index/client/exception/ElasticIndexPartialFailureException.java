@@ -0,0 +1,36 @@
+package com.microservices.elastic.index.client.exception;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Thrown when some documents of a bulk request failed, e.g. for a mapping conflict, while the others were indexed.
+ * The failures are kept by the position of the document in the indexed list, so that only the failed documents are
+ * retried.
+ */
+public class ElasticIndexPartialFailureException extends ElasticIndexClientException {
+
+    private final transient List<String> documentIds;
+    private final transient Map<Integer, String> failures;
+
+    /**
+     * @param message     the message.
+     * @param documentIds the ids of the documents in the order they were indexed, null for the failed ones.
+     * @param failures    the failure message of every failed document, by its position.
+     */
+    public ElasticIndexPartialFailureException(String message, List<String> documentIds,
+                                               Map<Integer, String> failures) {
+        super(message);
+        this.documentIds = documentIds;
+        this.failures = failures;
+    }
+
+    public List<String> getDocumentIds() {
+        return documentIds;
+    }
+
+    public Map<Integer, String> getFailures() {
+        return failures;
+    }
+
+}
@@ -0,0 +1,17 @@
+package com.microservices.elastic.index.client.exception;
+
+/**
+ * Thrown when elasticsearch rejected a bulk request, or documents of it, because it is overloaded (status 429).
+ * The same documents can be indexed again once elasticsearch caught up.
+ */
+public class ElasticIndexRejectedException extends ElasticIndexClientException {
+
+    public ElasticIndexRejectedException(String message) {
+        super(message);
+    }
+
+    public ElasticIndexRejectedException(String message, Throwable t) {
+        super(message, t);
+    }
+
+}
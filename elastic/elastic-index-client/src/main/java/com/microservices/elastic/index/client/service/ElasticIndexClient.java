@@ -1,11 +1,54 @@
 package com.microservices.elastic.index.client.service;
 
+import com.microservices.elastic.index.client.exception.ElasticIndexClientException;
 import com.microservices.elastic.model.index.IndexModel;
+import org.springframework.data.elasticsearch.core.query.IndexQuery;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 public interface ElasticIndexClient<T extends IndexModel> {
 
     List<String> save(List<T> documents);
 
+    /**
+     * Saves the documents without waiting for them to be indexed, where the client supports it.
+     *
+     * @return a future completed with the ids of the documents once they are indexed.
+     */
+    default CompletableFuture<List<String>> saveAsync(List<T> documents) {
+        try {
+            return CompletableFuture.completedFuture(save(documents));
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Indexes documents whose json source is already written, without converting them, where the client supports it.
+     *
+     * @param indexQueries the queries with the id and the source of the documents.
+     * @return a future completed with the ids of the documents once they are indexed.
+     */
+    default CompletableFuture<List<String>> indexAsync(List<IndexQuery> indexQueries) {
+        return CompletableFuture.failedFuture(new ElasticIndexClientException(
+                "Indexing raw sources is not supported by " + getClass().getSimpleName()));
+    }
+
+    /**
+     * Indexes documents whose json source is already written, like indexAsync, and waits until they are indexed.
+     *
+     * @param indexQueries the queries with the id and the source of the documents.
+     * @return the ids of the documents.
+     */
+    default List<String> index(List<IndexQuery> indexQueries) {
+        try {
+            return indexAsync(indexQueries).join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() :
+                    new ElasticIndexClientException("Error while indexing documents", e.getCause());
+        }
+    }
+
 }
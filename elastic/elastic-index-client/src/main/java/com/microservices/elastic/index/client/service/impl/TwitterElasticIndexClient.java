@@ -1,19 +1,35 @@
 package com.microservices.elastic.index.client.service.impl;
 
 import com.microservices.config.ElasticConfigData;
+import com.microservices.elastic.index.client.bulk.BulkIndexAccumulator;
+import com.microservices.elastic.index.client.bulk.ShardParallelBulkDispatcher;
+import com.microservices.elastic.index.client.exception.ElasticIndexClientException;
+import com.microservices.elastic.index.client.exception.ElasticIndexPartialFailureException;
+import com.microservices.elastic.index.client.exception.ElasticIndexRejectedException;
 import com.microservices.elastic.index.client.service.ElasticIndexClient;
 import com.microservices.elastic.index.client.util.ElasticIndexUtil;
 import com.microservices.elastic.model.index.impl.TwitterIndexModel;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.elasticsearch.ElasticsearchStatusException;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.rest.RestStatus;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.elasticsearch.BulkFailureException;
 import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
 import org.springframework.data.elasticsearch.core.IndexedObjectInformation;
 import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
 import org.springframework.data.elasticsearch.core.query.IndexQuery;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.stream.Collectors;
 
 @Slf4j
@@ -25,16 +41,154 @@ public class TwitterElasticIndexClient implements ElasticIndexClient<TwitterInde
     private final ElasticConfigData elasticConfigData;
     private final ElasticsearchOperations elasticsearchOperations; //index and query against elasticsearch
     private final ElasticIndexUtil<TwitterIndexModel> elasticIndexUtil;
+    private final RestHighLevelClient restHighLevelClient;
 
+    private BulkIndexAccumulator bulkIndexAccumulator;
+    private ShardParallelBulkDispatcher shardParallelBulkDispatcher;
+
+    @PostConstruct
+    public void init() {
+        if (elasticConfigData.getBulk().getSubBulks() > 1) {
+            shardParallelBulkDispatcher = new ShardParallelBulkDispatcher(restHighLevelClient,
+                    elasticsearchOperations.getElasticsearchConverter(), elasticConfigData.getBulk());
+        }
+        if (Boolean.TRUE.equals(elasticConfigData.getBulk().getEnabled())) {
+            bulkIndexAccumulator = new BulkIndexAccumulator(this::bulkIndex, elasticConfigData.getBulk());
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        if (bulkIndexAccumulator != null) {
+            bulkIndexAccumulator.close();
+        }
+    }
+
+    /**
+     * With bulk accumulation enabled, the documents are sent at once with the documents other saves added before,
+     * as a save that waits can not be joined by the next one.
+     */
     @Override
     public List<String> save(List<TwitterIndexModel> documents) {
-        List<IndexQuery> indexQueries = elasticIndexUtil.getIndexQueries(documents);
-        List<String> documentIds = elasticsearchOperations.bulkIndex(
-                indexQueries,
-                IndexCoordinates.of(elasticConfigData.getIndexName())
-        ).stream().map(IndexedObjectInformation::getId).collect(Collectors.toList());
+        if (bulkIndexAccumulator != null) {
+            return join(bulkIndexAccumulator.add(elasticIndexUtil.getIndexQueriesWithSource(documents,
+                    elasticsearchOperations.getElasticsearchConverter()), true));
+        }
+        return bulkIndex(elasticIndexUtil.getIndexQueries(documents));
+    }
+
+    /**
+     * With bulk accumulation enabled, the documents are indexed with the documents of other saves, in bulk requests
+     * of an even size.
+     */
+    @Override
+    public CompletableFuture<List<String>> saveAsync(List<TwitterIndexModel> documents) {
+        if (bulkIndexAccumulator == null) {
+            return ElasticIndexClient.super.saveAsync(documents);
+        }
+        return bulkIndexAccumulator.add(elasticIndexUtil.getIndexQueriesWithSource(documents,
+                elasticsearchOperations.getElasticsearchConverter()));
+    }
+
+    @Override
+    public CompletableFuture<List<String>> indexAsync(List<IndexQuery> indexQueries) {
+        if (bulkIndexAccumulator == null) {
+            try {
+                return CompletableFuture.completedFuture(bulkIndex(indexQueries));
+            } catch (RuntimeException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+        return bulkIndexAccumulator.add(indexQueries);
+    }
+
+    @Override
+    public List<String> index(List<IndexQuery> indexQueries) {
+        if (bulkIndexAccumulator == null) {
+            return bulkIndex(indexQueries);
+        }
+        return join(bulkIndexAccumulator.add(indexQueries, true));
+    }
+
+    private static List<String> join(CompletableFuture<List<String>> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() :
+                    new ElasticIndexClientException("Error while indexing documents", e.getCause());
+        }
+    }
+
+    /**
+     * With sub-bulks enabled, the documents are split by target shard into bulk requests that are sent concurrently.
+     */
+    private List<String> bulkIndex(List<IndexQuery> indexQueries) {
+        List<String> documentIds;
+        if (shardParallelBulkDispatcher != null) {
+            documentIds = shardParallelBulkDispatcher.bulkIndex(indexQueries, elasticConfigData.getIndexName());
+        } else {
+            try {
+                documentIds = elasticsearchOperations.bulkIndex(
+                        indexQueries,
+                        IndexCoordinates.of(elasticConfigData.getIndexName())
+                ).stream().map(IndexedObjectInformation::getId).collect(Collectors.toList());
+            } catch (RuntimeException e) {
+                if (isRejected(e)) {
+                    throw new ElasticIndexRejectedException("Bulk request of " + indexQueries.size() +
+                            " documents rejected", e);
+                }
+                if (e instanceof BulkFailureException) {
+                    throw toPartialFailure((BulkFailureException) e, indexQueries);
+                }
+                throw e;
+            }
+        }
         log.info("Documents indexed successfully with type: {} and ids: {}", TwitterIndexModel.class.getName(),
                 documentIds);
         return documentIds;
     }
+
+    /**
+     * Maps the failed documents, which spring data reports by id, back to their positions, so that the other
+     * documents count as indexed.
+     */
+    private static RuntimeException toPartialFailure(BulkFailureException e, List<IndexQuery> indexQueries) {
+        Map<String, String> failedDocuments = e.getFailedDocuments();
+        List<String> documentIds = new ArrayList<>(indexQueries.size());
+        Map<Integer, String> failures = new HashMap<>();
+        for (int i = 0; i < indexQueries.size(); i++) {
+            String failure = failedDocuments.get(indexQueries.get(i).getId());
+            if (failure == null) {
+                documentIds.add(indexQueries.get(i).getId());
+            } else {
+                documentIds.add(null);
+                failures.put(i, failure);
+            }
+        }
+        if (failures.size() != failedDocuments.size()) {
+            //failed documents without an id can not be told apart
+            return e;
+        }
+        return new ElasticIndexPartialFailureException(failures.size() + " of " + indexQueries.size() +
+                " documents failed", documentIds, failures);
+    }
+
+    /**
+     * A bulk request is rejected when elasticsearch answered it with status 429, or when all of its failed documents
+     * were rejected by a full write thread pool.
+     */
+    private static boolean isRejected(RuntimeException e) {
+        if (e instanceof BulkFailureException) {
+            return ((BulkFailureException) e).getFailedDocuments().values().stream()
+                    .allMatch(failure -> failure.contains("es_rejected_execution_exception"));
+        }
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ElasticsearchStatusException &&
+                    ((ElasticsearchStatusException) cause).status() == RestStatus.TOO_MANY_REQUESTS) {
+                return true;
+            }
+        }
+        return false;
+    }
+
 }
@@ -1,6 +1,7 @@
 package com.microservices.elastic.index.client.util;
 
 import com.microservices.elastic.model.index.IndexModel;
+import org.springframework.data.elasticsearch.core.convert.ElasticsearchConverter;
 import org.springframework.data.elasticsearch.core.query.IndexQuery;
 import org.springframework.data.elasticsearch.core.query.IndexQueryBuilder;
 import org.springframework.stereotype.Component;
@@ -20,4 +21,17 @@ public class ElasticIndexUtil<T extends IndexModel> {
                 ).collect(Collectors.toList());
     }
 
+    /**
+     * Creates the index queries with the documents already converted to their source, the same way the
+     * ElasticsearchOperations would convert them, so that the size of the documents is known before indexing.
+     */
+    public List<IndexQuery> getIndexQueriesWithSource(List<T> documents, ElasticsearchConverter converter) {
+        return documents.stream()
+                .map(document -> new IndexQueryBuilder()
+                        .withId(document.getId())
+                        .withSource(converter.mapObject(document).toJson())
+                        .build()
+                ).collect(Collectors.toList());
+    }
+
 }
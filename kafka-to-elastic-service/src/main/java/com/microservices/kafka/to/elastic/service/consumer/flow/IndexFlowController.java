@@ -0,0 +1,171 @@
+package com.microservices.kafka.to.elastic.service.consumer.flow;
+
+import com.microservices.config.KafkaConsumerConfigData;
+import com.microservices.config.RetryConfigData;
+import com.microservices.elastic.index.client.exception.ElasticIndexPartialFailureException;
+import com.microservices.elastic.index.client.exception.ElasticIndexRejectedException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * IndexFlowController sizes the bulk requests of the indexing consumer to the pressure of elasticsearch, with
+ * additive increase and multiplicative decrease like the congestion window of TCP.
+ * Batches are indexed in bulks of the current bulk size. Every bulk faster than the target latency makes the
+ * next ones a bit bigger, a slower bulk or one rejected with status 429 makes them a lot smaller, so the size
+ * settles a little under what elasticsearch keeps up with instead of swinging between failing and recovering.
+ * Only one decrease is made per target latency, as the bulks in flight at the same time see the same overload.
+ * A rejected bulk is indexed again, in smaller bulks, after a backoff, instead of failing the whole batch.
+ * The latency is measured around the bulk indexer, which must send the bulk right away and wait for it, not hold it
+ * back to be combined with others, or the hold would count as elasticsearch being slow.
+ * The in flight limits of the pipelined mode follow the bulk size, so that the consumer is paused sooner while
+ * elasticsearch is slow.
+ */
+@Slf4j
+@Component
+public class IndexFlowController {
+
+    private final KafkaConsumerConfigData.FlowControl flowControlConfig;
+    private final RetryConfigData retryConfigData;
+
+    private int bulkSize;
+    private long lastDecreaseTime;
+
+    public IndexFlowController(KafkaConsumerConfigData consumerConfigData, RetryConfigData retryConfig) {
+        this.flowControlConfig = consumerConfigData.getFlowControl();
+        this.retryConfigData = retryConfig;
+        this.bulkSize = Math.max(flowControlConfig.getMinBulkSize(),
+                Math.min(flowControlConfig.getMaxBulkSize(), flowControlConfig.getInitialBulkSize()));
+    }
+
+    public boolean isEnabled() {
+        return Boolean.TRUE.equals(flowControlConfig.getEnabled());
+    }
+
+    public synchronized int getBulkSize() {
+        return bulkSize;
+    }
+
+    /**
+     * @return the number of records not indexed yet above which the consumer is paused.
+     */
+    public int getHighWatermark() {
+        return getBulkSize() * flowControlConfig.getInFlightBulks();
+    }
+
+    /**
+     * @return the number of records not indexed yet below which a paused consumer is resumed.
+     */
+    public int getLowWatermark() {
+        return getHighWatermark() / 2;
+    }
+
+    /**
+     * Indexes the documents in bulks of the current bulk size, in order. A rejected bulk is indexed again after a
+     * backoff, until the max number of attempts of the retry config is reached. Other failures are thrown right away,
+     * except for documents that failed on their own, which are thrown together, by their position in the documents,
+     * with an ElasticIndexPartialFailureException once the other bulks were indexed.
+     *
+     * @param documents   the documents to index.
+     * @param bulkIndexer indexes a bulk at once and returns the ids of its documents.
+     * @return the ids of the documents, in order.
+     */
+    public <T> List<String> index(List<T> documents, Function<List<T>, List<String>> bulkIndexer)
+            throws InterruptedException {
+        List<String> documentIds = new ArrayList<>(documents.size());
+        Map<Integer, String> failures = new HashMap<>();
+        int attempts = 0;
+        long backOffMs = retryConfigData.getInitialIntervalMs();
+        int from = 0;
+        while (from < documents.size()) {
+            int to = Math.min(documents.size(), from + getBulkSize());
+            long startTime = System.nanoTime();
+            try {
+                documentIds.addAll(bulkIndexer.apply(documents.subList(from, to)));
+            } catch (RuntimeException e) {
+                ElasticIndexPartialFailureException partialFailure = getPartialFailure(e);
+                if (partialFailure != null) {
+                    documentIds.addAll(partialFailure.getDocumentIds());
+                    int offset = from;
+                    partialFailure.getFailures().forEach((position, failure) -> failures.put(offset + position,
+                            failure));
+                    attempts = 0;
+                    backOffMs = retryConfigData.getInitialIntervalMs();
+                    from = to;
+                    continue;
+                }
+                if (!isRejected(e) || ++attempts >= retryConfigData.getMaxAttempts()) {
+                    throw e;
+                }
+                rejected(to - from);
+                log.warn("Bulk of {} documents rejected, indexing them again in {} ms in bulks of {}", to - from,
+                        backOffMs, getBulkSize());
+                Thread.sleep(backOffMs);
+                backOffMs = Math.min(retryConfigData.getMaxIntervalMs(),
+                        (long) (backOffMs * retryConfigData.getMultiplier()));
+                continue;
+            }
+            succeeded(to - from, (System.nanoTime() - startTime) / 1_000_000);
+            attempts = 0;
+            backOffMs = retryConfigData.getInitialIntervalMs();
+            from = to;
+        }
+        if (!failures.isEmpty()) {
+            throw new ElasticIndexPartialFailureException(failures.size() + " of " + documents.size() +
+                    " documents failed", documentIds, failures);
+        }
+        return documentIds;
+    }
+
+    private synchronized void succeeded(int documents, long latencyMs) {
+        if (latencyMs > flowControlConfig.getTargetLatencyMs()) {
+            if (decrease()) {
+                log.info("Bulk of {} documents took {} ms, decreased bulk size to {}", documents, latencyMs, bulkSize);
+            }
+        } else if (documents >= bulkSize) {
+            //only full bulks show that elasticsearch keeps up with the current size
+            bulkSize = Math.min(flowControlConfig.getMaxBulkSize(), bulkSize + flowControlConfig.getBulkSizeIncrease());
+        }
+    }
+
+    private synchronized void rejected(int documents) {
+        if (decrease()) {
+            log.info("Bulk of {} documents rejected, decreased bulk size to {}", documents, bulkSize);
+        }
+    }
+
+    private boolean decrease() {
+        long now = System.currentTimeMillis();
+        if (now - lastDecreaseTime < flowControlConfig.getTargetLatencyMs()) {
+            return false;
+        }
+        lastDecreaseTime = now;
+        bulkSize = Math.max(flowControlConfig.getMinBulkSize(),
+                (int) (bulkSize * flowControlConfig.getBulkSizeDecreaseFactor()));
+        return true;
+    }
+
+    private static ElasticIndexPartialFailureException getPartialFailure(Throwable t) {
+        for (Throwable cause = t; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ElasticIndexPartialFailureException) {
+                return (ElasticIndexPartialFailureException) cause;
+            }
+        }
+        return null;
+    }
+
+    private static boolean isRejected(Throwable t) {
+        for (Throwable cause = t; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ElasticIndexRejectedException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+}
@@ -1,19 +1,29 @@
 package com.microservices.kafka.to.elastic.service.consumer.impl;
 
+import com.microservices.config.ElasticConfigData;
 import com.microservices.config.KafkaConfigData;
 import com.microservices.config.KafkaConsumerConfigData;
 import com.microservices.elastic.index.client.service.ElasticIndexClient;
 import com.microservices.elastic.model.index.impl.TwitterIndexModel;
 import com.microservices.kafka.admin.client.KafkaAdminClient;
+import com.microservices.kafka.admin.readiness.StartupReadiness;
 import com.microservices.kafka.avro.model.TwitterAvroModel;
+import com.microservices.kafka.consumer.retry.FailedRecord;
+import com.microservices.kafka.consumer.retry.RetryTopicPublisher;
 import com.microservices.kafka.to.elastic.service.consumer.KafkaConsumer;
+import com.microservices.kafka.to.elastic.service.consumer.flow.IndexFlowController;
+import com.microservices.kafka.to.elastic.service.consumer.pipeline.TwitterIndexPipeline;
+import com.microservices.kafka.to.elastic.service.consumer.retry.IndexFailureRouter;
+import com.microservices.kafka.to.elastic.service.transformer.AvroToElasticJsonTransformer;
 import com.microservices.kafka.to.elastic.service.transformer.AvroToElasticModelTransformer;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
 import org.springframework.boot.context.event.ApplicationStartedEvent;
 import org.springframework.context.event.EventListener;
 import org.springframework.kafka.annotation.KafkaListener;
 import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.listener.MessageListenerContainer;
 import org.springframework.kafka.support.KafkaHeaders;
 import org.springframework.messaging.handler.annotation.Header;
 import org.springframework.messaging.handler.annotation.Payload;
@@ -31,14 +41,36 @@ public class TwitterKafkaConsumer implements KafkaConsumer<Long, TwitterAvroMode
     private final KafkaAdminClient kafkaAdminClient;
     private final KafkaConfigData kafkaConfigData;
     private final KafkaConsumerConfigData kafkaConsumerConfigData;
+    private final ElasticConfigData elasticConfigData;
+    private final StartupReadiness startupReadiness;
     private final AvroToElasticModelTransformer avroToElasticModelTransformer;
+    private final AvroToElasticJsonTransformer avroToElasticJsonTransformer;
     private final ElasticIndexClient<TwitterIndexModel> elasticIndexClient;
+    private final TwitterIndexPipeline twitterIndexPipeline;
+    private final IndexFlowController indexFlowController;
+    private final RetryTopicPublisher retryTopicPublisher;
+    private final IndexFailureRouter indexFailureRouter;
 
     @EventListener
     public void onAppStarted(ApplicationStartedEvent event) {
-        kafkaAdminClient.checkTopicsCreated();
-        log.info("Topics with name {} is ready for operations!", kafkaConfigData.getTopicNamesToCreate().toArray());
-        Objects.requireNonNull(kafkaListenerEndpointRegistry.getListenerContainer(kafkaConsumerConfigData.getConsumerGroupId())).start();
+        //the topics and elasticsearch are waited for concurrently, the listener only starts once both are ready
+        startupReadiness.awaitReady(List.of(
+                kafkaAdminClient.topicsReadinessCheck(kafkaConfigData.getTopicNamesToCreate()),
+                kafkaAdminClient.httpReadinessCheck("elasticsearch", elasticConfigData.getConnectionUrl())));
+        log.info("Topics with name {} and elasticsearch are ready for operations!",
+                kafkaConfigData.getTopicNamesToCreate().toArray());
+        if (retryTopicPublisher.isEnabled()) {
+            kafkaAdminClient.createTopics(retryTopicPublisher.getTopicNames(kafkaConfigData.getTopicName()));
+            Objects.requireNonNull(kafkaListenerEndpointRegistry.getListenerContainer(
+                    kafkaConsumerConfigData.getConsumerGroupId() + TwitterRetryTopicConsumer.LISTENER_ID_SUFFIX))
+                    .start();
+        }
+        MessageListenerContainer listenerContainer = Objects.requireNonNull(
+                kafkaListenerEndpointRegistry.getListenerContainer(kafkaConsumerConfigData.getConsumerGroupId()));
+        if (twitterIndexPipeline.isEnabled()) {
+            listenerContainer.getContainerProperties().setConsumerRebalanceListener(twitterIndexPipeline);
+        }
+        listenerContainer.start();
     }
 
     @Override
@@ -46,7 +78,9 @@ public class TwitterKafkaConsumer implements KafkaConsumer<Long, TwitterAvroMode
     public void receive(@Payload List<TwitterAvroModel> messages,
                         @Header(KafkaHeaders.RECEIVED_MESSAGE_KEY) List<Integer> keys,
                         @Header(KafkaHeaders.RECEIVED_PARTITION_ID) List<Integer> partitions,
-                        @Header(KafkaHeaders.OFFSET) List<Long> offsets) {
+                        @Header(KafkaHeaders.OFFSET) List<Long> offsets,
+                        @Header(KafkaHeaders.RECEIVED_TOPIC) List<String> topics,
+                        Consumer<?, ?> consumer) throws InterruptedException {
         log.info("{} number of message received with keys {}, partitions {} and offsets {}, " +
                         "sending it to elastic: Thread id {}",
                 messages.size(),
@@ -54,9 +88,45 @@ public class TwitterKafkaConsumer implements KafkaConsumer<Long, TwitterAvroMode
                 partitions.toString(),
                 offsets.toString(),
                 Thread.currentThread().getId());
-        List<TwitterIndexModel> twitterIndexModels = avroToElasticModelTransformer.getElasticModels(messages);
-        List<String> documentIds = elasticIndexClient.save(twitterIndexModels);
+        if (twitterIndexPipeline.isEnabled()) {
+            //the next poll does not wait for elasticsearch, offsets are committed once the documents are indexed
+            twitterIndexPipeline.submit(messages, topics, partitions, offsets, consumer);
+            return;
+        }
+        List<String> documentIds;
+        try {
+            documentIds = index(messages);
+        } catch (RuntimeException e) {
+            //only the records that failed on their own are retried, the others are committed with the batch
+            if (!indexFailureRouter.route(e, i -> FailedRecord.builder()
+                    .topic(topics.get(i))
+                    .partition(partitions.get(i))
+                    .offset(offsets.get(i))
+                    .key(messages.get(i).getUserId())
+                    .value(messages.get(i)))) {
+                throw e;
+            }
+            return;
+        }
         log.info("Documents saved to elasticsearch with ids {}", documentIds.toArray());
     }
 
+    private List<String> index(List<TwitterAvroModel> messages) throws InterruptedException {
+        List<String> documentIds;
+        if (Boolean.TRUE.equals(elasticConfigData.getRawSource())) {
+            //json written straight from the avro records, without index models
+            documentIds = indexFlowController.isEnabled() ?
+                    indexFlowController.index(avroToElasticJsonTransformer.getIndexQueries(messages),
+                            elasticIndexClient::index) :
+                    elasticIndexClient.index(avroToElasticJsonTransformer.getIndexQueries(messages));
+        } else {
+            List<TwitterIndexModel> twitterIndexModels = avroToElasticModelTransformer.getElasticModels(messages);
+            //a rejected bulk is indexed again in smaller bulks, instead of the whole batch being redelivered
+            documentIds = indexFlowController.isEnabled() ?
+                    indexFlowController.index(twitterIndexModels, elasticIndexClient::save) :
+                    elasticIndexClient.save(twitterIndexModels);
+        }
+        return documentIds;
+    }
+
 }
@@ -0,0 +1,177 @@
+package com.microservices.kafka.to.elastic.service.consumer.impl;
+
+import com.microservices.config.KafkaConsumerConfigData;
+import com.microservices.config.RetryConfigData;
+import com.microservices.elastic.index.client.exception.ElasticIndexPartialFailureException;
+import com.microservices.elastic.index.client.service.ElasticIndexClient;
+import com.microservices.elastic.model.index.impl.TwitterIndexModel;
+import com.microservices.kafka.avro.model.TwitterAvroModel;
+import com.microservices.kafka.consumer.retry.FailedRecord;
+import com.microservices.kafka.consumer.retry.RetryTopicPublisher;
+import com.microservices.kafka.to.elastic.service.transformer.AvroToElasticModelTransformer;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.event.EventListener;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.event.ListenerContainerIdleEvent;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * TwitterRetryTopicConsumer indexes again the records of the retry topics once their delay passed, without holding
+ * back the consumer of the twitter topic.
+ * The records of a retry topic partition are due in offset order, as every retry topic has a single delay. When a
+ * record is not due yet, its partition is paused and the consumer seeks back to it, and the partition is resumed
+ * once the record is due, on the next batch or idle event. Offsets are committed up to the first record that is not
+ * due. Records failing again on their own go to the retry topic of their next attempt, or to the dead letter topic
+ * after the last one. When the bulk request fails as a whole, e.g. as elasticsearch is down or rejects it with
+ * status 429, the records did not fail themselves, so their partitions are instead sought back and paused for an
+ * exponential backoff of the retry config, and the records are indexed again without using up an attempt.
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "kafka-consumer-config.retry-topics.enabled", havingValue = "true")
+public class TwitterRetryTopicConsumer {
+
+    public static final String LISTENER_ID_SUFFIX = "-retry";
+
+    private final ElasticIndexClient<TwitterIndexModel> elasticIndexClient;
+    private final AvroToElasticModelTransformer avroToElasticModelTransformer;
+    private final RetryTopicPublisher retryTopicPublisher;
+    private final KafkaConsumerConfigData kafkaConsumerConfigData;
+    private final RetryConfigData retryConfigData;
+    private final Map<TopicPartition, Long> pausedUntil = new ConcurrentHashMap<>();
+    //the backoff after the next bulk request that fails as a whole, reset by one that does not
+    private final AtomicLong backOffMs;
+
+    public TwitterRetryTopicConsumer(ElasticIndexClient<TwitterIndexModel> indexClient,
+                                     AvroToElasticModelTransformer transformer,
+                                     RetryTopicPublisher publisher,
+                                     KafkaConsumerConfigData consumerConfigData,
+                                     RetryConfigData retryConfig) {
+        this.elasticIndexClient = indexClient;
+        this.avroToElasticModelTransformer = transformer;
+        this.retryTopicPublisher = publisher;
+        this.kafkaConsumerConfigData = consumerConfigData;
+        this.retryConfigData = retryConfig;
+        this.backOffMs = new AtomicLong(retryConfig.getInitialIntervalMs());
+    }
+
+    @KafkaListener(id = "${kafka-consumer-config.consumer-group-id}" + LISTENER_ID_SUFFIX,
+            topics = "#{@retryTopicPublisher.getRetryTopicNames('${kafka-config.topic-name}')}",
+            containerFactory = "retryKafkaListenerContainerFactory")
+    public void receive(List<ConsumerRecord<Long, TwitterAvroModel>> records, Consumer<?, ?> consumer) {
+        resumeDuePartitions(consumer);
+        long now = System.currentTimeMillis();
+        Map<TopicPartition, Long> notDueOffsets = new HashMap<>();
+        Map<TopicPartition, OffsetAndMetadata> commitOffsets = new HashMap<>();
+        List<ConsumerRecord<Long, TwitterAvroModel>> dueRecords = new ArrayList<>(records.size());
+        for (ConsumerRecord<Long, TwitterAvroModel> record : records) {
+            TopicPartition topicPartition = new TopicPartition(record.topic(), record.partition());
+            if (notDueOffsets.containsKey(topicPartition)) {
+                continue;
+            }
+            long dueAt = RetryTopicPublisher.getDueAt(record);
+            if (dueAt > now) {
+                notDueOffsets.put(topicPartition, record.offset());
+                pausedUntil.put(topicPartition, dueAt);
+            } else {
+                dueRecords.add(record);
+            }
+            commitOffsets.put(topicPartition, new OffsetAndMetadata(dueAt > now ? record.offset() :
+                    record.offset() + 1));
+        }
+        if (!dueRecords.isEmpty() && !index(dueRecords)) {
+            long retryAt = now + nextBackOffMs();
+            //every partition is consumed again from its first due record
+            Map<TopicPartition, Long> firstDueOffsets = new HashMap<>();
+            for (ConsumerRecord<Long, TwitterAvroModel> record : dueRecords) {
+                firstDueOffsets.putIfAbsent(new TopicPartition(record.topic(), record.partition()), record.offset());
+            }
+            firstDueOffsets.forEach((topicPartition, offset) -> {
+                notDueOffsets.put(topicPartition, offset);
+                pausedUntil.put(topicPartition, retryAt);
+                commitOffsets.put(topicPartition, new OffsetAndMetadata(offset));
+            });
+        }
+        notDueOffsets.forEach(consumer::seek);
+        consumer.pause(notDueOffsets.keySet());
+        consumer.commitSync(commitOffsets);
+    }
+
+    /**
+     * Resumes the paused partitions whose first record is due, while no records come in.
+     */
+    @EventListener
+    public void onIdle(ListenerContainerIdleEvent event) {
+        if (event.getListenerId().startsWith(kafkaConsumerConfigData.getConsumerGroupId() + LISTENER_ID_SUFFIX)) {
+            resumeDuePartitions(event.getConsumer());
+        }
+    }
+
+    private void resumeDuePartitions(Consumer<?, ?> consumer) {
+        long now = System.currentTimeMillis();
+        List<TopicPartition> duePartitions = new ArrayList<>();
+        for (TopicPartition topicPartition : consumer.paused()) {
+            Long dueAt = pausedUntil.get(topicPartition);
+            if (dueAt == null || dueAt <= now) {
+                duePartitions.add(topicPartition);
+                pausedUntil.remove(topicPartition);
+            }
+        }
+        if (!duePartitions.isEmpty()) {
+            consumer.resume(duePartitions);
+        }
+    }
+
+    /**
+     * @return false if the bulk request failed as a whole, the records must then be indexed again.
+     */
+    private boolean index(List<ConsumerRecord<Long, TwitterAvroModel>> records) {
+        List<TwitterAvroModel> messages = new ArrayList<>(records.size());
+        records.forEach(record -> messages.add(record.value()));
+        List<TwitterIndexModel> documents;
+        try {
+            documents = avroToElasticModelTransformer.getElasticModels(messages);
+        } catch (RuntimeException e) {
+            //fails the same way every time, so it uses up the attempts of the records
+            log.error("Could not transform {} records of retry topics", records.size(), e);
+            List<FailedRecord> failedRecords = new ArrayList<>(records.size());
+            records.forEach(record -> failedRecords.add(
+                    RetryTopicPublisher.failedRecord(record).reason(String.valueOf(e)).build()));
+            retryTopicPublisher.publish(failedRecords);
+            return true;
+        }
+        try {
+            List<String> documentIds = elasticIndexClient.save(documents);
+            log.info("Documents of retry topics saved to elasticsearch with ids {}", documentIds.toArray());
+        } catch (ElasticIndexPartialFailureException e) {
+            List<FailedRecord> failedRecords = new ArrayList<>(e.getFailures().size());
+            e.getFailures().forEach((position, failure) -> failedRecords.add(
+                    RetryTopicPublisher.failedRecord(records.get(position)).reason(failure).build()));
+            retryTopicPublisher.publish(failedRecords);
+        } catch (RuntimeException e) {
+            log.error("Could not index {} records of retry topics, indexing them again in {} ms", records.size(),
+                    backOffMs.get(), e);
+            return false;
+        }
+        backOffMs.set(retryConfigData.getInitialIntervalMs());
+        return true;
+    }
+
+    private long nextBackOffMs() {
+        return backOffMs.getAndUpdate(current -> Math.min(retryConfigData.getMaxIntervalMs(),
+                (long) (current * retryConfigData.getMultiplier())));
+    }
+
+}
@@ -0,0 +1,523 @@
+package com.microservices.kafka.to.elastic.service.consumer.pipeline;
+
+import com.microservices.config.ElasticConfigData;
+import com.microservices.config.KafkaConsumerConfigData;
+import com.microservices.config.RetryConfigData;
+import com.microservices.elastic.index.client.service.ElasticIndexClient;
+import com.microservices.elastic.model.index.impl.TwitterIndexModel;
+import com.microservices.kafka.avro.model.TwitterAvroModel;
+import com.microservices.kafka.consumer.offset.ContiguousOffsetTracker;
+import com.microservices.kafka.consumer.parallel.KeyOrderedWorkerPool;
+import com.microservices.kafka.consumer.retry.FailedRecord;
+import com.microservices.kafka.to.elastic.service.consumer.flow.IndexFlowController;
+import com.microservices.kafka.to.elastic.service.consumer.retry.IndexFailureRouter;
+import com.microservices.kafka.to.elastic.service.transformer.AvroToElasticJsonTransformer;
+import com.microservices.kafka.to.elastic.service.transformer.AvroToElasticModelTransformer;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.elasticsearch.core.query.IndexQuery;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.event.ListenerContainerIdleEvent;
+import org.springframework.kafka.listener.ConsumerAwareRebalanceListener;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * TwitterIndexPipeline decouples polling from indexing in the pipelined mode of the kafka-to-elastic-service.
+ * Polled and deserialized batches are put on a bounded queue for the transform threads, which put the transformed
+ * documents on a bounded queue for the index threads, so that several bulk requests are in flight while the consumer
+ * keeps polling. Every record is tracked until its bulk request succeeded, and offsets are committed on the consumer
+ * thread only up to the highest contiguous indexed offset of each partition.
+ * The consumer is paused while too many records are not indexed yet, which keeps it polling, and so in the group,
+ * without fetching more records. The consumer thread never blocks on a full queue or lane, a batch or record that
+ * does not fit is kept back, with everything polled after it, and the consumer paused until the threads catch up.
+ * With a key parallelism, the records are instead spread over lanes by user id, like the confluent parallel consumer,
+ * so that more threads than partitions index a topic while the tweets of a user stay in order. Records completed
+ * out of order are kept in the offset metadata, so that they are not indexed again after a rebalance.
+ * With flow control, batches are indexed in bulks sized to the pressure of elasticsearch, and the consumer is paused
+ * and resumed at in flight limits that follow the bulk size.
+ * With retry topics, the records of documents that failed on their own are sent to the retry topics and the rest of
+ * the batch is acknowledged, instead of the whole batch being indexed again. A batch that can not be transformed, or
+ * still can not be indexed after the maximum attempts, is sent to the dead letter topic, or stops the consumer without
+ * being committed if retry topics are disabled.
+ */
+@Slf4j
+@Component
+public class TwitterIndexPipeline implements ConsumerAwareRebalanceListener {
+
+    private final AvroToElasticModelTransformer avroToElasticModelTransformer;
+    private final AvroToElasticJsonTransformer avroToElasticJsonTransformer;
+    private final ElasticIndexClient<TwitterIndexModel> elasticIndexClient;
+    private final KafkaListenerEndpointRegistry kafkaListenerEndpointRegistry;
+    private final KafkaConsumerConfigData kafkaConsumerConfigData;
+    private final KafkaConsumerConfigData.Pipeline pipelineConfig;
+    private final RetryConfigData retryConfigData;
+    private final IndexFlowController indexFlowController;
+    private final IndexFailureRouter indexFailureRouter;
+    private final boolean rawSource;
+    private final ContiguousOffsetTracker offsetTracker = new ContiguousOffsetTracker();
+    private final BlockingQueue<IndexBatch> transformQueue;
+    private final BlockingQueue<IndexBatch> indexQueue;
+    private final AtomicBoolean paused = new AtomicBoolean();
+    //batches that did not fit on the transform queue and records that did not fit on their lane, guarded by the
+    //pending lock, as every consumer thread of the container hands over and offers them
+    private final Object pendingLock = new Object();
+    private final Queue<IndexBatch> pendingBatches = new ArrayDeque<>();
+    private final Queue<PipelineRecord> pendingRecords = new ArrayDeque<>();
+
+    private ExecutorService transformExecutor;
+    private ExecutorService indexExecutor;
+    private KeyOrderedWorkerPool<PipelineRecord> keyOrderedWorkerPool;
+    private volatile boolean running;
+
+    public TwitterIndexPipeline(AvroToElasticModelTransformer transformer,
+                                AvroToElasticJsonTransformer jsonTransformer,
+                                ElasticIndexClient<TwitterIndexModel> indexClient,
+                                KafkaListenerEndpointRegistry listenerEndpointRegistry,
+                                KafkaConsumerConfigData consumerConfigData,
+                                RetryConfigData retryConfig,
+                                IndexFlowController flowController,
+                                IndexFailureRouter failureRouter,
+                                ElasticConfigData elasticConfigData) {
+        this.avroToElasticModelTransformer = transformer;
+        this.avroToElasticJsonTransformer = jsonTransformer;
+        this.elasticIndexClient = indexClient;
+        this.kafkaListenerEndpointRegistry = listenerEndpointRegistry;
+        this.kafkaConsumerConfigData = consumerConfigData;
+        this.pipelineConfig = consumerConfigData.getPipeline();
+        this.retryConfigData = retryConfig;
+        this.indexFlowController = flowController;
+        this.indexFailureRouter = failureRouter;
+        this.rawSource = Boolean.TRUE.equals(elasticConfigData.getRawSource());
+        this.transformQueue = new ArrayBlockingQueue<>(pipelineConfig.getTransformQueueCapacity());
+        this.indexQueue = new ArrayBlockingQueue<>(pipelineConfig.getIndexQueueCapacity());
+    }
+
+    public boolean isEnabled() {
+        return Boolean.TRUE.equals(pipelineConfig.getEnabled());
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!isEnabled()) {
+            return;
+        }
+        running = true;
+        if (pipelineConfig.getKeyParallelism() > 0) {
+            keyOrderedWorkerPool = new KeyOrderedWorkerPool<>("index-lane", pipelineConfig.getKeyParallelism(),
+                    pipelineConfig.getLaneCapacity(), pipelineConfig.getMaxLaneBatchSize(), this::indexLaneBatch);
+            log.info("Started index pipeline with {} key ordered lanes", pipelineConfig.getKeyParallelism());
+            return;
+        }
+        transformExecutor = Executors.newFixedThreadPool(pipelineConfig.getTransformThreads());
+        for (int i = 0; i < pipelineConfig.getTransformThreads(); i++) {
+            transformExecutor.execute(this::transformLoop);
+        }
+        indexExecutor = Executors.newFixedThreadPool(pipelineConfig.getIndexThreads());
+        for (int i = 0; i < pipelineConfig.getIndexThreads(); i++) {
+            indexExecutor.execute(this::indexLoop);
+        }
+        log.info("Started index pipeline with {} transform and {} index threads", pipelineConfig.getTransformThreads(),
+                pipelineConfig.getIndexThreads());
+    }
+
+    @PreDestroy
+    public void close() {
+        running = false;
+        if (keyOrderedWorkerPool != null) {
+            keyOrderedWorkerPool.close();
+        }
+        if (transformExecutor != null) {
+            transformExecutor.shutdownNow();
+            indexExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * Hands a polled batch over to the pipeline, after committing the offsets indexed so far.
+     * Must be called on the consumer thread.
+     */
+    public void submit(List<TwitterAvroModel> messages, List<String> topics, List<Integer> partitions,
+                       List<Long> offsets, Consumer<?, ?> consumer) {
+        commit(consumer);
+        List<TwitterAvroModel> batchMessages = new ArrayList<>(messages.size());
+        List<TopicPartition> batchTopicPartitions = new ArrayList<>(messages.size());
+        List<Long> batchOffsets = new ArrayList<>(messages.size());
+        List<PipelineRecord> records = new ArrayList<>(keyOrderedWorkerPool != null ? messages.size() : 0);
+        for (int i = 0; i < messages.size(); i++) {
+            TopicPartition topicPartition = new TopicPartition(topics.get(i), partitions.get(i));
+            if (!offsetTracker.dispatch(topicPartition, offsets.get(i))) {
+                //indexed before the last rebalance, but after the committed offset
+                continue;
+            }
+            if (keyOrderedWorkerPool != null) {
+                records.add(new PipelineRecord(messages.get(i), topicPartition, offsets.get(i)));
+            } else {
+                batchMessages.add(messages.get(i));
+                batchTopicPartitions.add(topicPartition);
+                batchOffsets.add(offsets.get(i));
+            }
+        }
+        synchronized (pendingLock) {
+            offerPending();
+            for (PipelineRecord record : records) {
+                if (!pendingRecords.isEmpty() || !keyOrderedWorkerPool.offer(record.message.getUserId(), record)) {
+                    //the lane of the key filled up before the consumer was paused, kept back in order until there
+                    //is room
+                    pendingRecords.add(record);
+                }
+            }
+            if (!batchMessages.isEmpty()) {
+                IndexBatch batch = new IndexBatch(batchMessages, batchTopicPartitions, batchOffsets);
+                if (!pendingBatches.isEmpty() || !transformQueue.offer(batch)) {
+                    //the queue filled up before the consumer was paused, kept back in order until there is room
+                    pendingBatches.add(batch);
+                }
+            }
+            if ((offsetTracker.getInFlight() > getMaxInFlightRecords() || hasPending()) &&
+                    paused.compareAndSet(false, true)) {
+                log.info("Pausing consumer with {} records not indexed yet, {} batches and {} records kept back",
+                        offsetTracker.getInFlight(), pendingBatches.size(), pendingRecords.size());
+                getListenerContainer().pause();
+            }
+        }
+    }
+
+    /**
+     * Commits the offsets below which every record was indexed, for the partitions of the consumer.
+     * Must be called on the consumer thread.
+     */
+    public void commit(Consumer<?, ?> consumer) {
+        Map<TopicPartition, OffsetAndMetadata> committableOffsets =
+                offsetTracker.committableOffsets(consumer.assignment());
+        if (!committableOffsets.isEmpty()) {
+            consumer.commitAsync(committableOffsets, (committedOffsets, e) -> {
+                if (e != null) {
+                    //a later commit includes these offsets again
+                    log.warn("Could not commit offsets {}", committedOffsets, e);
+                }
+            });
+        }
+    }
+
+    /**
+     * Commits while the consumer does not get records, e.g. while it is paused, and queues the batches and records
+     * kept back, resuming the consumer once they are all queued and few enough records are in flight.
+     */
+    @EventListener
+    public void onIdle(ListenerContainerIdleEvent event) {
+        if (isEnabled() && isOwnListener(event.getListenerId())) {
+            commit(event.getConsumer());
+            synchronized (pendingLock) {
+                offerPending();
+            }
+            resumeIfDrained();
+        }
+    }
+
+    /**
+     * Matches the listener container of the pipeline and its child containers, named after it with the index of the
+     * child, but not the containers of the other listeners whose ids start with the consumer group id.
+     */
+    private boolean isOwnListener(String listenerId) {
+        String consumerGroupId = kafkaConsumerConfigData.getConsumerGroupId();
+        if (!listenerId.startsWith(consumerGroupId)) {
+            return false;
+        }
+        String suffix = listenerId.substring(consumerGroupId.length());
+        return suffix.isEmpty() || suffix.matches("-\\d+");
+    }
+
+    /**
+     * Commits what was indexed of the revoked partitions and stops tracking them. Their records that are still in
+     * the pipeline are indexed again by the new owner, indexing by id keeps that idempotent.
+     */
+    @Override
+    public void onPartitionsRevokedBeforeCommit(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        Map<TopicPartition, OffsetAndMetadata> committableOffsets = offsetTracker.committableOffsets(partitions);
+        if (!committableOffsets.isEmpty()) {
+            consumer.commitSync(committableOffsets);
+        }
+        offsetTracker.remove(partitions);
+    }
+
+    /**
+     * Continues from the committed offsets of the assigned partitions, skipping the records their offset maps mark
+     * as indexed.
+     */
+    @Override
+    public void onPartitionsAssigned(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        consumer.committed(new HashSet<>(partitions)).forEach((topicPartition, committedOffset) -> {
+            if (committedOffset != null) {
+                offsetTracker.restore(topicPartition, committedOffset);
+            }
+        });
+    }
+
+    @Override
+    public void onPartitionsLost(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        offsetTracker.remove(partitions);
+    }
+
+    /**
+     * Offers the batches and records kept back, in order. Must be called holding the pending lock.
+     */
+    private void offerPending() {
+        IndexBatch batch;
+        while ((batch = pendingBatches.peek()) != null && transformQueue.offer(batch)) {
+            pendingBatches.poll();
+        }
+        PipelineRecord record;
+        while ((record = pendingRecords.peek()) != null &&
+                keyOrderedWorkerPool.offer(record.message.getUserId(), record)) {
+            pendingRecords.poll();
+        }
+    }
+
+    private boolean hasPending() {
+        synchronized (pendingLock) {
+            return !pendingBatches.isEmpty() || !pendingRecords.isEmpty();
+        }
+    }
+
+    private void transformLoop() {
+        while (running) {
+            try {
+                IndexBatch batch = transformQueue.take();
+                try {
+                    transform(batch);
+                } catch (RuntimeException e) {
+                    if (fail(batch, e)) {
+                        acknowledge(batch);
+                    }
+                    continue;
+                }
+                indexQueue.put(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void indexLoop() {
+        while (running) {
+            try {
+                IndexBatch batch = indexQueue.take();
+                if (index(batch)) {
+                    acknowledge(batch);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Transforms and indexes the records of a key ordered lane, in order.
+     */
+    private void indexLaneBatch(List<PipelineRecord> records) {
+        List<TwitterAvroModel> messages = new ArrayList<>(records.size());
+        List<TopicPartition> topicPartitions = new ArrayList<>(records.size());
+        List<Long> offsets = new ArrayList<>(records.size());
+        for (PipelineRecord record : records) {
+            messages.add(record.message);
+            topicPartitions.add(record.topicPartition);
+            offsets.add(record.offset);
+        }
+        IndexBatch batch = new IndexBatch(messages, topicPartitions, offsets);
+        try {
+            transform(batch);
+        } catch (RuntimeException e) {
+            if (fail(batch, e)) {
+                acknowledge(batch);
+            }
+            return;
+        }
+        try {
+            if (index(batch)) {
+                acknowledge(batch);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Indexes the batch, retrying with an exponential backoff up to the maximum attempts, as its offsets can not be
+     * committed before. Documents that failed on their own are sent to the retry topics, when enabled, instead.
+     *
+     * @return true if the batch was indexed or sent to the retry or dead letter topics, and may be acknowledged.
+     */
+    private boolean index(IndexBatch batch) throws InterruptedException {
+        long backOffMs = retryConfigData.getInitialIntervalMs();
+        for (int attempt = 1; ; attempt++) {
+            try {
+                //without flow control several index threads fill the bulk requests together when bulk accumulation
+                //is enabled, with it the bulks are sized by the flow control and sent at once
+                List<String> documentIds = indexFlowController.isEnabled() ? indexBulks(batch) :
+                        indexAsync(batch).join();
+                log.debug("Indexed {} documents", documentIds.size());
+                return true;
+            } catch (RuntimeException e) {
+                if (routeFailedRecords(e, batch)) {
+                    return true;
+                }
+                if (attempt >= pipelineConfig.getMaxIndexAttempts()) {
+                    return fail(batch, e);
+                }
+                log.error("Could not index {} documents, attempt {} of {}, retrying in {} ms", batch.messages.size(),
+                        attempt, pipelineConfig.getMaxIndexAttempts(), backOffMs, e);
+                Thread.sleep(backOffMs);
+                backOffMs = Math.min(retryConfigData.getMaxIntervalMs(),
+                        (long) (backOffMs * retryConfigData.getMultiplier()));
+            }
+        }
+    }
+
+    private boolean routeFailedRecords(RuntimeException failure, IndexBatch batch) {
+        try {
+            return indexFailureRouter.route(failure, batch::failedRecord);
+        } catch (RuntimeException e) {
+            //the whole batch is indexed again
+            log.error("Could not send the failed records to the retry topics", e);
+            return false;
+        }
+    }
+
+    /**
+     * Sends every record of a batch that can not be transformed or indexed to the dead letter topic, so that its
+     * partitions move on. Without retry topics, or if the records could not be sent, the consumer is stopped instead,
+     * and the batch is not acknowledged, so that its records are consumed again once the consumer is started.
+     *
+     * @return true if the batch was sent to the dead letter topic, and may be acknowledged.
+     */
+    private boolean fail(IndexBatch batch, RuntimeException failure) {
+        if (indexFailureRouter.isEnabled()) {
+            try {
+                indexFailureRouter.deadLetter(batch.messages.size(), failure, batch::failedRecord);
+                return true;
+            } catch (RuntimeException e) {
+                log.error("Could not send the failed records to the dead letter topic", e);
+            }
+        }
+        log.error("Stopping consumer, {} records could not be indexed and are not committed", batch.messages.size(),
+                failure);
+        getListenerContainer().stop();
+        return false;
+    }
+
+    private void transform(IndexBatch batch) {
+        if (rawSource) {
+            batch.indexQueries = avroToElasticJsonTransformer.getIndexQueries(batch.messages);
+        } else {
+            batch.documents = avroToElasticModelTransformer.getElasticModels(batch.messages);
+        }
+    }
+
+    private CompletableFuture<List<String>> indexAsync(IndexBatch batch) {
+        return rawSource ? elasticIndexClient.indexAsync(batch.indexQueries) :
+                elasticIndexClient.saveAsync(batch.documents);
+    }
+
+    /**
+     * Indexes the batch in bulks of the size the flow control allows. The bulks are sent right away, not held back
+     * by the bulk accumulation, so that the flow control measures the latency of elasticsearch only.
+     */
+    private List<String> indexBulks(IndexBatch batch) throws InterruptedException {
+        if (rawSource) {
+            return indexFlowController.index(batch.indexQueries, elasticIndexClient::index);
+        }
+        return indexFlowController.index(batch.documents, elasticIndexClient::save);
+    }
+
+    private void acknowledge(IndexBatch batch) {
+        for (int i = 0; i < batch.topicPartitions.size(); i++) {
+            offsetTracker.acknowledged(batch.topicPartitions.get(i), batch.offsets.get(i));
+        }
+        resumeIfDrained();
+    }
+
+    private void resumeIfDrained() {
+        //under the pending lock, so that a batch kept back by another consumer thread is not followed by a resume
+        synchronized (pendingLock) {
+            if (offsetTracker.getInFlight() < getResumeInFlightRecords() && !hasPending() &&
+                    paused.compareAndSet(true, false)) {
+                log.info("Resuming consumer with {} records not indexed yet", offsetTracker.getInFlight());
+                getListenerContainer().resume();
+            }
+        }
+    }
+
+    private int getMaxInFlightRecords() {
+        return indexFlowController.isEnabled() ? indexFlowController.getHighWatermark() :
+                pipelineConfig.getMaxInFlightRecords();
+    }
+
+    private int getResumeInFlightRecords() {
+        return indexFlowController.isEnabled() ? indexFlowController.getLowWatermark() :
+                pipelineConfig.getResumeInFlightRecords();
+    }
+
+    private MessageListenerContainer getListenerContainer() {
+        return kafkaListenerEndpointRegistry.getListenerContainer(kafkaConsumerConfigData.getConsumerGroupId());
+    }
+
+    private static final class PipelineRecord {
+
+        private final TwitterAvroModel message;
+        private final TopicPartition topicPartition;
+        private final long offset;
+
+        private PipelineRecord(TwitterAvroModel message, TopicPartition topicPartition, long offset) {
+            this.message = message;
+            this.topicPartition = topicPartition;
+            this.offset = offset;
+        }
+    }
+
+    private static final class IndexBatch {
+
+        private final List<TwitterAvroModel> messages;
+        private final List<TopicPartition> topicPartitions;
+        private final List<Long> offsets;
+        private List<TwitterIndexModel> documents;
+        private List<IndexQuery> indexQueries;
+
+        private IndexBatch(List<TwitterAvroModel> messages, List<TopicPartition> topicPartitions, List<Long> offsets) {
+            this.messages = messages;
+            this.topicPartitions = topicPartitions;
+            this.offsets = offsets;
+        }
+
+        private FailedRecord.FailedRecordBuilder failedRecord(int position) {
+            return FailedRecord.builder()
+                    .topic(topicPartitions.get(position).topic())
+                    .partition(topicPartitions.get(position).partition())
+                    .offset(offsets.get(position))
+                    .key(messages.get(position).getUserId())
+                    .value(messages.get(position));
+        }
+    }
+
+}
@@ -0,0 +1,81 @@
+package com.microservices.kafka.to.elastic.service.consumer.retry;
+
+import com.microservices.elastic.index.client.exception.ElasticIndexPartialFailureException;
+import com.microservices.kafka.consumer.retry.FailedRecord;
+import com.microservices.kafka.consumer.retry.RetryTopicPublisher;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntFunction;
+
+/**
+ * IndexFailureRouter sends the records of the documents that failed on their own in a bulk request to the retry
+ * topics, so that the rest of the batch counts as indexed and the partition moves on.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class IndexFailureRouter {
+
+    private final RetryTopicPublisher retryTopicPublisher;
+
+    public boolean isEnabled() {
+        return retryTopicPublisher.isEnabled();
+    }
+
+    /**
+     * Sends the failed records to the retry topics if the failure is an ElasticIndexPartialFailureException.
+     * Throws KafkaConsumerException if they could not be sent.
+     *
+     * @param failure       the failure of indexing the records.
+     * @param failedRecords creates the failed record of the record at a position of the indexed records.
+     * @return true if the failed records were sent, false if retry topics are disabled or the failure was not a
+     * partial failure, the failure must then be handled by the caller.
+     */
+    public boolean route(RuntimeException failure, IntFunction<FailedRecord.FailedRecordBuilder> failedRecords) {
+        ElasticIndexPartialFailureException partialFailure = getPartialFailure(failure);
+        if (!isEnabled() || partialFailure == null) {
+            return false;
+        }
+        List<FailedRecord> records = new ArrayList<>(partialFailure.getFailures().size());
+        for (Map.Entry<Integer, String> entry : partialFailure.getFailures().entrySet()) {
+            records.add(failedRecords.apply(entry.getKey()).reason(entry.getValue()).build());
+        }
+        retryTopicPublisher.publish(records);
+        log.warn("Sent {} records that failed indexing to the retry topics, the other {} were indexed",
+                records.size(), partialFailure.getDocumentIds().size() - records.size());
+        return true;
+    }
+
+    /**
+     * Sends all the records to the dead letter topic, for a batch that failed as a whole and can not be retried.
+     * Throws KafkaConsumerException if they could not be sent.
+     *
+     * @param count         the number of records.
+     * @param failure       the failure of transforming or indexing the records.
+     * @param failedRecords creates the failed record of the record at a position of the records.
+     */
+    public void deadLetter(int count, RuntimeException failure,
+                           IntFunction<FailedRecord.FailedRecordBuilder> failedRecords) {
+        List<FailedRecord> records = new ArrayList<>(count);
+        for (int position = 0; position < count; position++) {
+            records.add(failedRecords.apply(position).reason(String.valueOf(failure)).build());
+        }
+        retryTopicPublisher.publishDeadLetters(records);
+        log.warn("Sent {} records that could not be indexed to the dead letter topic", records.size());
+    }
+
+    private static ElasticIndexPartialFailureException getPartialFailure(Throwable t) {
+        for (Throwable cause = t; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ElasticIndexPartialFailureException) {
+                return (ElasticIndexPartialFailureException) cause;
+            }
+        }
+        return null;
+    }
+
+}
@@ -20,8 +20,9 @@ public class AvroToElasticModelTransformer {
                         .userId(avroModel.getUserId())
                         .id(String.valueOf(avroModel.getId()))
                         .text(avroModel.getText())
-                        .createdAt(ZonedDateTime.ofInstant(Instant.ofEpochMilli(avroModel.getCreatedAt()),
-                                ZoneId.systemDefault()))
+                        .createdAt(avroModel.getCreatedAt() == null ? null :
+                                ZonedDateTime.ofInstant(Instant.ofEpochMilli(avroModel.getCreatedAt()),
+                                        ZoneId.systemDefault()))
                         .build()
                 ).collect(Collectors.toList());
     }
@@ -0,0 +1,86 @@
+package com.microservices.kafka.to.elastic.service.transformer;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.microservices.elastic.model.index.impl.TwitterIndexModel;
+import com.microservices.kafka.avro.model.TwitterAvroModel;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.elasticsearch.core.convert.ElasticsearchConverter;
+import org.springframework.data.elasticsearch.core.convert.MappingElasticsearchConverter;
+import org.springframework.data.elasticsearch.core.mapping.SimpleElasticsearchMappingContext;
+import org.springframework.data.elasticsearch.core.query.IndexQuery;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class AvroToElasticJsonTransformerTest {
+
+    private static final String TEXT_CHARS = "abc XYZ 019 \"\\/\t\n\u0001é中😀";
+
+    private final AvroToElasticJsonTransformer jsonTransformer = new AvroToElasticJsonTransformer();
+    private final AvroToElasticModelTransformer modelTransformer = new AvroToElasticModelTransformer();
+    private final ElasticsearchConverter converter = createConverter();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    public void writesTheSourceTheConverterWritesForTheModel() throws JsonProcessingException {
+        Random random = new Random(42);
+        List<TwitterAvroModel> avroModels = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            avroModels.add(randomTweet(random));
+        }
+        avroModels.add(tweet(1L, 2L, null, null));
+        avroModels.add(tweet(Long.MIN_VALUE, Long.MAX_VALUE, "", 0L));
+        avroModels.add(tweet(3L, -4L, "created before the epoch", -1500L));
+
+        List<TwitterIndexModel> models = modelTransformer.getElasticModels(avroModels);
+        List<IndexQuery> indexQueries = jsonTransformer.getIndexQueries(avroModels);
+        for (int i = 0; i < avroModels.size(); i++) {
+            String expected = converter.mapObject(models.get(i)).toJson();
+            assertEquals(objectMapper.readTree(expected), objectMapper.readTree(indexQueries.get(i).getSource()),
+                    expected);
+            assertEquals(indexQueries.get(i).getSource(), jsonTransformer.getSource(avroModels.get(i)));
+            assertEquals(models.get(i).getId(), indexQueries.get(i).getId());
+        }
+    }
+
+    private static ElasticsearchConverter createConverter() {
+        MappingElasticsearchConverter converter = new MappingElasticsearchConverter(
+                new SimpleElasticsearchMappingContext());
+        converter.afterPropertiesSet();
+        return converter;
+    }
+
+    private static TwitterAvroModel randomTweet(Random random) {
+        String text = null;
+        if (random.nextInt(10) > 0) {
+            StringBuilder builder = new StringBuilder();
+            int length = random.nextInt(280);
+            for (int i = 0; i < length; i++) {
+                char c = TEXT_CHARS.charAt(random.nextInt(TEXT_CHARS.length()));
+                if (Character.isSurrogate(c)) {
+                    //keeps the surrogate pairs whole
+                    builder.append("😀");
+                } else {
+                    builder.append(c);
+                }
+            }
+            text = builder.toString();
+        }
+        Long createdAt = random.nextInt(10) > 0 ? 1000000000000L + (long) (random.nextDouble() * 1e12) : null;
+        return tweet(random.nextLong(), random.nextLong(), text, createdAt);
+    }
+
+    private static TwitterAvroModel tweet(long id, long userId, String text, Long createdAt) {
+        return TwitterAvroModel.newBuilder()
+                .setId(id)
+                .setUserId(userId)
+                .setText(text)
+                .setCreatedAt(createdAt)
+                .build();
+    }
+
+}
@@ -3,23 +3,22 @@ package com.microservices.kafka.admin.client;
 import com.microservices.config.KafkaConfigData;
 import com.microservices.config.RetryConfigData;
 import com.microservices.kafka.admin.exception.KafkaClientException;
+import com.microservices.kafka.admin.readiness.HttpReadinessCheck;
+import com.microservices.kafka.admin.readiness.ReadinessCheck;
+import com.microservices.kafka.admin.readiness.StartupReadiness;
+import com.microservices.kafka.admin.readiness.TopicsReadinessCheck;
+import com.microservices.kafka.admin.topic.TopicConfigReconciler;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.kafka.clients.admin.AdminClient;
 import org.apache.kafka.clients.admin.CreateTopicsResult;
 import org.apache.kafka.clients.admin.NewTopic;
-import org.apache.kafka.clients.admin.TopicListing;
-import org.springframework.http.HttpMethod;
-import org.springframework.http.HttpStatus;
 import org.springframework.retry.RetryContext;
 import org.springframework.retry.support.RetryTemplate;
 import org.springframework.stereotype.Component;
-import org.springframework.web.reactive.function.client.ClientResponse;
 import org.springframework.web.reactive.function.client.WebClient;
 
-import java.util.Collection;
 import java.util.List;
-import java.util.concurrent.ExecutionException;
 import java.util.stream.Collectors;
 
 /**
@@ -36,6 +35,8 @@ public class KafkaAdminClient {
     private final AdminClient adminClient;
     private final RetryTemplate retryTemplate;
     private final WebClient webClient;
+    private final StartupReadiness startupReadiness;
+    private final TopicConfigReconciler topicConfigReconciler;
 
     /**
      * Creates Kafka topics defined in the configuration.
@@ -43,171 +44,103 @@ public class KafkaAdminClient {
      * If the maximum number of retries is reached without success, a KafkaClientException is thrown.
      */
     public void createTopics() {
+        createTopics(kafkaConfigData.getTopicNamesToCreate());
+    }
+
+    /**
+     * Creates the given Kafka topics with the partitions, replication factor and topic configs defined in the
+     * configuration. Topics that already exist are reconciled with the configured partitions and topic configs.
+     * Used for topics that are only known at runtime, e.g. the per keyword topics of the twitter-to-kafka-service.
+     *
+     * @param topicNames the names of the topics to create.
+     */
+    public void createTopics(List<String> topicNames) {
         CreateTopicsResult createTopicsResult;
         try {
-            createTopicsResult = retryTemplate.execute(this::doCreateTopics);
+            createTopicsResult = retryTemplate.execute(retryContext -> doCreateTopics(retryContext, topicNames));
             log.info("Create topic result {}", createTopicsResult.values().values());
         } catch (Throwable t) {
             throw new KafkaClientException("Max number of retries reached for creating topics.", t);
         }
-        checkTopicsCreated();
+        checkTopicsCreated(topicNames);
+        topicConfigReconciler.reconcile(topicNames);
     }
 
     /**
      * Verifies if the topics defined in the configuration have been successfully created.
-     * This method repeatedly checks Kafka for the presence of each topic, applying an exponential backoff
-     * delay between attempts and retrying up to a configured maximum limit.
+     * The topics are described, with an exponential backoff with jitter between attempts,
+     * until they all exist or the configured max number of attempts is reached.
      * Throw KafkaClientException if any topic is not found after exhausting retries.
      */
     public void checkTopicsCreated() {
-        Collection<TopicListing> topics = getTopics();
-        int retryCount = 1;
-        Integer maxRetry = retryConfigData.getMaxAttempts();
-        int multiplier = retryConfigData.getMultiplier().intValue();
-        Long sleepTimeMs = retryConfigData.getSleepTimeMs();
-        for (String topic : kafkaConfigData.getTopicNamesToCreate()) {
-            while (!isTopicCreated(topics, topic)) {
-                checkMaxRetry(retryCount++, maxRetry);
-                sleep(sleepTimeMs);
-                sleepTimeMs *= multiplier;
-                topics = getTopics();
-            }
-        }
+        checkTopicsCreated(kafkaConfigData.getTopicNamesToCreate());
     }
 
     /**
-     * Checks the status of the schema registry by sending a GET request to its endpoint.
-     * The method retries the status check with exponential backoff in case of failures.
-     * Throw KafkaClientException if the schema registry is unavailable after max retries.
+     * Verifies if the given topics have been successfully created, see checkTopicsCreated().
+     *
+     * @param topicNames the names of the topics to check.
      */
-    public void checkSchemaRegistry() {
-        int retryCount = 1;
-        Integer maxRetry = retryConfigData.getMaxAttempts();
-        int multiplier = retryConfigData.getMultiplier().intValue();
-        Long sleepTimeMs = retryConfigData.getSleepTimeMs();
-        while (!getSchemaRegistryStatus().is2xxSuccessful()) {
-            checkMaxRetry(retryCount++, maxRetry);
-            sleep(sleepTimeMs);
-            sleepTimeMs *= multiplier;
-        }
+    public void checkTopicsCreated(List<String> topicNames) {
+        startupReadiness.awaitReady(List.of(topicsReadinessCheck(topicNames)));
     }
 
     /**
-     * Retrieves the HTTP status code from the schema registry endpoint.
-     * This method sends an asynchronous GET request to the schema registry URL and maps
-     * the response to its HTTP status code.
-     *
-     * @return HttpStatus representing the response status of the schema registry.
+     * Checks the status of the schema registry by sending a GET request to its endpoint.
+     * The method retries the status check with an exponential backoff with jitter in case of failures.
+     * Throw KafkaClientException if the schema registry is unavailable after max retries.
      */
-    private HttpStatus getSchemaRegistryStatus() {
-        try {
-            return webClient
-                    .method(HttpMethod.GET)
-                    .uri(kafkaConfigData.getSchemaRegistryUrl())
-                    .exchange()
-                    .map(ClientResponse::statusCode)
-                    .block();
-        } catch (Exception e) {
-            return HttpStatus.SERVICE_UNAVAILABLE;
-        }
+    public void checkSchemaRegistry() {
+        startupReadiness.awaitReady(List.of(schemaRegistryReadinessCheck()));
     }
 
     /**
-     * Sleeps for a specified amount of time in milliseconds.
-     * Throws KafkaClientException if interrupted while sleeping.
+     * Creates a check for the given topics, to wait for them together with other dependencies
+     * through the StartupReadiness.
      *
-     * @param sleepTimeMs the time in milliseconds for which the thread should sleep.
+     * @param topicNames the names of the topics to check.
+     * @return the readiness check of the topics.
      */
-    private void sleep(Long sleepTimeMs) {
-        try {
-            Thread.sleep(sleepTimeMs);
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            throw new KafkaClientException("Error while sleeping for waiting new created topics!!");
-        }
+    public ReadinessCheck topicsReadinessCheck(List<String> topicNames) {
+        List<String> trimmedTopicNames = topicNames.stream().map(String::trim).collect(Collectors.toList());
+        return new TopicsReadinessCheck(adminClient, trimmedTopicNames, retryConfigData.getMaxIntervalMs());
     }
 
     /**
-     * Checks if the retry count has exceeded the maximum allowed retries.
-     * Throws KafkaClientException if the retry count exceeds the configured limit.
-     *
-     * @param retry    the current retry count.
-     * @param maxRetry the maximum allowed retry count.
+     * @return the readiness check of the schema registry.
      */
-    private void checkMaxRetry(int retry, Integer maxRetry) {
-        if (retry > maxRetry) {
-            throw new KafkaClientException("Reached max number of retry for reading kafka topic(s)!");
-        }
+    public ReadinessCheck schemaRegistryReadinessCheck() {
+        return httpReadinessCheck("schema registry", kafkaConfigData.getSchemaRegistryUrl());
     }
 
     /**
-     * Checks if a specific topic exists within a collection of TopicListings.
+     * Creates a check for another http dependency of a service, like elasticsearch.
      *
-     * @param topics    the collection of existing topics.
-     * @param topicName the name of the topic to check.
-     * @return true if the topic is found; false otherwise.
+     * @param name the name of the dependency.
+     * @param url  the url that answers with a 2xx status once the dependency is ready.
+     * @return the readiness check of the dependency.
      */
-    private boolean isTopicCreated(Collection<TopicListing> topics, String topicName) {
-        if (topics == null) {
-            return false;
-        }
-        return topics.stream().anyMatch(topic -> topic.name().equals(topicName));
+    public ReadinessCheck httpReadinessCheck(String name, String url) {
+        return new HttpReadinessCheck(webClient, name, url, retryConfigData.getMaxIntervalMs());
     }
 
     /**
      * Executes the Kafka topic creation logic.
      * Uses the RetryContext to log the retry attempt number and create topics
-     * with configurations defined in KafkaConfigData.
+     * with configurations defined in KafkaConfigData, including the topic configs.
      *
      * @param retryContext the context for the current retry operation.
+     * @param topicNames   the names of the topics to create.
      * @return CreateTopicsResult representing the result of the topic creation operation.
      */
-    private CreateTopicsResult doCreateTopics(RetryContext retryContext) {
-        List<String> topicNames = kafkaConfigData.getTopicNamesToCreate();
+    private CreateTopicsResult doCreateTopics(RetryContext retryContext, List<String> topicNames) {
         log.info("Creating {} topics, attempt {}", topicNames.size(), retryContext.getRetryCount());
-        List<NewTopic> kafkaTopics = topicNames.stream().map(topic -> new NewTopic(
-                topic.trim(),
-                kafkaConfigData.getNumOfPartitions(),
+        List<NewTopic> kafkaTopics = topicNames.stream().map(String::trim).map(topic -> new NewTopic(
+                topic,
+                topicConfigReconciler.getNumOfPartitions(topic),
                 kafkaConfigData.getReplicationFactor()
-        )).collect(Collectors.toList());
+        ).configs(topicConfigReconciler.getConfigs(topic))).collect(Collectors.toList());
         return adminClient.createTopics(kafkaTopics);
     }
 
-    /**
-     * Retrieves the current list of Kafka topics, using a retry template to handle
-     * transient errors. Throws KafkaClientException if the maximum retry limit is reached.
-     *
-     * @return Collection of TopicListing objects representing the existing Kafka topics.
-     */
-    private Collection<TopicListing> getTopics() {
-        Collection<TopicListing> topics;
-        try {
-            topics = retryTemplate.execute(this::doGetTopics);
-        } catch (Throwable t) {
-            throw new KafkaClientException("Reached max number of retry for reading kafka topics.", t);
-        }
-        return topics;
-    }
-
-    /**
-     * Executes the logic to retrieve Kafka topic listings.
-     * Uses the RetryContext to log the retry attempt number.
-     *
-     * @param retryContext the context for the current retry operation.
-     * @return Collection of TopicListing objects representing the Kafka topics.
-     * @throws ExecutionException   if the topic listing fails to execute.
-     * @throws InterruptedException if the operation is interrupted.
-     */
-    private Collection<TopicListing> doGetTopics(RetryContext retryContext)
-            throws ExecutionException, InterruptedException {
-        log.info("Reading kafka topic {}, attempt {}",
-                kafkaConfigData.getTopicNamesToCreate().toArray(), retryContext.getRetryCount());
-        Collection<TopicListing> topics = adminClient.listTopics().listings().get();
-        if (topics != null) {
-            topics.forEach(topic -> log.debug("Topic with name {}", topic.name()));
-        }
-        return topics;
-    }
-
-
 }
@@ -0,0 +1,51 @@
+package com.microservices.kafka.admin.readiness;
+
+/**
+ * The readiness of one dependency: its status, the number of checks so far and the time spent waiting for it.
+ */
+public class DependencyReadiness {
+
+    private final String name;
+    private final long startedAtMs = System.currentTimeMillis();
+    private volatile ReadinessStatus status = ReadinessStatus.WAITING;
+    private volatile int attempts;
+    private volatile long elapsedMs;
+
+    public DependencyReadiness(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public ReadinessStatus getStatus() {
+        return status;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    /**
+     * @return the time from the first check until the dependency was ready or failed, or until now while waiting.
+     */
+    public long getElapsedMs() {
+        return status == ReadinessStatus.WAITING ? System.currentTimeMillis() - startedAtMs : elapsedMs;
+    }
+
+    void attempted() {
+        attempts++;
+    }
+
+    void complete(ReadinessStatus completedStatus) {
+        elapsedMs = System.currentTimeMillis() - startedAtMs;
+        status = completedStatus;
+    }
+
+    @Override
+    public String toString() {
+        return name + " " + status + " after " + getElapsedMs() + " ms and " + attempts + " checks";
+    }
+
+}
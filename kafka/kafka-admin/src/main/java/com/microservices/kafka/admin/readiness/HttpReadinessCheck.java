@@ -0,0 +1,43 @@
+package com.microservices.kafka.admin.readiness;
+
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.time.Duration;
+
+/**
+ * Checks that an http endpoint, like the schema registry or elasticsearch, answers with a 2xx status.
+ */
+public class HttpReadinessCheck implements ReadinessCheck {
+
+    private final WebClient webClient;
+    private final String name;
+    private final String url;
+    private final Duration timeout;
+
+    public HttpReadinessCheck(WebClient webClient, String name, String url, long timeoutMs) {
+        this.webClient = webClient;
+        this.name = name;
+        this.url = url;
+        this.timeout = Duration.ofMillis(timeoutMs);
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public boolean isReady() {
+        HttpStatus status = webClient
+                .method(HttpMethod.GET)
+                .uri(url)
+                .exchange()
+                .map(ClientResponse::statusCode)
+                .block(timeout);
+        return status != null && status.is2xxSuccessful();
+    }
+
+}
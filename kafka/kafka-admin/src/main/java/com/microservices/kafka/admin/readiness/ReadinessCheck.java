@@ -0,0 +1,18 @@
+package com.microservices.kafka.admin.readiness;
+
+/**
+ * A dependency a service waits for at startup, like the kafka topics, the schema registry or elasticsearch.
+ */
+public interface ReadinessCheck {
+
+    String getName();
+
+    /**
+     * Checks the dependency once.
+     *
+     * @return true if the dependency is ready, false if it should be checked again later.
+     * @throws Exception if the check failed, it is checked again later as well.
+     */
+    boolean isReady() throws Exception;
+
+}
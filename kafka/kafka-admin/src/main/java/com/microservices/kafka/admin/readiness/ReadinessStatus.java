@@ -0,0 +1,7 @@
+package com.microservices.kafka.admin.readiness;
+
+public enum ReadinessStatus {
+    WAITING,
+    READY,
+    FAILED
+}
@@ -0,0 +1,168 @@
+package com.microservices.kafka.admin.readiness;
+
+import com.microservices.config.RetryConfigData;
+import com.microservices.kafka.admin.exception.KafkaClientException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * StartupReadiness waits for the dependencies of a service concurrently instead of one after the other,
+ * so that startup takes as long as the slowest dependency instead of the sum of all of them.
+ * Every dependency is checked again with an exponential backoff with jitter, using the retry config,
+ * until it is ready or the max number of attempts is reached.
+ * The readiness of every dependency, with its timings, and the overall readiness status are exposed through
+ * the StartupReadinessHealthIndicator.
+ */
+@Slf4j
+@Component
+public class StartupReadiness {
+
+    private final RetryConfigData retryConfigData;
+    private final ScheduledExecutorService checkExecutor = Executors.newScheduledThreadPool(4, runnable -> {
+        Thread thread = new Thread(runnable, "startup-readiness");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Map<String, DependencyReadiness> dependencies = Collections.synchronizedMap(new LinkedHashMap<>());
+
+    public StartupReadiness(RetryConfigData configData) {
+        this.retryConfigData = configData;
+    }
+
+    /**
+     * Checks all dependencies concurrently and waits until all of them are ready.
+     * Throws KafkaClientException if a dependency is not ready after the max number of attempts.
+     *
+     * @param checks the checks of the dependencies.
+     */
+    public void awaitReady(List<ReadinessCheck> checks) {
+        await(checkAsync(checks));
+    }
+
+    /**
+     * Waits for dependencies whose checks were started with checkAsync.
+     * Throws KafkaClientException if a dependency is not ready after the max number of attempts.
+     *
+     * @param readiness the future returned by checkAsync.
+     */
+    public void await(CompletableFuture<Void> readiness) {
+        try {
+            readiness.join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof KafkaClientException ? (KafkaClientException) e.getCause() :
+                    new KafkaClientException("Error while waiting for dependencies", e.getCause());
+        }
+    }
+
+    /**
+     * Checks all dependencies concurrently.
+     *
+     * @param checks the checks of the dependencies.
+     * @return a future completed once all dependencies are ready, or completed exceptionally with a
+     * KafkaClientException as soon as one of them failed.
+     */
+    public CompletableFuture<Void> checkAsync(List<ReadinessCheck> checks) {
+        List<CompletableFuture<DependencyReadiness>> futures = new ArrayList<>(checks.size());
+        for (ReadinessCheck check : checks) {
+            DependencyReadiness dependency = new DependencyReadiness(check.getName());
+            dependencies.put(check.getName(), dependency);
+            CompletableFuture<DependencyReadiness> future = new CompletableFuture<>();
+            checkExecutor.execute(() -> check(check, dependency, retryConfigData.getInitialIntervalMs(), future));
+            futures.add(future);
+        }
+        CompletableFuture<Void> allReady = CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]));
+        //fail fast, without waiting for the other dependencies, once one of them failed
+        futures.forEach(future -> future.whenComplete((dependency, throwable) -> {
+            if (throwable != null) {
+                allReady.completeExceptionally(throwable);
+            }
+        }));
+        return allReady;
+    }
+
+    /**
+     * @return READY if every dependency checked so far is ready, FAILED if one of them failed, WAITING otherwise.
+     */
+    public ReadinessStatus getStatus() {
+        ReadinessStatus status = ReadinessStatus.READY;
+        for (DependencyReadiness dependency : getDependencies()) {
+            if (dependency.getStatus() == ReadinessStatus.FAILED) {
+                return ReadinessStatus.FAILED;
+            }
+            if (dependency.getStatus() == ReadinessStatus.WAITING) {
+                status = ReadinessStatus.WAITING;
+            }
+        }
+        return status;
+    }
+
+    public boolean isReady() {
+        return getStatus() == ReadinessStatus.READY;
+    }
+
+    public Collection<DependencyReadiness> getDependencies() {
+        synchronized (dependencies) {
+            return new ArrayList<>(dependencies.values());
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        checkExecutor.shutdownNow();
+    }
+
+    private void check(ReadinessCheck check, DependencyReadiness dependency, long backOffMs,
+                       CompletableFuture<DependencyReadiness> future) {
+        dependency.attempted();
+        boolean ready;
+        try {
+            ready = check.isReady();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            dependency.complete(ReadinessStatus.FAILED);
+            future.completeExceptionally(new KafkaClientException("Interrupted while checking " + check.getName()));
+            return;
+        } catch (Exception e) {
+            log.debug("Check of {} failed, attempt {}", check.getName(), dependency.getAttempts(), e);
+            ready = false;
+        }
+        if (ready) {
+            dependency.complete(ReadinessStatus.READY);
+            log.info("Dependency {}", dependency);
+            future.complete(dependency);
+        } else if (dependency.getAttempts() >= retryConfigData.getMaxAttempts()) {
+            dependency.complete(ReadinessStatus.FAILED);
+            log.error("Dependency {}", dependency);
+            future.completeExceptionally(new KafkaClientException("Reached max number of retries waiting for " +
+                    check.getName()));
+        } else {
+            long nextBackOffMs = Math.min(retryConfigData.getMaxIntervalMs(),
+                    (long) (backOffMs * retryConfigData.getMultiplier()));
+            checkExecutor.schedule(() -> check(check, dependency, nextBackOffMs, future), jitter(backOffMs),
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Spreads the waits between half and the full backoff, so that services starting together do not all check
+     * their dependencies at the same moments.
+     */
+    private long jitter(long backOffMs) {
+        return backOffMs / 2 + ThreadLocalRandom.current().nextLong(backOffMs / 2 + 1);
+    }
+
+}
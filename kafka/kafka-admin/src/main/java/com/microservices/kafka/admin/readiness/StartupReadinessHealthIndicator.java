@@ -0,0 +1,50 @@
+package com.microservices.kafka.admin.readiness;
+
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * StartupReadinessHealthIndicator exposes the StartupReadiness as the startupReadiness health contributor, so that
+ * the health endpoint and the readiness probe report the dependencies a service still waits for.
+ * The health is UP once every dependency checked so far is ready, OUT_OF_SERVICE while one is still checked and
+ * DOWN if one failed. Every dependency is listed in the details with its status, checks and waited time.
+ */
+@Component
+public class StartupReadinessHealthIndicator implements HealthIndicator {
+
+    private final StartupReadiness startupReadiness;
+
+    public StartupReadinessHealthIndicator(StartupReadiness readiness) {
+        this.startupReadiness = readiness;
+    }
+
+    @Override
+    public Health health() {
+        Health.Builder health = Health.status(toHealthStatus(startupReadiness.getStatus()));
+        for (DependencyReadiness dependency : startupReadiness.getDependencies()) {
+            Map<String, Object> details = new LinkedHashMap<>();
+            details.put("status", dependency.getStatus());
+            details.put("attempts", dependency.getAttempts());
+            details.put("elapsedMs", dependency.getElapsedMs());
+            health.withDetail(dependency.getName(), details);
+        }
+        return health.build();
+    }
+
+    private Status toHealthStatus(ReadinessStatus status) {
+        switch (status) {
+            case READY:
+                return Status.UP;
+            case FAILED:
+                return Status.DOWN;
+            default:
+                return Status.OUT_OF_SERVICE;
+        }
+    }
+
+}
@@ -0,0 +1,43 @@
+package com.microservices.kafka.admin.readiness;
+
+import org.apache.kafka.clients.admin.AdminClient;
+import org.apache.kafka.common.errors.UnknownTopicOrPartitionException;
+
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checks that the given kafka topics exist, describing only those topics instead of listing every topic.
+ */
+public class TopicsReadinessCheck implements ReadinessCheck {
+
+    private final AdminClient adminClient;
+    private final List<String> topicNames;
+    private final long timeoutMs;
+
+    public TopicsReadinessCheck(AdminClient adminClient, List<String> topicNames, long timeoutMs) {
+        this.adminClient = adminClient;
+        this.topicNames = topicNames;
+        this.timeoutMs = timeoutMs;
+    }
+
+    @Override
+    public String getName() {
+        return "kafka topics " + topicNames;
+    }
+
+    @Override
+    public boolean isReady() throws Exception {
+        try {
+            adminClient.describeTopics(topicNames).all().get(timeoutMs, TimeUnit.MILLISECONDS);
+            return true;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof UnknownTopicOrPartitionException) {
+                return false;
+            }
+            throw e;
+        }
+    }
+
+}
@@ -0,0 +1,139 @@
+package com.microservices.kafka.admin.topic;
+
+import com.microservices.config.KafkaConfigData;
+import com.microservices.kafka.admin.exception.KafkaClientException;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.admin.AdminClient;
+import org.apache.kafka.clients.admin.AlterConfigOp;
+import org.apache.kafka.clients.admin.Config;
+import org.apache.kafka.clients.admin.ConfigEntry;
+import org.apache.kafka.clients.admin.NewPartitions;
+import org.apache.kafka.clients.admin.TopicDescription;
+import org.apache.kafka.common.config.ConfigResource;
+import org.springframework.retry.RetryContext;
+import org.springframework.retry.support.RetryTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.Collectors;
+
+/**
+ * TopicConfigReconciler brings existing topics in line with the partitions and topic configs defined in
+ * KafkaConfigData, so that settings like segment.bytes, retention.ms or compression.type do not need manual
+ * kafka-configs runs. The configs of the topics are described and only the configs that differ are altered,
+ * with incremental alters, so configs that are not defined are left as they are.
+ * The partitions of a topic are increased if fewer than configured, they can not be decreased.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class TopicConfigReconciler {
+
+    private final KafkaConfigData kafkaConfigData;
+    private final AdminClient adminClient;
+    private final RetryTemplate retryTemplate;
+
+    /**
+     * @return the configured number of partitions of the topic.
+     */
+    public int getNumOfPartitions(String topicName) {
+        KafkaConfigData.Topic topic = kafkaConfigData.getTopics().get(topicName);
+        if (topic != null && topic.getNumOfPartitions() != null) {
+            return topic.getNumOfPartitions();
+        }
+        return kafkaConfigData.getNumOfPartitions();
+    }
+
+    /**
+     * @return the configured topic configs of the topic, the configs of every topic merged with its own configs.
+     */
+    public Map<String, String> getConfigs(String topicName) {
+        Map<String, String> configs = new HashMap<>(kafkaConfigData.getTopicConfigs());
+        KafkaConfigData.Topic topic = kafkaConfigData.getTopics().get(topicName);
+        if (topic != null) {
+            configs.putAll(topic.getConfigs());
+        }
+        return configs;
+    }
+
+    /**
+     * Reconciles the given existing topics with the configuration, retrying in case of transient errors.
+     * Throws KafkaClientException if the topics could not be reconciled after max retries.
+     *
+     * @param topicNames the names of the topics to reconcile.
+     */
+    public void reconcile(List<String> topicNames) {
+        List<String> trimmedTopicNames = topicNames.stream().map(String::trim).collect(Collectors.toList());
+        try {
+            retryTemplate.execute(retryContext -> doReconcile(retryContext, trimmedTopicNames));
+        } catch (Throwable t) {
+            throw new KafkaClientException("Max number of retries reached for reconciling topics.", t);
+        }
+    }
+
+    private Void doReconcile(RetryContext retryContext, List<String> topicNames)
+            throws ExecutionException, InterruptedException {
+        log.info("Reconciling {} topics, attempt {}", topicNames.size(), retryContext.getRetryCount());
+        alterConfigs(topicNames);
+        increasePartitions(topicNames);
+        return null;
+    }
+
+    private void alterConfigs(List<String> topicNames) throws ExecutionException, InterruptedException {
+        List<ConfigResource> resources = topicNames.stream()
+                .map(topicName -> new ConfigResource(ConfigResource.Type.TOPIC, topicName))
+                .collect(Collectors.toList());
+        Map<ConfigResource, Config> currentConfigs = adminClient.describeConfigs(resources).all().get();
+        Map<ConfigResource, Collection<AlterConfigOp>> alterOps = new HashMap<>();
+        for (ConfigResource resource : resources) {
+            Config currentConfig = currentConfigs.get(resource);
+            List<AlterConfigOp> ops = getConfigs(resource.name()).entrySet().stream()
+                    .filter(config -> !Objects.equals(currentValue(currentConfig, config.getKey()), config.getValue()))
+                    .map(config -> new AlterConfigOp(new ConfigEntry(config.getKey(), config.getValue()),
+                            AlterConfigOp.OpType.SET))
+                    .collect(Collectors.toList());
+            if (!ops.isEmpty()) {
+                log.info("Altering configs of topic {}: {}", resource.name(), ops.stream()
+                        .map(op -> op.configEntry().name() + "=" + op.configEntry().value())
+                        .collect(Collectors.toList()));
+                alterOps.put(resource, ops);
+            }
+        }
+        if (!alterOps.isEmpty()) {
+            adminClient.incrementalAlterConfigs(alterOps).all().get();
+        }
+    }
+
+    private void increasePartitions(List<String> topicNames) throws ExecutionException, InterruptedException {
+        Map<String, TopicDescription> topicDescriptions = adminClient.describeTopics(topicNames).all().get();
+        Map<String, NewPartitions> newPartitions = new HashMap<>();
+        topicDescriptions.forEach((topicName, topicDescription) -> {
+            int currentPartitions = topicDescription.partitions().size();
+            int numOfPartitions = getNumOfPartitions(topicName);
+            if (numOfPartitions > currentPartitions) {
+                //keys are hashed to other partitions from now on, ordering per key only holds for new records
+                log.info("Increasing partitions of topic {} from {} to {}", topicName, currentPartitions,
+                        numOfPartitions);
+                newPartitions.put(topicName, NewPartitions.increaseTo(numOfPartitions));
+            } else if (numOfPartitions < currentPartitions) {
+                log.warn("Topic {} has {} partitions, more than the {} configured. Partitions can not be decreased",
+                        topicName, currentPartitions, numOfPartitions);
+            }
+        });
+        if (!newPartitions.isEmpty()) {
+            adminClient.createPartitions(newPartitions).all().get();
+        }
+    }
+
+    private String currentValue(Config config, String name) {
+        ConfigEntry configEntry = config == null ? null : config.get(name);
+        return configEntry == null ? null : configEntry.value();
+    }
+
+}
@@ -0,0 +1,89 @@
+package com.microservices.kafka.admin.readiness;
+
+import com.microservices.config.RetryConfigData;
+import com.microservices.kafka.admin.exception.KafkaClientException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.Status;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class StartupReadinessHealthIndicatorTest {
+
+    private final StartupReadiness startupReadiness = new StartupReadiness(retryConfig());
+    private final StartupReadinessHealthIndicator healthIndicator =
+            new StartupReadinessHealthIndicator(startupReadiness);
+
+    @AfterEach
+    public void close() {
+        startupReadiness.close();
+    }
+
+    @Test
+    public void isOutOfServiceUntilEveryDependencyIsReady() throws InterruptedException {
+        CountDownLatch kafkaReady = new CountDownLatch(1);
+        CompletableFuture<Void> readiness = startupReadiness.checkAsync(List.of(
+                check("schema-registry", () -> true),
+                //blocks in its first check until released, so it can not run out of attempts meanwhile
+                check("kafka", () -> await(kafkaReady))));
+        assertEquals(Status.OUT_OF_SERVICE, healthIndicator.health().getStatus());
+        kafkaReady.countDown();
+        startupReadiness.await(readiness);
+        Health health = healthIndicator.health();
+        assertEquals(Status.UP, health.getStatus());
+        assertEquals(ReadinessStatus.READY, ((Map<?, ?>) health.getDetails().get("kafka")).get("status"));
+        assertEquals(ReadinessStatus.READY, ((Map<?, ?>) health.getDetails().get("schema-registry")).get("status"));
+    }
+
+    @Test
+    public void isDownWhenADependencyFailed() {
+        assertThrows(KafkaClientException.class,
+                () -> startupReadiness.awaitReady(List.of(check("elasticsearch", () -> false))));
+        Health health = healthIndicator.health();
+        assertEquals(Status.DOWN, health.getStatus());
+        assertEquals(3, ((Map<?, ?>) health.getDetails().get("elasticsearch")).get("attempts"));
+    }
+
+    private static RetryConfigData retryConfig() {
+        RetryConfigData retryConfigData = new RetryConfigData();
+        retryConfigData.setInitialIntervalMs(10L);
+        retryConfigData.setMaxIntervalMs(20L);
+        retryConfigData.setMultiplier(2.0);
+        retryConfigData.setMaxAttempts(3);
+        retryConfigData.setSleepTimeMs(10L);
+        return retryConfigData;
+    }
+
+    private static boolean await(CountDownLatch latch) {
+        try {
+            return latch.await(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private static ReadinessCheck check(String name, BooleanSupplier condition) {
+        return new ReadinessCheck() {
+            @Override
+            public String getName() {
+                return name;
+            }
+
+            @Override
+            public boolean isReady() {
+                return condition.getAsBoolean();
+            }
+        };
+    }
+
+}
@@ -0,0 +1,31 @@
+package com.microservices.kafka.consumer.config;
+
+import lombok.Getter;
+import lombok.ToString;
+import org.springframework.context.ApplicationEvent;
+
+/**
+ * Published by the ConsumerConcurrencyController every time it changes the concurrency of a listener container,
+ * with the lag and partition count the decision was based on.
+ */
+@Getter
+@ToString
+public class ConsumerConcurrencyChangedEvent extends ApplicationEvent {
+
+    private final String listenerId;
+    private final int previousConcurrency;
+    private final int concurrency;
+    private final long lag;
+    private final int partitions;
+
+    public ConsumerConcurrencyChangedEvent(Object source, String listenerId, int previousConcurrency,
+                                           int concurrency, long lag, int partitions) {
+        super(source);
+        this.listenerId = listenerId;
+        this.previousConcurrency = previousConcurrency;
+        this.concurrency = concurrency;
+        this.lag = lag;
+        this.partitions = partitions;
+    }
+
+}
@@ -0,0 +1,189 @@
+package com.microservices.kafka.consumer.config;
+
+import com.microservices.config.KafkaConsumerConfigData;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.admin.AdminClient;
+import org.apache.kafka.clients.admin.ListOffsetsResult;
+import org.apache.kafka.clients.admin.OffsetSpec;
+import org.apache.kafka.clients.admin.TopicDescription;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.listener.ConcurrentMessageListenerContainer;
+import org.springframework.kafka.listener.MessageListenerContainer;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ConsumerConcurrencyController scales the concurrency of the listener container of the consumer group with its lag,
+ * so that a backlog after a traffic spike is drained by more consumers and idle consumers are removed again.
+ * The lag of every partition is the end offset minus the committed offset of the group, read with the AdminClient.
+ * The concurrency is never raised above the partition count, as extra consumers would not get a partition.
+ * A change only happens after several checks in a row agree, and not within the cooldown of the last change,
+ * because every change restarts the container and rebalances the group.
+ * Every change is published as a ConsumerConcurrencyChangedEvent, and the lag, the concurrency and the number of
+ * changes are exposed as metrics.
+ */
+@Slf4j
+public class ConsumerConcurrencyController {
+
+    private final KafkaListenerEndpointRegistry kafkaListenerEndpointRegistry;
+    private final AdminClient adminClient;
+    private final ApplicationEventPublisher applicationEventPublisher;
+    private final MeterRegistry meterRegistry;
+    private final String listenerId;
+    private final KafkaConsumerConfigData.Autoscaling autoscalingConfig;
+    private final AtomicLong lag;
+    private final AtomicInteger concurrency;
+
+    private ScheduledExecutorService scalingExecutor;
+    private int scaleUpChecks;
+    private int scaleDownChecks;
+    private long lastChangeTime;
+
+    public ConsumerConcurrencyController(KafkaListenerEndpointRegistry listenerEndpointRegistry,
+                                         AdminClient client,
+                                         ApplicationEventPublisher eventPublisher,
+                                         KafkaConsumerConfigData kafkaConsumerConfigData,
+                                         MeterRegistry registry) {
+        this.kafkaListenerEndpointRegistry = listenerEndpointRegistry;
+        this.adminClient = client;
+        this.applicationEventPublisher = eventPublisher;
+        this.meterRegistry = registry;
+        this.listenerId = kafkaConsumerConfigData.getConsumerGroupId();
+        this.autoscalingConfig = kafkaConsumerConfigData.getAutoscaling();
+        Tags tags = Tags.of("listener", listenerId);
+        this.lag = registry.gauge("kafka.consumer.lag", tags, new AtomicLong());
+        this.concurrency = registry.gauge("kafka.consumer.concurrency", tags,
+                new AtomicInteger(kafkaConsumerConfigData.getConcurrencyLevel()));
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!Boolean.TRUE.equals(autoscalingConfig.getEnabled())) {
+            return;
+        }
+        log.info("Starting concurrency autoscaling of listener {} for a lag of {} records per consumer", listenerId,
+                autoscalingConfig.getTargetLagPerConsumer());
+        scalingExecutor = Executors.newSingleThreadScheduledExecutor();
+        scalingExecutor.scheduleWithFixedDelay(this::scale, autoscalingConfig.getIntervalMs(),
+                autoscalingConfig.getIntervalMs(), TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void close() {
+        if (scalingExecutor != null) {
+            scalingExecutor.shutdownNow();
+        }
+    }
+
+    private void scale() {
+        try {
+            MessageListenerContainer listenerContainer =
+                    kafkaListenerEndpointRegistry.getListenerContainer(listenerId);
+            if (!(listenerContainer instanceof ConcurrentMessageListenerContainer) ||
+                    !listenerContainer.isRunning()) {
+                //not started yet, e.g. still waiting for the dependencies, or stopped on purpose
+                return;
+            }
+            ConcurrentMessageListenerContainer<?, ?> container =
+                    (ConcurrentMessageListenerContainer<?, ?>) listenerContainer;
+            String[] topics = container.getContainerProperties().getTopics();
+            if (topics == null) {
+                return;
+            }
+            Map<TopicPartition, Long> partitionLags = getPartitionLags(topics);
+            long totalLag = partitionLags.values().stream().mapToLong(Long::longValue).sum();
+            int partitions = partitionLags.size();
+            int currentConcurrency = container.getConcurrency();
+            lag.set(totalLag);
+            concurrency.set(currentConcurrency);
+
+            int maxConcurrency = Math.max(1, Math.min(partitions, autoscalingConfig.getMaxConcurrency()));
+            int minConcurrency = Math.min(maxConcurrency, autoscalingConfig.getMinConcurrency());
+            long wantedConcurrency = (totalLag + autoscalingConfig.getTargetLagPerConsumer() - 1) /
+                    autoscalingConfig.getTargetLagPerConsumer();
+            int newConcurrency = currentConcurrency;
+            if (wantedConcurrency > currentConcurrency && currentConcurrency < maxConcurrency) {
+                scaleDownChecks = 0;
+                if (++scaleUpChecks >= autoscalingConfig.getScaleUpChecks()) {
+                    newConcurrency = (int) Math.min(maxConcurrency, wantedConcurrency);
+                }
+            } else if (totalLag < currentConcurrency * autoscalingConfig.getTargetLagPerConsumer() *
+                    autoscalingConfig.getScaleDownLagRatio() && currentConcurrency > minConcurrency) {
+                scaleUpChecks = 0;
+                if (++scaleDownChecks >= autoscalingConfig.getScaleDownChecks()) {
+                    newConcurrency = currentConcurrency - 1;
+                }
+            } else {
+                scaleUpChecks = 0;
+                scaleDownChecks = 0;
+            }
+            //out of bounds after a config change, e.g. partitions were removed from the cap
+            newConcurrency = Math.max(minConcurrency, Math.min(maxConcurrency, newConcurrency));
+            log.debug("Listener {} has a lag of {} on {} partitions with {} consumers", listenerId, totalLag,
+                    partitions, currentConcurrency);
+            if (newConcurrency != currentConcurrency &&
+                    System.currentTimeMillis() - lastChangeTime >= autoscalingConfig.getCooldownMs()) {
+                changeConcurrency(container, currentConcurrency, newConcurrency, totalLag, partitions);
+            }
+        } catch (Exception e) {
+            log.error("Error while scaling the concurrency of listener {}, will try again in {} ms", listenerId,
+                    autoscalingConfig.getIntervalMs(), e);
+        }
+    }
+
+    private Map<TopicPartition, Long> getPartitionLags(String[] topics)
+            throws ExecutionException, InterruptedException {
+        Map<TopicPartition, OffsetSpec> endOffsetSpecs = new HashMap<>();
+        for (TopicDescription topicDescription : adminClient.describeTopics(Arrays.asList(topics)).all().get()
+                .values()) {
+            topicDescription.partitions().forEach(partition -> endOffsetSpecs.put(
+                    new TopicPartition(topicDescription.name(), partition.partition()), OffsetSpec.latest()));
+        }
+        Map<TopicPartition, ListOffsetsResult.ListOffsetsResultInfo> endOffsets =
+                adminClient.listOffsets(endOffsetSpecs).all().get();
+        Map<TopicPartition, OffsetAndMetadata> committedOffsets =
+                adminClient.listConsumerGroupOffsets(listenerId).partitionsToOffsetAndMetadata().get();
+        Map<TopicPartition, Long> partitionLags = new HashMap<>();
+        endOffsets.forEach((topicPartition, endOffset) -> {
+            OffsetAndMetadata committedOffset = committedOffsets.get(topicPartition);
+            //a partition without a committed offset is read from auto.offset.reset, its lag is unknown
+            long partitionLag = committedOffset == null ? 0 : endOffset.offset() - committedOffset.offset();
+            partitionLags.put(topicPartition, Math.max(0, partitionLag));
+        });
+        return partitionLags;
+    }
+
+    private void changeConcurrency(ConcurrentMessageListenerContainer<?, ?> container, int previousConcurrency,
+                                   int newConcurrency, long totalLag, int partitions) {
+        log.info("Scaling listener {} from {} to {} consumers for a lag of {} on {} partitions", listenerId,
+                previousConcurrency, newConcurrency, totalLag, partitions);
+        //the concurrency is only applied when the container starts
+        container.stop();
+        container.setConcurrency(newConcurrency);
+        container.start();
+        lastChangeTime = System.currentTimeMillis();
+        scaleUpChecks = 0;
+        scaleDownChecks = 0;
+        concurrency.set(newConcurrency);
+        meterRegistry.counter("kafka.consumer.concurrency.changes", "listener", listenerId,
+                "direction", newConcurrency > previousConcurrency ? "up" : "down").increment();
+        applicationEventPublisher.publishEvent(new ConsumerConcurrencyChangedEvent(this, listenerId,
+                previousConcurrency, newConcurrency, totalLag, partitions));
+    }
+
+}
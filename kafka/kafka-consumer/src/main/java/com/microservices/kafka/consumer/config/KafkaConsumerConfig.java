@@ -2,17 +2,26 @@ package com.microservices.kafka.consumer.config;
 
 import com.microservices.config.KafkaConfigData;
 import com.microservices.config.KafkaConsumerConfigData;
+import com.microservices.kafka.avro.serde.SchemaRegistryClient;
+import com.microservices.kafka.consumer.retry.DeserializationFailureFilter;
+import com.microservices.kafka.consumer.retry.RetryTopicPublisher;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.RequiredArgsConstructor;
 import org.apache.avro.specific.SpecificRecordBase;
+import org.apache.kafka.clients.admin.AdminClient;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.kafka.annotation.EnableKafka;
 import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
 import org.springframework.kafka.config.KafkaListenerContainerFactory;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
 import org.springframework.kafka.core.ConsumerFactory;
 import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.listener.ContainerProperties;
 import org.springframework.kafka.listener.ConcurrentMessageListenerContainer;
+import org.springframework.kafka.support.serializer.ErrorHandlingDeserializer;
 
 import java.io.Serializable;
 import java.util.HashMap;
@@ -30,11 +39,24 @@ public class KafkaConsumerConfig<K extends Serializable, V extends SpecificRecor
     public Map<String, Object> consumerConfigs() {
         Map<String, Object> props = new HashMap<>();
         props.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, kafkaConfigData.getBootstrapServers());
-        props.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, kafkaConsumerConfigData.getKeyDeserializer());
-        props.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, kafkaConsumerConfigData.getValueDeserializer());
+        if (Boolean.TRUE.equals(kafkaConsumerConfigData.getRetryTopics().getEnabled())) {
+            //records that can not be deserialized reach the container with the error in a header, see
+            //DeserializationFailureFilter, instead of failing every poll
+            props.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, ErrorHandlingDeserializer.class);
+            props.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, ErrorHandlingDeserializer.class);
+            props.put(ErrorHandlingDeserializer.KEY_DESERIALIZER_CLASS, kafkaConsumerConfigData.getKeyDeserializer());
+            props.put(ErrorHandlingDeserializer.VALUE_DESERIALIZER_CLASS,
+                    kafkaConsumerConfigData.getValueDeserializer());
+        } else {
+            props.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, kafkaConsumerConfigData.getKeyDeserializer());
+            props.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, kafkaConsumerConfigData.getValueDeserializer());
+        }
         props.put(ConsumerConfig.GROUP_ID_CONFIG, kafkaConsumerConfigData.getConsumerGroupId());
         props.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, kafkaConsumerConfigData.getAutoOffsetReset());
         props.put(kafkaConfigData.getSchemaRegistryUrlKey(), kafkaConfigData.getSchemaRegistryUrl());
+        if (kafkaConfigData.getSchemaCacheFile() != null) {
+            props.put(SchemaRegistryClient.SCHEMA_CACHE_FILE_CONFIG, kafkaConfigData.getSchemaCacheFile());
+        }
         props.put(kafkaConsumerConfigData.getSpecificAvroReaderKey(), kafkaConsumerConfigData.getSpecificAvroReader());
         props.put(ConsumerConfig.SESSION_TIMEOUT_MS_CONFIG, kafkaConsumerConfigData.getSessionTimeoutMs());
         props.put(ConsumerConfig.HEARTBEAT_INTERVAL_MS_CONFIG, kafkaConsumerConfigData.getHeartbeatIntervalMs());
@@ -59,8 +81,56 @@ public class KafkaConsumerConfig<K extends Serializable, V extends SpecificRecor
         factory.setConcurrency(kafkaConsumerConfigData.getConcurrencyLevel()); //spring will create
         factory.setAutoStartup(kafkaConsumerConfigData.getAutoStartup());
         factory.getContainerProperties().setPollTimeout(kafkaConsumerConfigData.getPollTimeoutMs());
+        if (Boolean.TRUE.equals(kafkaConsumerConfigData.getPipeline().getEnabled())) {
+            //records are acknowledged by the pipeline once indexed, the listener commits the contiguous offsets
+            factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL);
+            factory.getContainerProperties().setIdleEventInterval(
+                    kafkaConsumerConfigData.getPipeline().getCommitIntervalMs());
+        }
+        if (Boolean.TRUE.equals(kafkaConsumerConfigData.getRetryTopics().getEnabled())) {
+            factory.setRecordFilterStrategy(new DeserializationFailureFilter<>(retryTopicPublisher()));
+        }
         return factory;
+    }
+
+    /**
+     * The container factory of the retry topic listeners. They commit the offsets of the records they processed
+     * themselves, as records that are not due yet are consumed again later, and are woken up by idle events to
+     * resume their paused partitions.
+     */
+    @Bean
+    public KafkaListenerContainerFactory<ConcurrentMessageListenerContainer<K, V>> retryKafkaListenerContainerFactory() {
+        ConcurrentKafkaListenerContainerFactory<K, V> factory = new ConcurrentKafkaListenerContainerFactory<>();
+        factory.setConsumerFactory(consumerFactory());
+        factory.setBatchListener(true);
+        factory.setAutoStartup(kafkaConsumerConfigData.getAutoStartup());
+        factory.getContainerProperties().setPollTimeout(kafkaConsumerConfigData.getPollTimeoutMs());
+        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL);
+        factory.getContainerProperties().setIdleEventInterval(
+                kafkaConsumerConfigData.getRetryTopics().getIdleIntervalMs());
+        factory.setRecordFilterStrategy(new DeserializationFailureFilter<>(retryTopicPublisher()));
+        return factory;
+    }
 
+    /**
+     * Sends the records that failed on their own to the retry topics and the dead letter topic, when enabled.
+     */
+    @Bean
+    public RetryTopicPublisher retryTopicPublisher() {
+        return new RetryTopicPublisher(kafkaConfigData, kafkaConsumerConfigData);
+    }
 
+    /**
+     * Scales the concurrency set above with the consumer lag, when enabled. The AdminClient is the one of the
+     * kafka-admin module.
+     */
+    @Bean
+    public ConsumerConcurrencyController consumerConcurrencyController(
+            KafkaListenerEndpointRegistry kafkaListenerEndpointRegistry,
+            AdminClient adminClient,
+            ApplicationEventPublisher applicationEventPublisher,
+            MeterRegistry meterRegistry) {
+        return new ConsumerConcurrencyController(kafkaListenerEndpointRegistry, adminClient,
+                applicationEventPublisher, kafkaConsumerConfigData, meterRegistry);
     }
 }
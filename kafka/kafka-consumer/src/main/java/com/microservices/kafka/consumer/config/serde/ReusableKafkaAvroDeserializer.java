@@ -0,0 +1,78 @@
+package com.microservices.kafka.consumer.config.serde;
+
+import com.microservices.kafka.avro.serde.AvroWireFormat;
+import com.microservices.kafka.avro.serde.SchemaRegistryClient;
+import com.microservices.kafka.avro.serde.SchemaRegistryException;
+import org.apache.avro.Schema;
+import org.apache.avro.io.BinaryDecoder;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.avro.specific.SpecificData;
+import org.apache.avro.specific.SpecificDatumReader;
+import org.apache.avro.specific.SpecificRecordBase;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.serialization.Deserializer;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * ReusableKafkaAvroDeserializer reads avro specific records written in the schema registry wire format, like the
+ * confluent KafkaAvroDeserializer with specific.avro.reader enabled, but without the per record lookups.
+ * The datum reader is resolved once per writer schema id, from the writer schema to the schema of the generated
+ * class with the same name, and every consuming thread reuses its own BinaryDecoder.
+ * The generated custom decoders of the records are used, which avoid the reflective field access of the datum reader.
+ * A new record is returned for every message, as records are handed over to the listeners.
+ *
+ * @param <T> the type of the avro record.
+ */
+public class ReusableKafkaAvroDeserializer<T extends SpecificRecordBase> implements Deserializer<T> {
+
+    public static final String SCHEMA_REGISTRY_URL_CONFIG = "schema.registry.url";
+
+    private final SpecificData specificData = new SpecificData();
+    private final Map<Integer, SpecificDatumReader<T>> datumReaders = new ConcurrentHashMap<>();
+    private final ThreadLocal<BinaryDecoder> decoders = new ThreadLocal<>();
+
+    private SchemaRegistryClient schemaRegistryClient;
+
+    @Override
+    public void configure(Map<String, ?> configs, boolean isKey) {
+        specificData.setCustomCoders(true);
+        Object schemaRegistryUrl = configs.get(SCHEMA_REGISTRY_URL_CONFIG);
+        if (schemaRegistryUrl == null) {
+            throw new SchemaRegistryException("Missing " + SCHEMA_REGISTRY_URL_CONFIG + " for the avro deserializer");
+        }
+        Object schemaCacheFile = configs.get(SchemaRegistryClient.SCHEMA_CACHE_FILE_CONFIG);
+        this.schemaRegistryClient = SchemaRegistryClient.forUrl(schemaRegistryUrl.toString(),
+                schemaCacheFile == null ? null : schemaCacheFile.toString());
+    }
+
+    @Override
+    public T deserialize(String topic, byte[] data) {
+        if (data == null) {
+            return null;
+        }
+        try {
+            SpecificDatumReader<T> datumReader = datumReaders.computeIfAbsent(AvroWireFormat.readSchemaId(data),
+                    this::createDatumReader);
+            BinaryDecoder decoder = DecoderFactory.get().binaryDecoder(data, AvroWireFormat.HEADER_SIZE,
+                    data.length - AvroWireFormat.HEADER_SIZE, decoders.get());
+            decoders.set(decoder);
+            return datumReader.read(null, decoder);
+        } catch (IOException | RuntimeException e) {
+            throw new SerializationException("Error deserializing avro record from topic " + topic, e);
+        }
+    }
+
+    private SpecificDatumReader<T> createDatumReader(int schemaId) {
+        Schema writerSchema = schemaRegistryClient.getSchema(schemaId);
+        Class<?> recordClass = specificData.getClass(writerSchema);
+        if (recordClass == null) {
+            throw new SchemaRegistryException("No generated avro class for schema " + writerSchema.getFullName());
+        }
+        Schema readerSchema = specificData.getSchema(recordClass);
+        return new SpecificDatumReader<>(writerSchema, readerSchema, specificData);
+    }
+
+}
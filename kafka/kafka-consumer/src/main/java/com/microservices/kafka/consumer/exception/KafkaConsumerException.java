@@ -0,0 +1,18 @@
+package com.microservices.kafka.consumer.exception;
+
+/**
+ * Exception class for Kafka consumer errors.
+ */
+public class KafkaConsumerException extends RuntimeException {
+
+    public KafkaConsumerException() {
+    }
+
+    public KafkaConsumerException(String message) {
+        super(message);
+    }
+
+    public KafkaConsumerException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,129 @@
+package com.microservices.kafka.consumer.offset;
+
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * ContiguousOffsetTracker keeps track of the records that were handed over to other threads and are not yet
+ * acknowledged, so that offsets are only committed up to the highest offset below which every record of the
+ * partition was acknowledged. Records may be acknowledged in any order, a record that is still in flight holds
+ * back the commit of all records after it in its partition.
+ * Records are dispatched and offsets are committed on the consumer thread, acknowledgements may come from any thread.
+ * The records acknowledged after the first one still in flight are committed as an OffsetMap in the offset metadata,
+ * and after a rebalance or restart the records it marks as completed are skipped.
+ */
+public class ContiguousOffsetTracker {
+
+    private final Map<TopicPartition, PartitionOffsets> partitions = new ConcurrentHashMap<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    /**
+     * Continues tracking a partition from its committed offset, e.g. when it is assigned.
+     *
+     * @param topicPartition  the partition.
+     * @param committedOffset the committed offset of the partition and its offset map.
+     */
+    public void restore(TopicPartition topicPartition, OffsetAndMetadata committedOffset) {
+        PartitionOffsets partitionOffsets = new PartitionOffsets();
+        partitionOffsets.highestDispatched = committedOffset.offset() - 1;
+        partitionOffsets.committed = committedOffset.offset();
+        partitionOffsets.committedMetadata = committedOffset.metadata();
+        partitionOffsets.completed = OffsetMap.decode(committedOffset.offset(), committedOffset.metadata());
+        partitions.put(topicPartition, partitionOffsets);
+    }
+
+    /**
+     * Marks a record as in flight. Must be called in offset order for every partition.
+     *
+     * @return false if the record was already completed before the partition was restored, it must then be skipped.
+     */
+    public boolean dispatch(TopicPartition topicPartition, long offset) {
+        PartitionOffsets partitionOffsets = partitions.computeIfAbsent(topicPartition, tp -> new PartitionOffsets());
+        partitionOffsets.highestDispatched = offset;
+        OffsetMap completed = partitionOffsets.completed;
+        if (completed != null) {
+            boolean skip = completed.isCompleted(offset);
+            if (offset >= completed.getHighestOffset()) {
+                partitionOffsets.completed = null;
+            }
+            if (skip) {
+                return false;
+            }
+        }
+        partitionOffsets.pending.add(offset);
+        inFlight.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Marks a record as done. Acknowledgements of partitions that were removed in between are ignored.
+     */
+    public void acknowledged(TopicPartition topicPartition, long offset) {
+        PartitionOffsets partitionOffsets = partitions.get(topicPartition);
+        if (partitionOffsets != null && partitionOffsets.pending.remove(offset)) {
+            inFlight.decrementAndGet();
+        }
+    }
+
+    /**
+     * @param assignment the partitions assigned to the consumer that commits.
+     * @return the offsets to commit for the given partitions, with their offset maps, only for partitions that
+     * advanced since the last call. Nothing is committed for a partition until its records were dispatched past the
+     * offset map it was restored with, as committing before would drop the completed records not dispatched yet.
+     */
+    public Map<TopicPartition, OffsetAndMetadata> committableOffsets(Collection<TopicPartition> assignment) {
+        Map<TopicPartition, OffsetAndMetadata> offsets = new HashMap<>();
+        for (TopicPartition topicPartition : assignment) {
+            PartitionOffsets partitionOffsets = partitions.get(topicPartition);
+            if (partitionOffsets == null || partitionOffsets.completed != null) {
+                continue;
+            }
+            Long lowestPending = partitionOffsets.pending.ceiling(Long.MIN_VALUE);
+            long commitOffset = lowestPending == null ? partitionOffsets.highestDispatched + 1 : lowestPending;
+            String metadata = OffsetMap.encode(commitOffset, partitionOffsets.highestDispatched,
+                    partitionOffsets.pending);
+            if (commitOffset > partitionOffsets.committed || !metadata.equals(partitionOffsets.committedMetadata)) {
+                partitionOffsets.committed = commitOffset;
+                partitionOffsets.committedMetadata = metadata;
+                offsets.put(topicPartition, new OffsetAndMetadata(commitOffset, metadata));
+            }
+        }
+        return offsets;
+    }
+
+    /**
+     * Forgets the given partitions, e.g. when they are revoked. Their records still in flight are no longer counted.
+     */
+    public void remove(Collection<TopicPartition> topicPartitions) {
+        for (TopicPartition topicPartition : topicPartitions) {
+            PartitionOffsets partitionOffsets = partitions.remove(topicPartition);
+            if (partitionOffsets != null) {
+                inFlight.addAndGet(-partitionOffsets.pending.size());
+            }
+        }
+    }
+
+    /**
+     * @return the number of records dispatched and not yet acknowledged.
+     */
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    private static final class PartitionOffsets {
+
+        private final ConcurrentSkipListSet<Long> pending = new ConcurrentSkipListSet<>();
+        private volatile long highestDispatched = -1;
+        private long committed = -1;
+        private String committedMetadata = "";
+        private volatile OffsetMap completed;
+    }
+
+}
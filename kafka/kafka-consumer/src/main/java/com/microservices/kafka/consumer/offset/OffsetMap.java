@@ -0,0 +1,87 @@
+package com.microservices.kafka.consumer.offset;
+
+import java.util.Base64;
+import java.util.BitSet;
+import java.util.NavigableSet;
+
+/**
+ * OffsetMap is the compact form of the records of a partition that were completed after the committed offset,
+ * kept in the metadata of the committed offset. When records complete out of order, the committed offset stays at
+ * the first incomplete record, and the map lets the next owner of the partition skip the records after it that were
+ * already completed, instead of processing them again.
+ * The map is the number of offsets it covers after the committed offset and a base64 bitset of the incomplete
+ * offsets among them. A map that does not fit in the offset metadata is left out, which only costs reprocessing.
+ */
+public final class OffsetMap {
+
+    /**
+     * Stays below the default offset.metadata.max.bytes of the brokers.
+     */
+    private static final int MAX_METADATA_LENGTH = 4000;
+    private static final char SEPARATOR = ':';
+
+    private final long committedOffset;
+    private final long range;
+    private final BitSet incomplete;
+
+    private OffsetMap(long committedOffset, long range, BitSet incomplete) {
+        this.committedOffset = committedOffset;
+        this.range = range;
+        this.incomplete = incomplete;
+    }
+
+    /**
+     * @param committedOffset   the offset that is committed, the first incomplete offset.
+     * @param highestDispatched the highest offset handed over for processing.
+     * @param pending           the offsets handed over and not completed yet.
+     * @return the metadata to commit with the offset, empty if every record up to the committed offset is completed
+     * or the map is too big.
+     */
+    public static String encode(long committedOffset, long highestDispatched, NavigableSet<Long> pending) {
+        long range = highestDispatched - committedOffset;
+        if (range <= 0 || range > MAX_METADATA_LENGTH * 6L) {
+            return "";
+        }
+        BitSet incomplete = new BitSet((int) range + 1);
+        for (Long offset : pending.subSet(committedOffset, true, highestDispatched, true)) {
+            incomplete.set((int) (offset - committedOffset));
+        }
+        String metadata = range + String.valueOf(SEPARATOR) +
+                Base64.getEncoder().withoutPadding().encodeToString(incomplete.toByteArray());
+        return metadata.length() > MAX_METADATA_LENGTH ? "" : metadata;
+    }
+
+    /**
+     * @return the map committed with the offset, or null if there is none or it can not be read.
+     */
+    public static OffsetMap decode(long committedOffset, String metadata) {
+        if (metadata == null || metadata.isEmpty()) {
+            return null;
+        }
+        int separator = metadata.indexOf(SEPARATOR);
+        try {
+            long range = Long.parseLong(metadata.substring(0, separator));
+            BitSet incomplete = BitSet.valueOf(Base64.getDecoder().decode(metadata.substring(separator + 1)));
+            return new OffsetMap(committedOffset, range, incomplete);
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            //metadata written by something else, the records are processed again
+            return null;
+        }
+    }
+
+    /**
+     * @return true if the record at the offset was completed before the offset was committed.
+     */
+    public boolean isCompleted(long offset) {
+        long index = offset - committedOffset;
+        return index > 0 && index <= range && !incomplete.get((int) index);
+    }
+
+    /**
+     * @return the highest offset the map knows about.
+     */
+    public long getHighestOffset() {
+        return committedOffset + range;
+    }
+
+}
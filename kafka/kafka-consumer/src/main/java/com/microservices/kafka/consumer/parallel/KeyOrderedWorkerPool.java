@@ -0,0 +1,95 @@
+package com.microservices.kafka.consumer.parallel;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.Consumer;
+
+/**
+ * KeyOrderedWorkerPool processes items on a number of lanes, each with its own thread and bounded queue, so that
+ * the records of one partition can be processed by more threads than there are partitions.
+ * All items with the same key go to the same lane, so they are processed in the order they were submitted,
+ * while items with other keys are processed in parallel. Every lane hands the items waiting in its queue, up to
+ * maxBatchSize, to the handler at once, so that they can be processed as a batch.
+ * Submitting never blocks, an item whose lane is full is refused, so that a consumer thread can pause instead of
+ * waiting on one slow key.
+ *
+ * @param <T> the type of the items.
+ */
+@Slf4j
+public class KeyOrderedWorkerPool<T> implements AutoCloseable {
+
+    private final List<BlockingQueue<T>> lanes;
+    private final List<Thread> laneThreads;
+    private final int maxBatchSize;
+    private final Consumer<List<T>> batchHandler;
+
+    /**
+     * @param name         the name of the lane threads.
+     * @param numOfLanes   the number of lanes, the max number of keys processed in parallel.
+     * @param laneCapacity the number of items a lane queues before offer refuses more.
+     * @param maxBatchSize the max number of items handed to the handler at once.
+     * @param batchHandler processes the items of a lane, in submit order. The list is reused once it returns.
+     */
+    public KeyOrderedWorkerPool(String name, int numOfLanes, int laneCapacity, int maxBatchSize,
+                                Consumer<List<T>> batchHandler) {
+        this.maxBatchSize = maxBatchSize;
+        this.batchHandler = batchHandler;
+        this.lanes = new ArrayList<>(numOfLanes);
+        this.laneThreads = new ArrayList<>(numOfLanes);
+        for (int i = 0; i < numOfLanes; i++) {
+            BlockingQueue<T> lane = new ArrayBlockingQueue<>(laneCapacity);
+            Thread laneThread = new Thread(() -> processLane(lane), name + "-" + i);
+            laneThread.setDaemon(true);
+            lanes.add(lane);
+            laneThreads.add(laneThread);
+            laneThread.start();
+        }
+    }
+
+    /**
+     * Queues the item on the lane of its key, if that lane is not full.
+     *
+     * @return false if the lane of the key is full, the item must then be offered again later, before any later item
+     * of the key.
+     */
+    public boolean offer(Object key, T item) {
+        return lanes.get(laneOf(key)).offer(item);
+    }
+
+    @Override
+    public void close() {
+        laneThreads.forEach(Thread::interrupt);
+    }
+
+    private int laneOf(Object key) {
+        if (key == null) {
+            return 0;
+        }
+        int hash = key.hashCode();
+        //spread the high bits, keys like ids often differ only there
+        hash ^= hash >>> 16;
+        return Math.floorMod(hash, lanes.size());
+    }
+
+    private void processLane(BlockingQueue<T> lane) {
+        List<T> batch = new ArrayList<>(maxBatchSize);
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                batch.add(lane.take());
+                lane.drainTo(batch, maxBatchSize - 1);
+                batchHandler.accept(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (RuntimeException e) {
+                log.error("Error while processing {} items on {}", batch.size(), Thread.currentThread().getName(), e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,50 @@
+package com.microservices.kafka.consumer.retry;
+
+import org.apache.commons.logging.LogFactory;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.core.log.LogAccessor;
+import org.springframework.kafka.listener.ListenerUtils;
+import org.springframework.kafka.listener.adapter.RecordFilterStrategy;
+import org.springframework.kafka.support.serializer.DeserializationException;
+import org.springframework.kafka.support.serializer.ErrorHandlingDeserializer;
+
+/**
+ * DeserializationFailureFilter takes the records that the ErrorHandlingDeserializer could not deserialize out of the
+ * batches, before they reach the listener, and sends them to the dead letter topic. A poison pill then neither fails
+ * the batch it is in nor reaches the listener as a null value. The key or value that was deserialized is kept in the
+ * dead letter record.
+ *
+ * @param <K> the type of the keys.
+ * @param <V> the type of the values.
+ */
+public class DeserializationFailureFilter<K, V> implements RecordFilterStrategy<K, V> {
+
+    private static final LogAccessor LOG_ACCESSOR =
+            new LogAccessor(LogFactory.getLog(DeserializationFailureFilter.class));
+
+    private final RetryTopicPublisher retryTopicPublisher;
+
+    public DeserializationFailureFilter(RetryTopicPublisher publisher) {
+        this.retryTopicPublisher = publisher;
+    }
+
+    @Override
+    public boolean filter(ConsumerRecord<K, V> consumerRecord) {
+        DeserializationException valueException = null;
+        if (consumerRecord.value() == null) {
+            valueException = ListenerUtils.getExceptionFromHeader(consumerRecord,
+                    ErrorHandlingDeserializer.VALUE_DESERIALIZER_EXCEPTION_HEADER, LOG_ACCESSOR);
+        }
+        DeserializationException keyException = null;
+        if (consumerRecord.key() == null) {
+            keyException = ListenerUtils.getExceptionFromHeader(consumerRecord,
+                    ErrorHandlingDeserializer.KEY_DESERIALIZER_EXCEPTION_HEADER, LOG_ACCESSOR);
+        }
+        if (keyException == null && valueException == null) {
+            return false;
+        }
+        retryTopicPublisher.publishDeadLetter(consumerRecord, keyException, valueException);
+        return true;
+    }
+
+}
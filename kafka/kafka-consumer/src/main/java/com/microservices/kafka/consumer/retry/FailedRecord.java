@@ -0,0 +1,23 @@
+package com.microservices.kafka.consumer.retry;
+
+import lombok.Builder;
+import lombok.Data;
+
+/**
+ * A consumed record that could not be processed, to be sent to a retry topic or the dead letter topic.
+ * The topic, partition and offset are the ones the record was first consumed from, the attempt is the number of
+ * retries made so far, 0 for a record from the topic itself.
+ */
+@Data
+@Builder
+public class FailedRecord {
+
+    private String topic;
+    private int partition;
+    private long offset;
+    private int attempt;
+    private Object key;
+    private Object value;
+    private String reason;
+
+}
@@ -0,0 +1,298 @@
+package com.microservices.kafka.consumer.retry;
+
+import com.microservices.config.KafkaConfigData;
+import com.microservices.config.KafkaConsumerConfigData;
+import com.microservices.kafka.avro.serde.SchemaRegistryClient;
+import com.microservices.kafka.consumer.exception.KafkaConsumerException;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.KafkaException;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.Serializer;
+import org.apache.kafka.common.utils.Utils;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.serializer.DeserializationException;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * RetryTopicPublisher sends the records that failed on their own to a retry topic, or to the dead letter topic once
+ * all retries were made, so that the consumer moves on with the other records of the partition. Like the retry
+ * topics of spring kafka, every attempt has its own topic and delay, and the record is sent with headers holding
+ * where it was first consumed from, the number of the attempt, the time it is due to be consumed again and the
+ * reason it failed.
+ * Sends are waited for, so that the offsets of the failed records are only committed once they are in a retry topic.
+ */
+@Slf4j
+public class RetryTopicPublisher {
+
+    public static final String ORIGINAL_TOPIC_HEADER = "retry_original_topic";
+    public static final String ORIGINAL_PARTITION_HEADER = "retry_original_partition";
+    public static final String ORIGINAL_OFFSET_HEADER = "retry_original_offset";
+    public static final String ATTEMPT_HEADER = "retry_attempt";
+    public static final String DUE_AT_HEADER = "retry_due_at";
+    public static final String REASON_HEADER = "retry_reason";
+
+    private final KafkaConfigData kafkaConfigData;
+    private final KafkaConsumerConfigData.RetryTopics retryTopicsConfig;
+    private final long deadLetterTimeoutMs;
+
+    private DefaultKafkaProducerFactory<byte[], byte[]> producerFactory;
+    private KafkaTemplate<byte[], byte[]> kafkaTemplate;
+    private Serializer<Object> keySerializer;
+    private Serializer<Object> valueSerializer;
+
+    public RetryTopicPublisher(KafkaConfigData configData, KafkaConsumerConfigData consumerConfigData) {
+        this.kafkaConfigData = configData;
+        this.retryTopicsConfig = consumerConfigData.getRetryTopics();
+        this.deadLetterTimeoutMs = getDeadLetterTimeoutMs(consumerConfigData);
+    }
+
+    @PostConstruct
+    public void init() {
+        if (!isEnabled()) {
+            return;
+        }
+        Map<String, Object> props = new HashMap<>();
+        props.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, kafkaConfigData.getBootstrapServers());
+        props.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, ByteArraySerializer.class);
+        props.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, ByteArraySerializer.class);
+        props.put(ProducerConfig.ACKS_CONFIG, "all");
+        props.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, true);
+        //send does not wait for metadata longer than a record that can not be deserialized may be waited for
+        props.put(ProducerConfig.MAX_BLOCK_MS_CONFIG, deadLetterTimeoutMs);
+        producerFactory = new DefaultKafkaProducerFactory<>(props);
+        kafkaTemplate = new KafkaTemplate<>(producerFactory);
+        keySerializer = createSerializer(retryTopicsConfig.getKeySerializer(), true);
+        valueSerializer = createSerializer(retryTopicsConfig.getValueSerializer(), false);
+    }
+
+    @PreDestroy
+    public void close() {
+        if (producerFactory != null) {
+            producerFactory.destroy();
+        }
+    }
+
+    public boolean isEnabled() {
+        return Boolean.TRUE.equals(retryTopicsConfig.getEnabled());
+    }
+
+    /**
+     * @return the retry topics of the topic, one per attempt.
+     */
+    public List<String> getRetryTopicNames(String topic) {
+        List<String> retryTopicNames = new ArrayList<>(retryTopicsConfig.getDelaysMs().size());
+        for (int attempt = 0; attempt < retryTopicsConfig.getDelaysMs().size(); attempt++) {
+            retryTopicNames.add(topic + retryTopicsConfig.getRetryTopicSuffix() + attempt);
+        }
+        return retryTopicNames;
+    }
+
+    public String getDeadLetterTopicName(String topic) {
+        return topic + retryTopicsConfig.getDeadLetterTopicSuffix();
+    }
+
+    /**
+     * @return the retry topics and the dead letter topic of the topic, to be created with the topic.
+     */
+    public List<String> getTopicNames(String topic) {
+        List<String> topicNames = getRetryTopicNames(topic);
+        topicNames.add(getDeadLetterTopicName(topic));
+        return topicNames;
+    }
+
+    /**
+     * Sends every failed record to the retry topic of its next attempt, or to the dead letter topic after the last
+     * attempt, and waits until all of them are sent.
+     * Throws KafkaConsumerException if a record could not be sent, the records must then be consumed again.
+     *
+     * @param failedRecords the failed records.
+     */
+    public void publish(List<FailedRecord> failedRecords) {
+        publish(failedRecords, false);
+    }
+
+    /**
+     * Sends every failed record straight to the dead letter topic, for failures that retrying does not fix, and waits
+     * until all of them are sent.
+     * Throws KafkaConsumerException if a record could not be sent, the records must then be consumed again.
+     *
+     * @param failedRecords the failed records.
+     */
+    public void publishDeadLetters(List<FailedRecord> failedRecords) {
+        publish(failedRecords, true);
+    }
+
+    private void publish(List<FailedRecord> failedRecords, boolean deadLetter) {
+        List<CompletableFuture<?>> futures = new ArrayList<>(failedRecords.size());
+        for (FailedRecord failedRecord : failedRecords) {
+            String targetTopic;
+            Headers headers = originalHeaders(failedRecord.getTopic(), failedRecord.getPartition(),
+                    failedRecord.getOffset(), failedRecord.getReason());
+            if (!deadLetter && failedRecord.getAttempt() < retryTopicsConfig.getDelaysMs().size()) {
+                targetTopic = getRetryTopicNames(failedRecord.getTopic()).get(failedRecord.getAttempt());
+                long dueAt = System.currentTimeMillis() + retryTopicsConfig.getDelaysMs().get(failedRecord.getAttempt());
+                headers.add(ATTEMPT_HEADER, toBytes(failedRecord.getAttempt() + 1));
+                headers.add(DUE_AT_HEADER, toBytes(dueAt));
+            } else {
+                targetTopic = getDeadLetterTopicName(failedRecord.getTopic());
+                log.warn("Sending record of topic {}, partition {} and offset {} to {} after {} retries: {}",
+                        failedRecord.getTopic(), failedRecord.getPartition(), failedRecord.getOffset(), targetTopic,
+                        failedRecord.getAttempt(), failedRecord.getReason());
+            }
+            //serialized for the original topic, so that the schema is the one already registered for it
+            byte[] key = keySerializer.serialize(failedRecord.getTopic(), failedRecord.getKey());
+            byte[] value = valueSerializer.serialize(failedRecord.getTopic(), failedRecord.getValue());
+            futures.add(kafkaTemplate.send(new ProducerRecord<>(targetTopic, null, key, value, headers)).completable());
+        }
+        await(futures, retryTopicsConfig.getSendTimeoutMs());
+    }
+
+    /**
+     * Sends a record that could not be deserialized to the dead letter topic and waits until it is sent. The key or
+     * value that failed is sent with the bytes read from the topic, the one that was deserialized is serialized again.
+     * As such records are sent one by one on the consumer thread, the wait is bounded so that a whole poll of them is
+     * sent within half of max.poll.interval.ms, a record not sent by then fails the batch and is consumed again.
+     *
+     * @param record         the record, with a null key or value for the part that failed.
+     * @param keyException   the exception of the key deserializer, holding the bytes read, null if the key was read.
+     * @param valueException the exception of the value deserializer, holding the bytes read, null if the value was
+     *                       read.
+     */
+    public void publishDeadLetter(ConsumerRecord<?, ?> record, DeserializationException keyException,
+                                  DeserializationException valueException) {
+        DeserializationException exception = valueException != null ? valueException : keyException;
+        String originalTopic = getOriginalTopic(record);
+        Headers headers = originalHeaders(originalTopic, getOriginalPartition(record), getOriginalOffset(record),
+                String.valueOf(exception.getCause()));
+        //serialized for the original topic, so that the schema is the one already registered for it
+        byte[] key = keyException != null ? keyException.getData() :
+                keySerializer.serialize(originalTopic, record.key());
+        byte[] value = valueException != null ? valueException.getData() :
+                valueSerializer.serialize(originalTopic, record.value());
+        String targetTopic = getDeadLetterTopicName(originalTopic);
+        log.warn("Sending record of topic {}, partition {} and offset {} that can not be deserialized to {}",
+                record.topic(), record.partition(), record.offset(), targetTopic, exception);
+        await(List.of(kafkaTemplate.send(new ProducerRecord<>(targetTopic, null, key, value, headers)).completable()),
+                deadLetterTimeoutMs);
+    }
+
+    /**
+     * Starts a failed record of a consumed record, with the topic, partition and offset it was first consumed from
+     * and its number of attempts, read from the retry headers for records of a retry topic.
+     */
+    public static FailedRecord.FailedRecordBuilder failedRecord(ConsumerRecord<?, ?> record) {
+        return FailedRecord.builder()
+                .topic(getOriginalTopic(record))
+                .partition(getOriginalPartition(record))
+                .offset(getOriginalOffset(record))
+                .attempt(getAttempt(record))
+                .key(record.key())
+                .value(record.value());
+    }
+
+    public static String getOriginalTopic(ConsumerRecord<?, ?> record) {
+        String originalTopic = getHeader(record, ORIGINAL_TOPIC_HEADER);
+        return originalTopic == null ? record.topic() : originalTopic;
+    }
+
+    public static int getOriginalPartition(ConsumerRecord<?, ?> record) {
+        String originalPartition = getHeader(record, ORIGINAL_PARTITION_HEADER);
+        return originalPartition == null ? record.partition() : Integer.parseInt(originalPartition);
+    }
+
+    public static long getOriginalOffset(ConsumerRecord<?, ?> record) {
+        String originalOffset = getHeader(record, ORIGINAL_OFFSET_HEADER);
+        return originalOffset == null ? record.offset() : Long.parseLong(originalOffset);
+    }
+
+    /**
+     * @return the number of retries made so far, 0 for a record that was not retried yet.
+     */
+    public static int getAttempt(ConsumerRecord<?, ?> record) {
+        String attempt = getHeader(record, ATTEMPT_HEADER);
+        return attempt == null ? 0 : Integer.parseInt(attempt);
+    }
+
+    /**
+     * @return the time, in epoch millis, at which the record of a retry topic is due to be consumed again.
+     */
+    public static long getDueAt(ConsumerRecord<?, ?> record) {
+        String dueAt = getHeader(record, DUE_AT_HEADER);
+        return dueAt == null ? 0 : Long.parseLong(dueAt);
+    }
+
+    private void await(List<CompletableFuture<?>> futures, long timeoutMs) {
+        try {
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new KafkaConsumerException("Interrupted while sending failed records", e);
+        } catch (ExecutionException | TimeoutException e) {
+            throw new KafkaConsumerException("Error while sending failed records", e);
+        }
+    }
+
+    private static long getDeadLetterTimeoutMs(KafkaConsumerConfigData consumerConfigData) {
+        long timeoutMs = consumerConfigData.getRetryTopics().getSendTimeoutMs();
+        if (consumerConfigData.getMaxPollIntervalMs() != null && consumerConfigData.getMaxPollRecords() != null) {
+            timeoutMs = Math.min(timeoutMs, consumerConfigData.getMaxPollIntervalMs() / 2L /
+                    Math.max(1, consumerConfigData.getMaxPollRecords()));
+        }
+        return timeoutMs;
+    }
+
+    private Serializer<Object> createSerializer(String className, boolean isKey) {
+        Map<String, Object> configs = new HashMap<>();
+        configs.put(kafkaConfigData.getSchemaRegistryUrlKey(), kafkaConfigData.getSchemaRegistryUrl());
+        if (kafkaConfigData.getSchemaCacheFile() != null) {
+            configs.put(SchemaRegistryClient.SCHEMA_CACHE_FILE_CONFIG, kafkaConfigData.getSchemaCacheFile());
+        }
+        try {
+            @SuppressWarnings("unchecked")
+            Serializer<Object> serializer = Utils.newInstance(className, Serializer.class);
+            serializer.configure(configs, isKey);
+            return serializer;
+        } catch (ClassNotFoundException | KafkaException e) {
+            throw new KafkaConsumerException("Could not create serializer " + className, e);
+        }
+    }
+
+    private static Headers originalHeaders(String topic, int partition, long offset, String reason) {
+        Headers headers = new RecordHeaders();
+        headers.add(ORIGINAL_TOPIC_HEADER, toBytes(topic));
+        headers.add(ORIGINAL_PARTITION_HEADER, toBytes(partition));
+        headers.add(ORIGINAL_OFFSET_HEADER, toBytes(offset));
+        if (reason != null) {
+            headers.add(REASON_HEADER, toBytes(reason));
+        }
+        return headers;
+    }
+
+    private static String getHeader(ConsumerRecord<?, ?> record, String key) {
+        Header header = record.headers().lastHeader(key);
+        return header == null ? null : new String(header.value(), StandardCharsets.UTF_8);
+    }
+
+    private static byte[] toBytes(Object value) {
+        return String.valueOf(value).getBytes(StandardCharsets.UTF_8);
+    }
+
+}
@@ -0,0 +1,99 @@
+package com.microservices.kafka.consumer.config.serde;
+
+import com.microservices.kafka.avro.model.TwitterAvroModel;
+import com.microservices.kafka.avro.serde.AvroWireFormat;
+import com.microservices.kafka.avro.serde.SchemaRegistryClient;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.EncoderFactory;
+import org.apache.avro.specific.SpecificDatumWriter;
+import org.apache.kafka.common.errors.SerializationException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class ReusableKafkaAvroDeserializerTest {
+
+    private static final String TOPIC = "twitter-topic";
+    private static final int SCHEMA_ID = 7;
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void readsRecordsInTheRegistryWireFormat() throws IOException {
+        ReusableKafkaAvroDeserializer<TwitterAvroModel> deserializer = createDeserializer();
+        List<TwitterAvroModel> tweets = List.of(
+                tweet(1, "kafka streams tweets into elasticsearch", 1620000000000L),
+                tweet(2, null, null),
+                tweet(3, "a much longer tweet ".repeat(100), 1620000000001L));
+        for (TwitterAvroModel tweet : tweets) {
+            assertEquals(tweet, deserializer.deserialize(TOPIC, write(tweet)));
+        }
+    }
+
+    @Test
+    public void returnsANewRecordForEveryMessage() throws IOException {
+        ReusableKafkaAvroDeserializer<TwitterAvroModel> deserializer = createDeserializer();
+        byte[] data = write(tweet(1, "tweet", null));
+        assertNotSame(deserializer.deserialize(TOPIC, data), deserializer.deserialize(TOPIC, data));
+    }
+
+    @Test
+    public void rejectsDataWithoutHeader() throws IOException {
+        ReusableKafkaAvroDeserializer<TwitterAvroModel> deserializer = createDeserializer();
+        byte[] data = write(tweet(1, "tweet", null));
+        data[0] = 1;
+        assertThrows(SerializationException.class, () -> deserializer.deserialize(TOPIC, data));
+        assertNull(deserializer.deserialize(TOPIC, null));
+    }
+
+    /**
+     * The writer schema comes from a schema cache file, so no registry is needed.
+     */
+    private ReusableKafkaAvroDeserializer<TwitterAvroModel> createDeserializer() throws IOException {
+        Path cacheFile = tempDir.resolve("schema-cache.json");
+        String schema = TwitterAvroModel.getClassSchema().toString().replace("\\", "\\\\").replace("\"", "\\\"");
+        Files.write(cacheFile, ("[{\"subject\": null, \"id\": " + SCHEMA_ID + ", \"schema\": \"" + schema + "\"}]")
+                .getBytes(StandardCharsets.UTF_8));
+        ReusableKafkaAvroDeserializer<TwitterAvroModel> deserializer = new ReusableKafkaAvroDeserializer<>();
+        deserializer.configure(Map.of(ReusableKafkaAvroDeserializer.SCHEMA_REGISTRY_URL_CONFIG, "http://localhost:1",
+                SchemaRegistryClient.SCHEMA_CACHE_FILE_CONFIG, cacheFile.toString()), false);
+        return deserializer;
+    }
+
+    /**
+     * Writes a record with the plain avro datum writer, in the registry wire format.
+     */
+    private static byte[] write(TwitterAvroModel tweet) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        byte[] header = new byte[AvroWireFormat.HEADER_SIZE];
+        AvroWireFormat.writeHeader(header, SCHEMA_ID);
+        outputStream.write(header);
+        BinaryEncoder encoder = EncoderFactory.get().binaryEncoder(outputStream, null);
+        new SpecificDatumWriter<>(TwitterAvroModel.class).write(tweet, encoder);
+        encoder.flush();
+        return outputStream.toByteArray();
+    }
+
+    private static TwitterAvroModel tweet(long id, String text, Long createdAt) {
+        return TwitterAvroModel.newBuilder()
+                .setId(id)
+                .setUserId(id * 10)
+                .setText(text)
+                .setCreatedAt(createdAt)
+                .build();
+    }
+
+}
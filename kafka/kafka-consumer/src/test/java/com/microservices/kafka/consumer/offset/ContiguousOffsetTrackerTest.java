@@ -0,0 +1,110 @@
+package com.microservices.kafka.consumer.offset;
+
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ContiguousOffsetTrackerTest {
+
+    private static final TopicPartition PARTITION = new TopicPartition("twitter-topic", 0);
+    private static final List<TopicPartition> ASSIGNMENT = List.of(PARTITION);
+
+    @Test
+    public void commitsUpToTheFirstRecordInFlight() {
+        ContiguousOffsetTracker tracker = new ContiguousOffsetTracker();
+        for (long offset = 0; offset < 5; offset++) {
+            assertTrue(tracker.dispatch(PARTITION, offset));
+        }
+        tracker.acknowledged(PARTITION, 0);
+        tracker.acknowledged(PARTITION, 1);
+        tracker.acknowledged(PARTITION, 3);
+        assertEquals(2, tracker.getInFlight());
+
+        OffsetAndMetadata committed = tracker.committableOffsets(ASSIGNMENT).get(PARTITION);
+        assertEquals(2, committed.offset());
+        assertFalse(committed.metadata().isEmpty());
+        assertTrue(tracker.committableOffsets(ASSIGNMENT).isEmpty());
+
+        tracker.acknowledged(PARTITION, 2);
+        assertEquals(new OffsetAndMetadata(4, ""), tracker.committableOffsets(ASSIGNMENT).get(PARTITION));
+        tracker.acknowledged(PARTITION, 4);
+        assertEquals(new OffsetAndMetadata(5, ""), tracker.committableOffsets(ASSIGNMENT).get(PARTITION));
+        assertEquals(0, tracker.getInFlight());
+    }
+
+    @Test
+    public void skipsTheRecordsCompletedBeforeTheRestore() {
+        ContiguousOffsetTracker tracker = new ContiguousOffsetTracker();
+        tracker.restore(PARTITION, new OffsetAndMetadata(10));
+        for (long offset = 10; offset < 20; offset++) {
+            assertTrue(tracker.dispatch(PARTITION, offset));
+            if (offset != 12 && offset != 15) {
+                tracker.acknowledged(PARTITION, offset);
+            }
+        }
+        OffsetAndMetadata committed = tracker.committableOffsets(ASSIGNMENT).get(PARTITION);
+        assertEquals(12, committed.offset());
+
+        ContiguousOffsetTracker restored = new ContiguousOffsetTracker();
+        restored.restore(PARTITION, committed);
+        for (long offset = 12; offset < 20; offset++) {
+            assertEquals(offset == 12 || offset == 15, restored.dispatch(PARTITION, offset), "offset " + offset);
+        }
+        assertTrue(restored.dispatch(PARTITION, 20));
+        assertEquals(3, restored.getInFlight());
+    }
+
+    @Test
+    public void keepsTheRestoredMapCommittedUntilItsRecordsAreDispatched() {
+        ContiguousOffsetTracker tracker = new ContiguousOffsetTracker();
+        OffsetAndMetadata committed = new OffsetAndMetadata(12, mapOf(12, 19, 12L, 15L));
+        tracker.restore(PARTITION, committed);
+        assertTrue(tracker.committableOffsets(ASSIGNMENT).isEmpty());
+
+        assertTrue(tracker.dispatch(PARTITION, 12));
+        tracker.acknowledged(PARTITION, 12);
+        assertFalse(tracker.dispatch(PARTITION, 13));
+        //committing 14 without a map now would lose that 16 to 19 were completed
+        assertTrue(tracker.committableOffsets(ASSIGNMENT).isEmpty());
+
+        assertFalse(tracker.dispatch(PARTITION, 14));
+        assertTrue(tracker.dispatch(PARTITION, 15));
+        for (long offset = 16; offset < 20; offset++) {
+            assertFalse(tracker.dispatch(PARTITION, offset));
+        }
+        committed = tracker.committableOffsets(ASSIGNMENT).get(PARTITION);
+        assertEquals(15, committed.offset());
+        assertEquals(mapOf(15, 19, 15L), committed.metadata());
+        tracker.acknowledged(PARTITION, 15);
+        assertEquals(new OffsetAndMetadata(20, ""), tracker.committableOffsets(ASSIGNMENT).get(PARTITION));
+    }
+
+    @Test
+    public void forgetsRemovedPartitions() {
+        ContiguousOffsetTracker tracker = new ContiguousOffsetTracker();
+        TopicPartition other = new TopicPartition("twitter-topic", 1);
+        tracker.dispatch(PARTITION, 0);
+        tracker.dispatch(PARTITION, 1);
+        tracker.dispatch(other, 0);
+        tracker.remove(ASSIGNMENT);
+        assertEquals(1, tracker.getInFlight());
+
+        tracker.acknowledged(PARTITION, 0);
+        assertEquals(1, tracker.getInFlight());
+        Map<TopicPartition, OffsetAndMetadata> offsets = tracker.committableOffsets(List.of(PARTITION, other));
+        assertEquals(Map.of(other, new OffsetAndMetadata(0, "")), offsets);
+    }
+
+    private static String mapOf(long committedOffset, long highestDispatched, Long... pending) {
+        return OffsetMap.encode(committedOffset, highestDispatched, new TreeSet<>(List.of(pending)));
+    }
+
+}
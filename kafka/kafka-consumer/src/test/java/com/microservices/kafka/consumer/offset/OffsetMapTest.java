@@ -0,0 +1,88 @@
+package com.microservices.kafka.consumer.offset;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.NavigableSet;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class OffsetMapTest {
+
+    @Test
+    public void marksTheOffsetsThatAreNotPendingAsCompleted() {
+        NavigableSet<Long> pending = new TreeSet<>();
+        pending.add(100L);
+        pending.add(105L);
+        pending.add(117L);
+        OffsetMap offsetMap = OffsetMap.decode(100, OffsetMap.encode(100, 120, pending));
+        assertNotNull(offsetMap);
+        assertEquals(120, offsetMap.getHighestOffset());
+        for (long offset = 90; offset <= 130; offset++) {
+            boolean completed = offset > 100 && offset <= 120 && offset != 105 && offset != 117;
+            assertEquals(completed, offsetMap.isCompleted(offset), "offset " + offset);
+        }
+    }
+
+    @Test
+    public void roundTripsRandomPendingOffsets() {
+        Random random = new Random(42);
+        for (int run = 0; run < 100; run++) {
+            long committedOffset = random.nextInt(1000000);
+            long highestDispatched = committedOffset + 1 + random.nextInt(5000);
+            NavigableSet<Long> pending = new TreeSet<>();
+            pending.add(committedOffset);
+            for (long offset = committedOffset + 1; offset <= highestDispatched; offset++) {
+                if (random.nextInt(4) == 0) {
+                    pending.add(offset);
+                }
+            }
+            String metadata = OffsetMap.encode(committedOffset, highestDispatched, pending);
+            OffsetMap offsetMap = OffsetMap.decode(committedOffset, metadata);
+            assertNotNull(offsetMap, metadata);
+            assertEquals(highestDispatched, offsetMap.getHighestOffset());
+            for (long offset = committedOffset + 1; offset <= highestDispatched; offset++) {
+                assertEquals(!pending.contains(offset), offsetMap.isCompleted(offset), "offset " + offset);
+            }
+            assertFalse(offsetMap.isCompleted(committedOffset));
+            assertFalse(offsetMap.isCompleted(highestDispatched + 1));
+        }
+    }
+
+    @Test
+    public void encodesNothingWhenEveryRecordIsCommitted() {
+        assertEquals("", OffsetMap.encode(10, 9, new TreeSet<>()));
+        NavigableSet<Long> pending = new TreeSet<>();
+        pending.add(10L);
+        assertEquals("", OffsetMap.encode(10, 10, pending));
+    }
+
+    @Test
+    public void leavesOutMapsThatDoNotFitInTheMetadata() {
+        NavigableSet<Long> pending = new TreeSet<>();
+        pending.add(0L);
+        pending.add(20000L);
+        assertNotNull(OffsetMap.decode(0, OffsetMap.encode(0, 20000, pending)));
+        pending.add(24000L);
+        assertEquals("", OffsetMap.encode(0, 24000, pending));
+        assertEquals("", OffsetMap.encode(0, 1000000, pending));
+    }
+
+    @Test
+    public void decodesMetadataItDidNotWriteAsNoMap() {
+        assertNull(OffsetMap.decode(10, null));
+        assertNull(OffsetMap.decode(10, ""));
+        assertNull(OffsetMap.decode(10, "12"));
+        assertNull(OffsetMap.decode(10, "x:AQ"));
+        assertNull(OffsetMap.decode(10, "5:!!!"));
+        OffsetMap offsetMap = OffsetMap.decode(10, "5:AQ");
+        assertNotNull(offsetMap);
+        assertTrue(offsetMap.isCompleted(15));
+    }
+
+}
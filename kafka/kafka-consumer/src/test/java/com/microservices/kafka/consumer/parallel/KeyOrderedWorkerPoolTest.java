@@ -0,0 +1,87 @@
+package com.microservices.kafka.consumer.parallel;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class KeyOrderedWorkerPoolTest {
+
+    @Test
+    public void refusesItemsWhileTheLaneOfTheKeyIsFull() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(4);
+        List<String> handled = new ArrayList<>();
+        try (KeyOrderedWorkerPool<String> pool = new KeyOrderedWorkerPool<>("test-lane", 1, 2, 10, items -> {
+            started.countDown();
+            await(release);
+            synchronized (handled) {
+                handled.addAll(items);
+            }
+            items.forEach(item -> done.countDown());
+        })) {
+            assertTrue(pool.offer("key", "a"));
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+            assertTrue(pool.offer("key", "b"));
+            assertTrue(pool.offer("key", "c"));
+            //returns at once instead of waiting for the lane
+            assertFalse(pool.offer("key", "d"));
+
+            release.countDown();
+            while (!pool.offer("key", "d")) {
+                Thread.sleep(10);
+            }
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+        }
+        assertEquals(List.of("a", "b", "c", "d"), handled);
+    }
+
+    @Test
+    public void keepsTheOrderOfEveryKey() throws InterruptedException {
+        int keys = 10;
+        int itemsPerKey = 1000;
+        CountDownLatch done = new CountDownLatch(keys * itemsPerKey);
+        List<List<Integer>> handled = new ArrayList<>();
+        for (int key = 0; key < keys; key++) {
+            handled.add(new ArrayList<>());
+        }
+        try (KeyOrderedWorkerPool<int[]> pool = new KeyOrderedWorkerPool<>("test-lane", 4, 100, 50, items -> {
+            for (int[] item : items) {
+                synchronized (handled) {
+                    handled.get(item[0]).add(item[1]);
+                }
+                done.countDown();
+            }
+        })) {
+            for (int i = 0; i < itemsPerKey; i++) {
+                for (int key = 0; key < keys; key++) {
+                    while (!pool.offer(key, new int[]{key, i})) {
+                        Thread.sleep(1);
+                    }
+                }
+            }
+            assertTrue(done.await(30, TimeUnit.SECONDS));
+        }
+        for (List<Integer> items : handled) {
+            for (int i = 0; i < itemsPerKey; i++) {
+                assertEquals(i, items.get(i));
+            }
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
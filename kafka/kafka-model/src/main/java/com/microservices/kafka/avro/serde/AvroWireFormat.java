@@ -0,0 +1,35 @@
+package com.microservices.kafka.avro.serde;
+
+/**
+ * AvroWireFormat describes the schema registry wire format of avro records: a zero magic byte, the four byte
+ * big endian id of the writer schema in the registry, then the avro binary encoding of the record.
+ */
+public final class AvroWireFormat {
+
+    public static final byte MAGIC_BYTE = 0x0;
+    public static final int SCHEMA_ID_SIZE = 4;
+    public static final int HEADER_SIZE = 1 + SCHEMA_ID_SIZE;
+
+    private AvroWireFormat() {
+    }
+
+    public static void writeHeader(byte[] buffer, int schemaId) {
+        buffer[0] = MAGIC_BYTE;
+        buffer[1] = (byte) (schemaId >>> 24);
+        buffer[2] = (byte) (schemaId >>> 16);
+        buffer[3] = (byte) (schemaId >>> 8);
+        buffer[4] = (byte) schemaId;
+    }
+
+    /**
+     * @param data the serialized record.
+     * @return the id of the writer schema of the record.
+     */
+    public static int readSchemaId(byte[] data) {
+        if (data.length < HEADER_SIZE || data[0] != MAGIC_BYTE) {
+            throw new SchemaRegistryException("Unknown magic byte, the data is not in the schema registry format");
+        }
+        return ((data[1] & 0xff) << 24) | ((data[2] & 0xff) << 16) | ((data[3] & 0xff) << 8) | (data[4] & 0xff);
+    }
+
+}
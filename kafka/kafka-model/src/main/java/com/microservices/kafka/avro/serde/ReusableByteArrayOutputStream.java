@@ -0,0 +1,30 @@
+package com.microservices.kafka.avro.serde;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * ReusableByteArrayOutputStream is a ByteArrayOutputStream that starts writing after a reserved header
+ * and gives access to its buffer, so that the header can be filled in place and the buffer reused for every record.
+ */
+public class ReusableByteArrayOutputStream extends ByteArrayOutputStream {
+
+    public ReusableByteArrayOutputStream(int size) {
+        super(size);
+    }
+
+    /**
+     * Empties the stream, keeping the first headerSize bytes for the caller to fill.
+     */
+    public void reset(int headerSize) {
+        reset();
+        if (buf.length < headerSize) {
+            buf = new byte[headerSize];
+        }
+        count = headerSize;
+    }
+
+    public byte[] getBuffer() {
+        return buf;
+    }
+
+}
@@ -0,0 +1,216 @@
+package com.microservices.kafka.avro.serde;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import org.apache.avro.Schema;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * SchemaRegistryClient looks up schemas and schema ids in the schema registry through its REST API and caches them,
+ * so that the registry is only asked once for every schema. The schema registry url may list several urls
+ * separated by commas, which are tried in order.
+ * With a cache file, every subject, id and schema learned from the registry is also written to the file, and the
+ * file is loaded again on the next start. Schemas found in the file are served without asking the registry,
+ * so a service can start and produce while the registry is not reachable.
+ */
+public class SchemaRegistryClient {
+
+    public static final String SCHEMA_CACHE_FILE_CONFIG = "schema.cache.file";
+
+    private static final Logger log = LoggerFactory.getLogger(SchemaRegistryClient.class);
+
+    private static final String CONTENT_TYPE = "application/vnd.schemaregistry.v1+json";
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(10);
+    private static final Map<String, SchemaRegistryClient> CLIENTS = new ConcurrentHashMap<>();
+
+    private final String[] baseUrls;
+    private final Path cacheFile;
+    private final HttpClient httpClient;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Map<String, Map<Schema, Integer>> schemaIdsBySubject = new ConcurrentHashMap<>();
+    private final Map<Integer, Schema> schemasById = new ConcurrentHashMap<>();
+
+    public SchemaRegistryClient(String schemaRegistryUrl) {
+        this(schemaRegistryUrl, null);
+    }
+
+    /**
+     * @param schemaRegistryUrl the url of the schema registry.
+     * @param cacheFile         the file to keep the learned schemas in, null to only cache them in memory.
+     */
+    public SchemaRegistryClient(String schemaRegistryUrl, Path cacheFile) {
+        this.baseUrls = schemaRegistryUrl.split(",");
+        this.cacheFile = cacheFile;
+        this.httpClient = HttpClient.newBuilder().connectTimeout(REQUEST_TIMEOUT).build();
+        if (cacheFile != null) {
+            loadCacheFile();
+        }
+    }
+
+    /**
+     * @return the client shared by all serializers and deserializers of the schema registry url.
+     */
+    public static SchemaRegistryClient forUrl(String schemaRegistryUrl) {
+        return forUrl(schemaRegistryUrl, null);
+    }
+
+    /**
+     * @param schemaRegistryUrl the url of the schema registry.
+     * @param cacheFile         the cache file, null or empty to only cache schemas in memory.
+     * @return the client shared by all serializers and deserializers of the schema registry url and cache file.
+     */
+    public static SchemaRegistryClient forUrl(String schemaRegistryUrl, String cacheFile) {
+        boolean persistent = cacheFile != null && !cacheFile.isBlank();
+        return CLIENTS.computeIfAbsent(persistent ? schemaRegistryUrl + "|" + cacheFile : schemaRegistryUrl,
+                key -> new SchemaRegistryClient(schemaRegistryUrl, persistent ? Paths.get(cacheFile) : null));
+    }
+
+    /**
+     * @return true if the id of the schema under the subject is known without asking the registry.
+     */
+    public boolean isCached(String subject, Schema schema) {
+        Map<Schema, Integer> schemaIds = schemaIdsBySubject.get(subject);
+        return schemaIds != null && schemaIds.containsKey(schema);
+    }
+
+    /**
+     * Gets the id of the schema under the subject, registering the schema first if asked to.
+     *
+     * @param subject  the subject of the schema, the topic name with a -value suffix for record values.
+     * @param schema   the schema.
+     * @param register whether to register the schema if the subject does not have it yet.
+     * @return the id of the schema in the registry.
+     */
+    public int getId(String subject, Schema schema, boolean register) {
+        Map<Schema, Integer> schemaIds = schemaIdsBySubject.computeIfAbsent(subject, s -> new ConcurrentHashMap<>());
+        Integer schemaId = schemaIds.get(schema);
+        if (schemaId == null) {
+            String path = register ? "/subjects/" + encode(subject) + "/versions" : "/subjects/" + encode(subject);
+            JsonNode response = request(path, objectMapper.createObjectNode().put("schema", schema.toString()));
+            schemaId = response.get("id").asInt();
+            schemaIds.put(schema, schemaId);
+            schemasById.putIfAbsent(schemaId, schema);
+            writeCacheFile();
+        }
+        return schemaId;
+    }
+
+    public Schema getSchema(int schemaId) {
+        Schema schema = schemasById.get(schemaId);
+        if (schema == null) {
+            JsonNode response = request("/schemas/ids/" + schemaId, null);
+            schema = new Schema.Parser().parse(response.get("schema").asText());
+            schemasById.put(schemaId, schema);
+            writeCacheFile();
+        }
+        return schema;
+    }
+
+    private void loadCacheFile() {
+        if (!Files.exists(cacheFile)) {
+            return;
+        }
+        try {
+            for (JsonNode entry : objectMapper.readTree(cacheFile.toFile())) {
+                int schemaId = entry.get("id").asInt();
+                Schema schema = new Schema.Parser().parse(entry.get("schema").asText());
+                schemasById.put(schemaId, schema);
+                JsonNode subject = entry.get("subject");
+                if (subject != null && !subject.isNull()) {
+                    schemaIdsBySubject.computeIfAbsent(subject.asText(), s -> new ConcurrentHashMap<>())
+                            .put(schema, schemaId);
+                }
+            }
+            log.info("Loaded {} schemas from schema cache file {}", schemasById.size(), cacheFile);
+        } catch (IOException | RuntimeException e) {
+            //a broken cache file only costs registry round trips, the registry stays the source of truth
+            log.warn("Could not read schema cache file {}, ignoring it", cacheFile, e);
+            schemasById.clear();
+            schemaIdsBySubject.clear();
+        }
+    }
+
+    /**
+     * Writes every known schema to the cache file, through a temporary file so that a crash never leaves
+     * a partially written cache behind.
+     */
+    private synchronized void writeCacheFile() {
+        if (cacheFile == null) {
+            return;
+        }
+        ArrayNode entries = objectMapper.createArrayNode();
+        Set<Integer> written = new HashSet<>();
+        schemaIdsBySubject.forEach((subject, schemaIds) -> schemaIds.forEach((schema, schemaId) -> {
+            entries.addObject().put("subject", subject).put("id", schemaId).put("schema", schema.toString());
+            written.add(schemaId);
+        }));
+        schemasById.forEach((schemaId, schema) -> {
+            if (!written.contains(schemaId)) {
+                entries.addObject().putNull("subject").put("id", schemaId).put("schema", schema.toString());
+            }
+        });
+        try {
+            Path parent = cacheFile.toAbsolutePath().getParent();
+            Files.createDirectories(parent);
+            Path tempFile = Files.createTempFile(parent, cacheFile.getFileName().toString(), ".tmp");
+            objectMapper.writerWithDefaultPrettyPrinter().writeValue(tempFile.toFile(), entries);
+            Files.move(tempFile, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            //the schema is still cached in memory, only the next start has to ask the registry again
+            log.warn("Could not write schema cache file {}", cacheFile, e);
+        }
+    }
+
+    private JsonNode request(String path, JsonNode body) {
+        SchemaRegistryException lastException = null;
+        for (String baseUrl : baseUrls) {
+            try {
+                HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(baseUrl.trim() + path))
+                        .timeout(REQUEST_TIMEOUT)
+                        .header("Accept", CONTENT_TYPE);
+                if (body != null) {
+                    request.header("Content-Type", CONTENT_TYPE)
+                            .POST(HttpRequest.BodyPublishers.ofString(objectMapper.writeValueAsString(body)));
+                }
+                HttpResponse<String> response = httpClient.send(request.build(),
+                        HttpResponse.BodyHandlers.ofString());
+                if (response.statusCode() / 100 != 2) {
+                    //the registry answered, another url would not answer differently
+                    throw new SchemaRegistryException("Schema registry request " + path + " failed with status " +
+                            response.statusCode() + ": " + response.body());
+                }
+                return objectMapper.readTree(response.body());
+            } catch (IOException e) {
+                lastException = new SchemaRegistryException("Schema registry " + baseUrl + " is not reachable", e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SchemaRegistryException("Interrupted while calling the schema registry", e);
+            }
+        }
+        throw lastException;
+    }
+
+    private static String encode(String subject) {
+        return URLEncoder.encode(subject, StandardCharsets.UTF_8);
+    }
+
+}
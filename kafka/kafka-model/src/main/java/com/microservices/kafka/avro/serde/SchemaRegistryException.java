@@ -0,0 +1,13 @@
+package com.microservices.kafka.avro.serde;
+
+public class SchemaRegistryException extends RuntimeException {
+
+    public SchemaRegistryException(String message) {
+        super(message);
+    }
+
+    public SchemaRegistryException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+}
@@ -0,0 +1,36 @@
+package com.microservices.kafka.avro.serde;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class AvroWireFormatTest {
+
+    @Test
+    public void readsTheSchemaIdOfTheHeader() {
+        for (int schemaId : new int[]{0, 1, 255, 256, 65536, 0x7f_ff_ff_ff, -1, Integer.MIN_VALUE}) {
+            byte[] data = new byte[AvroWireFormat.HEADER_SIZE + 3];
+            AvroWireFormat.writeHeader(data, schemaId);
+            assertEquals(AvroWireFormat.MAGIC_BYTE, data[0]);
+            assertEquals(schemaId, AvroWireFormat.readSchemaId(data));
+        }
+    }
+
+    @Test
+    public void writesTheSchemaIdBigEndian() {
+        byte[] data = new byte[AvroWireFormat.HEADER_SIZE];
+        AvroWireFormat.writeHeader(data, 0x01020304);
+        assertEquals(1, data[1]);
+        assertEquals(2, data[2]);
+        assertEquals(3, data[3]);
+        assertEquals(4, data[4]);
+    }
+
+    @Test
+    public void rejectsDataWithoutHeader() {
+        assertThrows(SchemaRegistryException.class, () -> AvroWireFormat.readSchemaId(new byte[]{1, 0, 0, 0, 1}));
+        assertThrows(SchemaRegistryException.class, () -> AvroWireFormat.readSchemaId(new byte[]{0, 0, 0}));
+    }
+
+}
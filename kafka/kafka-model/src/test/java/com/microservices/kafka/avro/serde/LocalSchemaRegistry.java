@@ -0,0 +1,160 @@
+package com.microservices.kafka.avro.serde;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.avro.Schema;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * LocalSchemaRegistry is an in memory stand-in for the schema registry, for tests.
+ * It serves the part of the schema registry REST API that the SchemaRegistryClient and the KafkaAdminClient use:
+ * the status on the root path, registering a schema under a subject, looking up a schema under a subject
+ * and getting a schema by id. Equal schemas get the same id, also under different subjects.
+ */
+public class LocalSchemaRegistry implements AutoCloseable {
+
+    private static final String CONTENT_TYPE = "application/vnd.schemaregistry.v1+json";
+    private static final String SUBJECTS_PATH = "/subjects/";
+    private static final String SCHEMAS_BY_ID_PATH = "/schemas/ids/";
+    private static final String VERSIONS_SUFFIX = "/versions";
+
+    private final HttpServer httpServer;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Map<Schema, Integer> schemaIds = new HashMap<>();
+    private final List<Schema> schemas = new ArrayList<>();
+    private final Map<String, List<Integer>> subjectVersions = new HashMap<>();
+
+    private LocalSchemaRegistry(int port) throws IOException {
+        httpServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        httpServer.createContext("/", this::handle);
+    }
+
+    /**
+     * Starts a stand-in registry on a free port of the loopback address.
+     */
+    public static LocalSchemaRegistry start() throws IOException {
+        return start(0);
+    }
+
+    public static LocalSchemaRegistry start(int port) throws IOException {
+        LocalSchemaRegistry registry = new LocalSchemaRegistry(port);
+        registry.httpServer.start();
+        return registry;
+    }
+
+    public String getUrl() {
+        return "http://" + httpServer.getAddress().getHostString() + ":" + httpServer.getAddress().getPort();
+    }
+
+    @Override
+    public void close() {
+        httpServer.stop(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            handleRequest(exchange);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void handleRequest(HttpExchange exchange) throws IOException {
+        try {
+            String path = exchange.getRequestURI().getRawPath();
+            boolean post = "POST".equals(exchange.getRequestMethod());
+            if (post && path.startsWith(SUBJECTS_PATH) && path.endsWith(VERSIONS_SUFFIX)) {
+                String subject = decode(path.substring(SUBJECTS_PATH.length(),
+                        path.length() - VERSIONS_SUFFIX.length()));
+                respond(exchange, 200, objectMapper.createObjectNode().put("id", register(subject,
+                        readSchema(exchange))));
+            } else if (post && path.startsWith(SUBJECTS_PATH)) {
+                String subject = decode(path.substring(SUBJECTS_PATH.length()));
+                respond(exchange, lookUp(subject, readSchema(exchange)));
+            } else if (path.startsWith(SCHEMAS_BY_ID_PATH)) {
+                respond(exchange, getSchema(Integer.parseInt(path.substring(SCHEMAS_BY_ID_PATH.length()))));
+            } else if ("/".equals(path)) {
+                respond(exchange, 200, objectMapper.createObjectNode());
+            } else {
+                respond(exchange, 404, error(404, "Not found"));
+            }
+        } catch (RuntimeException e) {
+            respond(exchange, 500, error(500, e.getMessage()));
+        }
+    }
+
+    private synchronized int register(String subject, Schema schema) {
+        Integer schemaId = schemaIds.get(schema);
+        if (schemaId == null) {
+            schemas.add(schema);
+            schemaId = schemas.size();
+            schemaIds.put(schema, schemaId);
+        }
+        List<Integer> versions = subjectVersions.computeIfAbsent(subject, s -> new ArrayList<>());
+        if (!versions.contains(schemaId)) {
+            versions.add(schemaId);
+        }
+        return schemaId;
+    }
+
+    private synchronized JsonNode lookUp(String subject, Schema schema) {
+        Integer schemaId = schemaIds.get(schema);
+        List<Integer> versions = subjectVersions.get(subject);
+        if (schemaId == null || versions == null || !versions.contains(schemaId)) {
+            return error(40403, "Schema not found");
+        }
+        return objectMapper.createObjectNode()
+                .put("subject", subject)
+                .put("version", versions.indexOf(schemaId) + 1)
+                .put("id", schemaId)
+                .put("schema", schema.toString());
+    }
+
+    private synchronized JsonNode getSchema(int schemaId) {
+        if (schemaId < 1 || schemaId > schemas.size()) {
+            return error(40403, "Schema not found");
+        }
+        return objectMapper.createObjectNode().put("schema", schemas.get(schemaId - 1).toString());
+    }
+
+    private Schema readSchema(HttpExchange exchange) throws IOException {
+        JsonNode request = objectMapper.readTree(exchange.getRequestBody());
+        return new Schema.Parser().parse(request.get("schema").asText());
+    }
+
+    private ObjectNode error(int errorCode, String message) {
+        return objectMapper.createObjectNode().put("error_code", errorCode).put("message", message);
+    }
+
+    private void respond(HttpExchange exchange, JsonNode body) throws IOException {
+        JsonNode errorCode = body.get("error_code");
+        respond(exchange, errorCode == null ? 200 : 404, body);
+    }
+
+    private void respond(HttpExchange exchange, int status, JsonNode body) throws IOException {
+        byte[] response = objectMapper.writeValueAsBytes(body);
+        exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+        exchange.sendResponseHeaders(status, response.length);
+        try (OutputStream responseBody = exchange.getResponseBody()) {
+            responseBody.write(response);
+        }
+    }
+
+    private static String decode(String value) {
+        return URLDecoder.decode(value, StandardCharsets.UTF_8);
+    }
+
+}
@@ -0,0 +1,82 @@
+package com.microservices.kafka.avro.serde;
+
+import com.microservices.kafka.avro.model.TwitterAvroModel;
+import org.apache.avro.Schema;
+import org.apache.avro.SchemaBuilder;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SchemaRegistryClientTest {
+
+    private static final String SUBJECT = "twitter-topic-value";
+    private static final String UNREACHABLE_URL = "http://localhost:1";
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void servesSchemasFromTheCacheFileWithoutTheRegistry() throws IOException {
+        Path cacheFile = tempDir.resolve("schema-cache.json");
+        Schema schema = TwitterAvroModel.getClassSchema();
+        Schema otherSchema = SchemaBuilder.record("Other").fields().requiredLong("id").endRecord();
+        int schemaId;
+        int otherSchemaId;
+        try (LocalSchemaRegistry registry = LocalSchemaRegistry.start()) {
+            SchemaRegistryClient client = new SchemaRegistryClient(registry.getUrl(), cacheFile);
+            schemaId = client.getId(SUBJECT, schema, true);
+            otherSchemaId = new SchemaRegistryClient(registry.getUrl())
+                    .getId("other-topic-value", otherSchema, true);
+            assertEquals(otherSchema, client.getSchema(otherSchemaId));
+        }
+        assertTrue(Files.exists(cacheFile));
+
+        SchemaRegistryClient restartedClient = new SchemaRegistryClient(UNREACHABLE_URL, cacheFile);
+        assertTrue(restartedClient.isCached(SUBJECT, schema));
+        assertEquals(schemaId, restartedClient.getId(SUBJECT, schema, false));
+        assertEquals(schema, restartedClient.getSchema(schemaId));
+        assertEquals(otherSchema, restartedClient.getSchema(otherSchemaId));
+        assertFalse(restartedClient.isCached("other-topic-value", otherSchema));
+    }
+
+    @Test
+    public void triesTheNextUrlWhenARegistryIsNotReachable() throws IOException {
+        try (LocalSchemaRegistry registry = LocalSchemaRegistry.start()) {
+            SchemaRegistryClient client = new SchemaRegistryClient(UNREACHABLE_URL + "," + registry.getUrl());
+            int schemaId = client.getId(SUBJECT, TwitterAvroModel.getClassSchema(), true);
+            assertEquals(TwitterAvroModel.getClassSchema(),
+                    new SchemaRegistryClient(registry.getUrl()).getSchema(schemaId));
+        }
+    }
+
+    @Test
+    public void failsForUnknownSubjectsWithoutRegistering() throws IOException {
+        try (LocalSchemaRegistry registry = LocalSchemaRegistry.start()) {
+            SchemaRegistryClient client = new SchemaRegistryClient(registry.getUrl());
+            assertThrows(SchemaRegistryException.class,
+                    () -> client.getId(SUBJECT, TwitterAvroModel.getClassSchema(), false));
+        }
+    }
+
+    @Test
+    public void ignoresABrokenCacheFile() throws IOException {
+        Path cacheFile = tempDir.resolve("schema-cache.json");
+        Files.writeString(cacheFile, "[{\"id\": 1, \"schema\": \"not a schema");
+        try (LocalSchemaRegistry registry = LocalSchemaRegistry.start()) {
+            SchemaRegistryClient client = new SchemaRegistryClient(registry.getUrl(), cacheFile);
+            assertFalse(client.isCached(SUBJECT, TwitterAvroModel.getClassSchema()));
+            assertEquals(1, client.getId(SUBJECT, TwitterAvroModel.getClassSchema(), true));
+        }
+        assertTrue(new SchemaRegistryClient(UNREACHABLE_URL, cacheFile)
+                .isCached(SUBJECT, TwitterAvroModel.getClassSchema()));
+    }
+
+}
@@ -2,7 +2,11 @@ package com.microservices.kafka.producer.config;
 
 import com.microservices.config.KafkaConfigData;
 import com.microservices.config.KafkaProducerConfigData;
+import com.microservices.kafka.avro.serde.SchemaRegistryClient;
+import com.microservices.kafka.producer.config.partitioner.HotKeyPartitioner;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.apache.avro.specific.SpecificRecordBase;
 import org.apache.kafka.clients.producer.ProducerConfig;
 import org.springframework.context.annotation.Bean;
@@ -12,21 +16,31 @@ import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.kafka.core.ProducerFactory;
 
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
+@Slf4j
 @Configuration
 @RequiredArgsConstructor
 public class KafkaProducerConfig<K extends Serializable, V extends SpecificRecordBase> {
 
+    //the most in flight requests per connection for which the idempotent producer still keeps the order of the records
+    private static final int MAX_IDEMPOTENT_IN_FLIGHT_REQUESTS = 5;
+
     private final KafkaConfigData kafkaConfigData;
     private final KafkaProducerConfigData kafkaProducerConfigData;
+    private final MeterRegistry meterRegistry;
 
     @Bean
     public Map<String, Object> producerConfig() {
         Map<String, Object> props = new HashMap<>();
         props.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, kafkaConfigData.getBootstrapServers());
         props.put(kafkaConfigData.getSchemaRegistryUrlKey(), kafkaConfigData.getSchemaRegistryUrl());
+        if (kafkaConfigData.getSchemaCacheFile() != null) {
+            props.put(SchemaRegistryClient.SCHEMA_CACHE_FILE_CONFIG, kafkaConfigData.getSchemaCacheFile());
+        }
         props.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, kafkaProducerConfigData.getKeySerializerClass());
         props.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, kafkaProducerConfigData.getValueSerializerClass());
         props.put(ProducerConfig.BATCH_SIZE_CONFIG, kafkaProducerConfigData.getBatchSize() *
@@ -36,6 +50,16 @@ public class KafkaProducerConfig<K extends Serializable, V extends SpecificRecor
         props.put(ProducerConfig.ACKS_CONFIG, kafkaProducerConfigData.getAcks());
         props.put(ProducerConfig.REQUEST_TIMEOUT_MS_CONFIG, kafkaProducerConfigData.getRequestTimeoutMs());
         props.put(ProducerConfig.RETRIES_CONFIG, kafkaProducerConfigData.getRetryCount());
+        props.put(ProducerConfig.DELIVERY_TIMEOUT_MS_CONFIG, getDeliveryTimeoutMs());
+        if (Boolean.TRUE.equals(kafkaProducerConfigData.getEnableIdempotence())) {
+            putIdempotenceConfig(props);
+        }
+        KafkaProducerConfigData.HotKeyPartitioning hotKeyPartitioning = kafkaProducerConfigData.getHotKeyPartitioning();
+        if (Boolean.TRUE.equals(hotKeyPartitioning.getEnabled())) {
+            props.put(ProducerConfig.PARTITIONER_CLASS_CONFIG, HotKeyPartitioner.class);
+            props.put(HotKeyPartitioner.HOT_KEY_PARTITIONING_CONFIG, hotKeyPartitioning);
+            props.put(HotKeyPartitioner.METER_REGISTRY_CONFIG, meterRegistry);
+        }
         return props;
     }
 
@@ -49,4 +73,63 @@ public class KafkaProducerConfig<K extends Serializable, V extends SpecificRecor
         return new KafkaTemplate<>(producerFactory());
     }
 
+    /**
+     * The kafkaTemplate is the first producer of the pool, every other producer gets its own factory
+     * and so its own kafka producer with a separate sender thread. The kafkaTemplate is shared with the
+     * application context, which closes its producer, the pool closes the others.
+     */
+    @Bean
+    public KafkaProducerPool<K, V> kafkaProducerPool() {
+        List<KafkaTemplate<K, V>> templates = new ArrayList<>();
+        templates.add(kafkaTemplate());
+        for (int i = 1; i < kafkaProducerConfigData.getProducerPoolSize(); i++) {
+            templates.add(new KafkaTemplate<>(new DefaultKafkaProducerFactory<>(producerConfig())));
+        }
+        return new KafkaProducerPool<>(templates, kafkaTemplate(), producerConfig(), meterRegistry);
+    }
+
+    @Bean
+    public ProducerTuningController<K, V> producerTuningController() {
+        return new ProducerTuningController<>(kafkaProducerPool(), producerConfig(), kafkaProducerConfigData,
+                meterRegistry);
+    }
+
+    /**
+     * The idempotent producer needs acks=all and retries, and keeps the order of the records on retries
+     * with up to 5 in flight requests per connection, so those settings are adjusted to fit.
+     */
+    private void putIdempotenceConfig(Map<String, Object> props) {
+        props.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, true);
+        if (!"all".equals(kafkaProducerConfigData.getAcks()) && !"-1".equals(kafkaProducerConfigData.getAcks())) {
+            log.warn("Idempotent kafka producer needs acks=all, ignoring acks={}", kafkaProducerConfigData.getAcks());
+            props.put(ProducerConfig.ACKS_CONFIG, "all");
+        }
+        if (kafkaProducerConfigData.getRetryCount() == null || kafkaProducerConfigData.getRetryCount() < 1) {
+            log.warn("Idempotent kafka producer needs retries, ignoring retries={}",
+                    kafkaProducerConfigData.getRetryCount());
+            props.put(ProducerConfig.RETRIES_CONFIG, Integer.MAX_VALUE);
+        }
+        props.put(ProducerConfig.MAX_IN_FLIGHT_REQUESTS_PER_CONNECTION,
+                Math.max(1, Math.min(MAX_IDEMPOTENT_IN_FLIGHT_REQUESTS,
+                        kafkaProducerConfigData.getMaxInFlightRequestsPerConnection())));
+    }
+
+    /**
+     * The producer refuses a delivery timeout below linger.ms plus request.timeout.ms, so the delivery timeout
+     * is raised to cover the largest linger.ms the tuning controller may set.
+     */
+    private int getDeliveryTimeoutMs() {
+        KafkaProducerConfigData.Tuning tuning = kafkaProducerConfigData.getTuning();
+        int maxLingerMs = Boolean.TRUE.equals(tuning.getEnabled()) ?
+                Math.max(tuning.getMaxLingerMs(), kafkaProducerConfigData.getLingerMs()) :
+                kafkaProducerConfigData.getLingerMs();
+        int minDeliveryTimeoutMs = maxLingerMs + kafkaProducerConfigData.getRequestTimeoutMs();
+        if (kafkaProducerConfigData.getDeliveryTimeoutMs() < minDeliveryTimeoutMs) {
+            log.warn("Kafka producer delivery timeout {} ms is below linger.ms plus request.timeout.ms, using {} ms",
+                    kafkaProducerConfigData.getDeliveryTimeoutMs(), minDeliveryTimeoutMs);
+            return minDeliveryTimeoutMs;
+        }
+        return kafkaProducerConfigData.getDeliveryTimeoutMs();
+    }
+
 }
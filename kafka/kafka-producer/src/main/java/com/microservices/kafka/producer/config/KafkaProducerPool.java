@@ -0,0 +1,297 @@
+package com.microservices.kafka.producer.config;
+
+import com.microservices.kafka.producer.exception.KafkaProducerException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.producer.Partitioner;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.Cluster;
+import org.apache.kafka.common.KafkaException;
+import org.apache.kafka.common.Node;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.serialization.Serializer;
+import org.apache.kafka.common.utils.Utils;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaOperations;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.util.concurrent.ListenableFuture;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * KafkaProducerPool spreads the records over several kafka producers, each with its own KafkaTemplate,
+ * so that ingest is not limited by the sender thread and the accumulator lock of a single producer.
+ * The pool picks the partition of every record itself, with the partitioner configured for the producers, like the
+ * HotKeyPartitioner, or else the murmur2 hash of the default partitioner, and sends the record to that partition with
+ * the producer of the partition. So all records of a key go through the same producer and keep their order, and the
+ * partitioner sees every record of the pool. Records without a key are spread round robin over the partitions.
+ * The partitions of a topic are read from the metadata of the producers and read again every
+ * PARTITIONS_REFRESH_MS, so that partitions added to a topic are picked up without a restart.
+ * The records handed to every producer are counted in the kafka.producer.pool.records metric.
+ * A producer can be replaced while records are sent: sends through the pool hold a read lock of their producer,
+ * and the replacement flushes the old producer and swaps in the new one under the write lock, so that records of a
+ * key sent after the swap never overtake the last records of the old producer. The sends of that producer wait for
+ * the flush, the other producers of the pool keep sending.
+ * The pool closes the producers it owns. A shared template, like the kafkaTemplate bean, is closed by its owner,
+ * the pool only flushes it.
+ *
+ * @param <K> the type of the record key.
+ * @param <V> the type of the record value.
+ */
+@Slf4j
+public class KafkaProducerPool<K, V> {
+
+    private static final long PARTITIONS_REFRESH_MS = 30000;
+
+    private final AtomicReferenceArray<KafkaTemplate<K, V>> kafkaTemplates;
+    private final ReadWriteLock[] templateLocks;
+    private final Counter[] recordCounters;
+    private final Serializer<K> keySerializer;
+    private final Partitioner partitioner;
+    private final Map<String, TopicPartitions> topicPartitions = new ConcurrentHashMap<>();
+    private final AtomicInteger nextUnkeyed = new AtomicInteger();
+    private final KafkaTemplate<K, V> sharedTemplate;
+
+    public KafkaProducerPool(List<KafkaTemplate<K, V>> templates,
+                             Map<String, Object> producerConfig,
+                             MeterRegistry meterRegistry) {
+        this(templates, null, producerConfig, meterRegistry);
+    }
+
+    /**
+     * @param sharedTemplate one of the templates that the pool does not own and never closes, may be null.
+     */
+    @SuppressWarnings("unchecked")
+    public KafkaProducerPool(List<KafkaTemplate<K, V>> templates,
+                             KafkaTemplate<K, V> sharedTemplate,
+                             Map<String, Object> producerConfig,
+                             MeterRegistry meterRegistry) {
+        this.sharedTemplate = sharedTemplate;
+        this.kafkaTemplates = new AtomicReferenceArray<>(templates.toArray(new KafkaTemplate[0]));
+        this.templateLocks = new ReadWriteLock[templates.size()];
+        this.recordCounters = new Counter[templates.size()];
+        for (int i = 0; i < templates.size(); i++) {
+            templateLocks[i] = new ReentrantReadWriteLock();
+            recordCounters[i] = meterRegistry.counter("kafka.producer.pool.records", "producer", String.valueOf(i));
+        }
+        this.keySerializer = newInstance(producerConfig.get(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG),
+                Serializer.class);
+        keySerializer.configure(producerConfig, true);
+        Object partitionerClass = producerConfig.get(ProducerConfig.PARTITIONER_CLASS_CONFIG);
+        this.partitioner = partitionerClass == null ? null : newInstance(partitionerClass, Partitioner.class);
+        if (partitioner != null) {
+            partitioner.configure(producerConfig);
+        }
+        log.info("Created kafka producer pool with {} producers", templates.size());
+    }
+
+    public int size() {
+        return kafkaTemplates.length();
+    }
+
+    public KafkaTemplate<K, V> getTemplate(int index) {
+        return kafkaTemplates.get(index);
+    }
+
+    public List<KafkaTemplate<K, V>> getTemplates() {
+        List<KafkaTemplate<K, V>> templates = new ArrayList<>(kafkaTemplates.length());
+        for (int i = 0; i < kafkaTemplates.length(); i++) {
+            templates.add(kafkaTemplates.get(i));
+        }
+        return templates;
+    }
+
+    /**
+     * Picks the partition of a record.
+     *
+     * @param topicName the topic of the record.
+     * @param key       the key of the record, may be null.
+     * @param value     the value of the record, for partitioners that look at it.
+     * @return the partition to send the record to.
+     */
+    public int partitionFor(String topicName, K key, V value) {
+        TopicPartitions partitions = getTopicPartitions(topicName);
+        if (key == null) {
+            return Utils.toPositive(nextUnkeyed.getAndIncrement()) % partitions.count;
+        }
+        byte[] keyBytes = keySerializer.serialize(topicName, key);
+        if (partitioner == null) {
+            return Utils.toPositive(Utils.murmur2(keyBytes)) % partitions.count;
+        }
+        return partitioner.partition(topicName, key, keyBytes, value, null, partitions.cluster);
+    }
+
+    /**
+     * Picks the producer of a partition and counts the record for it.
+     *
+     * @param partition the partition of the record.
+     * @return the index of the producer to send the record with.
+     */
+    public int producerFor(int partition) {
+        int producer = partition % kafkaTemplates.length();
+        recordCounters[producer].increment();
+        return producer;
+    }
+
+    /**
+     * Sends a record to the partition picked for it, with the producer of the partition.
+     *
+     * @return the future of the send result.
+     */
+    public ListenableFuture<SendResult<K, V>> send(String topicName, K key, V value) {
+        int partition = partitionFor(topicName, key, value);
+        int producer = producerFor(partition);
+        templateLocks[producer].readLock().lock();
+        try {
+            return kafkaTemplates.get(producer).send(topicName, partition, key, value);
+        } finally {
+            templateLocks[producer].readLock().unlock();
+        }
+    }
+
+    /**
+     * Runs the callback with one producer of the pool, which is not replaced while the callback runs.
+     */
+    public <T> T execute(int index, KafkaOperations.ProducerCallback<K, V, T> callback) {
+        templateLocks[index].readLock().lock();
+        try {
+            return kafkaTemplates.get(index).execute(callback);
+        } finally {
+            templateLocks[index].readLock().unlock();
+        }
+    }
+
+    /**
+     * Replaces one producer of the pool. Once no send holds the old producer, it is flushed while its sends wait,
+     * and the new producer takes the records after it. The old producer is closed after the swap.
+     *
+     * @param index    the index of the producer to replace.
+     * @param template the template of the new producer, owned by the pool from now on.
+     */
+    public void replaceTemplate(int index, KafkaTemplate<K, V> template) {
+        KafkaTemplate<K, V> replacedTemplate;
+        templateLocks[index].writeLock().lock();
+        try {
+            //every record sent with the old producer is completed before the new one takes the records of its keys
+            kafkaTemplates.get(index).flush();
+            replacedTemplate = kafkaTemplates.getAndSet(index, template);
+        } finally {
+            templateLocks[index].writeLock().unlock();
+        }
+        closeFlushed(replacedTemplate);
+        log.info("Replaced producer {} of the kafka producer pool", index);
+    }
+
+    public void destroy() {
+        getTemplates().forEach(this::close);
+        if (partitioner != null) {
+            partitioner.close();
+        }
+    }
+
+    /**
+     * Flushes a template and closes its producer, unless the template is shared.
+     */
+    private void close(KafkaTemplate<K, V> template) {
+        template.flush();
+        closeFlushed(template);
+    }
+
+    /**
+     * Closes the producer of a flushed template, unless the template is shared. KafkaTemplate.destroy does not
+     * close the producer of a factory given to the template, so the factory is destroyed instead.
+     */
+    private void closeFlushed(KafkaTemplate<K, V> template) {
+        if (template == sharedTemplate) {
+            return;
+        }
+        if (template.getProducerFactory() instanceof DefaultKafkaProducerFactory) {
+            ((DefaultKafkaProducerFactory<?, ?>) template.getProducerFactory()).destroy();
+        } else {
+            template.destroy();
+        }
+    }
+
+    private TopicPartitions getTopicPartitions(String topicName) {
+        TopicPartitions partitions = topicPartitions.get(topicName);
+        long nowMs = System.currentTimeMillis();
+        if (partitions == null || nowMs - partitions.readAtMs >= PARTITIONS_REFRESH_MS) {
+            partitions = readTopicPartitions(topicName, partitions, nowMs);
+            topicPartitions.put(topicName, partitions);
+        }
+        return partitions;
+    }
+
+    /**
+     * Reads the partitions of a topic from the producer metadata. Keeps the partitions read before, until the next
+     * refresh, if they can not be read.
+     */
+    private TopicPartitions readTopicPartitions(String topicName, TopicPartitions previous, long nowMs) {
+        List<PartitionInfo> partitionInfos;
+        templateLocks[0].readLock().lock();
+        try {
+            partitionInfos = kafkaTemplates.get(0).partitionsFor(topicName);
+        } catch (KafkaException e) {
+            if (previous == null) {
+                throw e;
+            }
+            log.warn("Could not read the partitions of topic {}, keeping {} partitions", topicName, previous.count, e);
+            return new TopicPartitions(previous.cluster, previous.count, nowMs);
+        } finally {
+            templateLocks[0].readLock().unlock();
+        }
+        if (previous != null && previous.count != partitionInfos.size()) {
+            log.info("Topic {} went from {} to {} partitions", topicName, previous.count, partitionInfos.size());
+        }
+        Set<Node> leaders = new HashSet<>();
+        for (PartitionInfo partitionInfo : partitionInfos) {
+            if (partitionInfo.leader() != null) {
+                leaders.add(partitionInfo.leader());
+            }
+        }
+        Cluster cluster = new Cluster(null, leaders, partitionInfos, Collections.emptySet(), Collections.emptySet());
+        return new TopicPartitions(cluster, Math.max(1, partitionInfos.size()), nowMs);
+    }
+
+    /**
+     * Creates the serializer or partitioner of a producer config entry, given as a class or a class name.
+     */
+    private static <T> T newInstance(Object configuredClass, Class<T> type) {
+        try {
+            return configuredClass instanceof Class ?
+                    Utils.newInstance(((Class<?>) configuredClass).asSubclass(type)) :
+                    Utils.newInstance(configuredClass.toString(), type);
+        } catch (ClassNotFoundException e) {
+            throw new KafkaProducerException(type.getSimpleName() + " class not found for the producer pool", e);
+        }
+    }
+
+    /**
+     * The partitions of a topic, as a cluster for the partitioner, and the time they were read at.
+     */
+    private static final class TopicPartitions {
+
+        private final Cluster cluster;
+        private final int count;
+        private final long readAtMs;
+
+        private TopicPartitions(Cluster cluster, int count, long readAtMs) {
+            this.cluster = cluster;
+            this.count = count;
+            this.readAtMs = readAtMs;
+        }
+    }
+
+}
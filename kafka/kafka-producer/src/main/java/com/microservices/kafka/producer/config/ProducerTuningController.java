@@ -0,0 +1,177 @@
+package com.microservices.kafka.producer.config;
+
+import com.microservices.config.KafkaProducerConfigData;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.Metric;
+import org.apache.kafka.common.MetricName;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * ProducerTuningController adapts batch.size and linger.ms of the producer pool to the traffic, to hold the target
+ * p99 send latency while filling batches as much as possible.
+ * The p99 latency comes from the kafka.producer.send.latency timer and the batch fill from the batch-size-avg metric
+ * of the producers. When the settings change, every producer of the pool is replaced by one with the new settings,
+ * and the old one is flushed and closed once the new one takes the records.
+ * The current settings and the number of replacements are exposed as metrics.
+ *
+ * @param <K> the type of the record key.
+ * @param <V> the type of the record value.
+ */
+@Slf4j
+public class ProducerTuningController<K, V> {
+
+    public static final String SEND_LATENCY_METRIC = "kafka.producer.send.latency";
+
+    private static final String PRODUCER_METRICS_GROUP = "producer-metrics";
+    private static final String BATCH_SIZE_AVG = "batch-size-avg";
+    private static final double P99 = 0.99;
+    private static final long MIN_RECORDS_PER_INTERVAL = 100;
+
+    private final KafkaProducerPool<K, V> kafkaProducerPool;
+    private final Map<String, Object> producerConfig;
+    private final KafkaProducerConfigData.Tuning tuningConfig;
+    private final Timer sendLatencyTimer;
+    private final Counter rotationsCounter;
+    private final AtomicInteger batchSize;
+    private final AtomicInteger lingerMs;
+
+    private ScheduledExecutorService tuningExecutor;
+    private long lastSendCount;
+
+    public ProducerTuningController(KafkaProducerPool<K, V> producerPool,
+                                    Map<String, Object> config,
+                                    KafkaProducerConfigData kafkaProducerConfigData,
+                                    MeterRegistry meterRegistry) {
+        this.kafkaProducerPool = producerPool;
+        this.producerConfig = config;
+        this.tuningConfig = kafkaProducerConfigData.getTuning();
+        this.sendLatencyTimer = Timer.builder(SEND_LATENCY_METRIC)
+                .publishPercentiles(0.5, P99)
+                .register(meterRegistry);
+        this.rotationsCounter = meterRegistry.counter("kafka.producer.tuning.rotations");
+        this.batchSize = meterRegistry.gauge("kafka.producer.tuning.batch.size",
+                new AtomicInteger(((Number) config.get(ProducerConfig.BATCH_SIZE_CONFIG)).intValue()));
+        this.lingerMs = meterRegistry.gauge("kafka.producer.tuning.linger.ms",
+                new AtomicInteger(((Number) config.get(ProducerConfig.LINGER_MS_CONFIG)).intValue()));
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!Boolean.TRUE.equals(tuningConfig.getEnabled())) {
+            return;
+        }
+        log.info("Starting producer tuning for a p99 send latency of {} ms", tuningConfig.getTargetP99LatencyMs());
+        tuningExecutor = Executors.newSingleThreadScheduledExecutor();
+        tuningExecutor.scheduleWithFixedDelay(this::tune, tuningConfig.getIntervalMs(), tuningConfig.getIntervalMs(),
+                TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void close() {
+        if (tuningExecutor != null) {
+            tuningExecutor.shutdownNow();
+        }
+    }
+
+    private void tune() {
+        try {
+            long sendCount = sendLatencyTimer.count();
+            long intervalRecords = sendCount - lastSendCount;
+            lastSendCount = sendCount;
+            double p99LatencyMs = getP99LatencyMs();
+            double batchFillRatio = getBatchFillRatio();
+            if (intervalRecords < MIN_RECORDS_PER_INTERVAL || Double.isNaN(p99LatencyMs) ||
+                    Double.isNaN(batchFillRatio)) {
+                return;
+            }
+            int newBatchSize = batchSize.get();
+            int newLingerMs = lingerMs.get();
+            if (p99LatencyMs > tuningConfig.getTargetP99LatencyMs()) {
+                //records wait too long, stop waiting for batches to fill first
+                if (newLingerMs > tuningConfig.getMinLingerMs()) {
+                    newLingerMs = newLingerMs / 2;
+                } else {
+                    newBatchSize = newBatchSize / 2;
+                }
+            } else if (p99LatencyMs < tuningConfig.getTargetP99LatencyMs() * tuningConfig.getLatencyHeadroomRatio()) {
+                //there is room to wait longer, batches that fill up get bigger, the others get more time to fill
+                if (batchFillRatio >= tuningConfig.getMinBatchFillRatio()) {
+                    newBatchSize = newBatchSize * 2;
+                } else {
+                    newLingerMs = newLingerMs + tuningConfig.getLingerStepMs();
+                }
+            }
+            newBatchSize = Math.max(tuningConfig.getMinBatchSize(), Math.min(tuningConfig.getMaxBatchSize(),
+                    newBatchSize));
+            newLingerMs = Math.max(tuningConfig.getMinLingerMs(), Math.min(tuningConfig.getMaxLingerMs(),
+                    newLingerMs));
+            log.info("Producer p99 send latency {} ms, batch fill {}, batch.size {}, linger.ms {}",
+                    p99LatencyMs, batchFillRatio, newBatchSize, newLingerMs);
+            if (newBatchSize != batchSize.get() || newLingerMs != lingerMs.get()) {
+                rotateProducers(newBatchSize, newLingerMs);
+            }
+        } catch (Exception e) {
+            log.error("Error while tuning the kafka producers, will try again in {} ms",
+                    tuningConfig.getIntervalMs(), e);
+        }
+    }
+
+    private void rotateProducers(int newBatchSize, int newLingerMs) {
+        Map<String, Object> tunedConfig = new HashMap<>(producerConfig);
+        tunedConfig.put(ProducerConfig.BATCH_SIZE_CONFIG, newBatchSize);
+        tunedConfig.put(ProducerConfig.LINGER_MS_CONFIG, newLingerMs);
+        log.info("Rotating kafka producers to batch.size {} and linger.ms {}", newBatchSize, newLingerMs);
+        for (int i = 0; i < kafkaProducerPool.size(); i++) {
+            kafkaProducerPool.replaceTemplate(i, new KafkaTemplate<>(new DefaultKafkaProducerFactory<>(tunedConfig)));
+        }
+        batchSize.set(newBatchSize);
+        lingerMs.set(newLingerMs);
+        rotationsCounter.increment();
+    }
+
+    private double getP99LatencyMs() {
+        for (ValueAtPercentile percentile : sendLatencyTimer.takeSnapshot().percentileValues()) {
+            if (percentile.percentile() == P99) {
+                return percentile.value(TimeUnit.MILLISECONDS);
+            }
+        }
+        return Double.NaN;
+    }
+
+    /**
+     * @return the average batch size of the producers over the configured batch.size, NaN if nothing was sent.
+     */
+    private double getBatchFillRatio() {
+        double batchSizeSum = 0;
+        int producers = 0;
+        for (KafkaTemplate<K, V> kafkaTemplate : kafkaProducerPool.getTemplates()) {
+            for (Map.Entry<MetricName, ? extends Metric> metric : kafkaTemplate.metrics().entrySet()) {
+                if (PRODUCER_METRICS_GROUP.equals(metric.getKey().group()) &&
+                        BATCH_SIZE_AVG.equals(metric.getKey().name())) {
+                    Object value = metric.getValue().metricValue();
+                    if (value instanceof Number && !Double.isNaN(((Number) value).doubleValue())) {
+                        batchSizeSum += ((Number) value).doubleValue();
+                        producers++;
+                    }
+                }
+            }
+        }
+        return producers == 0 ? Double.NaN : batchSizeSum / producers / batchSize.get();
+    }
+
+}
@@ -0,0 +1,87 @@
+package com.microservices.kafka.producer.config.partitioner;
+
+import org.apache.kafka.common.utils.Utils;
+
+/**
+ * CountMinSketch estimates how often a key was seen in a fixed amount of memory.
+ * Each of the depth rows counts the key in one of width counters, picked by a combination of two hashes of the key,
+ * and the estimate is the smallest of those counters. Estimates never undercount, and conservative update keeps
+ * the overcount from colliding keys low. Calling halve() ages the counts, so the sketch follows recent traffic.
+ * Not thread safe.
+ */
+public class CountMinSketch {
+
+    private final int width;
+    private final int depth;
+    private final long[] counters;
+    private long total;
+
+    public CountMinSketch(int width, int depth) {
+        this.width = width;
+        this.depth = depth;
+        this.counters = new long[width * depth];
+    }
+
+    /**
+     * Counts the key once.
+     *
+     * @param key the serialized key.
+     * @return the estimated count of the key, including this one.
+     */
+    public long add(byte[] key) {
+        int hash1 = Utils.murmur2(key);
+        int hash2 = secondHash(key);
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            estimate = Math.min(estimate, counters[index(row, hash1, hash2)]);
+        }
+        estimate++;
+        //conservative update, only the counters below the new estimate are raised
+        for (int row = 0; row < depth; row++) {
+            int index = index(row, hash1, hash2);
+            if (counters[index] < estimate) {
+                counters[index] = estimate;
+            }
+        }
+        total++;
+        return estimate;
+    }
+
+    public long estimate(byte[] key) {
+        int hash1 = Utils.murmur2(key);
+        int hash2 = secondHash(key);
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            estimate = Math.min(estimate, counters[index(row, hash1, hash2)]);
+        }
+        return estimate;
+    }
+
+    public void halve() {
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] >>>= 1;
+        }
+        total >>>= 1;
+    }
+
+    /**
+     * @return the number of keys counted since the sketch was created, halved along with the counters.
+     */
+    public long getTotal() {
+        return total;
+    }
+
+    private int index(int row, int hash1, int hash2) {
+        return row * width + Math.floorMod(hash1 + row * hash2, width);
+    }
+
+    private static int secondHash(byte[] key) {
+        int hash = 0x811c9dc5;
+        for (byte b : key) {
+            hash = (hash ^ (b & 0xff)) * 0x01000193;
+        }
+        //an odd second hash visits different counters in every row for a power of two width
+        return hash | 1;
+    }
+
+}
@@ -0,0 +1,202 @@
+package com.microservices.kafka.producer.config.partitioner;
+
+import com.microservices.config.KafkaProducerConfigData;
+import com.microservices.kafka.producer.exception.KafkaProducerException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.kafka.clients.producer.Partitioner;
+import org.apache.kafka.clients.producer.internals.DefaultPartitioner;
+import org.apache.kafka.common.Cluster;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.utils.Utils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * HotKeyPartitioner keeps the hash partitioning of the DefaultPartitioner for most keys, but spreads the records of
+ * hot keys, like very active users, over several partitions so that they do not pile up on a single one.
+ * Key frequencies are estimated per topic with a CountMinSketch over a sliding window of records.
+ * Records of a hot key go round robin over the spread partitions, or, with sub-key salting, to the spread partition
+ * picked by the sub-key field of the record value, so that records with the same sub-key keep their order.
+ * Sub-key salting needs a configured sub-key field. The order of a key is only kept while it stays hot or cold:
+ * its records move from the hash partition to the spread partitions and back, and records sent around that move
+ * may be reordered.
+ * The skew of the partition counts, the largest count over the average one, is exposed for the plain hash
+ * partitioning and for the partitions actually picked, along with the number of hot key records that were spread.
+ * The partitioner is set up through the producer config with the HOT_KEY_PARTITIONING_CONFIG and
+ * METER_REGISTRY_CONFIG entries.
+ */
+@Slf4j
+public class HotKeyPartitioner implements Partitioner {
+
+    public static final String HOT_KEY_PARTITIONING_CONFIG = "hot.key.partitioning";
+    public static final String METER_REGISTRY_CONFIG = "hot.key.partitioning.meter.registry";
+
+    private static final String SALT_MODE_SUB_KEY = "sub-key";
+
+    private final DefaultPartitioner defaultPartitioner = new DefaultPartitioner();
+    private final Map<String, TopicPartitioning> topicPartitionings = new ConcurrentHashMap<>();
+
+    private KafkaProducerConfigData.HotKeyPartitioning hotKeyConfig;
+    private MeterRegistry meterRegistry;
+    private boolean subKeySalting;
+
+    @Override
+    public void configure(Map<String, ?> configs) {
+        defaultPartitioner.configure(configs);
+        hotKeyConfig = (KafkaProducerConfigData.HotKeyPartitioning) configs.get(HOT_KEY_PARTITIONING_CONFIG);
+        if (hotKeyConfig == null) {
+            hotKeyConfig = new KafkaProducerConfigData.HotKeyPartitioning();
+        }
+        meterRegistry = (MeterRegistry) configs.get(METER_REGISTRY_CONFIG);
+        if (meterRegistry == null) {
+            meterRegistry = new SimpleMeterRegistry();
+        }
+        subKeySalting = SALT_MODE_SUB_KEY.equals(hotKeyConfig.getSaltMode());
+        if (subKeySalting && (hotKeyConfig.getSubKeyField() == null || hotKeyConfig.getSubKeyField().isBlank())) {
+            throw new KafkaProducerException("Hot key partitioning with sub-key salting needs a sub-key field");
+        }
+        log.info("Hot key partitioner configured with {} salting", hotKeyConfig.getSaltMode());
+    }
+
+    @Override
+    public int partition(String topic, Object key, byte[] keyBytes, Object value, byte[] valueBytes,
+                         Cluster cluster) {
+        if (keyBytes == null) {
+            return defaultPartitioner.partition(topic, key, null, value, valueBytes, cluster);
+        }
+        List<PartitionInfo> partitions = cluster.partitionsForTopic(topic);
+        int numPartitions = partitions.size();
+        int hashPartition = Utils.toPositive(Utils.murmur2(keyBytes)) % numPartitions;
+        TopicPartitioning topicPartitioning = topicPartitionings.computeIfAbsent(topic, this::createTopicPartitioning);
+        synchronized (topicPartitioning) {
+            topicPartitioning.ensureCapacity(numPartitions);
+            long keyRecords = topicPartitioning.sketch.add(keyBytes);
+            int partition = hashPartition;
+            if (isHot(topicPartitioning, keyRecords)) {
+                partition = spreadPartition(topicPartitioning, hashPartition, numPartitions, value);
+                topicPartitioning.spreadRecordsCounter.increment();
+            }
+            topicPartitioning.count(hashPartition, partition);
+            if (topicPartitioning.sketch.getTotal() >= hotKeyConfig.getWindowRecords()) {
+                topicPartitioning.halve();
+            }
+            return partition;
+        }
+    }
+
+    @Override
+    public void onNewBatch(String topic, Cluster cluster, int prevPartition) {
+        defaultPartitioner.onNewBatch(topic, cluster, prevPartition);
+    }
+
+    @Override
+    public void close() {
+        defaultPartitioner.close();
+    }
+
+    private boolean isHot(TopicPartitioning topicPartitioning, long keyRecords) {
+        return keyRecords >= hotKeyConfig.getMinHotKeyRecords() &&
+                keyRecords >= hotKeyConfig.getHotKeyRatio() * topicPartitioning.sketch.getTotal();
+    }
+
+    private int spreadPartition(TopicPartitioning topicPartitioning, int hashPartition, int numPartitions,
+                                Object value) {
+        List<Integer> hotKeyPartitions = hotKeyConfig.getHotKeyPartitions().stream()
+                .filter(partition -> partition >= 0 && partition < numPartitions)
+                .collect(Collectors.toList());
+        int spread = hotKeyPartitions.isEmpty() ?
+                Math.min(hotKeyConfig.getSpreadPartitions(), numPartitions) : hotKeyPartitions.size();
+        int salt = subKeySalting ?
+                Math.floorMod(subKeyHash(value), spread) :
+                Math.floorMod(topicPartitioning.nextSalt++, spread);
+        return hotKeyPartitions.isEmpty() ? (hashPartition + salt) % numPartitions : hotKeyPartitions.get(salt);
+    }
+
+    private int subKeyHash(Object value) {
+        if (value instanceof GenericRecord) {
+            GenericRecord record = (GenericRecord) value;
+            if (record.getSchema().getField(hotKeyConfig.getSubKeyField()) == null) {
+                throw new KafkaProducerException("Sub-key field " + hotKeyConfig.getSubKeyField() +
+                        " is not a field of " + record.getSchema().getFullName());
+            }
+            Object subKey = record.get(hotKeyConfig.getSubKeyField());
+            if (subKey != null) {
+                return Utils.murmur2(subKey.toString().getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        return 0;
+    }
+
+    private TopicPartitioning createTopicPartitioning(String topic) {
+        TopicPartitioning topicPartitioning = new TopicPartitioning(hotKeyConfig.getSketchWidth(),
+                hotKeyConfig.getSketchDepth(),
+                meterRegistry.counter("kafka.producer.partition.hot.records", "topic", topic));
+        meterRegistry.gauge("kafka.producer.partition.skew", Tags.of("topic", topic, "partitioning", "hash"),
+                topicPartitioning, partitioning -> partitioning.skew(true));
+        meterRegistry.gauge("kafka.producer.partition.skew", Tags.of("topic", topic, "partitioning", "hot-key"),
+                topicPartitioning, partitioning -> partitioning.skew(false));
+        return topicPartitioning;
+    }
+
+    /**
+     * The key frequencies and the partition counts of one topic, guarded by its own lock.
+     */
+    private static final class TopicPartitioning {
+
+        private final CountMinSketch sketch;
+        private final Counter spreadRecordsCounter;
+        private long[] hashPartitionRecords = new long[0];
+        private long[] partitionRecords = new long[0];
+        private int nextSalt;
+
+        private TopicPartitioning(int sketchWidth, int sketchDepth, Counter spreadRecordsCounter) {
+            this.sketch = new CountMinSketch(sketchWidth, sketchDepth);
+            this.spreadRecordsCounter = spreadRecordsCounter;
+        }
+
+        private void ensureCapacity(int numPartitions) {
+            if (partitionRecords.length < numPartitions) {
+                hashPartitionRecords = Arrays.copyOf(hashPartitionRecords, numPartitions);
+                partitionRecords = Arrays.copyOf(partitionRecords, numPartitions);
+            }
+        }
+
+        private void count(int hashPartition, int partition) {
+            hashPartitionRecords[hashPartition]++;
+            partitionRecords[partition]++;
+        }
+
+        private void halve() {
+            sketch.halve();
+            for (int i = 0; i < partitionRecords.length; i++) {
+                hashPartitionRecords[i] >>>= 1;
+                partitionRecords[i] >>>= 1;
+            }
+        }
+
+        /**
+         * @return the largest partition count over the average one, for the hash partitions or the picked ones.
+         */
+        private synchronized double skew(boolean hashPartitioning) {
+            long[] records = hashPartitioning ? hashPartitionRecords : partitionRecords;
+            long max = 0;
+            long sum = 0;
+            for (long partitionCount : records) {
+                max = Math.max(max, partitionCount);
+                sum += partitionCount;
+            }
+            return sum == 0 ? 1.0 : (double) max * records.length / sum;
+        }
+    }
+
+}
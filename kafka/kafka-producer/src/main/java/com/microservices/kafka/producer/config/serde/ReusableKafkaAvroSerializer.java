@@ -0,0 +1,119 @@
+package com.microservices.kafka.producer.config.serde;
+
+import com.microservices.kafka.avro.serde.AvroWireFormat;
+import com.microservices.kafka.avro.serde.ReusableByteArrayOutputStream;
+import com.microservices.kafka.avro.serde.SchemaRegistryClient;
+import com.microservices.kafka.avro.serde.SchemaRegistryException;
+import org.apache.avro.Schema;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.EncoderFactory;
+import org.apache.avro.specific.SpecificData;
+import org.apache.avro.specific.SpecificDatumWriter;
+import org.apache.avro.specific.SpecificRecordBase;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.serialization.Serializer;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * ReusableKafkaAvroSerializer writes avro specific records in the schema registry wire format, like the confluent
+ * KafkaAvroSerializer with the default topic name subject strategy, but without the per record allocations.
+ * Every sending thread reuses its own output buffer and BinaryEncoder, the datum writer is kept per schema
+ * and the schema id is resolved once per topic. Only the returned byte array is allocated for each record.
+ * The generated custom encoders of the records are used, which avoid the reflective field access of the datum writer.
+ *
+ * @param <T> the type of the avro record.
+ */
+public class ReusableKafkaAvroSerializer<T extends SpecificRecordBase> implements Serializer<T> {
+
+    public static final String SCHEMA_REGISTRY_URL_CONFIG = "schema.registry.url";
+    public static final String AUTO_REGISTER_SCHEMAS_CONFIG = "auto.register.schemas";
+
+    private static final int INITIAL_BUFFER_SIZE = 1024;
+
+    private final SpecificData specificData = new SpecificData();
+    private final Map<Schema, SpecificDatumWriter<T>> datumWriters = new ConcurrentHashMap<>();
+    private final Map<String, TopicSchema> topicSchemas = new ConcurrentHashMap<>();
+    private final ThreadLocal<EncodingBuffers> encodingBuffers = ThreadLocal.withInitial(EncodingBuffers::new);
+
+    private SchemaRegistryClient schemaRegistryClient;
+    private boolean autoRegisterSchemas;
+    private String subjectSuffix;
+
+    @Override
+    public void configure(Map<String, ?> configs, boolean isKey) {
+        specificData.setCustomCoders(true);
+        Object schemaRegistryUrl = configs.get(SCHEMA_REGISTRY_URL_CONFIG);
+        if (schemaRegistryUrl == null) {
+            throw new SchemaRegistryException("Missing " + SCHEMA_REGISTRY_URL_CONFIG + " for the avro serializer");
+        }
+        Object schemaCacheFile = configs.get(SchemaRegistryClient.SCHEMA_CACHE_FILE_CONFIG);
+        this.schemaRegistryClient = SchemaRegistryClient.forUrl(schemaRegistryUrl.toString(),
+                schemaCacheFile == null ? null : schemaCacheFile.toString());
+        Object autoRegister = configs.get(AUTO_REGISTER_SCHEMAS_CONFIG);
+        this.autoRegisterSchemas = autoRegister == null || Boolean.parseBoolean(autoRegister.toString());
+        this.subjectSuffix = isKey ? "-key" : "-value";
+    }
+
+    @Override
+    public byte[] serialize(String topic, T data) {
+        if (data == null) {
+            return null;
+        }
+        Schema schema = data.getSchema();
+        int schemaId = getSchemaId(topic, schema);
+        EncodingBuffers buffers = encodingBuffers.get();
+        try {
+            buffers.outputStream.reset(AvroWireFormat.HEADER_SIZE);
+            AvroWireFormat.writeHeader(buffers.outputStream.getBuffer(), schemaId);
+            buffers.encoder = EncoderFactory.get().directBinaryEncoder(buffers.outputStream, buffers.encoder);
+            datumWriters.computeIfAbsent(schema, this::createDatumWriter).write(data, buffers.encoder);
+            buffers.encoder.flush();
+            return buffers.outputStream.toByteArray();
+        } catch (IOException | RuntimeException e) {
+            throw new SerializationException("Error serializing avro record for topic " + topic, e);
+        }
+    }
+
+    private SpecificDatumWriter<T> createDatumWriter(Schema schema) {
+        return new SpecificDatumWriter<>(schema, specificData);
+    }
+
+    private int getSchemaId(String topic, Schema schema) {
+        TopicSchema topicSchema = topicSchemas.get(topic);
+        if (topicSchema == null || topicSchema.schema != schema) {
+            try {
+                topicSchema = new TopicSchema(schema,
+                        schemaRegistryClient.getId(topic + subjectSuffix, schema, autoRegisterSchemas));
+            } catch (SchemaRegistryException e) {
+                throw new SerializationException("Error retrieving avro schema id for topic " + topic, e);
+            }
+            topicSchemas.put(topic, topicSchema);
+        }
+        return topicSchema.schemaId;
+    }
+
+    /**
+     * The schema last written to a topic and its id, compared by identity to skip the schema lookup.
+     */
+    private static final class TopicSchema {
+
+        private final Schema schema;
+        private final int schemaId;
+
+        private TopicSchema(Schema schema, int schemaId) {
+            this.schema = schema;
+            this.schemaId = schemaId;
+        }
+    }
+
+    private static final class EncodingBuffers {
+
+        private final ReusableByteArrayOutputStream outputStream =
+                new ReusableByteArrayOutputStream(INITIAL_BUFFER_SIZE);
+        private BinaryEncoder encoder;
+    }
+
+}
@@ -0,0 +1,58 @@
+package com.microservices.kafka.producer.config.service;
+
+import org.apache.kafka.clients.producer.RecordMetadata;
+
+/**
+ * BatchSendResult holds the outcome of every record of a batch, in the order the records were given.
+ * A record is either acknowledged with its metadata, failed with an exception, or spilled to the local spill log
+ * to be sent later, in which case it has neither metadata nor exception.
+ */
+public class BatchSendResult {
+
+    private final RecordMetadata[] metadata;
+    private final Exception[] exceptions;
+
+    public BatchSendResult(int size) {
+        this.metadata = new RecordMetadata[size];
+        this.exceptions = new Exception[size];
+    }
+
+    public int size() {
+        return metadata.length;
+    }
+
+    public RecordMetadata getMetadata(int index) {
+        return metadata[index];
+    }
+
+    public Exception getException(int index) {
+        return exceptions[index];
+    }
+
+    public boolean isAcknowledged(int index) {
+        return metadata[index] != null;
+    }
+
+    public boolean isSpilled(int index) {
+        return metadata[index] == null && exceptions[index] == null;
+    }
+
+    public int getFailedCount() {
+        int failed = 0;
+        for (Exception exception : exceptions) {
+            if (exception != null) {
+                failed++;
+            }
+        }
+        return failed;
+    }
+
+    public void setMetadata(int index, RecordMetadata recordMetadata) {
+        metadata[index] = recordMetadata;
+    }
+
+    public void setException(int index, Exception exception) {
+        exceptions[index] = exception;
+    }
+
+}
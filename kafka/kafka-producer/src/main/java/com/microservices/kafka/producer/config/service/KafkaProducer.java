@@ -1,11 +1,38 @@
 package com.microservices.kafka.producer.config.service;
 
 import org.apache.avro.specific.SpecificRecordBase;
+import org.apache.commons.lang3.tuple.Pair;
 
 import java.io.Serializable;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 public interface KafkaProducer<K extends Serializable, V extends SpecificRecordBase> {
 
     void send(String topicName, K key, V message);
 
+    /**
+     * Sends a batch of records to the same topic with a single completion for the whole batch.
+     *
+     * @param topicName the name of the Kafka topic.
+     * @param records   the keys and messages to send, in order.
+     * @return a future completed with the per record results once every record is acknowledged, failed or spilled.
+     */
+    CompletableFuture<BatchSendResult> send(String topicName, List<Pair<K, V>> records);
+
+    /**
+     * @return true if records that can not be sent are kept in a spill log and sent again later.
+     */
+    boolean isSpillEnabled();
+
+    /**
+     * Appends a record to the spill log without sending it, it is sent by the spill replayer behind the records
+     * spilled before it. Throws KafkaProducerException if the spill log is not enabled.
+     *
+     * @param topicName the name of the Kafka topic.
+     * @param key       the key for the Kafka message.
+     * @param message   the message to spill.
+     */
+    void spill(String topicName, K key, V message);
+
 }
@@ -0,0 +1,31 @@
+package com.microservices.kafka.producer.config.service;
+
+/**
+ * ProducerFlowControl tells the sources of records how much room the kafka producer has left,
+ * so they can slow down before the producer blocks the sending thread on a full buffer.
+ */
+public interface ProducerFlowControl {
+
+    /**
+     * @return the fraction of the producer buffer memory that is free, between 0 and 1.
+     */
+    double getAvailableBufferRatio();
+
+    /**
+     * @return the number of records sent and not acknowledged yet.
+     */
+    long getInFlightRecords();
+
+    /**
+     * @return true if the free buffer or the in-flight records crossed the configured limits.
+     */
+    boolean isSaturated();
+
+    /**
+     * Waits until the producer is no longer saturated, at most for the configured maximum wait time.
+     *
+     * @return false if the producer was still saturated when the wait ended.
+     */
+    boolean awaitCapacity();
+
+}
@@ -1,10 +1,29 @@
 package com.microservices.kafka.producer.config.service.impl;
 
+import com.microservices.config.KafkaProducerConfigData;
 import com.microservices.kafka.avro.model.TwitterAvroModel;
+import com.microservices.kafka.producer.config.KafkaProducerPool;
+import com.microservices.kafka.producer.config.ProducerTuningController;
+import com.microservices.kafka.producer.config.service.BatchSendResult;
 import com.microservices.kafka.producer.config.service.KafkaProducer;
-import lombok.RequiredArgsConstructor;
+import com.microservices.kafka.producer.config.service.ProducerFlowControl;
+import com.microservices.kafka.producer.config.service.spill.SpillLog;
+import com.microservices.kafka.producer.config.service.spill.SpillReplayer;
+import com.microservices.kafka.producer.config.service.spill.SpilledRecord;
+import com.microservices.kafka.producer.exception.KafkaProducerException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.tuple.Pair;
+import org.apache.kafka.clients.producer.Callback;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerRecord;
 import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.KafkaException;
+import org.apache.kafka.common.Metric;
+import org.apache.kafka.common.MetricName;
 import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.kafka.support.SendResult;
 import org.springframework.stereotype.Service;
@@ -12,22 +31,98 @@ import org.springframework.util.concurrent.ListenableFuture;
 import org.springframework.util.concurrent.ListenableFutureCallback;
 
 import javax.annotation.PreDestroy;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * TwitterKafkaProducer is a Kafka producer service that sends TwitterAvroModel messages
  * to a specified Kafka topic. It leverages Spring's KafkaTemplate for producing messages
  * and registers callback methods to handle success and failure cases.
+ * Records are sent through the KafkaProducerPool, which picks the producer by the partition of the record key.
+ * When the spill log is enabled, records that kafka fails to take are appended to the SpillLog instead of being lost,
+ * and the SpillReplayer sends them again once the cluster recovers. While there is a spill backlog new records
+ * are appended behind it, so they are not sent before the records spilled earlier.
+ * It also implements ProducerFlowControl from the free producer buffer memory and the records in flight,
+ * which are exposed as metrics together with the time the senders waited for capacity.
+ * Batches are sent straight through the kafka producer with one BatchCallback per batch, a single info log line
+ * and per batch size, bytes and latency metrics, instead of a future, a callback and a log line per record.
+ * Each record gets a small RecordCallback that carries its index in the batch, see BatchCallback.
  */
 @Slf4j
 @Service
-@RequiredArgsConstructor
-public class TwitterKafkaProducer implements KafkaProducer<Long, TwitterAvroModel> {
+public class TwitterKafkaProducer implements KafkaProducer<Long, TwitterAvroModel>, ProducerFlowControl {
 
-    private final KafkaTemplate<Long, TwitterAvroModel> kafkaTemplate;
+    private static final String PRODUCER_METRICS_GROUP = "producer-metrics";
+    private static final String BUFFER_AVAILABLE_BYTES = "buffer-available-bytes";
+    private static final String BUFFER_TOTAL_BYTES = "buffer-total-bytes";
+    private static final long METRIC_LOOKUP_INTERVAL_MS = 1000;
+    private static final long CAPACITY_POLL_NS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final KafkaProducerPool<Long, TwitterAvroModel> kafkaProducerPool;
+    private final SpillLog<TwitterAvroModel> spillLog;
+    private final SpillReplayer<TwitterAvroModel> spillReplayer;
+    private final Counter spilledCounter;
+    private final KafkaProducerConfigData.FlowControl flowControlConfig;
+    private final AtomicLong inFlightRecords = new AtomicLong();
+    private final Timer throttledTimer;
+    private final DistributionSummary batchSizeSummary;
+    private final DistributionSummary batchBytesSummary;
+    private final Timer batchLatencyTimer;
+    private final Timer sendLatencyTimer;
+
+    //producer metrics are looked up again once in a while, the producer behind a template may be replaced
+    private volatile List<Metric> bufferAvailableBytes = List.of();
+    private volatile List<Metric> bufferTotalBytes = List.of();
+    private volatile long metricsLookedUpAtMs;
+
+    public TwitterKafkaProducer(KafkaProducerPool<Long, TwitterAvroModel> producerPool,
+                                KafkaProducerConfigData kafkaProducerConfigData,
+                                MeterRegistry meterRegistry) {
+        this.kafkaProducerPool = producerPool;
+        KafkaProducerConfigData.Spill spillConfig = kafkaProducerConfigData.getSpill();
+        if (Boolean.TRUE.equals(spillConfig.getEnabled())) {
+            this.spillLog = new SpillLog<>(Paths.get(spillConfig.getDirectory()), spillConfig.getSegmentBytes(),
+                    TwitterAvroModel.getClassSchema());
+            this.spillReplayer = new SpillReplayer<>(spillLog, producerPool, spillConfig, meterRegistry);
+            this.spillReplayer.start();
+        } else {
+            this.spillLog = null;
+            this.spillReplayer = null;
+        }
+        this.spilledCounter = meterRegistry.counter("kafka.producer.spill.spilled");
+        this.flowControlConfig = kafkaProducerConfigData.getFlowControl();
+        meterRegistry.gauge("kafka.producer.buffer.available.ratio", this,
+                TwitterKafkaProducer::getAvailableBufferRatio);
+        meterRegistry.gauge("kafka.producer.in.flight", inFlightRecords);
+        this.throttledTimer = Timer.builder("kafka.producer.flow.throttled")
+                .description("Time senders waited for the kafka producer to have capacity again")
+                .register(meterRegistry);
+        this.batchSizeSummary = DistributionSummary.builder("kafka.producer.batch.size")
+                .baseUnit("records")
+                .register(meterRegistry);
+        this.batchBytesSummary = DistributionSummary.builder("kafka.producer.batch.bytes")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        this.batchLatencyTimer = Timer.builder("kafka.producer.batch.latency")
+                .description("Time from sending a batch until its last record is acknowledged or failed")
+                .register(meterRegistry);
+        this.sendLatencyTimer = Timer.builder(ProducerTuningController.SEND_LATENCY_METRIC)
+                .description("Time from sending a record until it is acknowledged")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+    }
 
     /**
      * Sends a TwitterAvroModel message to the specified Kafka topic.
      * Logs the sending process and attaches callbacks for success and failure handling.
+     * The message goes to the spill log instead when there is a spill backlog or when kafka does not take it.
      *
      * @param topicName the name of the Kafka topic to send the message to.
      * @param key       the key for the Kafka message, typically used for partitioning.
@@ -35,45 +130,159 @@ public class TwitterKafkaProducer implements KafkaProducer<Long, TwitterAvroMode
      */
     @Override
     public void send(String topicName, Long key, TwitterAvroModel message) {
-        log.info("Sending message='{}' to topic='{}'", message, topicName);
+        log.debug("Sending message='{}' to topic='{}'", message, topicName);
+        if (spillLog != null && spillLog.appendIfBacklog(new SpilledRecord<>(topicName, key, message))) {
+            spilledCounter.increment();
+            return;
+        }
 
         //register callback methods for handling events when the response return
-        ListenableFuture<SendResult<Long, TwitterAvroModel>> kafkaResultFuture =
-                kafkaTemplate.send(topicName, key, message);
-        addCallback(topicName, message, kafkaResultFuture);
+        ListenableFuture<SendResult<Long, TwitterAvroModel>> kafkaResultFuture;
+        inFlightRecords.incrementAndGet();
+        long sendNanos = System.nanoTime();
+        try {
+            kafkaResultFuture = kafkaProducerPool.send(topicName, key, message);
+        } catch (KafkaException e) {
+            inFlightRecords.decrementAndGet();
+            if (spillLog == null) {
+                throw e;
+            }
+            log.warn("Kafka did not take message for topic {}, spilling it", topicName, e);
+            spillRecord(topicName, key, message);
+            return;
+        }
+        addCallback(topicName, key, message, sendNanos, kafkaResultFuture);
+    }
+
+    /**
+     * Sends a batch of TwitterAvroModel messages to the specified Kafka topic.
+     * Records behind a spill backlog are spilled, the rest are sent in order through the kafka producer.
+     *
+     * @param topicName the name of the Kafka topic to send the messages to.
+     * @param records   the keys and messages to send.
+     * @return a future completed with the per record results.
+     */
+    @Override
+    public CompletableFuture<BatchSendResult> send(String topicName, List<Pair<Long, TwitterAvroModel>> records) {
+        log.info("Sending batch of {} messages to topic='{}'", records.size(), topicName);
+        BatchCallback batchCallback = new BatchCallback(topicName, records);
+        int first = 0;
+        while (first < records.size() && spillLog != null && spillLog.appendIfBacklog(
+                new SpilledRecord<>(topicName, records.get(first).getKey(), records.get(first).getValue()))) {
+            spilledCounter.increment();
+            batchCallback.complete(first++, null, null);
+        }
+        int firstToSend = first;
+        if (firstToSend < records.size()) {
+            inFlightRecords.addAndGet(records.size() - firstToSend);
+            int[] partitions = new int[records.size()];
+            int[] producers = new int[records.size()];
+            for (int i = firstToSend; i < records.size(); i++) {
+                Pair<Long, TwitterAvroModel> record = records.get(i);
+                partitions[i] = kafkaProducerPool.partitionFor(topicName, record.getKey(), record.getValue());
+                producers[i] = kafkaProducerPool.producerFor(partitions[i]);
+            }
+            for (int producerIndex = 0; producerIndex < kafkaProducerPool.size(); producerIndex++) {
+                sendBatch(producerIndex, partitions, producers, batchCallback, firstToSend);
+            }
+        }
+        return batchCallback.resultFuture;
+    }
+
+    @Override
+    public boolean isSpillEnabled() {
+        return spillLog != null;
+    }
+
+    @Override
+    public void spill(String topicName, Long key, TwitterAvroModel message) {
+        if (spillLog == null) {
+            throw new KafkaProducerException("Spill log is not enabled, can not spill message for topic " + topicName);
+        }
+        spillRecord(topicName, key, message);
+    }
+
+    @Override
+    public double getAvailableBufferRatio() {
+        lookUpBufferMetrics();
+        double totalBytes = sumMetricValues(bufferTotalBytes);
+        return totalBytes <= 0 ? 1.0 : sumMetricValues(bufferAvailableBytes) / totalBytes;
+    }
+
+    @Override
+    public long getInFlightRecords() {
+        return inFlightRecords.get();
+    }
+
+    @Override
+    public boolean isSaturated() {
+        return Boolean.TRUE.equals(flowControlConfig.getEnabled()) &&
+                (inFlightRecords.get() > flowControlConfig.getMaxInFlightRecords() ||
+                        getAvailableBufferRatio() < flowControlConfig.getMinAvailableBufferRatio());
+    }
+
+    @Override
+    public boolean awaitCapacity() {
+        if (!isSaturated()) {
+            return true;
+        }
+        long startNanos = System.nanoTime();
+        long deadlineNanos = startNanos + TimeUnit.MILLISECONDS.toNanos(flowControlConfig.getMaxWaitMs());
+        boolean saturated;
+        while ((saturated = isSaturated()) && System.nanoTime() < deadlineNanos &&
+                !Thread.currentThread().isInterrupted()) {
+            LockSupport.parkNanos(CAPACITY_POLL_NS);
+        }
+        throttledTimer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        return !saturated;
     }
 
     /**
      * Cleans up resources and closes the Kafka producer upon bean destruction.
-     * Checks if KafkaTemplate is non-null and then logs the closing action before destroying.
+     * Checks if the KafkaProducerPool is non-null and then logs the closing action before destroying.
+     * The spill log is closed last, so that records failed while the producers are flushed are still spilled.
      */
     @PreDestroy
     public void close() {
-        if (kafkaTemplate != null) {
+        if (spillReplayer != null) {
+            spillReplayer.stop();
+        }
+        if (kafkaProducerPool != null) {
             log.info("Closing kafka producer...");
-            kafkaTemplate.destroy();
+            kafkaProducerPool.destroy();
+        }
+        if (spillLog != null) {
+            spillLog.close();
         }
     }
 
     /**
      * Registers callbacks for handling the success and failure scenarios for the Kafka message send operation.
-     * In case of failure, logs an error with the details of the throwable.
+     * In case of failure, logs an error with the details of the throwable and spills the message if enabled.
      * On success, logs detailed metadata including the topic, partition, offset, timestamp, and the nanosecond timestamp.
      *
      * @param topicName         the name of the Kafka topic.
+     * @param key               the key of the message.
      * @param message           the TwitterAvroModel message being sent.
+     * @param sendNanos         the nano time the message was sent at.
      * @param kafkaResultFuture the future result of the send operation.
      */
-    private void addCallback(String topicName, TwitterAvroModel message,
+    private void addCallback(String topicName, Long key, TwitterAvroModel message, long sendNanos,
                              ListenableFuture<SendResult<Long, TwitterAvroModel>> kafkaResultFuture) {
         kafkaResultFuture.addCallback(new ListenableFutureCallback<>() {
             @Override
             public void onFailure(Throwable throwable) {
+                inFlightRecords.decrementAndGet();
                 log.error("Error while sending message {} to topic {}", message.toString(), topicName, throwable);
+                if (spillLog != null) {
+                    spillRecord(topicName, key, message);
+                }
             }
 
             @Override
             public void onSuccess(SendResult<Long, TwitterAvroModel> result) {
+                inFlightRecords.decrementAndGet();
+                sendLatencyTimer.record(System.nanoTime() - sendNanos, TimeUnit.NANOSECONDS);
                 RecordMetadata metadata = result.getRecordMetadata();
                 log.debug("Received new metadata. Topic: {}; Partition {}; Offset {}; Timestamp {}, at time {}",
                         metadata.topic(),
@@ -85,4 +294,151 @@ public class TwitterKafkaProducer implements KafkaProducer<Long, TwitterAvroMode
         });
     }
 
+    private void spillRecord(String topicName, Long key, TwitterAvroModel message) {
+        spillLog.append(new SpilledRecord<>(topicName, key, message));
+        spilledCounter.increment();
+    }
+
+    private void lookUpBufferMetrics() {
+        long nowMs = System.currentTimeMillis();
+        if (!bufferTotalBytes.isEmpty() && nowMs - metricsLookedUpAtMs < METRIC_LOOKUP_INTERVAL_MS) {
+            return;
+        }
+        metricsLookedUpAtMs = nowMs;
+        List<Metric> availableBytes = new ArrayList<>();
+        List<Metric> totalBytes = new ArrayList<>();
+        for (KafkaTemplate<Long, TwitterAvroModel> kafkaTemplate : kafkaProducerPool.getTemplates()) {
+            for (Map.Entry<MetricName, ? extends Metric> metric : kafkaTemplate.metrics().entrySet()) {
+                if (PRODUCER_METRICS_GROUP.equals(metric.getKey().group())) {
+                    if (BUFFER_AVAILABLE_BYTES.equals(metric.getKey().name())) {
+                        availableBytes.add(metric.getValue());
+                    } else if (BUFFER_TOTAL_BYTES.equals(metric.getKey().name())) {
+                        totalBytes.add(metric.getValue());
+                    }
+                }
+            }
+        }
+        bufferAvailableBytes = availableBytes;
+        bufferTotalBytes = totalBytes;
+    }
+
+    private double sumMetricValues(List<Metric> metrics) {
+        double sum = 0;
+        for (Metric metric : metrics) {
+            Object value = metric.metricValue();
+            sum += value instanceof Number ? ((Number) value).doubleValue() : 0;
+        }
+        return sum;
+    }
+
+    /**
+     * Sends the records of the batch that were assigned to one producer of the pool, in batch order.
+     */
+    private void sendBatch(int producerIndex, int[] partitions, int[] producers, BatchCallback batchCallback,
+                           int first) {
+        try {
+            kafkaProducerPool.execute(producerIndex,
+                    producer -> sendBatch(producer, producerIndex, partitions, producers, batchCallback, first));
+        } catch (KafkaException e) {
+            //the producer could not be created, none of its records was sent
+            for (int i = first; i < producers.length; i++) {
+                if (producers[i] == producerIndex) {
+                    batchCallback.onCompletion(i, null, e);
+                }
+            }
+        }
+    }
+
+    private Void sendBatch(Producer<Long, TwitterAvroModel> producer, int producerIndex, int[] partitions,
+                           int[] producers, BatchCallback batchCallback, int first) {
+        for (int i = first; i < batchCallback.records.size(); i++) {
+            if (producers[i] != producerIndex) {
+                continue;
+            }
+            Pair<Long, TwitterAvroModel> record = batchCallback.records.get(i);
+            try {
+                producer.send(new ProducerRecord<>(batchCallback.topicName, partitions[i], record.getKey(),
+                        record.getValue()), new RecordCallback(batchCallback, i));
+            } catch (KafkaException e) {
+                //refused before the producer took the record, so its callback is not called
+                batchCallback.onCompletion(i, null, e);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * BatchCallback collects the results of all records of a batch and completes the batch future with the last one.
+     * Every record is sent with its own RecordCallback carrying its index, as the producer calls callbacks without
+     * metadata both for records refused on the sending thread and for batches that expired or failed on the I/O
+     * thread, so a failed record can not be told from its metadata.
+     */
+    private final class BatchCallback {
+
+        private final String topicName;
+        private final List<Pair<Long, TwitterAvroModel>> records;
+        private final BatchSendResult result;
+        private final CompletableFuture<BatchSendResult> resultFuture = new CompletableFuture<>();
+        private final AtomicInteger pendingRecords;
+        private final AtomicLong batchBytes = new AtomicLong();
+        private final long startNanos = System.nanoTime();
+
+        private BatchCallback(String topicName, List<Pair<Long, TwitterAvroModel>> records) {
+            this.topicName = topicName;
+            this.records = records;
+            this.result = new BatchSendResult(records.size());
+            this.pendingRecords = new AtomicInteger(records.size());
+            if (records.isEmpty()) {
+                resultFuture.complete(result);
+            }
+        }
+
+        private void onCompletion(int index, RecordMetadata metadata, Exception exception) {
+            inFlightRecords.decrementAndGet();
+            if (exception == null) {
+                sendLatencyTimer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+                batchBytes.addAndGet(Math.max(0, metadata.serializedKeySize()) +
+                        Math.max(0, metadata.serializedValueSize()));
+                complete(index, metadata, null);
+                return;
+            }
+            Pair<Long, TwitterAvroModel> record = records.get(index);
+            log.error("Error while sending message {} of a batch to topic {}", record.getValue(), topicName,
+                    exception);
+            if (spillLog != null) {
+                spillRecord(topicName, record.getKey(), record.getValue());
+                complete(index, null, null);
+            } else {
+                complete(index, null, exception);
+            }
+        }
+
+        private void complete(int index, RecordMetadata metadata, Exception exception) {
+            result.setMetadata(index, metadata);
+            result.setException(index, exception);
+            if (pendingRecords.decrementAndGet() == 0) {
+                batchSizeSummary.record(records.size());
+                batchBytesSummary.record(batchBytes.get());
+                batchLatencyTimer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+                resultFuture.complete(result);
+            }
+        }
+    }
+
+    private static final class RecordCallback implements Callback {
+
+        private final BatchCallback batchCallback;
+        private final int index;
+
+        private RecordCallback(BatchCallback batchCallback, int index) {
+            this.batchCallback = batchCallback;
+            this.index = index;
+        }
+
+        @Override
+        public void onCompletion(RecordMetadata metadata, Exception exception) {
+            batchCallback.onCompletion(index, metadata, exception);
+        }
+    }
+
 }
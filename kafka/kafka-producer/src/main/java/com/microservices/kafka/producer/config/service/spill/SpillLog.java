@@ -0,0 +1,279 @@
+package com.microservices.kafka.producer.config.service.spill;
+
+import com.microservices.kafka.producer.exception.KafkaProducerException;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.avro.Schema;
+import org.apache.avro.file.DataFileWriter;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.EncoderFactory;
+import org.apache.avro.specific.SpecificDatumWriter;
+import org.apache.avro.specific.SpecificRecordBase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * SpillLog is an append-only log of the records kafka could not take, kept in a directory of segment files.
+ * Every segment is an avro container file written through a memory mapped buffer of the configured segment size;
+ * a segment is sealed and truncated to its written length when it is full or when the replayer wants to drain it.
+ * Records only reach the disk when the page cache is written back, which survives a crash of the service but not of
+ * the machine.
+ * Appending only queues the record for a single writer thread, which writes the records in the order they were
+ * appended, so the producer callback threads that spill failed records are not held up by the disk.
+ * The backlog counts the records appended and not yet acknowledged by kafka. It is counted when a record is appended,
+ * before it is written, and as long as it is not zero new records are appended behind it instead of being sent.
+ * Records sent after the backlog started keep their order, per key as well, through an outage. Records that were
+ * already in flight when the outage started are spilled when kafka fails them, so they can land behind records sent
+ * at the same time that kafka acknowledged; with retries and an idempotent producer that window is the delivery
+ * timeout.
+ *
+ * @param <V> the type of the record value.
+ */
+@Slf4j
+public class SpillLog<V extends SpecificRecordBase> {
+
+    //block count and block size varints plus the sync marker that DataFileWriter adds around every flushed block
+    private static final int BLOCK_OVERHEAD_BYTES = 10 + 10 + 16;
+    private static final long CLOSE_TIMEOUT_SECONDS = 10;
+
+    private final Path directory;
+    private final long segmentBytes;
+    private final Schema schema;
+    private final SpecificDatumWriter<GenericRecord> datumWriter;
+    private final ByteArrayOutputStream encodedRecord = new ByteArrayOutputStream(1024);
+    private final AtomicLong backlogRecords = new AtomicLong();
+    private final Deque<Path> sealedSegments = new ArrayDeque<>();
+    private final ExecutorService writerExecutor = Executors.newSingleThreadExecutor();
+
+    private BinaryEncoder encoder;
+    private Path activeSegment;
+    private FileChannel activeChannel;
+    private MappedByteBuffer activeBuffer;
+    private DataFileWriter<GenericRecord> activeWriter;
+    private long activeRecords;
+    private long lastSegmentStartedAtMs;
+
+    /**
+     * Opens the spill log and takes over the segments left in the directory by a previous run into the backlog.
+     *
+     * @param directory    the directory of the segment files.
+     * @param segmentBytes the size of a segment file.
+     * @param valueSchema  the avro schema of the record values.
+     */
+    public SpillLog(Path directory, long segmentBytes, Schema valueSchema) {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.schema = SpilledRecord.schemaFor(valueSchema);
+        this.datumWriter = new SpecificDatumWriter<>(schema);
+        try {
+            Files.createDirectories(directory);
+            List<Path> segments = SpillSegmentReader.listSegments(directory);
+            for (Path segment : segments) {
+                backlogRecords.addAndGet(SpillSegmentReader.countRecords(segment));
+                sealedSegments.add(segment);
+            }
+        } catch (IOException e) {
+            throw new KafkaProducerException("Error while opening spill log in " + directory, e);
+        }
+        if (backlogRecords.get() > 0) {
+            log.info("Found {} spilled records in {} segments in {}", backlogRecords.get(), sealedSegments.size(),
+                    directory);
+        }
+    }
+
+    public Schema getSchema() {
+        return schema;
+    }
+
+    public long getBacklogRecords() {
+        return backlogRecords.get();
+    }
+
+    /**
+     * Appends the record. It is counted in the backlog right away and written to the active segment by the writer
+     * thread.
+     *
+     * @param record the record to append.
+     */
+    public void append(SpilledRecord<V> record) {
+        synchronized (writerExecutor) {
+            backlogRecords.incrementAndGet();
+            try {
+                writerExecutor.execute(() -> write(record));
+            } catch (RejectedExecutionException e) {
+                backlogRecords.decrementAndGet();
+                log.error("Spill log in {} is closed, record for topic {} is lost", directory, record.getTopic());
+            }
+        }
+    }
+
+    /**
+     * Appends the record only if there is a backlog, so that it does not overtake the spilled records.
+     *
+     * @param record the record to append.
+     * @return true if the record was appended, false if there is no backlog and the record can be sent.
+     */
+    public boolean appendIfBacklog(SpilledRecord<V> record) {
+        synchronized (writerExecutor) {
+            if (backlogRecords.get() == 0) {
+                return false;
+            }
+            append(record);
+            return true;
+        }
+    }
+
+    private synchronized void write(SpilledRecord<V> record) {
+        GenericRecord spilledRecord = new GenericData.Record(schema);
+        spilledRecord.put(SpilledRecord.TOPIC_FIELD, record.getTopic());
+        spilledRecord.put(SpilledRecord.KEY_FIELD, record.getKey());
+        spilledRecord.put(SpilledRecord.VALUE_FIELD, record.getValue());
+        try {
+            encodedRecord.reset();
+            encoder = EncoderFactory.get().binaryEncoder(encodedRecord, encoder);
+            datumWriter.write(spilledRecord, encoder);
+            encoder.flush();
+            DataFileWriter<GenericRecord> writer = getActiveWriter(encodedRecord.size() + BLOCK_OVERHEAD_BYTES);
+            writer.appendEncoded(ByteBuffer.wrap(encodedRecord.toByteArray()));
+            writer.flush();
+            activeRecords++;
+        } catch (IOException | RuntimeException e) {
+            backlogRecords.decrementAndGet();
+            log.error("Error while appending record for topic {} to spill log in {}, the record is lost",
+                    record.getTopic(), directory, e);
+        }
+    }
+
+    /**
+     * Returns the oldest segment to drain. When all sealed segments are drained the active segment is sealed,
+     * so records appended while draining are picked up as well.
+     *
+     * @return the oldest sealed segment or null if nothing is left to drain.
+     */
+    public synchronized Path nextSegmentToDrain() {
+        if (sealedSegments.isEmpty() && activeRecords > 0) {
+            sealActiveSegment();
+        }
+        return sealedSegments.peek();
+    }
+
+    /**
+     * Marks records as acknowledged by kafka.
+     *
+     * @param records the number of drained records.
+     */
+    public void drained(long records) {
+        backlogRecords.addAndGet(-records);
+    }
+
+    /**
+     * Deletes a segment once all its records are drained.
+     *
+     * @param segment the drained segment.
+     */
+    public synchronized void deleteSegment(Path segment) {
+        sealedSegments.remove(segment);
+        try {
+            Files.deleteIfExists(segment);
+        } catch (IOException e) {
+            throw new KafkaProducerException("Error while deleting drained spill segment " + segment, e);
+        }
+    }
+
+    /**
+     * Writes the records still queued for the writer thread and seals the active segment.
+     */
+    public void close() {
+        writerExecutor.shutdown();
+        try {
+            if (!writerExecutor.awaitTermination(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                log.warn("Spill log writer did not finish writing queued records in {} seconds",
+                        CLOSE_TIMEOUT_SECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            if (activeWriter != null) {
+                log.info("Closing spill log in {} with a backlog of {} records", directory, backlogRecords.get());
+                sealActiveSegment();
+            }
+        }
+    }
+
+    private DataFileWriter<GenericRecord> getActiveWriter(int recordBytes) throws IOException {
+        if (activeWriter != null && activeBuffer.remaining() < recordBytes) {
+            sealActiveSegment();
+        }
+        if (activeWriter == null) {
+            lastSegmentStartedAtMs = Math.max(System.currentTimeMillis(), lastSegmentStartedAtMs + 1);
+            activeSegment = SpillSegmentReader.segmentPath(directory, lastSegmentStartedAtMs);
+            activeChannel = FileChannel.open(activeSegment,
+                    StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            activeBuffer = activeChannel.map(FileChannel.MapMode.READ_WRITE, 0,
+                    Math.max(segmentBytes, (long) recordBytes * 2));
+            activeWriter = new DataFileWriter<>(datumWriter).create(schema, new MappedOutputStream(activeBuffer));
+            activeRecords = 0;
+            log.info("Started spill segment {}", activeSegment);
+        }
+        return activeWriter;
+    }
+
+    private void sealActiveSegment() {
+        if (activeWriter == null) {
+            return;
+        }
+        try {
+            activeWriter.close();
+            activeChannel.truncate(activeBuffer.position());
+            activeChannel.close();
+        } catch (IOException e) {
+            throw new KafkaProducerException("Error while sealing spill segment " + activeSegment, e);
+        }
+        log.info("Sealed spill segment {} with {} records", activeSegment, activeRecords);
+        sealedSegments.add(activeSegment);
+        activeWriter = null;
+        activeChannel = null;
+        activeBuffer = null;
+        activeSegment = null;
+        activeRecords = 0;
+    }
+
+    private static final class MappedOutputStream extends OutputStream {
+
+        private final MappedByteBuffer buffer;
+
+        private MappedOutputStream(MappedByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public void write(int b) {
+            buffer.put((byte) b);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) {
+            buffer.put(bytes, offset, length);
+        }
+
+    }
+
+}
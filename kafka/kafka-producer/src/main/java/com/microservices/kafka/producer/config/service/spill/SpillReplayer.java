@@ -0,0 +1,153 @@
+package com.microservices.kafka.producer.config.service.spill;
+
+import com.microservices.config.KafkaProducerConfigData;
+import com.microservices.kafka.producer.config.KafkaProducerPool;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.avro.specific.SpecificRecordBase;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.util.concurrent.ListenableFuture;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * SpillReplayer drains the spill log back to kafka from a single background thread once the cluster recovers.
+ * Segments are drained oldest first and in order, at no more than the configured rate, in chunks that are only
+ * counted as drained once kafka acknowledged every record of the chunk. Every attempt starts with a single record
+ * chunk, so that probing a cluster that is still down does not wait on a full chunk of timeouts.
+ * A failed chunk is sent again on the next attempt, so records are delivered at least once.
+ * The backlog size, the drained records and the drain rate of the last chunk are exposed as metrics.
+ *
+ * @param <V> the type of the record value.
+ */
+@Slf4j
+public class SpillReplayer<V extends SpecificRecordBase> {
+
+    private static final int CHUNK_RECORDS = 500;
+
+    private final SpillLog<V> spillLog;
+    private final KafkaProducerPool<Long, V> kafkaProducerPool;
+    private final KafkaProducerConfigData.Spill spillConfig;
+    private final Counter drainedCounter;
+    private final AtomicLong drainRatePerSecond = new AtomicLong();
+
+    private ScheduledExecutorService drainExecutor;
+
+    //the segment drained partially by the last attempt and the number of its records already acknowledged
+    private Path partialSegment;
+    private long partialSegmentDrainedRecords;
+
+    public SpillReplayer(SpillLog<V> spill,
+                         KafkaProducerPool<Long, V> producerPool,
+                         KafkaProducerConfigData.Spill config,
+                         MeterRegistry meterRegistry) {
+        this.spillLog = spill;
+        this.kafkaProducerPool = producerPool;
+        this.spillConfig = config;
+        meterRegistry.gauge("kafka.producer.spill.backlog", spillLog, SpillLog::getBacklogRecords);
+        meterRegistry.gauge("kafka.producer.spill.drain.rate", drainRatePerSecond);
+        this.drainedCounter = meterRegistry.counter("kafka.producer.spill.drained");
+    }
+
+    public void start() {
+        drainExecutor = Executors.newSingleThreadScheduledExecutor();
+        drainExecutor.scheduleWithFixedDelay(this::drain, spillConfig.getDrainIntervalMs(),
+                spillConfig.getDrainIntervalMs(), TimeUnit.MILLISECONDS);
+    }
+
+    public void stop() {
+        if (drainExecutor != null) {
+            drainExecutor.shutdownNow();
+        }
+    }
+
+    private void drain() {
+        try {
+            Path segment;
+            while ((segment = spillLog.nextSegmentToDrain()) != null && !Thread.currentThread().isInterrupted()) {
+                if (!drainSegment(segment)) {
+                    return;
+                }
+                spillLog.deleteSegment(segment);
+            }
+        } catch (Exception e) {
+            log.error("Error while draining spill log, will try again in {} ms", spillConfig.getDrainIntervalMs(), e);
+        }
+    }
+
+    /**
+     * @return true if every record of the segment was acknowledged by kafka.
+     */
+    private boolean drainSegment(Path segment) throws IOException {
+        long skipRecords = segment.equals(partialSegment) ? partialSegmentDrainedRecords : 0;
+        partialSegment = segment;
+        partialSegmentDrainedRecords = skipRecords;
+        long sendIntervalNanos = TimeUnit.SECONDS.toNanos(1) / Math.max(1, spillConfig.getDrainRatePerSecond());
+        try (SpillSegmentReader<V> reader = new SpillSegmentReader<>(segment)) {
+            for (long i = 0; i < skipRecords; i++) {
+                reader.next();
+            }
+            List<ListenableFuture<SendResult<Long, V>>> chunk = new ArrayList<>(CHUNK_RECORDS);
+            SpilledRecord<V> record;
+            int chunkRecords = 1;
+            do {
+                long chunkStartNanos = System.nanoTime();
+                long nextSendNanos = chunkStartNanos;
+                chunk.clear();
+                while (chunk.size() < chunkRecords && (record = reader.next()) != null) {
+                    waitUntil(nextSendNanos);
+                    nextSendNanos += sendIntervalNanos;
+                    chunk.add(kafkaProducerPool.send(record.getTopic(), record.getKey(), record.getValue()));
+                }
+                if (!awaitAcknowledged(chunk)) {
+                    return false;
+                }
+                partialSegmentDrainedRecords += chunk.size();
+                spillLog.drained(chunk.size());
+                drainedCounter.increment(chunk.size());
+                long chunkNanos = Math.max(1, System.nanoTime() - chunkStartNanos);
+                drainRatePerSecond.set(chunk.size() * TimeUnit.SECONDS.toNanos(1) / chunkNanos);
+                chunkRecords = CHUNK_RECORDS;
+            } while (!chunk.isEmpty());
+        }
+        log.info("Drained spill segment {}, {} records left in the backlog", segment, spillLog.getBacklogRecords());
+        partialSegment = null;
+        return true;
+    }
+
+    private boolean awaitAcknowledged(List<ListenableFuture<SendResult<Long, V>>> chunk) {
+        try {
+            for (ListenableFuture<SendResult<Long, V>> future : chunk) {
+                future.get(spillConfig.getSendTimeoutMs(), TimeUnit.MILLISECONDS);
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException | TimeoutException e) {
+            log.warn("Kafka is not available yet, {} spilled records left in the backlog",
+                    spillLog.getBacklogRecords(), e);
+            drainRatePerSecond.set(0);
+            return false;
+        }
+    }
+
+    private void waitUntil(long dueNanos) {
+        long waitNanos;
+        while ((waitNanos = dueNanos - System.nanoTime()) > 0 && !Thread.currentThread().isInterrupted()) {
+            LockSupport.parkNanos(waitNanos);
+        }
+    }
+
+}
@@ -0,0 +1,121 @@
+package com.microservices.kafka.producer.config.service.spill;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.avro.AvroRuntimeException;
+import org.apache.avro.file.DataFileStream;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.specific.SpecificDatumReader;
+import org.apache.avro.specific.SpecificRecordBase;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * SpillSegmentReader reads the records of a sealed spill segment through a read only memory mapped buffer.
+ * A segment that was not sealed because the service stopped abruptly ends with unwritten zero bytes,
+ * reading stops quietly at the first block that cannot be decoded.
+ *
+ * @param <V> the type of the record value.
+ */
+@Slf4j
+public class SpillSegmentReader<V extends SpecificRecordBase> implements Closeable {
+
+    public static final String FILE_SUFFIX = ".avro";
+
+    private final Path segment;
+    private final DataFileStream<GenericRecord> recordStream;
+
+    public SpillSegmentReader(Path segment) throws IOException {
+        this.segment = segment;
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        this.recordStream = new DataFileStream<>(new MappedInputStream(buffer), new SpecificDatumReader<>());
+    }
+
+    public static Path segmentPath(Path directory, long startedAtMs) {
+        return directory.resolve(String.format("%020d%s", startedAtMs, FILE_SUFFIX));
+    }
+
+    public static List<Path> listSegments(Path directory) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return List.of();
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(FILE_SUFFIX))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    public static long countRecords(Path segment) throws IOException {
+        long records = 0;
+        try (SpillSegmentReader<SpecificRecordBase> reader = new SpillSegmentReader<>(segment)) {
+            while (reader.next() != null) {
+                records++;
+            }
+        }
+        return records;
+    }
+
+    /**
+     * @return the next record or null at the end of the segment.
+     */
+    public SpilledRecord<V> next() {
+        try {
+            if (!recordStream.hasNext()) {
+                return null;
+            }
+            return SpilledRecord.fromGenericRecord(recordStream.next());
+        } catch (AvroRuntimeException e) {
+            log.warn("Stopped reading spill segment {} at an incomplete block", segment, e);
+            return null;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        recordStream.close();
+    }
+
+    private static final class MappedInputStream extends InputStream {
+
+        private final MappedByteBuffer buffer;
+
+        private MappedInputStream(MappedByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int read = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, read);
+            return read;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+
+    }
+
+}
@@ -0,0 +1,45 @@
+package com.microservices.kafka.producer.config.service.spill;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.apache.avro.Schema;
+import org.apache.avro.SchemaBuilder;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.specific.SpecificRecordBase;
+
+/**
+ * SpilledRecord is a record kafka could not take, kept in the spill log together with its topic and key.
+ * In the spill segments it is stored as an avro record that wraps the value schema, so the segments are plain
+ * avro container files that can be inspected with the avro tools.
+ *
+ * @param <V> the type of the record value.
+ */
+@Getter
+@AllArgsConstructor
+public class SpilledRecord<V extends SpecificRecordBase> {
+
+    static final String TOPIC_FIELD = "topic";
+    static final String KEY_FIELD = "key";
+    static final String VALUE_FIELD = "value";
+
+    private final String topic;
+    private final Long key;
+    private final V value;
+
+    static Schema schemaFor(Schema valueSchema) {
+        return SchemaBuilder.record("SpilledRecord")
+                .namespace("com.microservices.kafka.producer.spill")
+                .fields()
+                .requiredString(TOPIC_FIELD)
+                .optionalLong(KEY_FIELD)
+                .name(VALUE_FIELD).type(valueSchema).noDefault()
+                .endRecord();
+    }
+
+    @SuppressWarnings("unchecked")
+    static <V extends SpecificRecordBase> SpilledRecord<V> fromGenericRecord(GenericRecord record) {
+        return new SpilledRecord<>(record.get(TOPIC_FIELD).toString(), (Long) record.get(KEY_FIELD),
+                (V) record.get(VALUE_FIELD));
+    }
+
+}
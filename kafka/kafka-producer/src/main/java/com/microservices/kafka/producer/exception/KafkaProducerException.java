@@ -0,0 +1,18 @@
+package com.microservices.kafka.producer.exception;
+
+/**
+ * Exception class for Kafka producer errors.
+ */
+public class KafkaProducerException extends RuntimeException {
+
+    public KafkaProducerException() {
+    }
+
+    public KafkaProducerException(String message) {
+        super(message);
+    }
+
+    public KafkaProducerException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
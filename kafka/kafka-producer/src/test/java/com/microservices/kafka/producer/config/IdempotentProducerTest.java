@@ -0,0 +1,177 @@
+package com.microservices.kafka.producer.config;
+
+import com.microservices.config.KafkaConfigData;
+import com.microservices.config.KafkaProducerConfigData;
+import com.microservices.kafka.avro.model.TwitterAvroModel;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.admin.AdminClient;
+import org.apache.kafka.clients.admin.AdminClientConfig;
+import org.apache.kafka.clients.admin.AlterConfigOp;
+import org.apache.kafka.clients.admin.ConfigEntry;
+import org.apache.kafka.clients.admin.NewTopic;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.Metric;
+import org.apache.kafka.common.MetricName;
+import org.apache.kafka.common.config.ConfigResource;
+import org.apache.kafka.common.config.TopicConfig;
+import org.apache.kafka.common.serialization.LongDeserializer;
+import org.apache.kafka.common.serialization.LongSerializer;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Sends keyed records with the idempotent producer mode of KafkaProducerConfig to an embedded broker whose topic
+ * first refuses every write with NOT_ENOUGH_REPLICAS, so that the batches in flight are retried, and checks that
+ * every key still has all of its records, once and in order.
+ * The throughput comparison with the default mode runs only with -Dkafka.producer.benchmark=true.
+ */
+@Slf4j
+public class IdempotentProducerTest {
+
+    private static final int PARTITIONS = 3;
+    private static final int KEYS = 20;
+    private static final int RECORDS_PER_KEY = 500;
+
+    private static EmbeddedKafkaBroker broker;
+    private static AdminClient adminClient;
+
+    @BeforeAll
+    public static void startBroker() {
+        broker = new EmbeddedKafkaBroker(1, false);
+        broker.afterPropertiesSet();
+        adminClient = AdminClient.create(Map.of(AdminClientConfig.BOOTSTRAP_SERVERS_CONFIG,
+                broker.getBrokersAsString()));
+    }
+
+    @AfterAll
+    public static void stopBroker() {
+        adminClient.close();
+        broker.destroy();
+    }
+
+    @Test
+    public void keepsTheOrderOfEveryKeyWhenBatchesAreRetried() throws Exception {
+        String topic = "idempotent-retries";
+        adminClient.createTopics(List.of(new NewTopic(topic, PARTITIONS, (short) 1)
+                .configs(Map.of(TopicConfig.MIN_IN_SYNC_REPLICAS_CONFIG, "2")))).all().get();
+        try (KafkaProducer<Long, String> producer = new KafkaProducer<>(producerConfig(true, 1024))) {
+            for (int sequence = 0; sequence < RECORDS_PER_KEY; sequence++) {
+                for (long key = 0; key < KEYS; key++) {
+                    producer.send(new ProducerRecord<>(topic, key, String.valueOf(sequence)));
+                }
+                if (sequence == RECORDS_PER_KEY / 2) {
+                    //let the refused batches be retried a few times before the topic takes writes again
+                    Thread.sleep(1000);
+                    setMinInSyncReplicas(topic, "1");
+                }
+            }
+            producer.flush();
+            assertTrue(getMetricValue(producer, "record-retry-total") > 0);
+        }
+        Map<Long, Integer> nextSequences = new HashMap<>();
+        for (ConsumerRecord<Long, String> record : consumeAll(topic, KEYS * RECORDS_PER_KEY)) {
+            int expectedSequence = nextSequences.getOrDefault(record.key(), 0);
+            assertEquals(expectedSequence, Integer.parseInt(record.value()), "record of key " + record.key());
+            nextSequences.put(record.key(), expectedSequence + 1);
+        }
+        assertEquals(KEYS, nextSequences.size());
+        nextSequences.values().forEach(sequence -> assertEquals(RECORDS_PER_KEY, sequence));
+    }
+
+    @Test
+    @EnabledIfSystemProperty(named = "kafka.producer.benchmark", matches = "true")
+    public void comparesThroughputWithTheDefaultMode() throws Exception {
+        String value = "x".repeat(300);
+        int records = 200000;
+        for (int round = 0; round < 2; round++) {
+            for (boolean idempotence : new boolean[]{false, true}) {
+                String topic = "throughput-" + round + "-" + idempotence;
+                adminClient.createTopics(List.of(new NewTopic(topic, PARTITIONS, (short) 1))).all().get();
+                try (KafkaProducer<Long, String> producer = new KafkaProducer<>(producerConfig(idempotence, 65536))) {
+                    long start = System.nanoTime();
+                    for (long key = 0; key < records; key++) {
+                        producer.send(new ProducerRecord<>(topic, key % KEYS, value));
+                    }
+                    producer.flush();
+                    log.info("Round {}, idempotence {}: {} records/s", round, idempotence,
+                            Math.round(records * 1e9 / (System.nanoTime() - start)));
+                }
+            }
+        }
+    }
+
+    private static Map<String, Object> producerConfig(boolean idempotence, int batchSize) {
+        KafkaConfigData kafkaConfigData = new KafkaConfigData();
+        kafkaConfigData.setBootstrapServers(broker.getBrokersAsString());
+        kafkaConfigData.setSchemaRegistryUrlKey("schema.registry.url");
+        kafkaConfigData.setSchemaRegistryUrl("http://localhost:8081");
+        KafkaProducerConfigData producerConfigData = new KafkaProducerConfigData();
+        producerConfigData.setKeySerializerClass(LongSerializer.class.getName());
+        producerConfigData.setValueSerializerClass(StringSerializer.class.getName());
+        producerConfigData.setCompressionType("none");
+        producerConfigData.setAcks("1");
+        producerConfigData.setBatchSize(batchSize);
+        producerConfigData.setBatchSizeBoostFactor(1);
+        producerConfigData.setLingerMs(5);
+        producerConfigData.setRequestTimeoutMs(30000);
+        producerConfigData.setRetryCount(Integer.MAX_VALUE);
+        producerConfigData.setEnableIdempotence(idempotence);
+        return new KafkaProducerConfig<Long, TwitterAvroModel>(kafkaConfigData, producerConfigData,
+                new SimpleMeterRegistry()).producerConfig();
+    }
+
+    private static void setMinInSyncReplicas(String topic, String minInSyncReplicas) throws Exception {
+        ConfigResource topicResource = new ConfigResource(ConfigResource.Type.TOPIC, topic);
+        AlterConfigOp setMinInSyncReplicas = new AlterConfigOp(
+                new ConfigEntry(TopicConfig.MIN_IN_SYNC_REPLICAS_CONFIG, minInSyncReplicas), AlterConfigOp.OpType.SET);
+        adminClient.incrementalAlterConfigs(Map.of(topicResource, List.of(setMinInSyncReplicas))).all().get();
+    }
+
+    private static double getMetricValue(KafkaProducer<?, ?> producer, String name) {
+        for (Map.Entry<MetricName, ? extends Metric> metric : producer.metrics().entrySet()) {
+            if ("producer-metrics".equals(metric.getKey().group()) && name.equals(metric.getKey().name())) {
+                return ((Number) metric.getValue().metricValue()).doubleValue();
+            }
+        }
+        return 0;
+    }
+
+    private static List<ConsumerRecord<Long, String>> consumeAll(String topic, int count) {
+        Map<String, Object> consumerConfig = new HashMap<>();
+        consumerConfig.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, broker.getBrokersAsString());
+        consumerConfig.put(ConsumerConfig.GROUP_ID_CONFIG, topic + "-check");
+        consumerConfig.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+        try (KafkaConsumer<Long, String> consumer = new KafkaConsumer<>(consumerConfig, new LongDeserializer(),
+                new StringDeserializer())) {
+            consumer.subscribe(Set.of(topic));
+            List<ConsumerRecord<Long, String>> records = new ArrayList<>();
+            long deadline = System.currentTimeMillis() + 60000;
+            while (records.size() < count && System.currentTimeMillis() < deadline) {
+                consumer.poll(Duration.ofMillis(500)).forEach(records::add);
+            }
+            assertEquals(count, records.size());
+            return records;
+        }
+    }
+
+}
@@ -0,0 +1,103 @@
+package com.microservices.kafka.producer.config;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.serialization.LongSerializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Compares the send throughput of a pool of one producer with a pool of several producers, on an embedded broker.
+ * Runs only with -Dkafka.producer.pool.benchmark=true, the numbers depend on the machine.
+ */
+@Slf4j
+@EnabledIfSystemProperty(named = "kafka.producer.pool.benchmark", matches = "true")
+public class KafkaProducerPoolBenchmarkTest {
+
+    private static final String TOPIC = "pool-benchmark";
+    private static final int PARTITIONS = 12;
+    private static final int SENDER_THREADS = 4;
+    private static final int RECORDS_PER_THREAD = 50000;
+    private static final int ROUNDS = 2;
+
+    private static EmbeddedKafkaBroker broker;
+
+    @BeforeAll
+    public static void startBroker() {
+        broker = new EmbeddedKafkaBroker(1, false, PARTITIONS, TOPIC);
+        broker.afterPropertiesSet();
+    }
+
+    @AfterAll
+    public static void stopBroker() {
+        broker.destroy();
+    }
+
+    @Test
+    public void comparesOneProducerWithFourProducers() throws Exception {
+        String value = "x".repeat(300);
+        for (int round = 0; round < ROUNDS; round++) {
+            for (int producers : new int[]{1, 4}) {
+                KafkaProducerPool<Long, String> pool = createPool(producers);
+                try {
+                    double recordsPerSecond = sendRecords(pool, value);
+                    log.info("Round {}, {} producer(s): {} records/s", round, producers,
+                            Math.round(recordsPerSecond));
+                } finally {
+                    pool.destroy();
+                }
+            }
+        }
+    }
+
+    private double sendRecords(KafkaProducerPool<Long, String> pool, String value) throws Exception {
+        ExecutorService senders = Executors.newFixedThreadPool(SENDER_THREADS);
+        long start = System.nanoTime();
+        List<Future<?>> futures = new ArrayList<>();
+        for (int thread = 0; thread < SENDER_THREADS; thread++) {
+            long firstKey = (long) thread * RECORDS_PER_THREAD;
+            futures.add(senders.submit(() -> {
+                for (long key = firstKey; key < firstKey + RECORDS_PER_THREAD; key++) {
+                    pool.send(TOPIC, key, value);
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        pool.getTemplates().forEach(KafkaTemplate::flush);
+        long elapsedNanos = System.nanoTime() - start;
+        senders.shutdown();
+        return SENDER_THREADS * RECORDS_PER_THREAD * 1e9 / elapsedNanos;
+    }
+
+    private KafkaProducerPool<Long, String> createPool(int producers) {
+        Map<String, Object> producerConfig = new HashMap<>();
+        producerConfig.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, broker.getBrokersAsString());
+        producerConfig.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, LongSerializer.class);
+        producerConfig.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
+        producerConfig.put(ProducerConfig.LINGER_MS_CONFIG, 5);
+        producerConfig.put(ProducerConfig.BATCH_SIZE_CONFIG, 65536);
+        producerConfig.put(ProducerConfig.COMPRESSION_TYPE_CONFIG, "lz4");
+        List<KafkaTemplate<Long, String>> templates = new ArrayList<>();
+        for (int i = 0; i < producers; i++) {
+            templates.add(new KafkaTemplate<>(new DefaultKafkaProducerFactory<>(producerConfig)));
+        }
+        return new KafkaProducerPool<>(templates, producerConfig, new SimpleMeterRegistry());
+    }
+}
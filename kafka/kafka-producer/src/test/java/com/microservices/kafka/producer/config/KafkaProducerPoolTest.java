@@ -0,0 +1,161 @@
+package com.microservices.kafka.producer.config;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.producer.Partitioner;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.Cluster;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.serialization.LongSerializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.apache.kafka.common.utils.Utils;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaOperations;
+import org.springframework.kafka.core.KafkaTemplate;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class KafkaProducerPoolTest {
+
+    private static final String TOPIC = "twitter-topic";
+
+    @Test
+    public void picksTheDefaultPartitionOfAKey() {
+        KafkaProducerPool<Long, String> pool = createPool(3, 6, null);
+        LongSerializer serializer = new LongSerializer();
+        for (long key = 0; key < 100; key++) {
+            int partition = Utils.toPositive(Utils.murmur2(serializer.serialize(TOPIC, key))) % 6;
+            assertEquals(partition, pool.partitionFor(TOPIC, key, "value"));
+        }
+    }
+
+    @Test
+    public void spreadsRecordsWithoutKeyOverThePartitions() {
+        KafkaProducerPool<Long, String> pool = createPool(3, 6, null);
+        for (int i = 0; i < 12; i++) {
+            assertEquals(i % 6, pool.partitionFor(TOPIC, null, "value"));
+        }
+    }
+
+    @Test
+    public void picksThePartitionOfTheConfiguredPartitioner() {
+        KafkaProducerPool<Long, String> pool = createPool(3, 6, LastPartitionPartitioner.class);
+        assertEquals(5, pool.partitionFor(TOPIC, 1L, "value"));
+        assertEquals(2, pool.producerFor(5));
+    }
+
+    @Test
+    public void sendsThePartitionsOfAProducer() {
+        KafkaProducerPool<Long, String> pool = createPool(4, 8, null);
+        for (int partition = 0; partition < 8; partition++) {
+            assertEquals(partition % 4, pool.producerFor(partition));
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void closesReplacedProducersButNotTheSharedOne() {
+        List<KafkaTemplate<Long, String>> templates = new ArrayList<>();
+        List<DefaultKafkaProducerFactory<Long, String>> factories = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            KafkaTemplate<Long, String> template = mock(KafkaTemplate.class);
+            DefaultKafkaProducerFactory<Long, String> factory = mock(DefaultKafkaProducerFactory.class);
+            when(template.getProducerFactory()).thenReturn(factory);
+            templates.add(template);
+            factories.add(factory);
+        }
+        KafkaProducerPool<Long, String> pool = new KafkaProducerPool<>(templates.subList(0, 2), templates.get(0),
+                producerConfig(null), new SimpleMeterRegistry());
+        pool.replaceTemplate(0, templates.get(2));
+        verify(templates.get(0)).flush();
+        verify(factories.get(0), never()).destroy();
+        assertSame(templates.get(2), pool.getTemplate(0));
+        pool.replaceTemplate(1, mock(KafkaTemplate.class));
+        verify(templates.get(1)).flush();
+        verify(factories.get(1)).destroy();
+        pool.destroy();
+        verify(factories.get(2)).destroy();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void holdsTheSendsOfAReplacedProducerUntilItIsFlushed() throws InterruptedException {
+        KafkaProducerPool<Long, String> pool = createPool(2, 4, null);
+        KafkaTemplate<Long, String> replacedTemplate = pool.getTemplate(0);
+        KafkaTemplate<Long, String> newTemplate = mock(KafkaTemplate.class);
+        KafkaOperations.ProducerCallback<Long, String, Void> callback = producer -> null;
+        CountDownLatch sent = new CountDownLatch(1);
+        Thread sender = new Thread(() -> {
+            pool.execute(0, callback);
+            sent.countDown();
+        });
+        doAnswer(invocation -> {
+            sender.start();
+            //the send waits for the flush instead of going to either producer
+            assertFalse(sent.await(200, TimeUnit.MILLISECONDS));
+            return null;
+        }).when(replacedTemplate).flush();
+        pool.replaceTemplate(0, newTemplate);
+        assertTrue(sent.await(10, TimeUnit.SECONDS));
+        verify(replacedTemplate, never()).execute(callback);
+        verify(newTemplate).execute(callback);
+    }
+
+    @SuppressWarnings("unchecked")
+    private KafkaProducerPool<Long, String> createPool(int producers, int partitions,
+                                                       Class<? extends Partitioner> partitionerClass) {
+        List<PartitionInfo> partitionInfos = new ArrayList<>();
+        for (int i = 0; i < partitions; i++) {
+            partitionInfos.add(new PartitionInfo(TOPIC, i, null, null, null));
+        }
+        List<KafkaTemplate<Long, String>> templates = new ArrayList<>();
+        for (int i = 0; i < producers; i++) {
+            KafkaTemplate<Long, String> template = mock(KafkaTemplate.class);
+            when(template.partitionsFor(TOPIC)).thenReturn(partitionInfos);
+            templates.add(template);
+        }
+        return new KafkaProducerPool<>(templates, producerConfig(partitionerClass), new SimpleMeterRegistry());
+    }
+
+    private static Map<String, Object> producerConfig(Class<? extends Partitioner> partitionerClass) {
+        Map<String, Object> producerConfig = new HashMap<>();
+        producerConfig.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, LongSerializer.class);
+        producerConfig.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
+        if (partitionerClass != null) {
+            producerConfig.put(ProducerConfig.PARTITIONER_CLASS_CONFIG, partitionerClass);
+        }
+        return producerConfig;
+    }
+
+    public static class LastPartitionPartitioner implements Partitioner {
+
+        @Override
+        public int partition(String topic, Object key, byte[] keyBytes, Object value, byte[] valueBytes,
+                             Cluster cluster) {
+            return cluster.partitionsForTopic(topic).size() - 1;
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public void configure(Map<String, ?> configs) {
+        }
+    }
+}
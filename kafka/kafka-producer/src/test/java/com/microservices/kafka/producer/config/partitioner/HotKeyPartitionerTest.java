@@ -0,0 +1,118 @@
+package com.microservices.kafka.producer.config.partitioner;
+
+import com.microservices.config.KafkaProducerConfigData;
+import com.microservices.kafka.avro.model.TwitterAvroModel;
+import com.microservices.kafka.producer.exception.KafkaProducerException;
+import org.apache.kafka.common.Cluster;
+import org.apache.kafka.common.Node;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.serialization.LongSerializer;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class HotKeyPartitionerTest {
+
+    private static final String TOPIC = "twitter-topic";
+    private static final Long HOT_KEY = 42L;
+    private static final Cluster CLUSTER = cluster(12);
+
+    @Test
+    public void rejectsSubKeySaltingWithoutSubKeyField() {
+        KafkaProducerConfigData.HotKeyPartitioning hotKeyConfig = hotKeyConfig("sub-key");
+        HotKeyPartitioner partitioner = new HotKeyPartitioner();
+        assertThrows(KafkaProducerException.class, () -> partitioner.configure(
+                Map.of(HotKeyPartitioner.HOT_KEY_PARTITIONING_CONFIG, hotKeyConfig)));
+    }
+
+    @Test
+    public void spreadsHotKeyRoundRobin() {
+        HotKeyPartitioner partitioner = createPartitioner(hotKeyConfig("round-robin"));
+        Set<Integer> partitions = sendHotKey(partitioner, 200, "java");
+        assertEquals(4, partitions.size());
+    }
+
+    @Test
+    public void keepsHotKeyRecordsOfASubKeyTogether() {
+        KafkaProducerConfigData.HotKeyPartitioning hotKeyConfig = hotKeyConfig("sub-key");
+        //the tweets of a hot user stay in order per keyword, the user id is already the record key
+        hotKeyConfig.setSubKeyField("keywords");
+        HotKeyPartitioner partitioner = createPartitioner(hotKeyConfig);
+        sendHotKey(partitioner, 200, "java");
+        Map<String, Set<Integer>> keywordPartitions = new HashMap<>();
+        for (int i = 0; i < 400; i++) {
+            String keyword = "keyword-" + i % 20;
+            keywordPartitions.computeIfAbsent(keyword, k -> new HashSet<>())
+                    .add(partitioner.partition(TOPIC, HOT_KEY, keyBytes(), tweet(i, keyword), null, CLUSTER));
+        }
+        Set<Integer> partitions = new HashSet<>();
+        keywordPartitions.forEach((keyword, partitionsOfKeyword) -> {
+            assertEquals(1, partitionsOfKeyword.size(), keyword);
+            partitions.addAll(partitionsOfKeyword);
+        });
+        assertTrue(partitions.size() > 1, partitions.toString());
+    }
+
+    private static KafkaProducerConfigData.HotKeyPartitioning hotKeyConfig(String saltMode) {
+        KafkaProducerConfigData.HotKeyPartitioning hotKeyConfig = new KafkaProducerConfigData.HotKeyPartitioning();
+        hotKeyConfig.setEnabled(true);
+        hotKeyConfig.setMinHotKeyRecords(10L);
+        hotKeyConfig.setSaltMode(saltMode);
+        return hotKeyConfig;
+    }
+
+    private static HotKeyPartitioner createPartitioner(KafkaProducerConfigData.HotKeyPartitioning hotKeyConfig) {
+        HotKeyPartitioner partitioner = new HotKeyPartitioner();
+        partitioner.configure(Map.of(HotKeyPartitioner.HOT_KEY_PARTITIONING_CONFIG, hotKeyConfig));
+        return partitioner;
+    }
+
+    /**
+     * Sends records of the hot key with the given keyword and returns the partitions of the records sent once the
+     * key is hot.
+     */
+    private static Set<Integer> sendHotKey(HotKeyPartitioner partitioner, int records, String keyword) {
+        Set<Integer> partitions = new HashSet<>();
+        for (int i = 0; i < records; i++) {
+            int partition = partitioner.partition(TOPIC, HOT_KEY, keyBytes(), tweet(i, keyword), null, CLUSTER);
+            if (i >= 20) {
+                partitions.add(partition);
+            }
+        }
+        return partitions;
+    }
+
+    private static byte[] keyBytes() {
+        return new LongSerializer().serialize(TOPIC, HOT_KEY);
+    }
+
+    private static TwitterAvroModel tweet(long id, String keyword) {
+        return TwitterAvroModel.newBuilder()
+                .setId(id)
+                .setUserId(HOT_KEY)
+                .setText("tweet " + id + " about " + keyword)
+                .setCreatedAt(null)
+                .setKeywords(List.of(keyword))
+                .build();
+    }
+
+    private static Cluster cluster(int partitionCount) {
+        Node node = new Node(0, "localhost", 9092);
+        List<PartitionInfo> partitions = new ArrayList<>();
+        for (int i = 0; i < partitionCount; i++) {
+            partitions.add(new PartitionInfo(TOPIC, i, node, new Node[]{node}, new Node[]{node}));
+        }
+        return new Cluster(null, List.of(node), partitions, Collections.emptySet(), Collections.emptySet());
+    }
+
+}
@@ -0,0 +1,85 @@
+package com.microservices.kafka.producer.config.serde;
+
+import com.microservices.kafka.avro.model.TwitterAvroModel;
+import com.microservices.kafka.avro.serde.AvroWireFormat;
+import com.microservices.kafka.avro.serde.SchemaRegistryClient;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.avro.specific.SpecificDatumReader;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class ReusableKafkaAvroSerializerTest {
+
+    private static final String TOPIC = "twitter-topic";
+    private static final int SCHEMA_ID = 7;
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void writesRecordsInTheRegistryWireFormat() throws IOException {
+        ReusableKafkaAvroSerializer<TwitterAvroModel> serializer = createSerializer();
+        List<TwitterAvroModel> tweets = List.of(
+                tweet(1, "kafka streams tweets into elasticsearch", 1620000000000L),
+                tweet(2, null, null),
+                tweet(3, "a much longer tweet ".repeat(100), 1620000000001L));
+        for (TwitterAvroModel tweet : tweets) {
+            byte[] data = serializer.serialize(TOPIC, tweet);
+            assertEquals(SCHEMA_ID, AvroWireFormat.readSchemaId(data));
+            assertEquals(tweet, read(data));
+        }
+    }
+
+    @Test
+    public void returnsAFreshArrayForEveryRecord() throws IOException {
+        ReusableKafkaAvroSerializer<TwitterAvroModel> serializer = createSerializer();
+        TwitterAvroModel first = tweet(1, "first tweet", null);
+        byte[] firstData = serializer.serialize(TOPIC, first);
+        serializer.serialize(TOPIC, tweet(2, "second tweet that overwrites the reused buffer", null));
+        assertEquals(first, read(firstData));
+    }
+
+    @Test
+    public void writesNullForNullRecords() throws IOException {
+        assertNull(createSerializer().serialize(TOPIC, null));
+    }
+
+    /**
+     * The schema id comes from a schema cache file, so no registry is needed.
+     */
+    private ReusableKafkaAvroSerializer<TwitterAvroModel> createSerializer() throws IOException {
+        Path cacheFile = tempDir.resolve("schema-cache.json");
+        String schema = TwitterAvroModel.getClassSchema().toString().replace("\\", "\\\\").replace("\"", "\\\"");
+        Files.write(cacheFile, ("[{\"subject\": \"" + TOPIC + "-value\", \"id\": " + SCHEMA_ID +
+                ", \"schema\": \"" + schema + "\"}]").getBytes(StandardCharsets.UTF_8));
+        ReusableKafkaAvroSerializer<TwitterAvroModel> serializer = new ReusableKafkaAvroSerializer<>();
+        serializer.configure(Map.of(ReusableKafkaAvroSerializer.SCHEMA_REGISTRY_URL_CONFIG, "http://localhost:1",
+                SchemaRegistryClient.SCHEMA_CACHE_FILE_CONFIG, cacheFile.toString()), false);
+        return serializer;
+    }
+
+    private static TwitterAvroModel read(byte[] data) throws IOException {
+        return new SpecificDatumReader<>(TwitterAvroModel.class).read(null, DecoderFactory.get().binaryDecoder(
+                data, AvroWireFormat.HEADER_SIZE, data.length - AvroWireFormat.HEADER_SIZE, null));
+    }
+
+    private static TwitterAvroModel tweet(long id, String text, Long createdAt) {
+        return TwitterAvroModel.newBuilder()
+                .setId(id)
+                .setUserId(id * 10)
+                .setText(text)
+                .setCreatedAt(createdAt)
+                .build();
+    }
+
+}
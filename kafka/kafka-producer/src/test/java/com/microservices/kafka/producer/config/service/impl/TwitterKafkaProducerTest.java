@@ -0,0 +1,161 @@
+package com.microservices.kafka.producer.config.service.impl;
+
+import com.microservices.config.KafkaProducerConfigData;
+import com.microservices.kafka.avro.model.TwitterAvroModel;
+import com.microservices.kafka.producer.config.KafkaProducerPool;
+import com.microservices.kafka.producer.config.service.BatchSendResult;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.commons.lang3.tuple.Pair;
+import org.apache.kafka.clients.producer.Callback;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.KafkaException;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.RecordTooLargeException;
+import org.apache.kafka.common.errors.TimeoutException;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.core.KafkaOperations;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class TwitterKafkaProducerTest {
+
+    private static final String TOPIC = "twitter-topic";
+    private static final int PARTITIONS = 3;
+
+    private final List<ProducerRecord<Long, TwitterAvroModel>> sentRecords = new ArrayList<>();
+    private final List<Callback> callbacks = new ArrayList<>();
+
+    @Test
+    public void givesEveryRecordItsCallbackWithIdempotence() {
+        TwitterKafkaProducer twitterKafkaProducer = createProducer(true, null, -1);
+        CompletableFuture<BatchSendResult> resultFuture = twitterKafkaProducer.send(TOPIC, records(9));
+        assertEquals(9, new HashSet<>(callbacks).size());
+        completeByPartitionLast();
+        assertMatchesSentRecords(resultFuture.join());
+    }
+
+    @Test
+    public void givesEveryRecordItsCallbackWithoutIdempotence() {
+        TwitterKafkaProducer twitterKafkaProducer = createProducer(false, null, -1);
+        CompletableFuture<BatchSendResult> resultFuture = twitterKafkaProducer.send(TOPIC, records(9));
+        assertEquals(9, new HashSet<>(callbacks).size());
+        completeByPartitionLast();
+        assertMatchesSentRecords(resultFuture.join());
+    }
+
+    @Test
+    public void failsRecordsRefusedWhileSending() {
+        KafkaException refused = new RecordTooLargeException("too large");
+        TwitterKafkaProducer twitterKafkaProducer = createProducer(true, refused, 4);
+        CompletableFuture<BatchSendResult> resultFuture = twitterKafkaProducer.send(TOPIC, records(9));
+        completeByPartitionLast();
+        BatchSendResult result = resultFuture.join();
+        assertSame(refused, result.getException(4));
+        assertFalse(result.isAcknowledged(4));
+        assertMatchesSentRecords(result);
+    }
+
+    @Test
+    public void failsRecordsThatFailAfterSending() {
+        TwitterKafkaProducer twitterKafkaProducer = createProducer(true, null, -1);
+        CompletableFuture<BatchSendResult> resultFuture = twitterKafkaProducer.send(TOPIC, records(6));
+        TimeoutException expired = new TimeoutException("expired");
+        //records 1 and 4 go to partition 1, the second one fails on the I/O thread without metadata
+        for (int i = sentRecords.size() - 1; i >= 0; i--) {
+            int partition = sentRecords.get(i).partition();
+            boolean fail = sentRecords.get(i).key() == 4L;
+            callbacks.get(i).onCompletion(fail ? null : metadata(partition, sentRecords.get(i).key()),
+                    fail ? expired : null);
+        }
+        BatchSendResult result = resultFuture.join();
+        assertSame(expired, result.getException(4));
+        assertFalse(result.isAcknowledged(4));
+        assertTrue(result.isAcknowledged(1));
+        assertEquals(1, result.getFailedCount());
+    }
+
+    @SuppressWarnings("unchecked")
+    private TwitterKafkaProducer createProducer(boolean idempotence, KafkaException refusal, long refusedKey) {
+        Producer<Long, TwitterAvroModel> producer = mock(Producer.class);
+        when(producer.send(any(ProducerRecord.class), any(Callback.class))).thenAnswer(invocation -> {
+            ProducerRecord<Long, TwitterAvroModel> record = invocation.getArgument(0);
+            Callback callback = invocation.getArgument(1);
+            if (record.key() == refusedKey) {
+                callback.onCompletion(null, refusal);
+                return null;
+            }
+            sentRecords.add(record);
+            callbacks.add(callback);
+            return null;
+        });
+        KafkaProducerPool<Long, TwitterAvroModel> pool = mock(KafkaProducerPool.class);
+        when(pool.size()).thenReturn(1);
+        when(pool.partitionFor(eq(TOPIC), anyLong(), any()))
+                .thenAnswer(invocation -> (int) (invocation.<Long>getArgument(1) % PARTITIONS));
+        when(pool.producerFor(anyInt())).thenReturn(0);
+        when(pool.execute(eq(0), any(KafkaOperations.ProducerCallback.class))).thenAnswer(invocation ->
+                invocation.<KafkaOperations.ProducerCallback<Long, TwitterAvroModel, ?>>getArgument(1)
+                        .doInKafka(producer));
+        KafkaProducerConfigData configData = new KafkaProducerConfigData();
+        configData.setEnableIdempotence(idempotence);
+        return new TwitterKafkaProducer(pool, configData, new SimpleMeterRegistry());
+    }
+
+    /**
+     * Completes the records of the last partition first, each partition in send order.
+     */
+    private void completeByPartitionLast() {
+        for (int partition = PARTITIONS - 1; partition >= 0; partition--) {
+            for (int i = 0; i < sentRecords.size(); i++) {
+                if (sentRecords.get(i).partition() == partition) {
+                    callbacks.get(i).onCompletion(metadata(partition, sentRecords.get(i).key()), null);
+                }
+            }
+        }
+    }
+
+    private void assertMatchesSentRecords(BatchSendResult result) {
+        for (ProducerRecord<Long, TwitterAvroModel> record : sentRecords) {
+            int index = record.key().intValue();
+            RecordMetadata metadata = result.getMetadata(index);
+            assertEquals(record.partition(), metadata.partition());
+            assertEquals(record.key(), metadata.offset());
+            assertNull(result.getException(index));
+        }
+    }
+
+    private static RecordMetadata metadata(int partition, long offset) {
+        return new RecordMetadata(new TopicPartition(TOPIC, partition), offset, 0, 0, 0L, 8, 100);
+    }
+
+    private static List<Pair<Long, TwitterAvroModel>> records(int count) {
+        List<Pair<Long, TwitterAvroModel>> records = new ArrayList<>();
+        for (long i = 0; i < count; i++) {
+            records.add(Pair.of(i, TwitterAvroModel.newBuilder()
+                    .setId(i)
+                    .setUserId(i)
+                    .setText("tweet " + i)
+                    .setCreatedAt(null)
+                    .build()));
+        }
+        return records;
+    }
+
+}
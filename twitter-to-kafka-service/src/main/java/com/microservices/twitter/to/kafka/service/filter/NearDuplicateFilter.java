@@ -0,0 +1,84 @@
+package com.microservices.twitter.to.kafka.service.filter;
+
+import com.microservices.config.TwitterToKafkaServiceConfigData;
+import com.microservices.kafka.avro.model.TwitterAvroModel;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * NearDuplicateFilter suppresses retweets, copy-paste spam and other tweets whose text is nearly the same as a
+ * tweet seen within the configured window. Depending on the configured action a near duplicate is either dropped
+ * or sent with the nearDuplicateOf field set to the id of the first tweet. Tweets without any word to compare, like
+ * the ones made only of mentions, are always accepted.
+ * The number of checked, dropped and tagged tweets and the filter cost per tweet are exposed as metrics.
+ */
+@Slf4j
+@Component
+public class NearDuplicateFilter {
+
+    private static final String ACTION_TAG = "tag";
+
+    private final TwitterToKafkaServiceConfigData.NearDuplicate nearDuplicateConfig;
+    private final SimHashIndex simHashIndex;
+    private final boolean tagDuplicates;
+
+    private final Counter checkedCounter;
+    private final Counter droppedCounter;
+    private final Counter taggedCounter;
+    private final Timer costTimer;
+
+    public NearDuplicateFilter(TwitterToKafkaServiceConfigData configData, MeterRegistry meterRegistry) {
+        this.nearDuplicateConfig = configData.getNearDuplicate();
+        this.simHashIndex = isEnabled() ?
+                new SimHashIndex(nearDuplicateConfig.getCapacity(), nearDuplicateConfig.getHammingDistance(),
+                        nearDuplicateConfig.getWindowMs()) :
+                null;
+        this.tagDuplicates = ACTION_TAG.equalsIgnoreCase(nearDuplicateConfig.getAction());
+        this.checkedCounter = meterRegistry.counter("twitter.dedup.checked");
+        this.droppedCounter = meterRegistry.counter("twitter.dedup.duplicates", "action", "drop");
+        this.taggedCounter = meterRegistry.counter("twitter.dedup.duplicates", "action", "tag");
+        this.costTimer = Timer.builder("twitter.dedup.cost")
+                .description("Time spent fingerprinting and looking up a tweet in the near-duplicate filter")
+                .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return Boolean.TRUE.equals(nearDuplicateConfig.getEnabled());
+    }
+
+    /**
+     * Checks a tweet against the recent ones.
+     *
+     * @param twitterAvroModel the tweet, tagged in place when it is a near duplicate and the action is tag.
+     * @return false if the tweet is a near duplicate that should be dropped.
+     */
+    public boolean accept(TwitterAvroModel twitterAvroModel) {
+        if (simHashIndex == null) {
+            return true;
+        }
+        long startNanos = System.nanoTime();
+        long fingerprint = SimHash.fingerprint(twitterAvroModel.getText());
+        //a tweet without words is never a near duplicate, but it was checked and its fingerprint cost time
+        long duplicateId = fingerprint == SimHash.NO_WORDS ? SimHashIndex.NOT_FOUND :
+                simHashIndex.findOrAdd(fingerprint, twitterAvroModel.getId(), System.currentTimeMillis());
+        costTimer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        checkedCounter.increment();
+        if (duplicateId == SimHashIndex.NOT_FOUND) {
+            return true;
+        }
+        if (tagDuplicates) {
+            twitterAvroModel.setNearDuplicateOf(duplicateId);
+            taggedCounter.increment();
+            return true;
+        }
+        log.debug("Dropping tweet {} as a near duplicate of tweet {}", twitterAvroModel.getId(), duplicateId);
+        droppedCounter.increment();
+        return false;
+    }
+
+}
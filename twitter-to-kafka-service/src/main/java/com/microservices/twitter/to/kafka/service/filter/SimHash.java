@@ -0,0 +1,95 @@
+package com.microservices.twitter.to.kafka.service.filter;
+
+import java.util.Arrays;
+
+/**
+ * SimHash computes a 64 bit locality sensitive fingerprint of a text.
+ * Every word is hashed to 64 bits, each bit votes +1 or -1 and the fingerprint keeps the bits with a positive total,
+ * so texts that share most of their words end up with fingerprints that differ in only a few bits.
+ * Words are case-insensitive and only letters and digits are taken into account. Mentions and a leading retweet
+ * marker are skipped, so a retweet or a copy sent to other users gets the same fingerprint as the original tweet.
+ * No objects are allocated per call.
+ * A text without any word, like a null text or one made only of mentions, gets NO_WORDS, which says nothing about
+ * its similarity to other texts. A text with words only gets the same value when every bit loses its vote.
+ */
+public final class SimHash {
+
+    public static final long NO_WORDS = 0L;
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    private static final long RETWEET_MARKER_HASH = (((FNV_OFFSET_BASIS ^ 'r') * FNV_PRIME) ^ 't') * FNV_PRIME;
+    private static final char MENTION_PREFIX = '@';
+
+    private static final ThreadLocal<int[]> BIT_VOTES = ThreadLocal.withInitial(() -> new int[Long.SIZE]);
+
+    private SimHash() {
+    }
+
+    public static long fingerprint(CharSequence text) {
+        if (text == null) {
+            return NO_WORDS;
+        }
+        int[] votes = BIT_VOTES.get();
+        Arrays.fill(votes, 0);
+        long wordHash = FNV_OFFSET_BASIS;
+        boolean inWord = false;
+        boolean inMention = false;
+        boolean firstWord = true;
+        int votedWords = 0;
+        for (int i = 0, length = text.length(); i < length; i++) {
+            char c = text.charAt(i);
+            if (Character.isLetterOrDigit(c) || (c == '_' && inMention)) {
+                wordHash = (wordHash ^ Character.toLowerCase(c)) * FNV_PRIME;
+                inWord = true;
+            } else {
+                if (inWord) {
+                    votedWords += endWord(votes, wordHash, inMention, firstWord);
+                    firstWord = false;
+                }
+                wordHash = FNV_OFFSET_BASIS;
+                inWord = false;
+                inMention = c == MENTION_PREFIX;
+            }
+        }
+        if (inWord) {
+            votedWords += endWord(votes, wordHash, inMention, firstWord);
+        }
+        if (votedWords == 0) {
+            return NO_WORDS;
+        }
+        long fingerprint = 0L;
+        for (int bit = 0; bit < Long.SIZE; bit++) {
+            if (votes[bit] > 0) {
+                fingerprint |= 1L << bit;
+            }
+        }
+        return fingerprint;
+    }
+
+    public static int hammingDistance(long fingerprint, long otherFingerprint) {
+        return Long.bitCount(fingerprint ^ otherFingerprint);
+    }
+
+    /**
+     * @return 1 if the word voted, 0 if it was skipped.
+     */
+    private static int endWord(int[] votes, long wordHash, boolean mention, boolean firstWord) {
+        if (mention || (firstWord && wordHash == RETWEET_MARKER_HASH)) {
+            return 0;
+        }
+        vote(votes, wordHash);
+        return 1;
+    }
+
+    private static void vote(int[] votes, long wordHash) {
+        //FNV alone leaves the high bits poorly mixed for short words, finish with the splitmix64 mixer
+        long hash = (wordHash ^ (wordHash >>> 30)) * 0xbf58476d1ce4e5b9L;
+        hash = (hash ^ (hash >>> 27)) * 0x94d049bb133111ebL;
+        hash ^= hash >>> 31;
+        for (int bit = 0; bit < Long.SIZE; bit++) {
+            votes[bit] += (int) ((hash >>> bit) & 1L) * 2 - 1;
+        }
+    }
+
+}
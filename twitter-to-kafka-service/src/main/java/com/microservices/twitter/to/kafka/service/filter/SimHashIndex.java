@@ -0,0 +1,120 @@
+package com.microservices.twitter.to.kafka.service.filter;
+
+/**
+ * SimHashIndex keeps the SimHash fingerprints of the most recent tweets and finds the ones within a hamming distance.
+ * The fingerprint is split into hammingDistance + 1 bands, two fingerprints that differ in at most hammingDistance bits
+ * must have at least one identical band, so a lookup only compares against the fingerprints sharing a band.
+ * Entries live in a ring of primitive arrays bounded by the capacity and are ignored once they are older than the
+ * window, every band bucket is a singly linked chain of ring sequences from the newest to the oldest entry, so a
+ * lookup stops as soon as it reaches an evicted or expired entry and nothing ever has to be removed.
+ */
+public class SimHashIndex {
+
+    public static final long NOT_FOUND = Long.MIN_VALUE;
+
+    private static final int MAX_CHAIN_PROBES = 64;
+
+    private final int hammingDistance;
+    private final long windowMs;
+    private final int bands;
+    private final int bandBits;
+
+    private final long[] fingerprints;
+    private final long[] ids;
+    private final long[] addedAtMs;
+    private final int ringMask;
+
+    //sequence + 1 of the newest entry of each bucket and of the next older entry of each ring slot, 0 ends the chain
+    private final long[][] bucketHeads;
+    private final long[][] nextInBucket;
+    private final int bucketMask;
+
+    private long nextSequence;
+
+    /**
+     * @param capacity        the maximum number of fingerprints kept, rounded up to the next power of two.
+     * @param hammingDistance the maximum number of different bits for two fingerprints to be near duplicates.
+     * @param windowMs        how long a fingerprint is kept, in milliseconds.
+     */
+    public SimHashIndex(int capacity, int hammingDistance, long windowMs) {
+        if (hammingDistance < 0 || hammingDistance >= Long.SIZE / 2) {
+            throw new IllegalArgumentException("Hamming distance must be between 0 and " + (Long.SIZE / 2 - 1));
+        }
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.hammingDistance = hammingDistance;
+        this.windowMs = windowMs;
+        this.bands = hammingDistance + 1;
+        this.bandBits = Long.SIZE / bands;
+        this.fingerprints = new long[size];
+        this.ids = new long[size];
+        this.addedAtMs = new long[size];
+        this.ringMask = size - 1;
+        this.bucketHeads = new long[bands][size * 2];
+        this.nextInBucket = new long[bands][size];
+        this.bucketMask = size * 2 - 1;
+    }
+
+    /**
+     * Looks up a near duplicate of the fingerprint and adds the fingerprint to the index when there is none.
+     * Near duplicates are not added, so a burst of copies keeps pointing to the first tweet of the burst.
+     *
+     * @param fingerprint the SimHash fingerprint of the tweet text.
+     * @param id          the tweet id.
+     * @param nowMs       the current time in milliseconds.
+     * @return the id of the near duplicate tweet or NOT_FOUND.
+     */
+    public synchronized long findOrAdd(long fingerprint, long id, long nowMs) {
+        long duplicateId = find(fingerprint, nowMs);
+        if (duplicateId == NOT_FOUND) {
+            add(fingerprint, id, nowMs);
+        }
+        return duplicateId;
+    }
+
+    private long find(long fingerprint, long nowMs) {
+        long oldestSequence = nextSequence - fingerprints.length;
+        long oldestAddedAtMs = nowMs - windowMs;
+        for (int band = 0; band < bands; band++) {
+            long bandValue = bandValue(fingerprint, band);
+            long link = bucketHeads[band][bucket(bandValue)];
+            for (int probes = 0; link != 0 && probes < MAX_CHAIN_PROBES; probes++) {
+                long sequence = link - 1;
+                int slot = (int) (sequence & ringMask);
+                if (sequence < oldestSequence || addedAtMs[slot] < oldestAddedAtMs) {
+                    break;
+                }
+                if (bandValue(fingerprints[slot], band) == bandValue &&
+                        SimHash.hammingDistance(fingerprints[slot], fingerprint) <= hammingDistance) {
+                    return ids[slot];
+                }
+                link = nextInBucket[band][slot];
+            }
+        }
+        return NOT_FOUND;
+    }
+
+    private void add(long fingerprint, long id, long nowMs) {
+        long sequence = nextSequence++;
+        int slot = (int) (sequence & ringMask);
+        fingerprints[slot] = fingerprint;
+        ids[slot] = id;
+        addedAtMs[slot] = nowMs;
+        for (int band = 0; band < bands; band++) {
+            int bucket = bucket(bandValue(fingerprint, band));
+            nextInBucket[band][slot] = bucketHeads[band][bucket];
+            bucketHeads[band][bucket] = sequence + 1;
+        }
+    }
+
+    private long bandValue(long fingerprint, int band) {
+        //the last band takes the bits left over when 64 is not a multiple of the band count
+        int shift = band * bandBits;
+        return band == bands - 1 ? fingerprint >>> shift : (fingerprint >>> shift) & ((1L << bandBits) - 1);
+    }
+
+    private int bucket(long bandValue) {
+        long hash = bandValue * 0x9e3779b97f4a7c15L;
+        return (int) (hash ^ (hash >>> 32)) & bucketMask;
+    }
+
+}
@@ -0,0 +1,61 @@
+package com.microservices.twitter.to.kafka.service.generator;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * AllocationSampler measures the bytes allocated by the calling thread while building a tweet.
+ * Only one call in every sampleInterval is measured, so the cost of reading the thread allocation
+ * counter stays negligible at high generation rates.
+ */
+public class AllocationSampler {
+
+    private final com.sun.management.ThreadMXBean threadMXBean;
+    private final int sampleInterval;
+    private final LongAdder sampledBytes = new LongAdder();
+    private final LongAdder sampledCalls = new LongAdder();
+    private final ThreadLocal<int[]> callCounter = ThreadLocal.withInitial(() -> new int[1]);
+
+    public AllocationSampler(int sampleInterval) {
+        ThreadMXBean mxBean = ManagementFactory.getThreadMXBean();
+        if (mxBean instanceof com.sun.management.ThreadMXBean &&
+                ((com.sun.management.ThreadMXBean) mxBean).isThreadAllocatedMemorySupported()) {
+            this.threadMXBean = (com.sun.management.ThreadMXBean) mxBean;
+        } else {
+            this.threadMXBean = null;
+        }
+        this.sampleInterval = Math.max(1, sampleInterval);
+    }
+
+    /**
+     * Starts measuring the current call if it is the one to be sampled.
+     *
+     * @return the thread allocated bytes at the start of the call, or -1 if this call is not sampled.
+     */
+    public long begin() {
+        int[] counter = callCounter.get();
+        if (threadMXBean == null || ++counter[0] < sampleInterval) {
+            return -1;
+        }
+        counter[0] = 0;
+        return threadMXBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    public void end(long allocatedBytesAtBegin) {
+        if (allocatedBytesAtBegin < 0) {
+            return;
+        }
+        sampledBytes.add(threadMXBean.getThreadAllocatedBytes(Thread.currentThread().getId()) - allocatedBytesAtBegin);
+        sampledCalls.increment();
+    }
+
+    /**
+     * @return the average number of bytes allocated per sampled call, or -1 if nothing was measured.
+     */
+    public long getAverageBytesPerCall() {
+        long calls = sampledCalls.sum();
+        return calls == 0 ? -1 : sampledBytes.sum() / calls;
+    }
+
+}
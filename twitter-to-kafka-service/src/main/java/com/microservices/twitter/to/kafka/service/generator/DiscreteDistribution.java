@@ -0,0 +1,68 @@
+package com.microservices.twitter.to.kafka.service.generator;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * DiscreteDistribution samples an index in [0, size) following a fixed set of weights.
+ * The cumulative probabilities are computed once, so each sample is a single binary search.
+ */
+public final class DiscreteDistribution {
+
+    private final double[] cumulative;
+
+    private DiscreteDistribution(double[] weights) {
+        if (weights.length == 0) {
+            throw new IllegalArgumentException("A distribution needs at least one weight!");
+        }
+        double total = 0;
+        for (double weight : weights) {
+            total += weight;
+        }
+        cumulative = new double[weights.length];
+        double running = 0;
+        for (int i = 0; i < weights.length; i++) {
+            running += weights[i];
+            cumulative[i] = running / total;
+        }
+        cumulative[weights.length - 1] = 1.0;
+    }
+
+    /**
+     * Creates a zipfian distribution where the element with rank k has a weight of 1 / k^exponent.
+     *
+     * @param size     the number of elements.
+     * @param exponent the skew, 0 gives a uniform distribution and larger values concentrate on low ranks.
+     * @return the distribution.
+     */
+    public static DiscreteDistribution zipf(int size, double exponent) {
+        double[] weights = new double[size];
+        for (int i = 0; i < size; i++) {
+            weights[i] = 1.0 / Math.pow(i + 1, exponent);
+        }
+        return new DiscreteDistribution(weights);
+    }
+
+    public static DiscreteDistribution uniform(int size) {
+        double[] weights = new double[size];
+        Arrays.fill(weights, 1.0);
+        return new DiscreteDistribution(weights);
+    }
+
+    public static DiscreteDistribution ofWeights(double[] weights) {
+        return new DiscreteDistribution(weights);
+    }
+
+    public int sample(Random random) {
+        int index = Arrays.binarySearch(cumulative, random.nextDouble());
+        if (index < 0) {
+            index = -index - 1;
+        }
+        return Math.min(index, cumulative.length - 1);
+    }
+
+    public int size() {
+        return cumulative.length;
+    }
+
+}
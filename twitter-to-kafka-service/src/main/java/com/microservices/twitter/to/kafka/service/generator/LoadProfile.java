@@ -0,0 +1,58 @@
+package com.microservices.twitter.to.kafka.service.generator;
+
+import com.microservices.config.TwitterToKafkaServiceConfigData;
+
+import java.util.Locale;
+
+/**
+ * LoadProfile shapes the target rate of the load generator over time.
+ * Each profile returns a factor that is applied to the configured target rate.
+ */
+public enum LoadProfile {
+
+    CONSTANT {
+        @Override
+        public double rateFactor(long elapsedMs, TwitterToKafkaServiceConfigData.LoadGenerator config) {
+            return 1.0;
+        }
+    },
+
+    /**
+     * Runs at the target rate and multiplies it by burstFactor for burstDurationMs at the start of every period.
+     */
+    BURST {
+        @Override
+        public double rateFactor(long elapsedMs, TwitterToKafkaServiceConfigData.LoadGenerator config) {
+            return elapsedMs % config.getProfilePeriodMs() < config.getBurstDurationMs() ?
+                    config.getBurstFactor() : 1.0;
+        }
+    },
+
+    /**
+     * Grows linearly from zero to the target rate during the first period and then holds it.
+     */
+    RAMP {
+        @Override
+        public double rateFactor(long elapsedMs, TwitterToKafkaServiceConfigData.LoadGenerator config) {
+            return Math.min(1.0, (double) elapsedMs / config.getProfilePeriodMs());
+        }
+    },
+
+    /**
+     * Oscillates around the target rate by sineAmplitude, one full wave per period.
+     */
+    SINE {
+        @Override
+        public double rateFactor(long elapsedMs, TwitterToKafkaServiceConfigData.LoadGenerator config) {
+            double phase = 2 * Math.PI * elapsedMs / config.getProfilePeriodMs();
+            return Math.max(0.0, 1.0 + config.getSineAmplitude() * Math.sin(phase));
+        }
+    };
+
+    public abstract double rateFactor(long elapsedMs, TwitterToKafkaServiceConfigData.LoadGenerator config);
+
+    public static LoadProfile fromName(String name) {
+        return valueOf(name.trim().toUpperCase(Locale.ENGLISH));
+    }
+
+}
@@ -0,0 +1,218 @@
+package com.microservices.twitter.to.kafka.service.generator;
+
+import com.microservices.kafka.avro.model.TwitterAvroModel;
+import org.springframework.stereotype.Component;
+import twitter4j.Status;
+import twitter4j.TwitterException;
+import twitter4j.TwitterObjectFactory;
+
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * MockTweetFactory builds fake tweets for the mock stream runner and the load generator.
+ * Each tweet is made of random words with one of the configured keywords placed in the middle of the text.
+ * Tweets can be built as twitter4j Status objects, going through the raw json parser like the real stream,
+ * or directly as TwitterAvroModel records, which skips the json templating and parsing altogether.
+ */
+@Component
+public class MockTweetFactory {
+
+    private static final String[] WORDS = new String[]{
+            "Breaking",
+            "news",
+            "trending",
+            "update",
+            "funny",
+            "amazing",
+            "sports",
+            "politics",
+            "technology",
+            "health",
+            "science",
+            "movie",
+            "music",
+            "travel",
+            "beautiful",
+            "awesome",
+            "weather",
+            "opinion",
+            "happy",
+            "sad",
+            "love",
+            "hate",
+            "incredible",
+            "viral",
+            "win",
+            "lose",
+            "challenge",
+            "success",
+            "fail",
+            "support",
+            "community",
+            "event",
+            "festival",
+            "concert",
+            "announcement",
+            "launch",
+            "product",
+            "sale",
+            "offer",
+            "deal",
+            "alert",
+            "warning",
+            "fun",
+            "friends",
+            "family",
+            "work",
+            "life",
+            "quote",
+            "inspiration",
+            "motivation",
+            "random",
+            "story",
+            "joke",
+            "question",
+            "poll",
+            "survey",
+            "feedback",
+            "comment",
+            "share",
+            "like",
+            "follow",
+            "retweet",
+            "hashtag",
+            "trend",
+            "influence",
+            "blog",
+            "video",
+            "photo",
+            "meme",
+            "gossip",
+            "breaking",
+            "scandal",
+            "rumor",
+            "startup",
+            "innovation",
+            "game",
+            "challenge",
+            "goal",
+            "team",
+            "strategy",
+            "healthcare",
+            "finance",
+            "economy",
+            "business",
+            "startup",
+            "job",
+            "career",
+            "learning",
+            "coding",
+            "developer",
+            "data",
+            "AI",
+            "robotics",
+            "cloud",
+            "app",
+            "platform",
+            "network",
+            "community",
+            "meeting",
+            "conference",
+            "tutorial",
+            "guide"
+    };
+
+    private static final String TWEET_AS_RAW_JSON = "{" +
+            "\"created_at\":\"{0}\"," +
+            "\"id\":\"{1}\"," +
+            "\"text\":\"{2}\"," +
+            "\"user\":{\"id\":\"{3}\"}" +
+            "}";
+
+    private static final String TWITTER_STATUS_DATE_FORMAT = "EEE MMM dd HH:mm:ss zzz yyyy";
+
+    private static final DateTimeFormatter TWITTER_STATUS_DATE_FORMATTER =
+            DateTimeFormatter.ofPattern(TWITTER_STATUS_DATE_FORMAT, Locale.ENGLISH);
+
+    private static final int TEXT_BUILDER_CAPACITY = 1024;
+
+    //one builder per generator thread, reset before each tweet instead of allocating a new one
+    private static final ThreadLocal<StringBuilder> TEXT_BUILDER =
+            ThreadLocal.withInitial(() -> new StringBuilder(TEXT_BUILDER_CAPACITY));
+
+    /**
+     * Creates a Status for the given user with a random text of the given number of words.
+     *
+     * @param userId      the id of the user that posted the tweet.
+     * @param keyword     the keyword placed in the middle of the tweet text.
+     * @param tweetLength the number of random words in the tweet.
+     * @return the parsed twitter4j Status.
+     * @throws TwitterException if the generated json cannot be parsed into a Status.
+     */
+    public Status createStatus(long userId, String keyword, int tweetLength) throws TwitterException {
+        String[] params = new String[]{
+                ZonedDateTime.now().format(TWITTER_STATUS_DATE_FORMATTER),
+                String.valueOf(ThreadLocalRandom.current().nextLong(Long.MAX_VALUE)),
+                constructRandomTweet(keyword, tweetLength),
+                String.valueOf(userId)
+        };
+        return TwitterObjectFactory.createStatus(formatTweetAsJsonWithParams(params));
+    }
+
+    /**
+     * Creates a TwitterAvroModel for the given user directly, without building or parsing any json.
+     * The text is written into a reused thread local builder from the static word table, so the only
+     * allocations per tweet are the record itself, its text and the boxed creation timestamp.
+     *
+     * @param userId      the id of the user that posted the tweet.
+     * @param keyword     the keyword placed in the middle of the tweet text.
+     * @param tweetLength the number of random words in the tweet.
+     * @return the TwitterAvroModel ready to be sent to kafka.
+     */
+    public TwitterAvroModel createAvroModel(long userId, String keyword, int tweetLength) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        StringBuilder text = TEXT_BUILDER.get();
+        text.setLength(0);
+        appendRandomTweet(text, random, keyword, tweetLength);
+
+        TwitterAvroModel twitterAvroModel = new TwitterAvroModel();
+        twitterAvroModel.setId(random.nextLong(Long.MAX_VALUE));
+        twitterAvroModel.setUserId(userId);
+        twitterAvroModel.setText(text.toString());
+        twitterAvroModel.setCreatedAt(System.currentTimeMillis());
+        twitterAvroModel.setKeywords(Collections.emptyList());
+        return twitterAvroModel;
+    }
+
+    private String formatTweetAsJsonWithParams(String[] params) {
+        String tweet = TWEET_AS_RAW_JSON;
+
+        for (int i = 0; i < params.length; i++) {
+            tweet = tweet.replace("{" + i + "}", params[i]);
+        }
+        return tweet;
+    }
+
+    private String constructRandomTweet(String keyword, int tweetLength) {
+        StringBuilder tweet = new StringBuilder();
+        appendRandomTweet(tweet, ThreadLocalRandom.current(), keyword, tweetLength);
+        return tweet.toString();
+    }
+
+    private void appendRandomTweet(StringBuilder tweet, ThreadLocalRandom random, String keyword, int tweetLength) {
+        for (int i = 0; i < tweetLength; i++) {
+            if (i > 0) {
+                tweet.append(' ');
+            }
+            tweet.append(WORDS[random.nextInt(WORDS.length)]);
+            if (i == tweetLength / 2) {
+                tweet.append(' ').append(keyword);
+            }
+        }
+    }
+
+}
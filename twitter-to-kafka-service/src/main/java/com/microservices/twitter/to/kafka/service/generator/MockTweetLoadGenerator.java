@@ -0,0 +1,267 @@
+package com.microservices.twitter.to.kafka.service.generator;
+
+import com.microservices.config.TwitterToKafkaServiceConfigData;
+import com.microservices.kafka.avro.model.TwitterAvroModel;
+import com.microservices.kafka.producer.config.service.ProducerFlowControl;
+import com.microservices.twitter.to.kafka.service.listener.TwitterKafkaStatusListener;
+import com.microservices.twitter.to.kafka.service.routing.KeywordTopicRouter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import twitter4j.Status;
+import twitter4j.TwitterException;
+
+import javax.annotation.PreDestroy;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * MockTweetLoadGenerator produces mock tweets at a target rate using several generator threads.
+ * The rate follows the configured LoadProfile, user ids and keywords follow zipfian distributions and
+ * tweet lengths follow a configurable histogram. The achieved rate is reported against the target periodically.
+ * In direct avro mode the tweets are built as TwitterAvroModel records and sent straight to the KeywordTopicRouter,
+ * skipping the twitter4j Status parsing and the status listener; the bytes allocated per generated tweet
+ * are sampled and reported along with the rate.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "twitter-to-kafka-service.enable-mock-tweets", havingValue = "true")
+public class MockTweetLoadGenerator {
+
+    private static final double MAX_LAG_SECONDS = 1.0;
+    private static final long MAX_PARK_NS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private final TwitterToKafkaServiceConfigData twitterToKafkaServiceConfigData;
+    private final TwitterKafkaStatusListener twitterKafkaStatusListener;
+    private final MockTweetFactory mockTweetFactory;
+    private final KeywordTopicRouter keywordTopicRouter;
+    private final ProducerFlowControl producerFlowControl;
+
+    private final LongAdder generatedTweets = new LongAdder();
+
+    private volatile boolean running;
+    private ExecutorService generatorExecutor;
+    private ScheduledExecutorService reportExecutor;
+    private AllocationSampler allocationSampler;
+
+    public MockTweetLoadGenerator(TwitterToKafkaServiceConfigData configData,
+                                  TwitterKafkaStatusListener statusListener,
+                                  MockTweetFactory tweetFactory,
+                                  KeywordTopicRouter topicRouter,
+                                  ProducerFlowControl flowControl) {
+        this.twitterToKafkaServiceConfigData = configData;
+        this.twitterKafkaStatusListener = statusListener;
+        this.mockTweetFactory = tweetFactory;
+        this.keywordTopicRouter = topicRouter;
+        this.producerFlowControl = flowControl;
+    }
+
+    /**
+     * Starts the generator threads and the rate reporter.
+     *
+     * @param keywords the keywords to place in the tweets, ordered by popularity.
+     */
+    public void start(String[] keywords) {
+        TwitterToKafkaServiceConfigData.LoadGenerator config = twitterToKafkaServiceConfigData.getLoadGenerator();
+        LoadProfile profile = LoadProfile.fromName(config.getProfile());
+        int threads = config.getThreads();
+        TweetShape tweetShape = new TweetShape(
+                DiscreteDistribution.zipf(config.getUserCount(), config.getUserSkew()),
+                DiscreteDistribution.zipf(keywords.length, config.getKeywordSkew()),
+                keywords,
+                tweetLengths(config));
+        boolean directAvro = Boolean.TRUE.equals(config.getDirectAvro());
+        allocationSampler = new AllocationSampler(config.getAllocationSampleInterval());
+        log.info("Starting mock tweet load generator with target rate {} tweets/sec, {} threads, {} profile " +
+                "and direct avro {}", config.getTargetRate(), threads, profile, directAvro);
+
+        running = true;
+        long startNanos = System.nanoTime();
+        generatorExecutor = Executors.newFixedThreadPool(threads);
+        for (int i = 0; i < threads; i++) {
+            generatorExecutor.execute(() -> generate(config, profile, tweetShape, startNanos, threads, directAvro));
+        }
+        reportExecutor = Executors.newSingleThreadScheduledExecutor();
+        RateReporter rateReporter = new RateReporter(config, profile, startNanos);
+        reportExecutor.scheduleAtFixedRate(rateReporter::report, config.getReportIntervalMs(),
+                config.getReportIntervalMs(), TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        if (generatorExecutor != null) {
+            log.info("Stopping mock tweet load generator after {} tweets", generatedTweets.sum());
+            generatorExecutor.shutdownNow();
+        }
+        if (reportExecutor != null) {
+            reportExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * Paces one generator thread by integrating its share of the target rate, 1/threads of it, over time. The rate
+     * is read again on every wake-up and the thread never parks longer than MAX_PARK_NS, so it follows the profile
+     * even where the rate is close to zero, like at the start of a ramp or in a sine trough. At most a second of
+     * tweets is kept due when the thread falls behind, so a slow downstream does not cause an unbounded catch-up
+     * burst. Every tweet waits once for the kafka producer
+     * to have capacity, so an overloaded producer slows the generation down: in the status listener for statuses,
+     * before routing for direct avro records.
+     */
+    private void generate(TwitterToKafkaServiceConfigData.LoadGenerator config, LoadProfile profile,
+                          TweetShape tweetShape, long startNanos, int threads, boolean directAvro) {
+        long lastNanos = System.nanoTime();
+        //tweets due since the thread started, less the tweets it generated
+        double dueTweets = 0;
+        try {
+            while (running && !Thread.currentThread().isInterrupted()) {
+                long now = System.nanoTime();
+                double threadRate = Math.max(0, config.getTargetRate() *
+                        profile.rateFactor(TimeUnit.NANOSECONDS.toMillis(now - startNanos), config) / threads);
+                dueTweets = Math.min(dueTweets + threadRate * (now - lastNanos) / 1e9,
+                        Math.max(1, threadRate * MAX_LAG_SECONDS));
+                lastNanos = now;
+                if (dueTweets < 1) {
+                    long untilDueNanos = threadRate > 0 ? (long) ((1 - dueTweets) / threadRate * 1e9) : MAX_PARK_NS;
+                    LockSupport.parkNanos(Math.min(untilDueNanos, MAX_PARK_NS));
+                    continue;
+                }
+                if (directAvro) {
+                    emitAvro(tweetShape);
+                } else {
+                    emit(tweetShape);
+                }
+                dueTweets--;
+            }
+        } catch (TwitterException e) {
+            log.error("Error creating twitter status!", e);
+        } catch (RuntimeException e) {
+            log.error("Mock tweet generator thread stopped after an error!", e);
+        }
+    }
+
+    private void emit(TweetShape tweetShape) throws TwitterException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long userId = tweetShape.users.sample(random) + 1L;
+        String keyword = tweetShape.keywordValues[tweetShape.keywords.sample(random)];
+        int tweetLength = tweetShape.lengthValues[tweetShape.lengths.sample(random)];
+        long allocatedBytes = allocationSampler.begin();
+        Status status = mockTweetFactory.createStatus(userId, keyword, tweetLength);
+        allocationSampler.end(allocatedBytes);
+        twitterKafkaStatusListener.onStatus(status);
+        generatedTweets.increment();
+    }
+
+    private void emitAvro(TweetShape tweetShape) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long userId = tweetShape.users.sample(random) + 1L;
+        String keyword = tweetShape.keywordValues[tweetShape.keywords.sample(random)];
+        int tweetLength = tweetShape.lengthValues[tweetShape.lengths.sample(random)];
+        long allocatedBytes = allocationSampler.begin();
+        TwitterAvroModel twitterAvroModel = mockTweetFactory.createAvroModel(userId, keyword, tweetLength);
+        allocationSampler.end(allocatedBytes);
+        producerFlowControl.awaitCapacity();
+        keywordTopicRouter.route(twitterAvroModel);
+        generatedTweets.increment();
+    }
+
+    /**
+     * Builds the tweet length distribution from the configured histogram of word count to weight.
+     * Falls back to a uniform distribution between the mock min and max tweet length when no histogram is set.
+     */
+    private TweetLengths tweetLengths(TwitterToKafkaServiceConfigData.LoadGenerator config) {
+        Map<Integer, Integer> histogram = new TreeMap<>(config.getTweetLengthHistogram());
+        if (histogram.isEmpty()) {
+            int min = twitterToKafkaServiceConfigData.getMockMinTweetLength();
+            int max = twitterToKafkaServiceConfigData.getMockMaxTweetLength();
+            int[] values = new int[max - min + 1];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = min + i;
+            }
+            return new TweetLengths(values, DiscreteDistribution.uniform(values.length));
+        }
+        int[] values = new int[histogram.size()];
+        double[] weights = new double[histogram.size()];
+        int i = 0;
+        for (Map.Entry<Integer, Integer> entry : histogram.entrySet()) {
+            values[i] = entry.getKey();
+            weights[i++] = entry.getValue();
+        }
+        return new TweetLengths(values, DiscreteDistribution.ofWeights(weights));
+    }
+
+    private static final class TweetLengths {
+        private final int[] values;
+        private final DiscreteDistribution distribution;
+
+        private TweetLengths(int[] values, DiscreteDistribution distribution) {
+            this.values = values;
+            this.distribution = distribution;
+        }
+    }
+
+    private static final class TweetShape {
+        private final DiscreteDistribution users;
+        private final DiscreteDistribution keywords;
+        private final String[] keywordValues;
+        private final DiscreteDistribution lengths;
+        private final int[] lengthValues;
+
+        private TweetShape(DiscreteDistribution users, DiscreteDistribution keywords, String[] keywordValues,
+                           TweetLengths tweetLengths) {
+            this.users = users;
+            this.keywords = keywords;
+            this.keywordValues = keywordValues;
+            this.lengths = tweetLengths.distribution;
+            this.lengthValues = tweetLengths.values;
+        }
+    }
+
+    /**
+     * Logs the rate achieved during the last interval and since start against the profile's target rate,
+     * together with the sampled bytes allocated per generated tweet.
+     */
+    private final class RateReporter {
+        private final TwitterToKafkaServiceConfigData.LoadGenerator config;
+        private final LoadProfile profile;
+        private final long startNanos;
+        private long lastNanos;
+        private long lastCount;
+
+        private RateReporter(TwitterToKafkaServiceConfigData.LoadGenerator config, LoadProfile profile,
+                             long startNanos) {
+            this.config = config;
+            this.profile = profile;
+            this.startNanos = startNanos;
+            this.lastNanos = startNanos;
+        }
+
+        private void report() {
+            long now = System.nanoTime();
+            long count = generatedTweets.sum();
+            double intervalSeconds = (now - lastNanos) / 1e9;
+            double achievedRate = (count - lastCount) / intervalSeconds;
+            double averageRate = count / ((now - startNanos) / 1e9);
+            double targetRate = config.getTargetRate() *
+                    profile.rateFactor(TimeUnit.NANOSECONDS.toMillis(now - startNanos), config);
+            log.info("Load generator achieved {} tweets/sec against target {} tweets/sec ({}%), " +
+                            "average {} tweets/sec, total {} tweets, {} bytes allocated per generated tweet",
+                    Math.round(achievedRate),
+                    Math.round(targetRate),
+                    targetRate > 0 ? Math.round(achievedRate * 100 / targetRate) : 0,
+                    Math.round(averageRate),
+                    count,
+                    allocationSampler.getAverageBytesPerCall());
+            lastNanos = now;
+            lastCount = count;
+        }
+    }
+
+}
@@ -0,0 +1,21 @@
+package com.microservices.twitter.to.kafka.service.handoff;
+
+import java.util.Locale;
+
+/**
+ * OverflowPolicy decides what the stream callback thread does when the status hand-off queue is full.
+ * BLOCK waits for a free slot, DROP_OLDEST discards the oldest queued status to make room for the new one
+ * and SPILL appends the new tweet to the spill log of the kafka producer, which sends it once the spill backlog
+ * ahead of it is drained.
+ */
+public enum OverflowPolicy {
+
+    BLOCK,
+    DROP_OLDEST,
+    SPILL;
+
+    public static OverflowPolicy fromName(String name) {
+        return valueOf(name.trim().replace('-', '_').toUpperCase(Locale.ENGLISH));
+    }
+
+}
@@ -0,0 +1,101 @@
+package com.microservices.twitter.to.kafka.service.handoff;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongConsumer;
+
+/**
+ * SpmcRingBuffer is a lock-free bounded queue for a single producer thread and any number of consumer threads.
+ * Every slot carries a sequence number that tells whether it is ready to be written or to be read, so the
+ * producer never needs a compare-and-set and consumers only compete on the shared read index.
+ * The time each element spent in the queue is passed to the wait time recorder when it is polled.
+ *
+ * @param <E> the type of the queued elements.
+ */
+public class SpmcRingBuffer<E> {
+
+    private static final class Slot<E> {
+        private volatile long sequence;
+        private E value;
+        private long enqueuedAtNanos;
+
+        private Slot(long sequence) {
+            this.sequence = sequence;
+        }
+    }
+
+    private final Slot<E>[] slots;
+    private final int mask;
+    private final LongConsumer waitTimeRecorder;
+
+    //only written by the producer thread, atomic so that size() can be read from any thread
+    private final AtomicLong writeIndex = new AtomicLong();
+    private final AtomicLong readIndex = new AtomicLong();
+
+    /**
+     * @param capacity         the queue capacity, rounded up to the next power of two.
+     * @param waitTimeRecorder receives the nanoseconds each element waited in the queue.
+     */
+    @SuppressWarnings("unchecked")
+    public SpmcRingBuffer(int capacity, LongConsumer waitTimeRecorder) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.slots = new Slot[size];
+        for (int i = 0; i < size; i++) {
+            slots[i] = new Slot<>(i);
+        }
+        this.mask = size - 1;
+        this.waitTimeRecorder = waitTimeRecorder;
+    }
+
+    /**
+     * Adds an element, must only be called from the producer thread.
+     *
+     * @param element the element to add.
+     * @return false if the queue is full.
+     */
+    public boolean offer(E element) {
+        long index = writeIndex.get();
+        Slot<E> slot = slots[(int) (index & mask)];
+        if (slot.sequence != index) {
+            return false;
+        }
+        slot.value = element;
+        slot.enqueuedAtNanos = System.nanoTime();
+        slot.sequence = index + 1;
+        writeIndex.lazySet(index + 1);
+        return true;
+    }
+
+    /**
+     * Removes the oldest element, safe to call from any number of threads.
+     *
+     * @return the oldest element or null if the queue is empty.
+     */
+    public E poll() {
+        while (true) {
+            long index = readIndex.get();
+            Slot<E> slot = slots[(int) (index & mask)];
+            long difference = slot.sequence - (index + 1);
+            if (difference < 0) {
+                return null;
+            }
+            if (difference == 0 && readIndex.compareAndSet(index, index + 1)) {
+                E element = slot.value;
+                long enqueuedAtNanos = slot.enqueuedAtNanos;
+                slot.value = null;
+                slot.sequence = index + slots.length;
+                waitTimeRecorder.accept(System.nanoTime() - enqueuedAtNanos);
+                return element;
+            }
+        }
+    }
+
+    public int size() {
+        long size = writeIndex.get() - readIndex.get();
+        return (int) Math.max(0, Math.min(size, slots.length));
+    }
+
+    public int capacity() {
+        return slots.length;
+    }
+
+}
@@ -0,0 +1,190 @@
+package com.microservices.twitter.to.kafka.service.handoff;
+
+import com.microservices.config.TwitterToKafkaServiceConfigData;
+import com.microservices.kafka.avro.model.TwitterAvroModel;
+import com.microservices.kafka.producer.config.service.KafkaProducer;
+import com.microservices.kafka.producer.config.service.ProducerFlowControl;
+import com.microservices.twitter.to.kafka.service.exception.TwitterToKafkaServiceException;
+import com.microservices.twitter.to.kafka.service.listener.TwitterStatusPublisher;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import twitter4j.Status;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * StatusHandOff moves the transform and send work off the twitter stream callback thread.
+ * The callback thread only puts the status into a bounded SpmcRingBuffer, and a small pool of workers
+ * takes them out and publishes them to kafka. What happens when the queue is full is decided by the
+ * configured OverflowPolicy, spilled statuses go to the spill log of the kafka producer. While the kafka producer
+ * is saturated the workers stop taking statuses, so the stream is buffered in the queue instead of blocking inside
+ * the producer. Queue depth, queue wait time, blocked time, dropped and spilled counts are exposed as metrics.
+ */
+@Slf4j
+@Component
+public class StatusHandOff {
+
+    private static final int IDLE_SPINS = 100;
+    private static final long IDLE_PARK_NS = TimeUnit.MICROSECONDS.toNanos(50);
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 10;
+
+    private final TwitterToKafkaServiceConfigData.HandOff handOffConfig;
+    private final TwitterStatusPublisher twitterStatusPublisher;
+    private final KafkaProducer<Long, TwitterAvroModel> kafkaProducer;
+    private final MeterRegistry meterRegistry;
+    private final ProducerFlowControl producerFlowControl;
+
+    private SpmcRingBuffer<Status> statusQueue;
+    private OverflowPolicy overflowPolicy;
+    private ExecutorService workerExecutor;
+    private volatile boolean running;
+
+    private Timer blockedTimer;
+    private Counter droppedCounter;
+    private Counter spilledCounter;
+
+    public StatusHandOff(TwitterToKafkaServiceConfigData configData,
+                         TwitterStatusPublisher statusPublisher,
+                         KafkaProducer<Long, TwitterAvroModel> producer,
+                         MeterRegistry registry,
+                         ProducerFlowControl flowControl) {
+        this.handOffConfig = configData.getHandOff();
+        this.twitterStatusPublisher = statusPublisher;
+        this.kafkaProducer = producer;
+        this.meterRegistry = registry;
+        this.producerFlowControl = flowControl;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!isEnabled()) {
+            return;
+        }
+        Timer waitTimer = Timer.builder("twitter.handoff.queue.wait")
+                .description("Time a status waits in the hand-off queue before a worker takes it")
+                .register(meterRegistry);
+        statusQueue = new SpmcRingBuffer<>(handOffConfig.getCapacity(),
+                waitNanos -> waitTimer.record(waitNanos, TimeUnit.NANOSECONDS));
+        overflowPolicy = OverflowPolicy.fromName(handOffConfig.getOverflowPolicy());
+        if (overflowPolicy == OverflowPolicy.SPILL && !kafkaProducer.isSpillEnabled()) {
+            throw new TwitterToKafkaServiceException("Hand-off overflow policy spill needs the kafka producer " +
+                    "spill log, enable kafka-producer-config.spill.enabled");
+        }
+        meterRegistry.gauge("twitter.handoff.queue.depth", statusQueue, SpmcRingBuffer::size);
+        blockedTimer = Timer.builder("twitter.handoff.producer.blocked")
+                .description("Time the stream callback thread waits for room in a full hand-off queue")
+                .register(meterRegistry);
+        droppedCounter = meterRegistry.counter("twitter.handoff.dropped");
+        spilledCounter = meterRegistry.counter("twitter.handoff.spilled");
+
+        running = true;
+        int workers = handOffConfig.getWorkers();
+        workerExecutor = Executors.newFixedThreadPool(workers);
+        for (int i = 0; i < workers; i++) {
+            workerExecutor.submit(this::work);
+        }
+        log.info("Started status hand-off with capacity {}, {} workers and {} overflow policy",
+                statusQueue.capacity(), workers, overflowPolicy);
+    }
+
+    public boolean isEnabled() {
+        return Boolean.TRUE.equals(handOffConfig.getEnabled());
+    }
+
+    /**
+     * Queues a status for the workers. The twitter stream calls it from a single thread; it is synchronized
+     * anyway so that the mock load generator threads can share the single producer side of the ring buffer.
+     *
+     * @param status the incoming status.
+     */
+    public synchronized void submit(Status status) {
+        if (statusQueue.offer(status)) {
+            return;
+        }
+        switch (overflowPolicy) {
+            case DROP_OLDEST:
+                dropOldestAndOffer(status);
+                break;
+            case SPILL:
+                twitterStatusPublisher.spill(status);
+                spilledCounter.increment();
+                break;
+            default:
+                blockUntilOffered(status);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        if (workerExecutor != null) {
+            log.info("Stopping status hand-off with {} queued statuses", statusQueue.size());
+            workerExecutor.shutdown();
+            try {
+                if (!workerExecutor.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                    workerExecutor.shutdownNow();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                workerExecutor.shutdownNow();
+            }
+        }
+    }
+
+    private void dropOldestAndOffer(Status status) {
+        while (!statusQueue.offer(status)) {
+            if (statusQueue.poll() != null) {
+                droppedCounter.increment();
+            }
+        }
+    }
+
+    private void blockUntilOffered(Status status) {
+        long startNanos = System.nanoTime();
+        while (!statusQueue.offer(status)) {
+            LockSupport.parkNanos(IDLE_PARK_NS);
+        }
+        blockedTimer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Worker loop, publishes queued statuses and backs off with a short spin then a park when the queue is empty.
+     * Polling pauses while the producer is saturated. On shutdown the workers keep going until the queue is drained.
+     */
+    private void work() {
+        int idleSpins = 0;
+        while (!Thread.currentThread().isInterrupted()) {
+            if (running && producerFlowControl.isSaturated()) {
+                LockSupport.parkNanos(IDLE_PARK_NS);
+                continue;
+            }
+            Status status = statusQueue.poll();
+            if (status == null) {
+                if (!running) {
+                    return;
+                }
+                if (++idleSpins < IDLE_SPINS) {
+                    Thread.onSpinWait();
+                } else {
+                    LockSupport.parkNanos(IDLE_PARK_NS);
+                }
+                continue;
+            }
+            idleSpins = 0;
+            try {
+                twitterStatusPublisher.publish(status);
+            } catch (Exception e) {
+                log.error("Error while publishing status {} from the hand-off queue", status.getId(), e);
+            }
+        }
+    }
+
+}
@@ -2,11 +2,20 @@ package com.microservices.twitter.to.kafka.service.init.impl;
 
 import com.microservices.config.KafkaConfigData;
 import com.microservices.kafka.admin.client.KafkaAdminClient;
+import com.microservices.kafka.admin.readiness.ReadinessCheck;
+import com.microservices.kafka.admin.readiness.StartupReadiness;
+import com.microservices.kafka.avro.model.TwitterAvroModel;
+import com.microservices.kafka.avro.serde.SchemaRegistryClient;
 import com.microservices.twitter.to.kafka.service.init.StreamInitializer;
+import com.microservices.twitter.to.kafka.service.routing.KeywordTopicRouter;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
 /**
  * KafkaStreamInitializer is responsible for initializing Kafka streams by ensuring that
  * topics are created and the schema registry is available before the application processes data.
@@ -19,17 +28,56 @@ public class KafkaStreamInitializer implements StreamInitializer {
 
     private final KafkaConfigData kafkaConfigData;
     private final KafkaAdminClient kafkaAdminClient;
+    private final KeywordTopicRouter keywordTopicRouter;
+    private final StartupReadiness startupReadiness;
 
     /**
      * Initializes the Kafka stream by creating the necessary topics and verifying the schema registry availability.
-     * Calls the KafkaAdminClient to create topics and check the schema registry status.
+     * When keyword routing is enabled the per keyword topics are created together with the configured topics.
+     * The schema registry is checked while the topics are created, instead of after them, so that startup only
+     * waits as long as the slowest of the two. The twitter schema is then registered for every topic.
+     * If the schema cache already has all of them, the schema registry is not waited for, so the service can start
+     * while the registry is down.
      * Logs a confirmation message indicating that the topics are ready once the initialization completes.
      */
     @Override
     public void init() {
-        kafkaAdminClient.createTopics();
-        kafkaAdminClient.checkSchemaRegistry();
-        log.info("Topics {} ready ...", kafkaConfigData.getTopicNamesToCreate().toArray());
+        List<String> keywordTopicNames = keywordTopicRouter.getKeywordTopicNames();
+        List<String> topicNames = new ArrayList<>(keywordTopicNames);
+        topicNames.add(0, kafkaConfigData.getTopicName());
+        SchemaRegistryClient schemaRegistryClient = SchemaRegistryClient.forUrl(
+                kafkaConfigData.getSchemaRegistryUrl(), kafkaConfigData.getSchemaCacheFile());
+        boolean cached = topicNames.stream().allMatch(topicName ->
+                schemaRegistryClient.isCached(topicName + "-value", TwitterAvroModel.getClassSchema()));
+        List<ReadinessCheck> checks = cached ? List.of() : List.of(kafkaAdminClient.schemaRegistryReadinessCheck());
+        CompletableFuture<Void> schemaRegistryReady = startupReadiness.checkAsync(checks);
+
+        List<String> topicNamesToCreate = new ArrayList<>(kafkaConfigData.getTopicNamesToCreate());
+        topicNamesToCreate.addAll(keywordTopicNames);
+        kafkaAdminClient.createTopics(topicNamesToCreate);
+        startupReadiness.await(schemaRegistryReady);
+
+        if (cached) {
+            log.info("Schema ids of topics {} loaded from the schema cache", topicNames);
+        } else {
+            registerSchemas(schemaRegistryClient, topicNames);
+        }
+        log.info("Topics {} and keyword topics {} ready ...", kafkaConfigData.getTopicNamesToCreate().toArray(),
+                keywordTopicNames.toArray());
+    }
+
+    /**
+     * Resolves the schema id of the twitter schema for every topic, so that the first records do not wait
+     * on the schema registry, and stores them in the schema cache file if one is configured.
+     *
+     * @param schemaRegistryClient the client shared with the avro serializer.
+     * @param topicNames           the topics the twitter records are sent to.
+     */
+    private void registerSchemas(SchemaRegistryClient schemaRegistryClient, List<String> topicNames) {
+        for (String topicName : topicNames) {
+            int schemaId = schemaRegistryClient.getId(topicName + "-value", TwitterAvroModel.getClassSchema(), true);
+            log.info("Registered twitter schema for topic {} with id {}", topicName, schemaId);
+        }
     }
 
 }
@@ -1,9 +1,7 @@
 package com.microservices.twitter.to.kafka.service.listener;
 
-import com.microservices.config.KafkaConfigData;
-import com.microservices.kafka.avro.model.TwitterAvroModel;
-import com.microservices.kafka.producer.config.service.KafkaProducer;
-import com.microservices.twitter.to.kafka.service.transformer.TwitterStatusToAvroTransformer;
+import com.microservices.kafka.producer.config.service.ProducerFlowControl;
+import com.microservices.twitter.to.kafka.service.handoff.StatusHandOff;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
@@ -15,17 +13,20 @@ import twitter4j.StatusAdapter;
 @RequiredArgsConstructor
 public class TwitterKafkaStatusListener extends StatusAdapter {
 
-    private final KafkaConfigData kafkaConfigData;
-    private final KafkaProducer<Long, TwitterAvroModel> kafkaProducer;
-    private final TwitterStatusToAvroTransformer twitterStatusToAvroTransformer;
+    private final TwitterStatusPublisher twitterStatusPublisher;
+    private final StatusHandOff statusHandOff;
+    private final ProducerFlowControl producerFlowControl;
 
     @Override
     public void onStatus(Status status) {
-        log.info("Incoming tweet: {} sending to kafka topic {}", status.getText(), kafkaConfigData.getTopicName());
-        TwitterAvroModel twitterAvroModel = twitterStatusToAvroTransformer.getTwitterAvroModelFromStatus(status);
-
-        //the partition key is the user ID, so all tweets from the same user will be sent to the same partition
-        kafkaProducer.send(kafkaConfigData.getTopicName(), twitterAvroModel.getUserId(), twitterAvroModel);
+        //with the hand-off enabled the transform and send run on the hand-off workers, not on the stream thread,
+        //which stop taking statuses while the producer is saturated, so the hand-off queue buffers the stream
+        if (statusHandOff.isEnabled()) {
+            statusHandOff.submit(status);
+        } else {
+            producerFlowControl.awaitCapacity();
+            twitterStatusPublisher.publish(status);
+        }
     }
 
 }
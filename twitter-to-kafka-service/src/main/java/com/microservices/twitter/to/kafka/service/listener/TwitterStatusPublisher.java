@@ -0,0 +1,86 @@
+package com.microservices.twitter.to.kafka.service.listener;
+
+import com.microservices.config.KafkaConfigData;
+import com.microservices.config.TwitterToKafkaServiceConfigData;
+import com.microservices.kafka.avro.model.TwitterAvroModel;
+import com.microservices.twitter.to.kafka.service.filter.NearDuplicateFilter;
+import com.microservices.twitter.to.kafka.service.replay.TweetSegmentWriter;
+import com.microservices.twitter.to.kafka.service.routing.KeywordTopicRouter;
+import com.microservices.twitter.to.kafka.service.transformer.TwitterStatusToAvroTransformer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import twitter4j.Status;
+
+import javax.annotation.PreDestroy;
+import java.nio.file.Paths;
+
+/**
+ * TwitterStatusPublisher transforms incoming statuses into TwitterAvroModel records and sends them to kafka
+ * through the KeywordTopicRouter.
+ * It runs either on the twitter stream callback thread or on the status hand-off workers.
+ * Near duplicates of recent tweets are dropped or tagged by the NearDuplicateFilter before they are sent.
+ * When capture is enabled in the replay configuration every published tweet is also appended to the capture segments.
+ */
+@Slf4j
+@Component
+public class TwitterStatusPublisher {
+
+    private final KafkaConfigData kafkaConfigData;
+    private final KeywordTopicRouter keywordTopicRouter;
+    private final TwitterStatusToAvroTransformer twitterStatusToAvroTransformer;
+    private final NearDuplicateFilter nearDuplicateFilter;
+    private final TweetSegmentWriter captureSegmentWriter;
+
+    public TwitterStatusPublisher(KafkaConfigData kafkaConfig,
+                                  KeywordTopicRouter topicRouter,
+                                  TwitterStatusToAvroTransformer transformer,
+                                  NearDuplicateFilter duplicateFilter,
+                                  TwitterToKafkaServiceConfigData configData) {
+        this.kafkaConfigData = kafkaConfig;
+        this.keywordTopicRouter = topicRouter;
+        this.twitterStatusToAvroTransformer = transformer;
+        this.nearDuplicateFilter = duplicateFilter;
+        TwitterToKafkaServiceConfigData.Replay replayConfig = configData.getReplay();
+        this.captureSegmentWriter = Boolean.TRUE.equals(replayConfig.getCaptureEnabled()) ?
+                new TweetSegmentWriter(Paths.get(replayConfig.getDirectory()), replayConfig.getSegmentBytes()) :
+                null;
+    }
+
+    public void publish(Status status) {
+        publish(status, false);
+    }
+
+    /**
+     * Publishes the status like publish(Status), but appends it to the spill log of the kafka producer instead of
+     * sending it, for a status that can not be queued for sending.
+     *
+     * @param status the status to spill.
+     */
+    public void spill(Status status) {
+        publish(status, true);
+    }
+
+    @PreDestroy
+    public void close() {
+        if (captureSegmentWriter != null) {
+            captureSegmentWriter.close();
+        }
+    }
+
+    private void publish(Status status, boolean spill) {
+        log.info("Incoming tweet: {} sending to kafka topic {}", status.getText(), kafkaConfigData.getTopicName());
+        TwitterAvroModel twitterAvroModel = twitterStatusToAvroTransformer.getTwitterAvroModelFromStatus(status);
+        if (!nearDuplicateFilter.accept(twitterAvroModel)) {
+            return;
+        }
+        if (spill) {
+            keywordTopicRouter.spill(twitterAvroModel);
+        } else {
+            keywordTopicRouter.route(twitterAvroModel);
+        }
+        if (captureSegmentWriter != null) {
+            captureSegmentWriter.append(twitterAvroModel);
+        }
+    }
+
+}
@@ -0,0 +1,35 @@
+package com.microservices.twitter.to.kafka.service.replay;
+
+import java.util.Locale;
+
+/**
+ * ReplaySpeed controls how the captured tweets are paced while being replayed.
+ * ORIGINAL keeps the captured gaps between tweets, ACCELERATED divides them by the configured speed factor
+ * and MAX sends the tweets as fast as the producer accepts them.
+ */
+public enum ReplaySpeed {
+
+    ORIGINAL,
+    ACCELERATED,
+    MAX;
+
+    /**
+     * @param speedFactor the configured acceleration, only used by ACCELERATED.
+     * @return the nanoseconds to wait in replay for each millisecond of capture time, or 0 to not wait at all.
+     */
+    public double replayNanosPerCaptureMs(double speedFactor) {
+        switch (this) {
+            case ORIGINAL:
+                return 1_000_000.0;
+            case ACCELERATED:
+                return 1_000_000.0 / speedFactor;
+            default:
+                return 0;
+        }
+    }
+
+    public static ReplaySpeed fromName(String name) {
+        return valueOf(name.trim().toUpperCase(Locale.ENGLISH));
+    }
+
+}
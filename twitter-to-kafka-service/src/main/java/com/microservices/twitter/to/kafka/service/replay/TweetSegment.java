@@ -0,0 +1,35 @@
+package com.microservices.twitter.to.kafka.service.replay;
+
+import java.nio.file.Path;
+
+/**
+ * TweetSegment describes the layout of the append-only capture segment files.
+ * Each record is written as:
+ * <pre>
+ * int  textLength (-1 when the text is null)
+ * long userId
+ * long id
+ * long createdAt (Long.MIN_VALUE when the creation time is null)
+ * byte[textLength] text as utf-8
+ * </pre>
+ * Segment files are named after the time they were started in epoch millis, zero padded, so that sorting
+ * the names gives the capture order, also across restarts of the capturing service.
+ */
+public final class TweetSegment {
+
+    public static final String FILE_SUFFIX = ".seg";
+
+    public static final int HEADER_BYTES = Integer.BYTES + 3 * Long.BYTES;
+
+    public static final int NULL_TEXT = -1;
+
+    public static final long NULL_CREATED_AT = Long.MIN_VALUE;
+
+    private TweetSegment() {
+    }
+
+    public static Path segmentPath(Path directory, long startedAtMs) {
+        return directory.resolve(String.format("%020d%s", startedAtMs, FILE_SUFFIX));
+    }
+
+}
@@ -0,0 +1,84 @@
+package com.microservices.twitter.to.kafka.service.replay;
+
+import com.microservices.kafka.avro.model.TwitterAvroModel;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * TweetSegmentReader reads the records of one capture segment through a read-only memory mapping,
+ * so replay reads straight from the page cache without copying the file through a stream.
+ * A truncated or corrupt record at the end of the segment, left by a capture that stopped mid write, is ignored.
+ */
+public class TweetSegmentReader {
+
+    private final MappedByteBuffer segment;
+    private byte[] textBuffer = new byte[1024];
+
+    public TweetSegmentReader(Path segmentPath) throws IOException {
+        try (FileChannel channel = FileChannel.open(segmentPath, StandardOpenOption.READ)) {
+            //the mapping stays valid after the channel is closed
+            this.segment = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    /**
+     * Lists the segment files of a capture directory in capture order.
+     *
+     * @param directory the capture directory.
+     * @return the segment paths sorted by name.
+     * @throws IOException if the directory cannot be listed.
+     */
+    public static List<Path> listSegments(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files
+                    .filter(path -> path.getFileName().toString().endsWith(TweetSegment.FILE_SUFFIX))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * @return the next record of the segment, or null when the end of the segment is reached.
+     */
+    public TwitterAvroModel next() {
+        if (segment.remaining() < TweetSegment.HEADER_BYTES) {
+            return null;
+        }
+        int recordStart = segment.position();
+        int textLength = segment.getInt();
+        long userId = segment.getLong();
+        long id = segment.getLong();
+        long createdAt = segment.getLong();
+        if (textLength < TweetSegment.NULL_TEXT || textLength > segment.remaining()) {
+            segment.position(recordStart);
+            return null;
+        }
+
+        TwitterAvroModel twitterAvroModel = new TwitterAvroModel();
+        twitterAvroModel.setUserId(userId);
+        twitterAvroModel.setId(id);
+        twitterAvroModel.setCreatedAt(createdAt == TweetSegment.NULL_CREATED_AT ? null : createdAt);
+        twitterAvroModel.setText(textLength == TweetSegment.NULL_TEXT ? null : readText(textLength));
+        twitterAvroModel.setKeywords(Collections.emptyList());
+        return twitterAvroModel;
+    }
+
+    private String readText(int textLength) {
+        if (textBuffer.length < textLength) {
+            textBuffer = new byte[textLength];
+        }
+        segment.get(textBuffer, 0, textLength);
+        return new String(textBuffer, 0, textLength, StandardCharsets.UTF_8);
+    }
+
+}
@@ -0,0 +1,100 @@
+package com.microservices.twitter.to.kafka.service.replay;
+
+import com.microservices.kafka.avro.model.TwitterAvroModel;
+import com.microservices.twitter.to.kafka.service.exception.TwitterToKafkaServiceException;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * TweetSegmentWriter appends tweets to segment files in a directory, so they can be replayed later
+ * by the ReplayKafkaStreamRunner. It is used to capture the stream sent to kafka and to spill the tweets
+ * that do not fit in the status hand-off queue.
+ * A new segment is started when the current one would grow beyond the configured segment size.
+ */
+@Slf4j
+public class TweetSegmentWriter {
+
+    private final Path directory;
+    private final long segmentBytes;
+
+    private FileChannel segmentChannel;
+    private ByteBuffer recordBuffer = ByteBuffer.allocate(4096);
+    private long recordIndex;
+
+    public TweetSegmentWriter(Path directory, long segmentBytes) {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+    }
+
+    /**
+     * Appends the tweet to the current segment.
+     *
+     * @param twitterAvroModel the tweet to append.
+     */
+    public synchronized void append(TwitterAvroModel twitterAvroModel) {
+        byte[] text = twitterAvroModel.getText() == null ? null :
+                twitterAvroModel.getText().getBytes(StandardCharsets.UTF_8);
+        int recordBytes = TweetSegment.HEADER_BYTES + (text == null ? 0 : text.length);
+        if (recordBuffer.capacity() < recordBytes) {
+            recordBuffer = ByteBuffer.allocate(recordBytes);
+        }
+        recordBuffer.clear();
+        recordBuffer.putInt(text == null ? TweetSegment.NULL_TEXT : text.length);
+        recordBuffer.putLong(twitterAvroModel.getUserId());
+        recordBuffer.putLong(twitterAvroModel.getId());
+        recordBuffer.putLong(twitterAvroModel.getCreatedAt() == null ?
+                TweetSegment.NULL_CREATED_AT : twitterAvroModel.getCreatedAt());
+        if (text != null) {
+            recordBuffer.put(text);
+        }
+        recordBuffer.flip();
+        try {
+            FileChannel channel = getSegmentChannel(recordBytes);
+            while (recordBuffer.hasRemaining()) {
+                channel.write(recordBuffer);
+            }
+            recordIndex++;
+        } catch (IOException e) {
+            throw new TwitterToKafkaServiceException("Error while writing tweet to segment in " + directory, e);
+        }
+    }
+
+    public synchronized long getRecordCount() {
+        return recordIndex;
+    }
+
+    public synchronized void close() {
+        if (segmentChannel != null) {
+            log.info("Closing tweet segment in {} after {} records", directory, recordIndex);
+            try {
+                segmentChannel.close();
+            } catch (IOException e) {
+                log.warn("Error while closing tweet segment in {}", directory, e);
+            }
+            segmentChannel = null;
+        }
+    }
+
+    private FileChannel getSegmentChannel(int recordBytes) throws IOException {
+        if (segmentChannel != null && segmentChannel.size() + recordBytes > segmentBytes) {
+            segmentChannel.close();
+            segmentChannel = null;
+        }
+        if (segmentChannel == null) {
+            Files.createDirectories(directory);
+            Path segmentPath = TweetSegment.segmentPath(directory, System.currentTimeMillis());
+            log.info("Starting tweet segment {}", segmentPath);
+            segmentChannel = FileChannel.open(segmentPath,
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        }
+        return segmentChannel;
+    }
+
+}
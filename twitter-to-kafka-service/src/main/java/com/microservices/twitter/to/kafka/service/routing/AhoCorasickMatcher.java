@@ -0,0 +1,147 @@
+package com.microservices.twitter.to.kafka.service.routing;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * AhoCorasickMatcher finds all keywords of a fixed list in a text with a single pass over its characters.
+ * The automaton is built once into a dense transition table over the characters that appear in the keywords,
+ * every other character shares one class, so matching is one table lookup per character.
+ * Matching is case-insensitive and only whole words count, a keyword inside a longer word is not a match.
+ */
+public class AhoCorasickMatcher {
+
+    private static final int ROOT = 0;
+    private static final int[] NO_OUTPUT = new int[0];
+
+    private final String[] keywords;
+    private final int[] keywordLengths;
+    private final char[] charClasses;
+    private final int alphabetSize;
+    private final int[] transitions;
+    private final int[][] outputs;
+
+    public AhoCorasickMatcher(List<String> keywordList) {
+        this.keywords = keywordList.stream()
+                .map(keyword -> keyword.trim().toLowerCase(Locale.ROOT))
+                .filter(keyword -> !keyword.isEmpty())
+                .distinct()
+                .toArray(String[]::new);
+        this.keywordLengths = Arrays.stream(keywords).mapToInt(String::length).toArray();
+        this.charClasses = new char[Character.MAX_VALUE + 1];
+        int classes = 1;
+        int maxStates = 1;
+        for (String keyword : keywords) {
+            maxStates += keyword.length();
+            for (int i = 0; i < keyword.length(); i++) {
+                if (charClasses[keyword.charAt(i)] == 0) {
+                    charClasses[keyword.charAt(i)] = (char) classes++;
+                }
+            }
+        }
+        this.alphabetSize = classes;
+
+        //trie first, -1 marks a missing edge until the failure links fill them in
+        int[] trie = new int[maxStates * alphabetSize];
+        Arrays.fill(trie, -1);
+        List<int[]> stateOutputs = new ArrayList<>(Collections.nCopies(maxStates, NO_OUTPUT));
+        int states = 1;
+        for (int keywordIndex = 0; keywordIndex < keywords.length; keywordIndex++) {
+            int state = ROOT;
+            for (int i = 0; i < keywords[keywordIndex].length(); i++) {
+                int edge = state * alphabetSize + charClasses[keywords[keywordIndex].charAt(i)];
+                if (trie[edge] == -1) {
+                    trie[edge] = states++;
+                }
+                state = trie[edge];
+            }
+            stateOutputs.set(state, append(stateOutputs.get(state), keywordIndex));
+        }
+        this.transitions = Arrays.copyOf(trie, states * alphabetSize);
+        this.outputs = stateOutputs.subList(0, states).toArray(new int[0][]);
+        buildFailureTransitions(states);
+    }
+
+    public List<String> getKeywords() {
+        return Collections.unmodifiableList(Arrays.asList(keywords));
+    }
+
+    /**
+     * @param text the text to search.
+     * @return the matched keywords in the order of their first occurrence, without repetitions.
+     */
+    public List<String> findMatches(CharSequence text) {
+        if (text == null || keywords.length == 0) {
+            return Collections.emptyList();
+        }
+        List<String> matches = null;
+        int state = ROOT;
+        for (int i = 0, length = text.length(); i < length; i++) {
+            char c = Character.toLowerCase(text.charAt(i));
+            state = transitions[state * alphabetSize + charClasses[c]];
+            for (int keywordIndex : outputs[state]) {
+                if (isWholeWord(text, i - keywordLengths[keywordIndex] + 1, i)) {
+                    if (matches == null) {
+                        matches = new ArrayList<>(2);
+                    }
+                    if (!matches.contains(keywords[keywordIndex])) {
+                        matches.add(keywords[keywordIndex]);
+                    }
+                }
+            }
+        }
+        return matches == null ? Collections.emptyList() : matches;
+    }
+
+    /**
+     * Breadth first over the trie: every missing edge takes the edge of the failure state, the longest proper suffix
+     * that is also in the trie, and every state inherits the outputs of its failure state.
+     */
+    private void buildFailureTransitions(int states) {
+        int[] failure = new int[states];
+        Deque<Integer> queue = new ArrayDeque<>();
+        for (int c = 0; c < alphabetSize; c++) {
+            int next = transitions[ROOT * alphabetSize + c];
+            if (next == -1) {
+                transitions[ROOT * alphabetSize + c] = ROOT;
+            } else {
+                failure[next] = ROOT;
+                queue.add(next);
+            }
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            for (int c = 0; c < alphabetSize; c++) {
+                int edge = state * alphabetSize + c;
+                int next = transitions[edge];
+                int failureNext = transitions[failure[state] * alphabetSize + c];
+                if (next == -1) {
+                    transitions[edge] = failureNext;
+                } else {
+                    failure[next] = failureNext;
+                    for (int keywordIndex : outputs[failureNext]) {
+                        outputs[next] = append(outputs[next], keywordIndex);
+                    }
+                    queue.add(next);
+                }
+            }
+        }
+    }
+
+    private static boolean isWholeWord(CharSequence text, int start, int end) {
+        return (start == 0 || !Character.isLetterOrDigit(text.charAt(start - 1))) &&
+                (end == text.length() - 1 || !Character.isLetterOrDigit(text.charAt(end + 1)));
+    }
+
+    private static int[] append(int[] values, int value) {
+        int[] appended = Arrays.copyOf(values, values.length + 1);
+        appended[values.length] = value;
+        return appended;
+    }
+
+}
@@ -0,0 +1,140 @@
+package com.microservices.twitter.to.kafka.service.routing;
+
+import com.microservices.config.KafkaConfigData;
+import com.microservices.config.TwitterToKafkaServiceConfigData;
+import com.microservices.kafka.avro.model.TwitterAvroModel;
+import com.microservices.kafka.producer.config.service.BatchSendResult;
+import com.microservices.kafka.producer.config.service.KafkaProducer;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.tuple.Pair;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * KeywordTopicRouter tags every tweet with the twitter keywords found in its text and sends it to kafka.
+ * Tweets always go to the main topic. When keyword routing is enabled they are also sent to the topic of every
+ * matched keyword, so consumers and indices of a single keyword can scale independently.
+ */
+@Slf4j
+@Component
+public class KeywordTopicRouter {
+
+    private static final String INVALID_TOPIC_CHARACTERS = "[^a-zA-Z0-9._-]";
+
+    private final KafkaConfigData kafkaConfigData;
+    private final KafkaProducer<Long, TwitterAvroModel> kafkaProducer;
+    private final AhoCorasickMatcher keywordMatcher;
+    private final Map<String, String> keywordTopicNames;
+
+    public KeywordTopicRouter(TwitterToKafkaServiceConfigData configData,
+                              KafkaConfigData kafkaConfig,
+                              KafkaProducer<Long, TwitterAvroModel> producer) {
+        this.kafkaConfigData = kafkaConfig;
+        this.kafkaProducer = producer;
+        this.keywordMatcher = new AhoCorasickMatcher(configData.getTwitterKeywords());
+        TwitterToKafkaServiceConfigData.KeywordRouting routingConfig = configData.getKeywordRouting();
+        this.keywordTopicNames = Boolean.TRUE.equals(routingConfig.getEnabled()) ?
+                getKeywordTopicNames(keywordMatcher.getKeywords(), routingConfig.getTopicPrefix()) :
+                Collections.emptyMap();
+    }
+
+    /**
+     * @return the per keyword topics that tweets are routed to, empty if keyword routing is disabled.
+     */
+    public List<String> getKeywordTopicNames() {
+        return new ArrayList<>(keywordTopicNames.values());
+    }
+
+    /**
+     * Sets the matched keywords of the tweet and sends it to the main topic and to the matched keyword topics.
+     *
+     * @param twitterAvroModel the tweet to send.
+     */
+    public void route(TwitterAvroModel twitterAvroModel) {
+        route(twitterAvroModel, false);
+    }
+
+    /**
+     * Routes the tweet like route(TwitterAvroModel), but appends it to the spill log of the kafka producer for every
+     * topic instead of sending it.
+     *
+     * @param twitterAvroModel the tweet to spill.
+     */
+    public void spill(TwitterAvroModel twitterAvroModel) {
+        route(twitterAvroModel, true);
+    }
+
+    /**
+     * Routes a group of tweets like route(TwitterAvroModel), with one batch send per topic.
+     *
+     * @param twitterAvroModels the tweets to send.
+     * @return a future completed once every batch is completed.
+     */
+    public CompletableFuture<Void> route(List<TwitterAvroModel> twitterAvroModels) {
+        Map<String, List<Pair<Long, TwitterAvroModel>>> topicBatches = new HashMap<>();
+        List<Pair<Long, TwitterAvroModel>> mainTopicBatch = new ArrayList<>(twitterAvroModels.size());
+        topicBatches.put(kafkaConfigData.getTopicName(), mainTopicBatch);
+        for (TwitterAvroModel twitterAvroModel : twitterAvroModels) {
+            List<String> keywords = keywordMatcher.findMatches(twitterAvroModel.getText());
+            twitterAvroModel.setKeywords(keywords);
+            Pair<Long, TwitterAvroModel> record = Pair.of(twitterAvroModel.getUserId(), twitterAvroModel);
+            mainTopicBatch.add(record);
+            if (!keywordTopicNames.isEmpty()) {
+                for (String keyword : keywords) {
+                    topicBatches.computeIfAbsent(keywordTopicNames.get(keyword), topic -> new ArrayList<>())
+                            .add(record);
+                }
+            }
+        }
+        CompletableFuture<?>[] batchFutures = topicBatches.entrySet().stream()
+                .map(batch -> kafkaProducer.send(batch.getKey(), batch.getValue())
+                        .thenAccept(result -> logFailures(batch.getKey(), result)))
+                .toArray(CompletableFuture[]::new);
+        return CompletableFuture.allOf(batchFutures);
+    }
+
+    private void route(TwitterAvroModel twitterAvroModel, boolean spill) {
+        List<String> keywords = keywordMatcher.findMatches(twitterAvroModel.getText());
+        twitterAvroModel.setKeywords(keywords);
+
+        //the partition key is the user ID, so all tweets from the same user will be sent to the same partition
+        send(kafkaConfigData.getTopicName(), twitterAvroModel, spill);
+        if (keywordTopicNames.isEmpty()) {
+            return;
+        }
+        for (String keyword : keywords) {
+            send(keywordTopicNames.get(keyword), twitterAvroModel, spill);
+        }
+    }
+
+    private void send(String topicName, TwitterAvroModel twitterAvroModel, boolean spill) {
+        if (spill) {
+            kafkaProducer.spill(topicName, twitterAvroModel.getUserId(), twitterAvroModel);
+        } else {
+            kafkaProducer.send(topicName, twitterAvroModel.getUserId(), twitterAvroModel);
+        }
+    }
+
+    private void logFailures(String topicName, BatchSendResult result) {
+        int failed = result.getFailedCount();
+        if (failed > 0) {
+            log.warn("{} of {} tweets of a batch could not be sent to topic {}", failed, result.size(), topicName);
+        }
+    }
+
+    private Map<String, String> getKeywordTopicNames(List<String> keywords, String topicPrefix) {
+        Map<String, String> topicNames = new HashMap<>();
+        for (String keyword : keywords) {
+            topicNames.put(keyword, topicPrefix + keyword.replaceAll(INVALID_TOPIC_CHARACTERS, "-"));
+        }
+        log.info("Routing tweets to keyword topics {}", topicNames.values());
+        return topicNames;
+    }
+
+}
@@ -2,158 +2,51 @@ package com.microservices.twitter.to.kafka.service.runner.impl;
 
 import com.microservices.config.TwitterToKafkaServiceConfigData;
 import com.microservices.twitter.to.kafka.service.exception.TwitterToKafkaServiceException;
+import com.microservices.twitter.to.kafka.service.generator.MockTweetFactory;
+import com.microservices.twitter.to.kafka.service.generator.MockTweetLoadGenerator;
 import com.microservices.twitter.to.kafka.service.listener.TwitterKafkaStatusListener;
 import com.microservices.twitter.to.kafka.service.runner.StreamRunner;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
 import org.springframework.stereotype.Component;
 import twitter4j.Status;
 import twitter4j.TwitterException;
-import twitter4j.TwitterObjectFactory;
 
-import java.time.ZonedDateTime;
-import java.time.format.DateTimeFormatter;
 import java.util.Arrays;
-import java.util.Locale;
-import java.util.Random;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadLocalRandom;
 
 @Slf4j
 @Component
-@ConditionalOnProperty(name = "twitter-to-kafka-service.enable-mock-tweets", havingValue = "true")
+@ConditionalOnExpression("${twitter-to-kafka-service.enable-mock-tweets:false} && " +
+        "!${twitter-to-kafka-service.enable-replay:false}")
 public class MockKafkaStreamRunner implements StreamRunner {
 
     private final TwitterToKafkaServiceConfigData twitterToKafkaServiceConfigData;
 
     private final TwitterKafkaStatusListener twitterKafkaStatusListener;
 
-    private static final Random RANDOM = new Random();
+    private final MockTweetFactory mockTweetFactory;
 
-    private static final String[] WORDS = new String[]{
-            "Breaking",
-            "news",
-            "trending",
-            "update",
-            "funny",
-            "amazing",
-            "sports",
-            "politics",
-            "technology",
-            "health",
-            "science",
-            "movie",
-            "music",
-            "travel",
-            "beautiful",
-            "awesome",
-            "weather",
-            "opinion",
-            "happy",
-            "sad",
-            "love",
-            "hate",
-            "incredible",
-            "viral",
-            "win",
-            "lose",
-            "challenge",
-            "success",
-            "fail",
-            "support",
-            "community",
-            "event",
-            "festival",
-            "concert",
-            "announcement",
-            "launch",
-            "product",
-            "sale",
-            "offer",
-            "deal",
-            "alert",
-            "warning",
-            "fun",
-            "friends",
-            "family",
-            "work",
-            "life",
-            "quote",
-            "inspiration",
-            "motivation",
-            "random",
-            "story",
-            "joke",
-            "question",
-            "poll",
-            "survey",
-            "feedback",
-            "comment",
-            "share",
-            "like",
-            "follow",
-            "retweet",
-            "hashtag",
-            "trend",
-            "influence",
-            "blog",
-            "video",
-            "photo",
-            "meme",
-            "gossip",
-            "breaking",
-            "scandal",
-            "rumor",
-            "startup",
-            "innovation",
-            "game",
-            "challenge",
-            "goal",
-            "team",
-            "strategy",
-            "healthcare",
-            "finance",
-            "economy",
-            "business",
-            "startup",
-            "job",
-            "career",
-            "learning",
-            "coding",
-            "developer",
-            "data",
-            "AI",
-            "robotics",
-            "cloud",
-            "app",
-            "platform",
-            "network",
-            "community",
-            "meeting",
-            "conference",
-            "tutorial",
-            "guide"
-    };
-
-
-    private static final String TWEET_AS_RAW_JSON = "{" +
-            "\"created_at\":\"{0}\"," +
-            "\"id\":\"{1}\"," +
-            "\"text\":\"{2}\"," +
-            "\"user\":{\"id\":\"{3}\"}" +
-            "}";
-
-    private static final String TWITTER_STATUS_DATE_FORMAT = "EEE MMM dd HH:mm:ss zzz yyyy";
+    private final MockTweetLoadGenerator mockTweetLoadGenerator;
 
     public MockKafkaStreamRunner(TwitterToKafkaServiceConfigData configData,
-                                 TwitterKafkaStatusListener statusListener) {
+                                 TwitterKafkaStatusListener statusListener,
+                                 MockTweetFactory tweetFactory,
+                                 MockTweetLoadGenerator loadGenerator) {
         this.twitterToKafkaServiceConfigData = configData;
         this.twitterKafkaStatusListener = statusListener;
+        this.mockTweetFactory = tweetFactory;
+        this.mockTweetLoadGenerator = loadGenerator;
     }
 
     @Override
     public void start() {
         final String[] keywords = twitterToKafkaServiceConfigData.getTwitterKeywords().toArray(new String[0]);
+        if (Boolean.TRUE.equals(twitterToKafkaServiceConfigData.getLoadGenerator().getEnabled())) {
+            mockTweetLoadGenerator.start(keywords);
+            return;
+        }
         final int minTweetLength = twitterToKafkaServiceConfigData.getMockMinTweetLength();
         final int maxTweetLength = twitterToKafkaServiceConfigData.getMockMaxTweetLength();
         long sleepTimeMs = twitterToKafkaServiceConfigData.getMockSleepMs();
@@ -165,8 +58,11 @@ public class MockKafkaStreamRunner implements StreamRunner {
         Executors.newSingleThreadExecutor().submit(() -> {
             try {
                 while (true) {
-                    String formattedTweetAsRawJson = getFormattedTweet(keywords, minTweetLength, maxTweetLength);
-                    Status status = TwitterObjectFactory.createStatus(formattedTweetAsRawJson);
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    Status status = mockTweetFactory.createStatus(
+                            random.nextLong(Long.MAX_VALUE),
+                            keywords[random.nextInt(keywords.length)],
+                            random.nextInt(maxTweetLength - minTweetLength + 1) + minTweetLength);
                     twitterKafkaStatusListener.onStatus(status);
                     sleep(sleepTimeMs);
                 }
@@ -185,39 +81,4 @@ public class MockKafkaStreamRunner implements StreamRunner {
         }
     }
 
-    private String getFormattedTweet(String[] keywords, int minTweetLength, int maxTweetLength) {
-        String[] params = new String[]{
-                ZonedDateTime.now().format(DateTimeFormatter.ofPattern(TWITTER_STATUS_DATE_FORMAT, Locale.ENGLISH)),
-                String.valueOf(ThreadLocalRandom.current().nextLong(Long.MAX_VALUE)),
-                getRandomTweetContent(keywords, minTweetLength, maxTweetLength),
-                String.valueOf(ThreadLocalRandom.current().nextLong(Long.MAX_VALUE))
-        };
-        return formatTweetAsJsonWithParams(params);
-    }
-
-    private String formatTweetAsJsonWithParams(String[] params) {
-        String tweet = TWEET_AS_RAW_JSON;
-
-        for (int i = 0; i < params.length; i++) {
-            tweet = tweet.replace("{" + i + "}", params[i]);
-        }
-        return tweet;
-    }
-
-    private String getRandomTweetContent(String[] keywords, int minTweetLength, int maxTweetLength) {
-        StringBuilder tweet = new StringBuilder();
-        int tweetLength = RANDOM.nextInt(maxTweetLength - minTweetLength + 1) + minTweetLength;
-        return constructRandomTweet(keywords, tweet, tweetLength);
-    }
-
-    private String constructRandomTweet(String[] keywords, StringBuilder tweet, int tweetLength) {
-        for (int i = 0; i < tweetLength; i++) {
-            tweet.append(WORDS[RANDOM.nextInt(WORDS.length)]).append(" ");
-            if (i == tweetLength / 2) {
-                tweet.append(keywords[RANDOM.nextInt(keywords.length)]).append(" ");
-            }
-        }
-        return tweet.toString().trim();
-    }
-
 }
@@ -0,0 +1,153 @@
+package com.microservices.twitter.to.kafka.service.runner.impl;
+
+import com.microservices.config.TwitterToKafkaServiceConfigData;
+import com.microservices.kafka.avro.model.TwitterAvroModel;
+import com.microservices.kafka.producer.config.service.ProducerFlowControl;
+import com.microservices.twitter.to.kafka.service.exception.TwitterToKafkaServiceException;
+import com.microservices.twitter.to.kafka.service.replay.ReplaySpeed;
+import com.microservices.twitter.to.kafka.service.replay.TweetSegmentReader;
+import com.microservices.twitter.to.kafka.service.routing.KeywordTopicRouter;
+import com.microservices.twitter.to.kafka.service.runner.StreamRunner;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * ReplayKafkaStreamRunner replays a tweet stream captured by the TweetSegmentWriter into kafka.
+ * Segments are read in capture order through memory mapped files and sent with their original timing,
+ * accelerated by a factor, or as fast as possible, depending on the replay speed configuration.
+ * Replayed tweets go through the KeywordTopicRouter, so they are tagged and routed with the current keywords.
+ * The replay waits whenever the kafka producer is saturated, falling behind the capture timing instead of
+ * overloading the producer. At max speed the tweets are sent in batches with one batch send per topic.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "twitter-to-kafka-service.enable-replay", havingValue = "true")
+public class ReplayKafkaStreamRunner implements StreamRunner {
+
+    private static final int MAX_SPEED_BATCH_SIZE = 500;
+
+    private final TwitterToKafkaServiceConfigData twitterToKafkaServiceConfigData;
+
+    private final KeywordTopicRouter keywordTopicRouter;
+
+    private final ProducerFlowControl producerFlowControl;
+
+    private ExecutorService replayExecutor;
+
+    public ReplayKafkaStreamRunner(TwitterToKafkaServiceConfigData configData,
+                                   KeywordTopicRouter topicRouter,
+                                   ProducerFlowControl flowControl) {
+        this.twitterToKafkaServiceConfigData = configData;
+        this.keywordTopicRouter = topicRouter;
+        this.producerFlowControl = flowControl;
+    }
+
+    @Override
+    public void start() {
+        TwitterToKafkaServiceConfigData.Replay replayConfig = twitterToKafkaServiceConfigData.getReplay();
+        Path directory = Paths.get(replayConfig.getDirectory());
+        ReplaySpeed replaySpeed = ReplaySpeed.fromName(replayConfig.getSpeed());
+        double replayNanosPerCaptureMs = replaySpeed.replayNanosPerCaptureMs(replayConfig.getSpeedFactor());
+        log.info("Starting replay of captured tweets from {} with {} speed", directory, replaySpeed);
+        replayExecutor = Executors.newSingleThreadExecutor();
+        replayExecutor.execute(() -> {
+            try {
+                do {
+                    replayCapture(directory, replayNanosPerCaptureMs);
+                } while (Boolean.TRUE.equals(replayConfig.getLoop()) && !Thread.currentThread().isInterrupted());
+            } catch (RuntimeException e) {
+                log.error("Replay of captured tweets from {} stopped after an error!", directory, e);
+            }
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (replayExecutor != null) {
+            log.info("Stopping tweet replay!");
+            replayExecutor.shutdownNow();
+        }
+    }
+
+    private void replayCapture(Path directory, double replayNanosPerCaptureMs) {
+        List<Path> segments = getSegments(directory);
+        long startNanos = System.nanoTime();
+        long firstCreatedAt = Long.MIN_VALUE;
+        long replayedTweets = 0;
+        List<TwitterAvroModel> batch = new ArrayList<>(MAX_SPEED_BATCH_SIZE);
+        for (Path segment : segments) {
+            TweetSegmentReader reader = getReader(segment);
+            TwitterAvroModel twitterAvroModel;
+            while ((twitterAvroModel = reader.next()) != null) {
+                if (Thread.currentThread().isInterrupted()) {
+                    return;
+                }
+                if (replayNanosPerCaptureMs > 0 && twitterAvroModel.getCreatedAt() != null) {
+                    if (firstCreatedAt == Long.MIN_VALUE) {
+                        firstCreatedAt = twitterAvroModel.getCreatedAt();
+                    }
+                    waitUntil(startNanos +
+                            (long) ((twitterAvroModel.getCreatedAt() - firstCreatedAt) * replayNanosPerCaptureMs));
+                }
+                replayedTweets++;
+                if (replayNanosPerCaptureMs == 0) {
+                    batch.add(twitterAvroModel);
+                    if (batch.size() == MAX_SPEED_BATCH_SIZE) {
+                        routeBatch(batch);
+                    }
+                    continue;
+                }
+                producerFlowControl.awaitCapacity();
+                keywordTopicRouter.route(twitterAvroModel);
+            }
+        }
+        if (!batch.isEmpty()) {
+            routeBatch(batch);
+        }
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        log.info("Replayed {} tweets from {} segments in {} ms ({} tweets/sec)", replayedTweets, segments.size(),
+                elapsedMs, elapsedMs == 0 ? replayedTweets : replayedTweets * 1000 / elapsedMs);
+    }
+
+    private void routeBatch(List<TwitterAvroModel> batch) {
+        producerFlowControl.awaitCapacity();
+        keywordTopicRouter.route(new ArrayList<>(batch));
+        batch.clear();
+    }
+
+    private void waitUntil(long dueNanos) {
+        long waitNanos;
+        while ((waitNanos = dueNanos - System.nanoTime()) > 0 && !Thread.currentThread().isInterrupted()) {
+            LockSupport.parkNanos(waitNanos);
+        }
+    }
+
+    private List<Path> getSegments(Path directory) {
+        try {
+            return TweetSegmentReader.listSegments(directory);
+        } catch (IOException e) {
+            throw new TwitterToKafkaServiceException("Error while listing capture segments in " + directory, e);
+        }
+    }
+
+    private TweetSegmentReader getReader(Path segment) {
+        try {
+            return new TweetSegmentReader(segment);
+        } catch (IOException e) {
+            throw new TwitterToKafkaServiceException("Error while mapping capture segment " + segment, e);
+        }
+    }
+
+}
@@ -0,0 +1,68 @@
+package com.microservices.twitter.to.kafka.service.filter;
+
+import com.microservices.config.TwitterToKafkaServiceConfigData;
+import com.microservices.kafka.avro.model.TwitterAvroModel;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class NearDuplicateFilterTest {
+
+    @Test
+    public void dropsNearDuplicates() {
+        NearDuplicateFilter filter = createFilter("drop");
+        assertTrue(filter.accept(tweet(1, "kafka streams tweets into elasticsearch")));
+        assertFalse(filter.accept(tweet(2, "RT @alice: Kafka streams tweets into Elasticsearch!")));
+        assertTrue(filter.accept(tweet(3, "the weather in lisbon is sunny today")));
+    }
+
+    @Test
+    public void tagsNearDuplicates() {
+        NearDuplicateFilter filter = createFilter("tag");
+        filter.accept(tweet(1, "kafka streams tweets into elasticsearch"));
+        TwitterAvroModel copy = tweet(2, "kafka streams tweets into elasticsearch");
+        assertTrue(filter.accept(copy));
+        assertEquals(1L, copy.getNearDuplicateOf());
+    }
+
+    @Test
+    public void acceptsTweetsWithoutWords() {
+        MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        NearDuplicateFilter filter = createFilter("drop", meterRegistry);
+        for (int i = 0; i < 3; i++) {
+            TwitterAvroModel tweet = tweet(i, null);
+            assertTrue(filter.accept(tweet));
+            assertNull(tweet.getNearDuplicateOf());
+            assertTrue(filter.accept(tweet(10 + i, "@alice @bob")));
+        }
+        assertEquals(6, meterRegistry.counter("twitter.dedup.checked").count());
+        assertEquals(6, meterRegistry.get("twitter.dedup.cost").timer().count());
+    }
+
+    private static NearDuplicateFilter createFilter(String action) {
+        return createFilter(action, new SimpleMeterRegistry());
+    }
+
+    private static NearDuplicateFilter createFilter(String action, MeterRegistry meterRegistry) {
+        TwitterToKafkaServiceConfigData configData = new TwitterToKafkaServiceConfigData();
+        configData.getNearDuplicate().setEnabled(true);
+        configData.getNearDuplicate().setCapacity(16);
+        configData.getNearDuplicate().setAction(action);
+        return new NearDuplicateFilter(configData, meterRegistry);
+    }
+
+    private static TwitterAvroModel tweet(long id, String text) {
+        return TwitterAvroModel.newBuilder()
+                .setId(id)
+                .setUserId(id)
+                .setText(text)
+                .setCreatedAt(null)
+                .build();
+    }
+
+}
@@ -0,0 +1,62 @@
+package com.microservices.twitter.to.kafka.service.filter;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class SimHashIndexTest {
+
+    private static final long FINGERPRINT = 0x9e3779b97f4a7c15L;
+    private static final long WINDOW_MS = 1000;
+
+    @Test
+    public void findsFingerprintsWithinHammingDistance() {
+        SimHashIndex index = new SimHashIndex(16, 3, WINDOW_MS);
+        assertEquals(SimHashIndex.NOT_FOUND, index.findOrAdd(FINGERPRINT, 1, 0));
+        assertEquals(1, index.findOrAdd(FINGERPRINT, 2, 0));
+        //bits spread over different bands
+        assertEquals(1, index.findOrAdd(FINGERPRINT ^ 0x8000_0000_0001_0001L, 3, 0));
+    }
+
+    @Test
+    public void doesNotFindFingerprintsBeyondHammingDistance() {
+        SimHashIndex index = new SimHashIndex(16, 3, WINDOW_MS);
+        index.findOrAdd(FINGERPRINT, 1, 0);
+        assertEquals(SimHashIndex.NOT_FOUND, index.findOrAdd(FINGERPRINT ^ 0x8000_0001_0001_0001L, 2, 0));
+    }
+
+    @Test
+    public void nearDuplicatesPointToTheFirstTweet() {
+        SimHashIndex index = new SimHashIndex(16, 3, WINDOW_MS);
+        index.findOrAdd(FINGERPRINT, 1, 0);
+        assertEquals(1, index.findOrAdd(FINGERPRINT ^ 0x7L, 2, 0));
+        //the copy of the copy is 4 bits away from the first tweet, but the copy was not added
+        assertEquals(SimHashIndex.NOT_FOUND, index.findOrAdd(FINGERPRINT ^ 0xfL, 3, 0));
+    }
+
+    @Test
+    public void expiresFingerprintsAfterWindow() {
+        SimHashIndex index = new SimHashIndex(16, 3, WINDOW_MS);
+        index.findOrAdd(FINGERPRINT, 1, 0);
+        assertEquals(1, index.findOrAdd(FINGERPRINT, 2, WINDOW_MS));
+        assertEquals(SimHashIndex.NOT_FOUND, index.findOrAdd(FINGERPRINT, 3, WINDOW_MS + 1));
+    }
+
+    @Test
+    public void evictsOldestFingerprintsBeyondCapacity() {
+        SimHashIndex index = new SimHashIndex(4, 3, WINDOW_MS);
+        index.findOrAdd(FINGERPRINT, 1, 0);
+        for (int i = 0; i < 4; i++) {
+            index.findOrAdd(~FINGERPRINT * (i + 3), 10 + i, 0);
+        }
+        assertEquals(SimHashIndex.NOT_FOUND, index.findOrAdd(FINGERPRINT, 2, 0));
+    }
+
+    @Test
+    public void rejectsHammingDistanceWithoutIdenticalBand() {
+        assertThrows(IllegalArgumentException.class, () -> new SimHashIndex(16, Long.SIZE / 2, WINDOW_MS));
+        assertThrows(IllegalArgumentException.class, () -> new SimHashIndex(16, -1, WINDOW_MS));
+    }
+
+}
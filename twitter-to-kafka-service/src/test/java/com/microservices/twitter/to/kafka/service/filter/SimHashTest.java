@@ -0,0 +1,62 @@
+package com.microservices.twitter.to.kafka.service.filter;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SimHashTest {
+
+    private static final String TWEET = "Spring Boot makes it easy to create stand-alone production-grade applications " +
+            "that you can just run with kafka and elasticsearch";
+
+    @Test
+    public void textsWithoutWordsHaveNoWords() {
+        assertEquals(SimHash.NO_WORDS, SimHash.fingerprint(null));
+        assertEquals(SimHash.NO_WORDS, SimHash.fingerprint(""));
+        assertEquals(SimHash.NO_WORDS, SimHash.fingerprint("!!! ... ?"));
+        assertEquals(SimHash.NO_WORDS, SimHash.fingerprint("@alice @bob_smith"));
+        assertEquals(SimHash.NO_WORDS, SimHash.fingerprint("RT @alice"));
+    }
+
+    @Test
+    public void singleWordHasWords() {
+        assertNotEquals(SimHash.NO_WORDS, SimHash.fingerprint("kafka"));
+    }
+
+    @Test
+    public void caseAndPunctuationAreIgnored() {
+        assertEquals(SimHash.fingerprint(TWEET), SimHash.fingerprint(TWEET.toUpperCase() + "!!!"));
+        assertEquals(SimHash.fingerprint("hello, world"), SimHash.fingerprint("Hello   World."));
+    }
+
+    @Test
+    public void retweetMarkerAndMentionsAreIgnored() {
+        assertEquals(SimHash.fingerprint(TWEET), SimHash.fingerprint("RT @bob: " + TWEET));
+        assertEquals(SimHash.fingerprint(TWEET), SimHash.fingerprint("@alice @bob " + TWEET));
+    }
+
+    @Test
+    public void retweetMarkerIsOnlySkippedAsFirstWord() {
+        assertNotEquals(SimHash.fingerprint("hello world"), SimHash.fingerprint("hello rt world"));
+    }
+
+    @Test
+    public void nearDuplicatesAreCloserThanUnrelatedTexts() {
+        long fingerprint = SimHash.fingerprint(TWEET);
+        int nearDistance = SimHash.hammingDistance(fingerprint, SimHash.fingerprint(TWEET.replace("just", "simply")));
+        int unrelatedDistance = SimHash.hammingDistance(fingerprint, SimHash.fingerprint(
+                "The weather in Lisbon is sunny today and the beaches are full of tourists enjoying the warm water"));
+        assertTrue(nearDistance <= 8, "near duplicate distance " + nearDistance);
+        assertTrue(unrelatedDistance > 16, "unrelated distance " + unrelatedDistance);
+    }
+
+    @Test
+    public void hammingDistanceCountsDifferentBits() {
+        assertEquals(0, SimHash.hammingDistance(0x5L, 0x5L));
+        assertEquals(2, SimHash.hammingDistance(0x5L, 0x0L));
+        assertEquals(Long.SIZE, SimHash.hammingDistance(0L, -1L));
+    }
+
+}